@@ -5,18 +5,22 @@ import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoCollection;
 
+import edu.pucmm.config.CatalogConfig;
 import edu.pucmm.config.MongoConfig;
 import edu.pucmm.config.UploadConfig;
 import edu.pucmm.controller.PropertyController;
 import edu.pucmm.controller.AuthController;
 import edu.pucmm.controller.HeroConfigController;
 import edu.pucmm.service.AuthService;
+import edu.pucmm.service.CatalogVersion;
+import edu.pucmm.service.PropertyCatalog;
 import edu.pucmm.controller.UploadController;
 import io.javalin.Javalin;
 import io.javalin.http.UploadedFile;
 import io.javalin.http.staticfiles.Location;
 
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -60,6 +64,13 @@ public class Main {
         AuthService authService = new AuthService(users);
         authService.initializeDefaultAdmin(); // Create default admin if needed
 
+        // ========= Catálogo de propiedades en memoria =========
+        // Carga la colección y la mantiene al día (change stream o recarga periódica)
+        PropertyCatalog catalog = CatalogConfig.isCatalogEnabled()
+                ? new PropertyCatalog(db.getCollection("properties", RawBsonDocument.class))
+                : null;
+        if (catalog != null) catalog.start();
+
         // ========= Javalin (v5+) =========
         Javalin app = Javalin.create(cfg -> {
             cfg.showJavalinBanner = false;
@@ -146,8 +157,11 @@ public class Main {
         // ========= Rutas de dominio =========
         new AuthController(authService).register(app);                              // /api/auth/*
         new UploadController(MongoConfig.getGridFSBucket()).register(app);           // /api/uploads y /api/images/:id
-        new PropertyController(db.getCollection("properties")).register(app);
-        new HeroConfigController(db.getCollection("heroConfig")).register(app);     // /api/hero/*
+        // Versión del catálogo compartida: las escrituras invalidan también el feed del hero
+        CatalogVersion catalogVersion = new CatalogVersion();
+        new PropertyController(db.getCollection("properties"), catalog, catalogVersion).register(app);
+        new HeroConfigController(db.getCollection("heroConfig"), db.getCollection("properties"),
+                catalog, catalogVersion).register(app);     // /api/hero/*
 
         // ========= Healthcheck =========
         app.get("/health", ctx -> ctx.json(Map.of("status", "ok")));
@@ -227,6 +241,7 @@ public class Main {
 
         // ========= Apagado limpio =========
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (catalog != null) catalog.stop();
             try { mongo.close(); } catch (Exception ignored) {}
         }));
     }
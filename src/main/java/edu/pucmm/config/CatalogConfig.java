@@ -0,0 +1,161 @@
+package edu.pucmm.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Configuration loader for the property catalog endpoints.
+ * Loads configuration from catalog-config.properties file.
+ */
+public class CatalogConfig {
+
+    private static final Properties props = new Properties();
+    private static boolean loaded = false;
+
+    // Default values
+    public static final boolean DEFAULT_STREAM_ENABLED = true;
+    public static final int DEFAULT_STREAM_BATCH_SIZE = 100;
+    public static final boolean DEFAULT_CACHE_ENABLED = true;
+    public static final int DEFAULT_CACHE_MAX_ENTRIES = 500;
+    public static final int DEFAULT_CACHE_MAX_ENTRY_BYTES = 8 * 1024 * 1024; // 8MB
+    public static final int DEFAULT_CACHE_BROTLI_QUALITY = 9;
+    public static final int DEFAULT_CACHE_COMPRESS_MIN_BYTES = 512;
+    public static final boolean DEFAULT_CATALOG_ENABLED = true;
+    public static final int DEFAULT_CATALOG_POLL_INTERVAL_SECONDS = 30;
+    public static final int DEFAULT_CATALOG_STARTUP_TIMEOUT_SECONDS = 30;
+    public static final boolean DEFAULT_BACKFILL_ON_STARTUP = true;
+    public static final double[] DEFAULT_FACET_PRICE_BOUNDARIES = {1_000_000, 3_000_000, 5_000_000, 10_000_000, 20_000_000};
+
+    static {
+        loadConfig();
+    }
+
+    private static void loadConfig() {
+        if (loaded) return;
+
+        try (InputStream is = CatalogConfig.class.getClassLoader()
+                .getResourceAsStream("catalog-config.properties")) {
+            if (is != null) {
+                props.load(is);
+                loaded = true;
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load catalog-config.properties, using defaults: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check if the full listing should be streamed instead of materialized
+     */
+    public static boolean isStreamEnabled() {
+        return Boolean.parseBoolean(props.getProperty("stream.enabled", String.valueOf(DEFAULT_STREAM_ENABLED)));
+    }
+
+    /**
+     * Get number of documents per MongoDB cursor batch (and per flush) while streaming
+     */
+    public static int getStreamBatchSize() {
+        return getPositiveInt("stream.batch.size", DEFAULT_STREAM_BATCH_SIZE);
+    }
+
+    /**
+     * Check if serialized (and pre-compressed) responses should be cached in memory
+     */
+    public static boolean isCacheEnabled() {
+        return Boolean.parseBoolean(props.getProperty("cache.enabled", String.valueOf(DEFAULT_CACHE_ENABLED)));
+    }
+
+    /**
+     * Get maximum number of cached responses (least recently used are evicted)
+     */
+    public static int getCacheMaxEntries() {
+        return getPositiveInt("cache.max.entries", DEFAULT_CACHE_MAX_ENTRIES);
+    }
+
+    /**
+     * Get maximum size in bytes of a single cached response (uncompressed)
+     */
+    public static int getCacheMaxEntryBytes() {
+        return getPositiveInt("cache.max.entry.bytes", DEFAULT_CACHE_MAX_ENTRY_BYTES);
+    }
+
+    /**
+     * Get brotli quality (1-11) used for cached responses
+     */
+    public static int getCacheBrotliQuality() {
+        return Math.min(11, getPositiveInt("cache.brotli.quality", DEFAULT_CACHE_BROTLI_QUALITY));
+    }
+
+    /**
+     * Get minimum response size in bytes worth compressing
+     */
+    public static int getCacheCompressMinBytes() {
+        return getPositiveInt("cache.compress.min.bytes", DEFAULT_CACHE_COMPRESS_MIN_BYTES);
+    }
+
+    /**
+     * Check if reads should be served from the in-memory property catalog
+     */
+    public static boolean isCatalogEnabled() {
+        return Boolean.parseBoolean(props.getProperty("catalog.enabled", String.valueOf(DEFAULT_CATALOG_ENABLED)));
+    }
+
+    /**
+     * Get reload interval when change streams are not available (standalone mongod)
+     */
+    public static int getCatalogPollIntervalSeconds() {
+        return getPositiveInt("catalog.poll.interval.seconds", DEFAULT_CATALOG_POLL_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Get how long startup waits for the first catalog load
+     */
+    public static int getCatalogStartupTimeoutSeconds() {
+        return getPositiveInt("catalog.startup.timeout.seconds", DEFAULT_CATALOG_STARTUP_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Check if derived fields missing from older documents (unitStats, sortPrice,
+     * sortArea) should be computed at startup
+     */
+    public static boolean isBackfillOnStartup() {
+        return Boolean.parseBoolean(props.getProperty("backfill.on.startup", String.valueOf(DEFAULT_BACKFILL_ON_STARTUP)));
+    }
+
+    /**
+     * Get price bucket boundaries for the facets endpoint (ascending, comma separated)
+     */
+    public static double[] getFacetPriceBoundaries() {
+        String value = props.getProperty("facets.price.boundaries");
+        if (value == null || value.isBlank()) return DEFAULT_FACET_PRICE_BOUNDARIES.clone();
+        try {
+            double[] boundaries = Arrays.stream(value.split(","))
+                    .map(String::trim)
+                    .filter(v -> !v.isEmpty())
+                    .mapToDouble(Double::parseDouble)
+                    .toArray();
+            for (int i = 0; i < boundaries.length; i++) {
+                if (boundaries[i] <= 0 || (i > 0 && boundaries[i] <= boundaries[i - 1])) {
+                    throw new NumberFormatException("boundaries must be positive and ascending");
+                }
+            }
+            return boundaries.length > 0 ? boundaries : DEFAULT_FACET_PRICE_BOUNDARIES.clone();
+        } catch (NumberFormatException e) {
+            System.err.println("Warning: Invalid facets.price.boundaries, using defaults: " + e.getMessage());
+            return DEFAULT_FACET_PRICE_BOUNDARIES.clone();
+        }
+    }
+
+    private static int getPositiveInt(String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            int n = Integer.parseInt(value.trim());
+            return n > 0 ? n : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -20,6 +20,12 @@ public class UploadConfig {
     public static final int DEFAULT_MAX_IMAGE_SIZE_MB = 25;
     public static final int DEFAULT_MAX_IMAGES_PER_BATCH = 100;
     public static final int DEFAULT_MAX_REQUEST_SIZE_MB = 2600;
+    public static final int DEFAULT_UPLOAD_PARALLELISM = 4;
+    public static final int DEFAULT_UPLOAD_CHUNK_MAX_MB = 32;
+    public static final int DEFAULT_UPLOAD_SESSION_TTL_HOURS = 24;
+    public static final int DEFAULT_IMAGE_DERIVATIVE_THREADS = 2;
+    public static final int DEFAULT_IMAGE_TRANSFORM_THREADS = 2;
+    public static final int DEFAULT_IMAGE_TRANSFORM_QUEUE = 32;
     
     static {
         loadConfig();
@@ -92,6 +98,79 @@ public class UploadConfig {
         return getMaxRequestSizeMB() * 1024L * 1024L;
     }
     
+    /**
+     * Number of files of a batch validated and written to GridFS at the same time
+     */
+    public static int getUploadParallelism() {
+        String value = props.getProperty("upload.parallelism");
+        if (value == null) return DEFAULT_UPLOAD_PARALLELISM;
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_UPLOAD_PARALLELISM;
+        }
+    }
+    
+    /**
+     * Threads that generate the resized derivatives of uploaded images
+     */
+    public static int getImageDerivativeThreads() {
+        return positiveInt("image.derivative.threads", DEFAULT_IMAGE_DERIVATIVE_THREADS);
+    }
+    
+    /**
+     * Threads that compute on-demand image transforms (?h=, fit=, q=)
+     */
+    public static int getImageTransformThreads() {
+        return positiveInt("image.transform.threads", DEFAULT_IMAGE_TRANSFORM_THREADS);
+    }
+    
+    /**
+     * Transforms that may wait for a thread; further requests get a 503
+     */
+    public static int getImageTransformQueue() {
+        return positiveInt("image.transform.queue", DEFAULT_IMAGE_TRANSFORM_QUEUE);
+    }
+    
+    /**
+     * Directory where resumable upload sessions keep the bytes received so far
+     */
+    public static String getUploadStagingDir() {
+        String value = props.getProperty("upload.staging.dir");
+        if (value == null || value.isBlank()) {
+            return System.getProperty("java.io.tmpdir") + java.io.File.separator + "upload-sessions";
+        }
+        return value.trim();
+    }
+    
+    /**
+     * Maximum bytes accepted by a single chunk of a resumable upload
+     */
+    public static long getUploadChunkMaxBytes() {
+        String value = props.getProperty("upload.chunk.max.mb");
+        int mb = DEFAULT_UPLOAD_CHUNK_MAX_MB;
+        if (value != null) {
+            try {
+                mb = Integer.parseInt(value.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return mb * 1024L * 1024L;
+    }
+    
+    /**
+     * Hours an unfinished resumable upload session is kept
+     */
+    public static int getUploadSessionTtlHours() {
+        String value = props.getProperty("upload.session.ttl.hours");
+        if (value == null) return DEFAULT_UPLOAD_SESSION_TTL_HOURS;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_UPLOAD_SESSION_TTL_HOURS;
+        }
+    }
+    
     /**
      * Get set of allowed image extensions (lowercase, with dot)
      */
@@ -125,4 +204,14 @@ public class UploadConfig {
     public static boolean isMagicByteValidationEnabled() {
         return Boolean.parseBoolean(props.getProperty("enable.magic.byte.validation", "true"));
     }
+    
+    private static int positiveInt(String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
 }
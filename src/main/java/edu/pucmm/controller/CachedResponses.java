@@ -0,0 +1,63 @@
+package edu.pucmm.controller;
+
+import edu.pucmm.service.ResponseCache;
+import edu.pucmm.util.HttpCaching;
+import io.javalin.http.Context;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Envío de respuestas validables (ETag) y de respuestas de {@link ResponseCache},
+ * compartido por los controladores del catálogo público.
+ */
+final class CachedResponses {
+
+    private CachedResponses() {}
+
+    /**
+     * Publica el ETag y, si coincide con If-None-Match, responde 304 sin cuerpo.
+     * no-cache obliga al navegador a revalidar en cada carga (intercambio de cabeceras).
+     * Se publica débil: el cuerpo puede ir en br, gzip o sin comprimir.
+     */
+    static boolean notModified(Context ctx, String etag) {
+        ctx.header("ETag", HttpCaching.weakEtag(etag));
+        ctx.header("Cache-Control", "no-cache");
+        if (HttpCaching.matches(ctx.header("If-None-Match"), etag)) {
+            ctx.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Envía una respuesta de la caché tal cual: brotli, gzip o sin comprimir según
+     * Accept-Encoding. Se escribe directo en el OutputStream para que Javalin no
+     * vuelva a comprimir.
+     *
+     * @return false si no hay respuesta (cached == null)
+     */
+    static boolean send(Context ctx, ResponseCache.CachedResponse cached) throws IOException {
+        if (cached == null) return false;
+        String acceptEncoding = ctx.header("Accept-Encoding");
+        byte[] body = cached.getIdentity();
+        String encoding = null;
+        if (cached.getBrotli() != null && HttpCaching.acceptsEncoding(acceptEncoding, "br")) {
+            body = cached.getBrotli();
+            encoding = "br";
+        } else if (cached.getGzip() != null && HttpCaching.acceptsEncoding(acceptEncoding, "gzip")) {
+            body = cached.getGzip();
+            encoding = "gzip";
+        }
+        ctx.status(200);
+        ctx.contentType("application/json; charset=utf-8");
+        ctx.header("ETag", HttpCaching.weakEtag(cached.getEtag()));
+        ctx.header("Vary", "Accept-Encoding");
+        if (encoding != null) ctx.header("Content-Encoding", encoding);
+        ctx.res().setContentLength(body.length);
+        OutputStream out = ctx.res().getOutputStream();
+        out.write(body);
+        out.flush();
+        return true;
+    }
+}
@@ -1,15 +1,33 @@
 package edu.pucmm.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import edu.pucmm.config.CatalogConfig;
+import edu.pucmm.service.CatalogVersion;
+import edu.pucmm.service.PropertyCatalog;
+import edu.pucmm.service.ResponseCache;
+import edu.pucmm.util.BsonJsonTranscoder;
+import edu.pucmm.util.HttpCaching;
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,11 +38,38 @@ import java.util.Map;
 public class HeroConfigController {
     
     private static final String HERO_CONFIG_ID = "propiedades_hero";
+    private static final Map<String, Object> DEFAULT_CONFIG = Map.of(
+        "id", HERO_CONFIG_ID,
+        "imageUrl", "/images/default-hero.jpg",
+        "title", "Encuentra tu hogar ideal",
+        "description", "Las mejores propiedades en República Dominicana"
+    );
+    // Propiedades recientes del slider: por defecto y máximo
+    private static final int FEED_DEFAULT_LIMIT = 5;
+    private static final int FEED_MAX_LIMIT = 20;
+    // Solo los campos que pinta el slider
+    private static final Bson FEED_PROJECTION = Projections.fields(
+        Projections.include("title", "heroTitle", "heroDescription", "location.city", "location.sector"),
+        Projections.computed("mainImage", new Document("$arrayElemAt", List.of("$images", 0)))
+    );
+
     private final MongoCollection<Document> collection;
+    private final MongoCollection<RawBsonDocument> properties;
+    // Copia en memoria de las propiedades; null si está desactivada
+    private final PropertyCatalog catalog;
+    // Compartida con PropertyController: cualquier escritura invalida el feed
+    private final CatalogVersion catalogVersion;
+    private final ResponseCache feedCache;
     private final ObjectMapper mapper = new ObjectMapper();
     
-    public HeroConfigController(MongoCollection<Document> collection) {
+    public HeroConfigController(MongoCollection<Document> collection, MongoCollection<Document> properties,
+                                PropertyCatalog catalog, CatalogVersion catalogVersion) {
         this.collection = collection;
+        this.properties = properties.withDocumentClass(RawBsonDocument.class);
+        this.catalog = catalog;
+        this.catalogVersion = catalogVersion;
+        this.feedCache = new ResponseCache(catalogVersion, FEED_MAX_LIMIT,
+                CatalogConfig.getCacheBrotliQuality(), CatalogConfig.getCacheCompressMinBytes());
     }
     
     public void register(Javalin app) {
@@ -34,23 +79,21 @@ public class HeroConfigController {
             try {
                 System.out.println("[HERO] GET request for hero config");
                 
-                Document config = collection.find(Filters.eq("id", HERO_CONFIG_ID)).first();
+                RawBsonDocument config = collection.withDocumentClass(RawBsonDocument.class)
+                        .find(Filters.eq("id", HERO_CONFIG_ID)).first();
                 
                 if (config == null) {
                     System.out.println("[HERO] No configuration found, returning default");
                     // Retornar configuración por defecto
-                    ctx.json(Map.of(
-                        "id", HERO_CONFIG_ID,
-                        "imageUrl", "/images/default-hero.jpg",
-                        "title", "Encuentra tu hogar ideal",
-                        "description", "Las mejores propiedades en República Dominicana"
-                    ));
+                    ctx.json(DEFAULT_CONFIG);
                 } else {
-                    System.out.println("[HERO] Configuration found: " + config.getString("imageUrl"));
-                    // Convertir _id a string y eliminar campo _id
-                    config.put("objectId", config.getObjectId("_id").toHexString());
-                    config.remove("_id");
-                    ctx.json(config);
+                    System.out.println("[HERO] Configuration found");
+                    // Transcodificar los bytes BSON directo a JSON (_id -> objectId en hex)
+                    ByteArrayOutputStream buf = new ByteArrayOutputStream(512);
+                    try (JsonGenerator gen = mapper.createGenerator(buf)) {
+                        BsonJsonTranscoder.write(gen, config, "objectId");
+                    }
+                    ctx.contentType("application/json; charset=utf-8").result(buf.toByteArray());
                 }
             } catch (Exception e) {
                 System.err.println("[HERO] Error getting hero config: " + e.getMessage());
@@ -62,6 +105,25 @@ public class HeroConfigController {
             }
         });
         
+        // GET /api/hero/feed?limit=5 - Configuración + propiedades recientes con imagen
+        // Todo lo que necesita el slider en una sola petición, sin descargar el catálogo.
+        // Se cachea (serializado y comprimido) hasta la siguiente escritura.
+        app.get("/api/hero/feed", ctx -> {
+            int limit = parseFeedLimit(ctx.queryParam("limit"));
+            long version = catalogVersion.current();
+            String key = "hero:" + limit;
+            String etag = HttpCaching.strongEtag("h." + catalogVersion.tag(version) + "." + limit);
+            if (CachedResponses.notModified(ctx, etag)) return;
+            if (CachedResponses.send(ctx, feedCache.get(key))) return;
+
+            byte[] json = buildFeed(limit);
+            if (!CatalogConfig.isCacheEnabled()) {
+                ctx.contentType("application/json; charset=utf-8").result(json);
+                return;
+            }
+            CachedResponses.send(ctx, feedCache.put(key, version, json, etag));
+        });
+        
         // POST /api/hero/propiedades - Actualizar configuración (título y descripción)
         app.post("/api/hero/propiedades", ctx -> {
             Map<String, Object> body = parseBody(ctx.body());
@@ -101,10 +163,102 @@ public class HeroConfigController {
                 updated.remove("_id");
             }
             
+            catalogVersion.bump();  // el feed incluye la configuración
             ctx.json(updated != null ? updated : doc);
         });
     }
     
+    // ================= Feed =================
+    
+    /**
+     * { hero: {...configuración...}, properties: [{ id, title, heroTitle,
+     * heroDescription, mainImage, location: { city, sector } }] }
+     */
+    private byte[] buildFeed(int limit) throws IOException {
+        RawBsonDocument config = collection.withDocumentClass(RawBsonDocument.class)
+                .find(Filters.eq("id", HERO_CONFIG_ID)).first();
+        List<RawBsonDocument> recent = recentWithImages(limit);
+        
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(2048);
+        try (JsonGenerator gen = mapper.createGenerator(buf)) {
+            gen.writeStartObject();
+            gen.writeFieldName("hero");
+            if (config != null) BsonJsonTranscoder.write(gen, config, "objectId");
+            else mapper.writeValue(gen, DEFAULT_CONFIG);
+            gen.writeArrayFieldStart("properties");
+            for (BsonDocument doc : recent) writeFeedItem(gen, doc);
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        return buf.toByteArray();
+    }
+    
+    /**
+     * Las propiedades más recientes que tienen al menos una imagen. "Reciente" es
+     * por _id (momento de creación), que existe también en documentos sin createdAt.
+     */
+    private List<RawBsonDocument> recentWithImages(int limit) {
+        PropertyCatalog.Snapshot snapshot = catalog != null ? catalog.snapshot() : null;
+        if (snapshot != null) {
+            // Los documentos están en orden de _id ascendente: recorrer desde el final
+            List<RawBsonDocument> documents = snapshot.documents();
+            List<RawBsonDocument> result = new ArrayList<>(limit);
+            for (int i = documents.size() - 1; i >= 0 && result.size() < limit; i--) {
+                if (mainImage(documents.get(i)) != null) result.add(documents.get(i));
+            }
+            return result;
+        }
+        return properties.find(Filters.exists("images.0"))
+                .projection(FEED_PROJECTION)
+                .sort(Sorts.descending("_id"))
+                .limit(limit)
+                .into(new ArrayList<>());
+    }
+    
+    private static void writeFeedItem(JsonGenerator gen, BsonDocument doc) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("id", doc.getObjectId("_id").getValue().toHexString());
+        gen.writeStringField("title", string(doc.get("title")));
+        gen.writeStringField("heroTitle", string(doc.get("heroTitle")));
+        gen.writeStringField("heroDescription", string(doc.get("heroDescription")));
+        gen.writeStringField("mainImage", mainImage(doc));
+        BsonValue location = doc.get("location");
+        if (location != null && location.isDocument()) {
+            gen.writeObjectFieldStart("location");
+            gen.writeStringField("city", string(location.asDocument().get("city")));
+            gen.writeStringField("sector", string(location.asDocument().get("sector")));
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+    
+    /** mainImage ya proyectado (MongoDB) o primera de images (catálogo en memoria) */
+    private static String mainImage(BsonDocument doc) {
+        String projected = string(doc.get("mainImage"));
+        if (projected != null) return projected;
+        BsonValue images = doc.get("images");
+        if (images == null || !images.isArray()) return null;
+        BsonArray array = images.asArray();
+        return array.isEmpty() ? null : string(array.get(0));
+    }
+    
+    private static String string(BsonValue v) {
+        return (v != null && v.isString()) ? v.asString().getValue() : null;
+    }
+    
+    private static int parseFeedLimit(String raw) {
+        if (raw == null || raw.isBlank()) return FEED_DEFAULT_LIMIT;
+        try {
+            int limit = Integer.parseInt(raw.trim());
+            if (limit < 1 || limit > FEED_MAX_LIMIT) {
+                throw new BadRequestResponse("limit debe estar entre 1 y " + FEED_MAX_LIMIT);
+            }
+            return limit;
+        } catch (NumberFormatException e) {
+            throw new BadRequestResponse("limit inválido: " + raw);
+        }
+    }
+    
     // ================= Helpers =================
     
     private Map<String, Object> parseBody(String body) {
@@ -1,24 +1,95 @@
 package edu.pucmm.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import edu.pucmm.config.CatalogConfig;
+import edu.pucmm.model.FacetCounts;
+import edu.pucmm.model.PropertyCard;
+import edu.pucmm.service.CatalogVersion;
+import edu.pucmm.service.ClusterIndex;
+import edu.pucmm.service.PropertyCatalog;
+import edu.pucmm.service.PropertyFacets;
+import edu.pucmm.service.PropertyIndex;
+import edu.pucmm.service.ResponseCache;
+import edu.pucmm.service.SuggestIndex;
+import edu.pucmm.util.BsonJsonTranscoder;
+import edu.pucmm.util.CapturingOutputStream;
+import edu.pucmm.util.DocumentDiff;
+import edu.pucmm.util.Geo;
+import edu.pucmm.util.HttpCaching;
+import edu.pucmm.util.PropertyQuery;
 import edu.pucmm.util.PropertyValidator;
+import edu.pucmm.util.UnitStats;
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ConflictResponse;
+import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
 
 public class PropertyController {
 
     private final MongoCollection<Document> collection;
+    // Lecturas completas: bytes BSON sin decodificar, transcodificados directo a JSON
+    private final MongoCollection<RawBsonDocument> rawCollection;
+    // Copia en memoria de la colección; null si está desactivada (se lee de MongoDB)
+    private final PropertyCatalog catalog;
     private final ObjectMapper mapper = new ObjectMapper();
+    private final PropertyFacets facets = new PropertyFacets(CatalogConfig.getFacetPriceBoundaries());
+    // Se incrementa en cada escritura; invalida los ETag del listado
+    private final CatalogVersion catalogVersion;
+    // Respuestas ya serializadas y comprimidas, válidas mientras no cambie la versión
+    private final ResponseCache responseCache;
+
+    // Tope de ids en una consulta por lote (?ids=a,b,c)
+    private static final int MAX_BATCH_IDS = 100;
+    // Parámetros del listado además de los de búsqueda (PropertyQuery)
+    private static final Set<String> LIST_PARAMS = Set.of("ids", "fields", "view");
+    // Sugerencias del autocompletado si no se indica limit
+    private static final int DEFAULT_SUGGEST_LIMIT = 8;
+    // Actualizaciones por bulkWrite al completar campos derivados en el arranque
+    private static final int BACKFILL_BATCH = 500;
+
+    // Versión de cada propiedad para la concurrencia optimista de las ediciones
+    private static final String VERSION_FIELD = "version";
+    // Campos que produce buildDocFromBody: los únicos que una edición escribe o elimina
+    private static final List<String> EDITABLE_FIELDS = List.of(
+            "title", "type", "saleType", "address", "descriptionParagraph",
+            "isHeroDefault", "heroTitle", "heroDescription",
+            "price", "pricePerSqm", "bedrooms", "bathrooms", "parking", "area",
+            "latitude", "longitude", "location", "features", "amenities", "images",
+            "units", UnitStats.FIELD, UnitStats.sortKey("price"), UnitStats.sortKey("area")
+    );
 
     // Tipos permitidos (acepta ambos "Solar" y "Solares" para compatibilidad)
     private static final List<String> ALLOWED_TYPES = List.of(
@@ -26,11 +97,41 @@ public class PropertyController {
     );
 
     public PropertyController(MongoCollection<Document> collection) {
+        this(collection, null);
+    }
+
+    public PropertyController(MongoCollection<Document> collection, PropertyCatalog catalog) {
+        this(collection, catalog, new CatalogVersion());
+    }
+
+    /**
+     * @param catalogVersion versión compartida con otros controladores que
+     *                       cachean datos de propiedades (p. ej. el feed del hero)
+     */
+    public PropertyController(MongoCollection<Document> collection, PropertyCatalog catalog,
+                              CatalogVersion catalogVersion) {
         this.collection = collection;
+        this.rawCollection = collection.withDocumentClass(RawBsonDocument.class);
+        this.catalog = catalog;
+        this.catalogVersion = catalogVersion;
+        this.responseCache = new ResponseCache(catalogVersion,
+                CatalogConfig.getCacheMaxEntries(), CatalogConfig.getCacheBrotliQuality(),
+                CatalogConfig.getCacheCompressMinBytes());
     }
 
     public void register(Javalin app) {
 
+        ensureIndexes();
+
+        // Cambios que llegan por el change stream (también los de otras instancias)
+        if (catalog != null) {
+            catalog.addListener(new PropertyCatalog.Listener() {
+                @Override public void onReload(PropertyCatalog.Snapshot snapshot) { catalogChanged(); }
+                @Override public void onUpsert(RawBsonDocument previous, RawBsonDocument current) { catalogChanged(); }
+                @Override public void onDelete(RawBsonDocument previous) { catalogChanged(); }
+            });
+        }
+
         // -------- CREATE --------
         app.post("/api/properties", ctx -> {
             Map<String, Object> body = parseBody(ctx.body());
@@ -50,62 +151,731 @@ public class PropertyController {
             }
 
             Document doc = buildDocFromBody(body);
+            doc.append("createdAt", new Date());
+            doc.append(VERSION_FIELD, 1L);
             collection.insertOne(doc);
+            published(new RawBsonDocument(doc, collection.getCodecRegistry().get(Document.class)));
             String id = doc.getObjectId("_id").toHexString();
             ctx.status(201).json(Map.of("id", id, "message", "created"));
         });
 
         // -------- LIST --------
+        // Sin parámetros: array completo (formato que usa admin.js).
+        // Con filtros/orden/página: { items, total, page, pages, limit }
+        // Con cursor: { items, nextCursor, limit } (+ total en la primera página)
+        // near=lat,lng&radius=m y within=minLng,minLat,maxLng,maxLat filtran por ubicación
+        // unitBedrooms/unitMinPrice/... buscan unidades de desarrollos: units[] trae solo las que cumplen
+        // Con ids=a,b,c: array con esas propiedades en el orden pedido (las que no existen
+        // se omiten); fields=title,price,... limita los campos de primer nivel
+        // view=card devuelve tarjetas resumidas (PropertyCard) en cualquiera de los modos
+        // ETag = versión del catálogo + query; If-None-Match responde 304 sin consultar Mongo
+        // Las respuestas se guardan serializadas y comprimidas hasta la siguiente escritura
         app.get("/api/properties", ctx -> {
-            var results = collection.find()
-                    .map(d -> {
-                        d.put("id", d.getObjectId("_id").toHexString());
-                        d.remove("_id");
-                        return d;
-                    })
-                    .into(new ArrayList<>());
-            ctx.json(results);
+            boolean card = parseCardView(ctx);
+            long version = catalogVersion.current();
+            String query = canonicalQuery(ctx);
+            String etag = listEtag(version, query);
+            if (CachedResponses.notModified(ctx, etag)) return;
+
+            String key = "list:" + query;
+            if (CachedResponses.send(ctx, cachedResponse(key))) return;
+
+            PropertyCatalog.Snapshot snapshot = snapshot();
+            byte[] json;
+            String ids = ctx.queryParam("ids");
+            if (ids != null) {
+                json = findByIds(parseIds(ids), parseFields(ctx.queryParam("fields"), card), card, snapshot);
+            } else if (PropertyQuery.isSearchRequest(ctx.queryParamMap())) {
+                PropertyQuery q = parseQuery(ctx);
+                json = q.isCursorMode() ? searchAfterCursor(q, card, snapshot) : search(q, card, snapshot);
+            } else if (snapshot != null) {
+                json = toJsonBytes(gen -> writeItems(gen, snapshot.documents(), card));
+            } else if (CatalogConfig.isStreamEnabled()) {
+                streamAll(ctx, card, key, version, etag);
+                return;
+            } else {
+                List<Object> results = find(Filters.empty(), null, 0, 0, card);
+                json = toJsonBytes(gen -> writeItems(gen, results, card));
+            }
+            respondCacheable(ctx, key, version, json, etag);
         });
 
-        // -------- DETAIL -------- (Javalin 4: {id})
-        app.get("/api/properties/{id}", ctx -> {
-            Document d = findByIdOrFail(ctx.pathParam("id"));
-            d.put("id", d.getObjectId("_id").toHexString());
-            d.remove("_id");
-            ctx.json(d);
+        // -------- FACETS -------- (antes de {id} para que no se tome como un id)
+        // Conteos por tipo, transacción, habitaciones, amenities y tramo de precio
+        // para los mismos filtros que el listado; en caché por clave de filtro normalizada
+        app.get("/api/properties/facets", ctx -> {
+            PropertyQuery query = parseQuery(ctx);
+            long version = catalogVersion.current();
+            String key = "facets:" + query.filterKey();
+            String etag = HttpCaching.strongEtag("f." + catalogVersion.tag(version) + "." + HttpCaching.fingerprint(key));
+            if (CachedResponses.notModified(ctx, etag)) return;
+            if (CachedResponses.send(ctx, cachedResponse(key))) return;
+
+            PropertyCatalog.Snapshot snapshot = snapshot();
+            FacetCounts counts = snapshot != null
+                    ? facets.fromIndex(snapshot.index(), ctx.queryParamMap())
+                    : facets.fromMongo(collection, ctx.queryParamMap());
+            respondCacheable(ctx, key, version, mapper.writeValueAsBytes(counts), etag);
         });
 
-        // -------- UPDATE -------- (para admin.js)
-        app.put("/api/properties/{id}", ctx -> {
-            String id = ctx.pathParam("id");
-            Map<String, Object> body = parseBody(ctx.body());
+        // -------- SUGGEST -------- (antes de {id})
+        // Autocompletado del buscador: ubicaciones y títulos que empiezan por q.
+        // Se responde desde el catálogo en memoria sin consultar MongoDB; si no está
+        // cargado no hay sugerencias.
+        app.get("/api/properties/suggest", ctx -> {
+            int limit = parseSuggestLimit(ctx.queryParam("limit"));
+            PropertyCatalog.Snapshot snapshot = snapshot();
+            ctx.json(snapshot != null
+                    ? snapshot.suggestions().suggest(ctx.queryParam("q"), limit)
+                    : List.of());
+        });
 
-            // Validar la propiedad según su tipo
-            List<String> validationErrors = PropertyValidator.validate(body);
-            if (!validationErrors.isEmpty()) {
-                ctx.status(400).json(Map.of("errors", validationErrors));
-                return;
+        // -------- CLUSTERS -------- (antes de {id})
+        // Marcadores del mapa agrupados: ?bbox=minLng,minLat,maxLng,maxLat&zoom=0..22.
+        // Una entrada por celda ocupada de la rejilla del zoom (count, centroide, rango
+        // de precios; id si es una sola propiedad), así que el tamaño de la respuesta
+        // depende del área visible y no del catálogo
+        app.get("/api/properties/clusters", ctx -> {
+            Geo.Bounds bbox;
+            int zoom;
+            try {
+                String rawBbox = ctx.queryParam("bbox");
+                if (rawBbox == null || rawBbox.isBlank()) throw new IllegalArgumentException("Falta el parámetro 'bbox'");
+                bbox = Geo.Bounds.parse(rawBbox, "bbox");
+                zoom = parseZoom(ctx.queryParam("zoom"));
+                ClusterIndex.checkViewport(bbox, zoom);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestResponse(e.getMessage());
             }
+            long version = catalogVersion.current();
+            String key = "clusters:" + zoom + ":" + bbox;
+            String etag = HttpCaching.strongEtag("c." + catalogVersion.tag(version) + "." + HttpCaching.fingerprint(key));
+            if (CachedResponses.notModified(ctx, etag)) return;
+            if (CachedResponses.send(ctx, cachedResponse(key))) return;
 
-            ObjectId oid = parseOid(id);
-            Document set = buildDocFromBody(body);
-
-            if (set.isEmpty()) throw new BadRequestResponse("Nada para actualizar");
-            var res = collection.updateOne(Filters.eq("_id", oid), new Document("$set", set));
-            if (res.getMatchedCount() == 0) throw new NotFoundResponse("No existe");
+            PropertyCatalog.Snapshot snapshot = snapshot();
+            ClusterIndex clusters = snapshot != null ? snapshot.clusters() : clustersFromMongo(bbox);
+            respondCacheable(ctx, key, version, mapper.writeValueAsBytes(clusters.clusters(bbox, zoom)), etag);
+        });
 
-            ctx.json(Map.of("id", id, "message", "updated"));
+        // -------- DETAIL -------- (Javalin 4: {id})
+        // Con el catálogo en memoria, related son las propiedades más parecidas
+        // (RelatedIndex, calculadas de antemano); si no, lo guardado en el documento
+        app.get("/api/properties/{id}", ctx -> {
+            ObjectId oid = parseOid(ctx.pathParam("id"));
+            String key = "detail:" + oid.toHexString();
+            ResponseCache.CachedResponse cached = cachedResponse(key);
+            if (cached == null) {
+                long version = catalogVersion.current();
+                PropertyCatalog.Snapshot snapshot = snapshot();
+                RawBsonDocument d = findByIdOrFail(oid, snapshot);
+                byte[] json = snapshot != null
+                        ? toJsonBytes(gen -> BsonJsonTranscoder.writeReplacing(gen, d, "id",
+                                Map.of("related", snapshot.related().of(oid))))
+                        : toJsonBytes(gen -> BsonJsonTranscoder.write(gen, d, "id"));
+                // ETag por documento: huella del contenido
+                String etag = HttpCaching.strongEtag("d." + HttpCaching.fingerprint(json));
+                if (!CatalogConfig.isCacheEnabled()) {
+                    if (CachedResponses.notModified(ctx, etag)) return;
+                    ctx.contentType("application/json; charset=utf-8").result(json);
+                    return;
+                }
+                cached = responseCache.put(key, version, json, etag);
+            }
+            if (CachedResponses.notModified(ctx, cached.getEtag())) return;
+            CachedResponses.send(ctx, cached);
         });
 
+        // -------- UPDATE -------- (para admin.js)
+        // PUT: el cuerpo es la propiedad completa; los campos editables que falten se eliminan.
+        // PATCH: solo los campos que cambian (null = eliminar), sobre lo guardado.
+        // En ambos se escriben únicamente los campos distintos ($set/$unset) y, si el
+        // cuerpo trae "version", debe coincidir con la guardada (si no, 409)
+        app.put("/api/properties/{id}", ctx -> update(ctx, false));
+        app.patch("/api/properties/{id}", ctx -> update(ctx, true));
+
         // -------- DELETE -------- (para admin.js)
         app.delete("/api/properties/{id}", ctx -> {
             ObjectId oid = parseOid(ctx.pathParam("id"));
             var res = collection.deleteOne(Filters.eq("_id", oid));
             if (res.getDeletedCount() == 0) throw new NotFoundResponse("No existe");
+            if (catalog != null) catalog.remove(oid);
+            catalogChanged();
             ctx.json(Map.of("message", "deleted"));
         });
     }
 
+    // ================= Edición =================
+
+    /**
+     * Actualiza solo los campos que cambian respecto a lo guardado, con control de
+     * concurrencia optimista: el filtro exige la versión leída y la escritura la
+     * incrementa, así que si otra edición se adelantó no se pisa (409).
+     */
+    private void update(Context ctx, boolean patch) {
+        ObjectId oid = parseOid(ctx.pathParam("id"));
+        Map<String, Object> body = parseBody(ctx.body());
+        Long expected = parseVersion(body.remove(VERSION_FIELD));
+
+        Document current = collection.find(Filters.eq("_id", oid)).first();
+        if (current == null) throw new NotFoundResponse("No existe");
+        long version = versionOf(current);
+        if (expected != null && expected != version) {
+            throw new ConflictResponse("La propiedad fue modificada (versión actual " + version + ")");
+        }
+
+        Map<String, Object> edited = body;
+        if (patch) {
+            edited = new LinkedHashMap<>(current);
+            for (Map.Entry<String, Object> e : body.entrySet()) {
+                if (e.getValue() == null) edited.remove(e.getKey());
+                else edited.put(e.getKey(), e.getValue());
+            }
+        }
+
+        // Sin estos campos la edición borraría la propiedad en vez de modificarla
+        reqStr(edited.get("title"), "title");
+        reqStr(edited.get("saleType"), "saleType");
+
+        // Validar la propiedad según su tipo (en PATCH, el resultado completo)
+        List<String> validationErrors = PropertyValidator.validate(edited);
+        if (!validationErrors.isEmpty()) {
+            ctx.status(400).json(Map.of("errors", validationErrors));
+            return;
+        }
+
+        DocumentDiff diff = DocumentDiff.of(current, buildDocFromBody(edited), EDITABLE_FIELDS);
+        if (diff.isEmpty()) {
+            ctx.json(Map.of("id", oid.toHexString(), "message", "unchanged", VERSION_FIELD, version));
+            return;
+        }
+
+        Document update = new Document("$inc", new Document(VERSION_FIELD, 1L));
+        if (!diff.getSet().isEmpty()) update.append("$set", diff.getSet());
+        if (!diff.getUnset().isEmpty()) {
+            Document unset = new Document();
+            for (String field : diff.getUnset()) unset.append(field, "");
+            update.append("$unset", unset);
+        }
+        Bson sameVersion = version == 0 ? Filters.exists(VERSION_FIELD, false) : Filters.eq(VERSION_FIELD, version);
+        RawBsonDocument updated = rawCollection.findOneAndUpdate(Filters.and(Filters.eq("_id", oid), sameVersion),
+                update, new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+        if (updated == null) {
+            if (collection.countDocuments(Filters.eq("_id", oid)) == 0) throw new NotFoundResponse("No existe");
+            throw new ConflictResponse("La propiedad fue modificada por otra edición; recárgala e inténtalo de nuevo");
+        }
+        published(updated);
+
+        ctx.json(Map.of("id", oid.toHexString(), "message", "updated",
+                VERSION_FIELD, version + 1, "changed", diff.changedFields()));
+    }
+
+    /** "version" del cuerpo: null si no se envió */
+    private static Long parseVersion(Object raw) {
+        if (raw == null) return null;
+        Number n = toNumber(raw);
+        if (n == null || n.doubleValue() < 0 || n.doubleValue() != Math.rint(n.doubleValue())) {
+            throw new BadRequestResponse("version inválida");
+        }
+        return n.longValue();
+    }
+
+    /** Versión guardada; 0 en documentos anteriores al control de versiones */
+    private static long versionOf(Document doc) {
+        Object v = doc.get(VERSION_FIELD);
+        return v instanceof Number n ? n.longValue() : 0;
+    }
+
+    // ================= Búsqueda =================
+
+    /**
+     * Índices compuestos para los filtros del listado (igualdad -> orden -> rango).
+     * createIndex es idempotente, así que se puede llamar en cada arranque.
+     */
+    private void ensureIndexes() {
+        try {
+            collection.createIndex(Indexes.ascending("type", "saleType", "price"),
+                    new IndexOptions().name("type_saleType_price"));
+            collection.createIndex(Indexes.ascending("type", "saleType", "area"),
+                    new IndexOptions().name("type_saleType_area"));
+            collection.createIndex(Indexes.compoundIndex(Indexes.ascending("type", "saleType"), Indexes.descending("_id")),
+                    new IndexOptions().name("type_saleType_recent"));
+        } catch (Exception e) {
+            System.err.println("[PROPERTIES] No se pudieron crear los índices: " + e.getMessage());
+        }
+        try {
+            backfillLocations();
+            collection.createIndex(Indexes.geo2dsphere("location"), new IndexOptions().name("location_2dsphere"));
+        } catch (Exception e) {
+            System.err.println("[PROPERTIES] No se pudo crear el índice geográfico: " + e.getMessage());
+        }
+        try {
+            // Solape de rangos en desarrollos: unitStats.min <= max y unitStats.max >= min
+            // (parciales: solo los documentos que tienen unitStats)
+            Bson developments = Filters.exists(UnitStats.FIELD);
+            for (String field : List.of("price", "area")) {
+                collection.createIndex(Indexes.ascending(UnitStats.FIELD + "." + UnitStats.minKey(field),
+                                UnitStats.FIELD + "." + UnitStats.maxKey(field)),
+                        new IndexOptions().name(UnitStats.FIELD + "_" + field).partialFilterExpression(developments));
+            }
+            collection.createIndex(Indexes.ascending(UnitStats.FIELD + "." + UnitStats.maxKey("bedrooms")),
+                    new IndexOptions().name(UnitStats.FIELD + "_bedrooms").partialFilterExpression(developments));
+        } catch (Exception e) {
+            System.err.println("[PROPERTIES] No se pudieron crear los índices de unidades: " + e.getMessage());
+        }
+        try {
+            // Orden y cursor por precio/área ("desde")
+            for (String field : UnitStats.SORT_FIELDS) {
+                String key = UnitStats.sortKey(field);
+                collection.createIndex(Indexes.ascending(key, "_id"), new IndexOptions().name(key + "_id"));
+            }
+        } catch (Exception e) {
+            System.err.println("[PROPERTIES] No se pudieron crear los índices de orden por precio/área: " + e.getMessage());
+        }
+        try {
+            // Multikey sobre units[] para $elemMatch (unitBedrooms, unitMinPrice, ...)
+            collection.createIndex(Indexes.ascending("units.bedrooms", "units.price"),
+                    new IndexOptions().name("units_bedrooms_price"));
+            collection.createIndex(Indexes.ascending("units.price"), new IndexOptions().name("units_price"));
+            collection.createIndex(Indexes.ascending("units.area"), new IndexOptions().name("units_area"));
+        } catch (Exception e) {
+            System.err.println("[PROPERTIES] No se pudieron crear los índices multikey de unidades: " + e.getMessage());
+        }
+        // Después de los índices: si un cálculo falla, los índices ya están
+        if (!CatalogConfig.isBackfillOnStartup()) return;
+        try {
+            backfillUnitStats();
+        } catch (Exception e) {
+            System.err.println("[PROPERTIES] No se pudo calcular unitStats de las propiedades anteriores: " + e.getMessage());
+        }
+        try {
+            backfillSortKeys();
+        } catch (Exception e) {
+            System.err.println("[PROPERTIES] No se pudieron calcular sortPrice/sortArea de las propiedades anteriores"
+                    + " (su orden por precio/área no será el correcto): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Documentos con units[] anteriores a unitStats: calcula los agregados
+     * (idempotente; solo toca los que no los tienen).
+     */
+    private void backfillUnitStats() {
+        Bson pending = Filters.and(Filters.type("units", "array"), Filters.exists(UnitStats.FIELD, false));
+        List<UpdateOneModel<Document>> updates = new ArrayList<>();
+        long updated = 0;
+        for (Document doc : collection.find(pending).projection(Projections.include("units"))) {
+            updates.add(new UpdateOneModel<>(Filters.eq("_id", doc.get("_id")),
+                    Updates.set(UnitStats.FIELD, UnitStats.summarize(doc.getList("units", Object.class)))));
+            if (updates.size() == BACKFILL_BATCH) {
+                updated += collection.bulkWrite(updates).getModifiedCount();
+                updates.clear();
+            }
+        }
+        if (!updates.isEmpty()) updated += collection.bulkWrite(updates).getModifiedCount();
+        if (updated > 0) System.out.println("[PROPERTIES] unitStats calculado para " + updated + " propiedades");
+    }
+
+    /**
+     * Documentos anteriores a sortPrice/sortArea: los calcula como
+     * UnitStats.appendSortKeys, el de la raíz o el mínimo de unitStats
+     * (idempotente; solo toca los que tienen alguno de los dos y no el campo).
+     */
+    private void backfillSortKeys() {
+        for (String field : UnitStats.SORT_FIELDS) {
+            String key = UnitStats.sortKey(field);
+            String unitMin = UnitStats.FIELD + "." + UnitStats.minKey(field);
+            Bson pending = Filters.and(Filters.exists(key, false),
+                    Filters.or(Filters.type(field, "number"), Filters.type(unitMin, "number")));
+            Document low = new Document("$cond", List.of(new Document("$isNumber", "$" + field),
+                    new Document("$toDouble", "$" + field), new Document("$toDouble", "$" + unitMin)));
+            long updated = collection.updateMany(pending, List.of(new Document("$set", new Document(key, low))))
+                    .getModifiedCount();
+            if (updated > 0) System.out.println("[PROPERTIES] " + key + " calculado para " + updated + " propiedades");
+        }
+    }
+
+    /**
+     * Documentos anteriores al campo location: lo calcula desde latitude/longitude
+     * (idempotente; solo toca los que tienen coordenadas válidas y no lo tienen).
+     */
+    private void backfillLocations() {
+        Bson pending = Filters.and(
+                Filters.exists("location", false),
+                Filters.gte("latitude", -90), Filters.lte("latitude", 90),
+                Filters.gte("longitude", -180), Filters.lte("longitude", 180));
+        Document point = new Document("type", "Point").append("coordinates", List.of("$longitude", "$latitude"));
+        long updated = collection.updateMany(pending, List.of(new Document("$set", new Document("location", point))))
+                .getModifiedCount();
+        if (updated > 0) System.out.println("[PROPERTIES] location calculado para " + updated + " propiedades");
+    }
+
+    private PropertyQuery parseQuery(Context ctx) {
+        try {
+            return PropertyQuery.fromParams(ctx.queryParamMap());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Listado filtrado, ordenado y paginado (en el catálogo en memoria si está
+     * cargado, si no en MongoDB). Si la página pedida excede el total se
+     * devuelve la última disponible.
+     */
+    private byte[] search(PropertyQuery query, boolean card, PropertyCatalog.Snapshot snapshot) throws IOException {
+        Bson filter = query.toFilter();
+        PropertyIndex index = snapshot != null ? snapshot.index() : null;
+        BitSet matches = index != null ? index.filter(query) : null;
+        long total = matches != null ? matches.cardinality() : collection.countDocuments(filter);
+        int pages = (int) Math.max(1, (total + query.getLimit() - 1) / query.getLimit());
+        if (query.getPage() > pages) query.setPage(pages);
+
+        List<?> items = matches != null
+                ? index.page(matches, query, query.skip(), query.getLimit())
+                : find(filter, query.toSort(), query.skip(), query.getLimit(), card);
+
+        return toJsonBytes(gen -> {
+            gen.writeStartObject();
+            gen.writeFieldName("items");
+            writeItems(gen, items, card, query);
+            gen.writeNumberField("total", total);
+            gen.writeNumberField("page", query.getPage());
+            gen.writeNumberField("pages", pages);
+            gen.writeNumberField("limit", query.getLimit());
+            gen.writeEndObject();
+        });
+    }
+
+    /**
+     * Página por cursor (keyset): filtra después del último (valor de orden, _id)
+     * entregado en lugar de usar skip, apoyándose en los índices {campo, _id}.
+     * Se pide un documento extra para saber si hay página siguiente.
+     */
+    private byte[] searchAfterCursor(PropertyQuery query, boolean card, PropertyCatalog.Snapshot snapshot) throws IOException {
+        List<?> items;
+        Long total = null;
+        if (snapshot != null) {
+            PropertyIndex index = snapshot.index();
+            BitSet matches = index.filter(query);
+            if (query.getCursor() == null) total = (long) matches.cardinality();
+            items = index.pageAfterCursor(matches, query, query.getLimit() + 1);
+        } else {
+            items = find(query.toKeysetFilter(), query.toSort(), 0, query.getLimit() + 1, card);
+            if (query.getCursor() == null) total = collection.countDocuments(query.toFilter());
+        }
+
+        String nextCursor = null;
+        if (items.size() > query.getLimit()) {
+            items = items.subList(0, query.getLimit());
+            Object last = items.get(items.size() - 1);
+            nextCursor = query.cursorAfter(fieldOf(last, query.getSort().field()), idOf(last)).encode();
+        }
+
+        List<?> page = items;
+        Long count = total;
+        String next = nextCursor;
+        return toJsonBytes(gen -> {
+            gen.writeStartObject();
+            gen.writeFieldName("items");
+            writeItems(gen, page, card, query);
+            gen.writeStringField("nextCursor", next);
+            gen.writeNumberField("limit", query.getLimit());
+            if (count != null) gen.writeNumberField("total", count);
+            gen.writeEndObject();
+        });
+    }
+
+    /**
+     * Listado completo en streaming: cada documento se transcodifica a la respuesta
+     * (transferencia chunked) a medida que el cursor lo entrega, de modo que la
+     * memoria por petición no depende del tamaño del catálogo. Se vacía el buffer
+     * al terminar cada lote del cursor.
+     *
+     * Mientras se envía se guarda una copia del JSON (hasta cache.max.entry.bytes)
+     * para que las siguientes peticiones salgan de la caché.
+     */
+    private void streamAll(Context ctx, boolean card, String key, long version, String etag) throws IOException {
+        int batchSize = CatalogConfig.getStreamBatchSize();
+        ctx.status(200);
+        ctx.contentType("application/json; charset=utf-8");
+
+        FindIterable<?> source = card
+                ? collection.find().projection(PropertyCard.PROJECTION).batchSize(batchSize)
+                : rawCollection.find().batchSize(batchSize);
+
+        // Sin AUTO_CLOSE_JSON_CONTENT: si el cursor falla a mitad, el JSON queda
+        // incompleto (el cliente lo detecta) en vez de cerrarse como si fuera válido
+        CapturingOutputStream capture = CatalogConfig.isCacheEnabled()
+                ? new CapturingOutputStream(openStreamingOutput(ctx), CatalogConfig.getCacheMaxEntryBytes())
+                : null;
+        try (JsonGenerator gen = mapper.createGenerator(capture != null ? capture : openStreamingOutput(ctx))
+                     .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+             MongoCursor<?> cursor = source.cursor()) {
+            gen.writeStartArray();
+            int written = 0;
+            while (cursor.hasNext()) {
+                writeItem(gen, cursor.next(), card);
+                if (++written % batchSize == 0) gen.flush();
+            }
+            gen.writeEndArray();
+        }
+        // Solo se llega aquí si el listado se escribió completo
+        byte[] json = capture != null ? capture.captured() : null;
+        if (json != null) responseCache.put(key, version, json, etag);
+    }
+
+    /**
+     * Salida de la respuesta en streaming. Al escribir directo en el OutputStream
+     * Javalin no comprime, así que se aplica gzip aquí si el cliente lo acepta
+     * (syncFlush para que cada flush envíe los datos ya comprimidos).
+     */
+    private OutputStream openStreamingOutput(Context ctx) throws IOException {
+        OutputStream out = ctx.res().getOutputStream();
+        ctx.header("Vary", "Accept-Encoding");
+        if (HttpCaching.acceptsEncoding(ctx.header("Accept-Encoding"), "gzip")) {
+            ctx.header("Content-Encoding", "gzip");
+            return new GZIPOutputStream(out, true);
+        }
+        return out;
+    }
+
+    private boolean parseCardView(Context ctx) {
+        try {
+            return PropertyCard.isCardView(ctx.queryParam("view"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Consulta el listado. Las tarjetas se leen como Document con la proyección
+     * reducida; los documentos completos como RawBsonDocument para transcodificarlos
+     * sin decodificar. limit 0 = sin límite.
+     */
+    private List<Object> find(Bson filter, Bson sort, int skip, int limit, boolean card) {
+        if (card) {
+            return collection.find(filter).projection(PropertyCard.PROJECTION)
+                    .sort(sort).skip(skip).limit(limit)
+                    .into(new ArrayList<Object>());
+        }
+        return rawCollection.find(filter).sort(sort).skip(skip).limit(limit)
+                .into(new ArrayList<Object>());
+    }
+
+    /**
+     * Lote por ids: una sola consulta $in (o lecturas del catálogo en memoria),
+     * devuelta en el orden de la petición.
+     *
+     * @param fields campos de primer nivel a incluir, o null para todos
+     */
+    private byte[] findByIds(List<ObjectId> ids, Set<String> fields, boolean card,
+                             PropertyCatalog.Snapshot snapshot) throws IOException {
+        List<Object> found;
+        if (snapshot != null) {
+            found = new ArrayList<>(ids.size());
+            for (ObjectId id : ids) {
+                RawBsonDocument d = snapshot.get(id);
+                if (d != null) found.add(d);
+            }
+        } else {
+            Bson filter = Filters.in("_id", ids);
+            List<Object> results = card
+                    ? find(filter, null, 0, 0, true)
+                    : rawCollection.find(filter)
+                        .projection(fields != null ? Projections.include(new ArrayList<>(fields)) : null)
+                        .into(new ArrayList<Object>());
+            Map<String, Object> byId = new HashMap<>();
+            for (Object item : results) byId.put(idOf(item), item);
+            found = new ArrayList<>(results.size());
+            for (ObjectId id : ids) {
+                Object item = byId.get(id.toHexString());
+                if (item != null) found.add(item);
+            }
+        }
+        return toJsonBytes(gen -> {
+            gen.writeStartArray();
+            for (Object item : found) {
+                if (fields != null) BsonJsonTranscoder.write(gen, (RawBsonDocument) item, "id", fields);
+                else writeItem(gen, item, card);
+            }
+            gen.writeEndArray();
+        });
+    }
+
+    private static int parseZoom(String raw) {
+        try {
+            return Integer.parseInt(raw == null ? "" : raw.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("zoom debe estar entre 0 y " + ClusterIndex.MAX_ZOOM);
+        }
+    }
+
+    /**
+     * Sin catálogo en memoria: agrupa solo las propiedades del área, con la misma
+     * caja plana lat/lng con la que ClusterIndex elige las celdas
+     */
+    private ClusterIndex clustersFromMongo(Geo.Bounds bbox) {
+        List<RawBsonDocument> docs = rawCollection.find(bbox.toFilter("location"))
+                .projection(Projections.include("location", "price", UnitStats.FIELD))
+                .into(new ArrayList<>());
+        return ClusterIndex.build(docs, null);
+    }
+
+    private static int parseSuggestLimit(String raw) {
+        if (raw == null || raw.isBlank()) return DEFAULT_SUGGEST_LIMIT;
+        try {
+            int limit = Integer.parseInt(raw.trim());
+            if (limit >= 1 && limit <= SuggestIndex.MAX_LIMIT) return limit;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new BadRequestResponse("limit debe estar entre 1 y " + SuggestIndex.MAX_LIMIT);
+    }
+
+    /** ids separados por coma, sin repetidos y en el orden dado */
+    private List<ObjectId> parseIds(String raw) {
+        Set<ObjectId> ids = new LinkedHashSet<>();
+        for (String part : raw.split(",")) {
+            if (!part.isBlank()) ids.add(parseOid(part.trim()));
+        }
+        if (ids.isEmpty()) throw new BadRequestResponse("ids vacío");
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new BadRequestResponse("Máximo " + MAX_BATCH_IDS + " ids por petición");
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Campos de primer nivel pedidos en fields, o null si no se indicó */
+    private static Set<String> parseFields(String raw, boolean card) {
+        if (raw == null || raw.isBlank()) return null;
+        if (card) throw new BadRequestResponse("fields no se puede combinar con view=card");
+        Set<String> fields = new LinkedHashSet<>();
+        for (String part : raw.split(",")) {
+            if (!part.isBlank()) fields.add(part.trim());
+        }
+        return fields;
+    }
+
+    private void writeItems(JsonGenerator gen, List<?> items, boolean card) throws IOException {
+        writeItems(gen, items, card, null);
+    }
+
+    /**
+     * Con criterios de unidad en la consulta, los documentos completos se escriben
+     * con units[] reducido a las unidades que los cumplen
+     */
+    private void writeItems(JsonGenerator gen, List<?> items, boolean card, PropertyQuery query) throws IOException {
+        boolean trimUnits = query != null && query.hasUnitCriteria() && !card;
+        gen.writeStartArray();
+        for (Object item : items) {
+            if (trimUnits && item instanceof RawBsonDocument raw) {
+                BsonJsonTranscoder.writeReplacing(gen, raw, "id", Map.of("units", query.matchingUnits(raw)));
+            } else {
+                writeItem(gen, item, card);
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Documento (Document = tarjeta ya proyectada por MongoDB) o documento
+     * completo, que se escribe como tarjeta o se transcodifica tal cual.
+     */
+    private void writeItem(JsonGenerator gen, Object item, boolean card) throws IOException {
+        if (item instanceof Document doc) gen.writeObject(PropertyCard.fromDocument(doc));
+        else if (card) gen.writeObject(PropertyCard.fromBson((RawBsonDocument) item));
+        else BsonJsonTranscoder.write(gen, (RawBsonDocument) item, "id");
+    }
+
+    /**
+     * Valor numérico del campo de orden (o null) para construir el cursor: el mismo
+     * por el que ordenan toSort y el índice en memoria
+     */
+    private static Object fieldOf(Object item, String field) {
+        if (item instanceof RawBsonDocument raw) {
+            return UnitStats.sortValueOf(raw, field);
+        }
+        return ((Document) item).get(UnitStats.sortKey(field));
+    }
+
+    private static String idOf(Object item) {
+        if (item instanceof RawBsonDocument raw) return raw.getObjectId("_id").getValue().toHexString();
+        return ((Document) item).getObjectId("_id").toHexString();
+    }
+
+    /**
+     * Entrega la respuesta y, si la caché está activa, la guarda (con sus
+     * variantes comprimidas) para las siguientes peticiones.
+     */
+    private void respondCacheable(Context ctx, String key, long version, byte[] json, String etag) throws IOException {
+        if (!CatalogConfig.isCacheEnabled() || json.length > CatalogConfig.getCacheMaxEntryBytes()) {
+            ctx.contentType("application/json; charset=utf-8").result(json);
+            return;
+        }
+        CachedResponses.send(ctx, responseCache.put(key, version, json, etag));
+    }
+
+    @FunctionalInterface
+    private interface JsonBody {
+        void write(JsonGenerator gen) throws IOException;
+    }
+
+    private byte[] toJsonBytes(JsonBody body) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(8192);
+        try (JsonGenerator gen = mapper.createGenerator(buf)) {
+            body.write(gen);
+        }
+        return buf.toByteArray();
+    }
+
+    // ================= Caché HTTP =================
+
+    /**
+     * Query params que interpreta el listado, ordenados: ni el orden en la URL ni
+     * parámetros desconocidos (?x=1, ?x=2...) cambian la etiqueta o la clave de
+     * caché, así no se puede llenar la caché con variantes de la misma respuesta.
+     */
+    private static String canonicalQuery(Context ctx) {
+        TreeMap<String, List<String>> known = new TreeMap<>();
+        ctx.queryParamMap().forEach((name, values) -> {
+            if (LIST_PARAMS.contains(name) || PropertyQuery.isSearchParam(name)) known.put(name, values);
+        });
+        return known.toString();
+    }
+
+    /**
+     * ETag del listado: versión del catálogo (leída antes de consultar) + huella de la query.
+     */
+    private String listEtag(long version, String query) {
+        return HttpCaching.strongEtag("l." + catalogVersion.tag(version) + "." + HttpCaching.fingerprint(query));
+    }
+
+    /**
+     * Marca el catálogo como modificado: invalida ETags y respuestas en caché.
+     */
+    private void catalogChanged() {
+        catalogVersion.bump();
+        responseCache.clear();
+    }
+
+    /**
+     * Publica en el catálogo el documento recién escrito (visible al instante,
+     * sin esperar al change stream) e invalida las cachés.
+     */
+    private void published(RawBsonDocument doc) {
+        if (catalog != null) catalog.upsert(doc);
+        catalogChanged();
+    }
+
+    /** Estado del catálogo en memoria, o null para leer de MongoDB */
+    private PropertyCatalog.Snapshot snapshot() {
+        return catalog != null ? catalog.snapshot() : null;
+    }
+
+    private ResponseCache.CachedResponse cachedResponse(String key) {
+        return CatalogConfig.isCacheEnabled() ? responseCache.get(key) : null;
+    }
+
     // ================= Helpers =================
 
     private Map<String, Object> parseBody(String body) {
@@ -182,10 +952,23 @@ public class PropertyController {
         if (area != null)      doc.append("area", area);
         if (latitude != null)  doc.append("latitude", latitude);
         if (longitude != null) doc.append("longitude", longitude);
+        // Punto GeoJSON para las búsquedas por mapa (índice 2dsphere): [longitud, latitud]
+        if (latitude != null && longitude != null) {
+            if (!Geo.isValid(latitude, longitude)) {
+                throw new BadRequestResponse("latitude/longitude fuera de rango (-90..90, -180..180)");
+            }
+            doc.append("location", new Document("type", "Point").append("coordinates", List.of(longitude, latitude)));
+        }
         if (!features.isEmpty())  doc.append("features", features);
         if (!amenities.isEmpty()) doc.append("amenities", amenities);
         if (!images.isEmpty())    doc.append("images", images);
-        if (units != null)        doc.append("units", units);
+        if (units != null) {
+            doc.append("units", units);
+            // Agregados para filtrar y ordenar desarrollos sin recorrer el array
+            doc.append(UnitStats.FIELD, UnitStats.summarize(units));
+        }
+        // Valor de orden de precio y área ("desde") para MongoDB
+        UnitStats.appendSortKeys(doc);
 
         return doc;
     }
@@ -227,9 +1010,10 @@ public class PropertyController {
         return List.of();
     }
 
-    private Document findByIdOrFail(String id) {
-        ObjectId oid = parseOid(id);
-        Document d = collection.find(Filters.eq("_id", oid)).first();
+    private RawBsonDocument findByIdOrFail(ObjectId oid, PropertyCatalog.Snapshot snapshot) {
+        RawBsonDocument d = snapshot != null
+                ? snapshot.get(oid)
+                : rawCollection.find(Filters.eq("_id", oid)).first();
         if (d == null) throw new NotFoundResponse("No existe");
         return d;
     }
@@ -1,31 +1,73 @@
 package edu.pucmm.controller;
 
 import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSUploadStream;
 import com.mongodb.client.gridfs.model.GridFSFile;
 import com.mongodb.client.gridfs.model.GridFSUploadOptions;
 import com.mongodb.client.model.Filters;
 import edu.pucmm.config.UploadConfig;
+import edu.pucmm.service.ImageDerivatives;
+import edu.pucmm.service.UploadSessions;
+import edu.pucmm.util.ImageResizer;
+import edu.pucmm.util.ImageTransform;
 import edu.pucmm.util.ImageValidator;
+import edu.pucmm.util.MultipartStream;
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.HttpResponseException;
 import io.javalin.http.NotFoundResponse;
 import io.javalin.http.UploadedFile;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class UploadController {
 
+    // Bytes iniciales de cada archivo para validar su firma (los SVG necesitan 100)
+    private static final int MAGIC_BYTES_PEEK = 100;
+    // Trozo que se copia de la petición a GridFS en la subida en streaming
+    private static final int STREAM_CHUNK_BYTES = 64 * 1024;
+    // Tope del ancho pedido en /api/images/{id}?w=
+    private static final int MAX_REQUESTED_WIDTH = 4096;
+
     private final GridFSBucket bucket;
+    // Pool acotado para validar y escribir en GridFS los archivos de los lotes:
+    // como máximo upload.parallelism a la vez entre todas las peticiones
+    private final ExecutorService uploads;
+    // Subidas reanudables en curso (staging local hasta completarse)
+    private final UploadSessions sessions;
+    // Versiones reducidas de cada imagen, generadas en segundo plano tras subirla
+    private final ImageDerivatives derivatives;
 
     public UploadController(GridFSBucket bucket) {
         this.bucket = bucket;
+        this.sessions = new UploadSessions(Path.of(UploadConfig.getUploadStagingDir()),
+                Duration.ofHours(UploadConfig.getUploadSessionTtlHours()));
+        this.derivatives = new ImageDerivatives(bucket, UploadConfig.getImageDerivativeThreads(),
+                UploadConfig.getImageTransformThreads(), UploadConfig.getImageTransformQueue());
+        AtomicInteger threads = new AtomicInteger();
+        this.uploads = Executors.newFixedThreadPool(UploadConfig.getUploadParallelism(), task -> {
+            Thread t = new Thread(task, "gridfs-upload-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     public void register(Javalin app) {
@@ -35,6 +77,8 @@ public class UploadController {
         // Response: { "urls": ["/api/images/<id1>", "/api/images/<id2>", ...] }
         // Soporta múltiples formatos: jpg, jpeg, png, gif, bmp, webp, svg, tiff
         // Límite: hasta 100 imágenes por lote, 25MB por imagen
+        // Los archivos se procesan en paralelo (upload.parallelism); urls y warnings
+        // mantienen el orden del lote
         app.post("/api/uploads", ctx -> {
             List<UploadedFile> files = ctx.uploadedFiles("files");
             if (files == null || files.isEmpty()) {
@@ -47,90 +91,185 @@ public class UploadController {
                     " imágenes por lote. Recibido: " + files.size());
             }
 
-            List<String> urls = new ArrayList<>();
-            List<String> errors = new ArrayList<>();
-            
+            // Cada archivo se valida y se escribe en GridFS en el pool de subidas;
+            // el hilo de Jetty queda libre mientras tanto
+            List<CompletableFuture<FileResult>> pending = new ArrayList<>(files.size());
             for (int i = 0; i < files.size(); i++) {
+                int index = i;
                 UploadedFile uf = files.get(i);
-                String filename = uf.filename() != null ? uf.filename() : "image";
-                String contentType = uf.contentType() != null ? uf.contentType() : "application/octet-stream";
-                long fileSize = uf.size();
-                
-                try {
-                    // Validate extension
-                    if (!ImageValidator.isExtensionAllowed(filename)) {
-                        errors.add("Archivo " + (i + 1) + " (" + filename + "): extensión no permitida. " +
-                            "Permitidas: " + UploadConfig.getAllowedExtensions());
-                        continue;
-                    }
+                pending.add(CompletableFuture.supplyAsync(() -> store(index, uf), uploads));
+            }
 
-                    // Validate MIME type
-                    if (!ImageValidator.isMimeTypeAllowed(contentType)) {
-                        errors.add("Archivo " + (i + 1) + " (" + filename + "): tipo MIME no permitido. " +
-                            "Recibido: " + contentType);
-                        continue;
-                    }
+            ctx.future(() -> CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).thenAccept(done -> {
+                // Resultados en el orden en que llegaron los archivos
+                List<String> urls = new ArrayList<>();
+                List<String> errors = new ArrayList<>();
+                for (CompletableFuture<FileResult> f : pending) {
+                    FileResult result = f.join();
+                    if (result.url != null) urls.add(result.url);
+                    else errors.add(result.error);
+                }
 
-                    // Validate file size
-                    if (fileSize > UploadConfig.getMaxImageSizeBytes()) {
-                        errors.add("Archivo " + (i + 1) + " (" + filename + "): excede el tamaño máximo de " +
-                            UploadConfig.getMaxImageSizeMB() + "MB");
-                        continue;
-                    }
+                respond(ctx, urls, errors);
+            }));
+        });
 
-                    if (fileSize <= 0) {
-                        errors.add("Archivo " + (i + 1) + " (" + filename + "): archivo vacío");
-                        continue;
-                    }
+        // ===== Subir imágenes en streaming -> GridFS =====
+        // Mismo formato y respuesta que /api/uploads, pero el cuerpo multipart se lee
+        // a medida que llega: cada archivo se valida con sus primeros bytes y pasa por
+        // trozos a GridFS, sin que el contenedor lo guarde antes en memoria o en disco.
+        // Los archivos se procesan de uno en uno, en el orden del cuerpo.
+        app.post("/api/uploads/stream", ctx -> {
+            String boundary = MultipartStream.boundaryOf(ctx.contentType());
+            if (boundary == null) throw new BadRequestResponse("Se esperaba multipart/form-data");
+            if (ctx.req().getContentLengthLong() > UploadConfig.getMaxRequestSizeBytes()) {
+                throw new HttpResponseException(413, "La petición excede " + UploadConfig.getMaxRequestSizeMB() + "MB");
+            }
 
-                    // Validate magic bytes (wrap in BufferedInputStream for mark/reset support)
-                    try (var in = new BufferedInputStream(uf.content())) {
-                        // Mark the stream before validation so we can reset it
-                        in.mark(12);
-                        
-                        if (!ImageValidator.validateMagicBytes(in, contentType)) {
-                            errors.add("Archivo " + (i + 1) + " (" + filename + 
-                                "): el contenido no coincide con el tipo declarado (posible archivo malicioso)");
-                            continue;
-                        }
-
-                        // Reset stream to beginning for upload to GridFS
-                        in.reset();
-                        
-                        Document meta = new Document("contentType", contentType)
-                                .append("originalName", filename)
-                                .append("size", fileSize);
-
-                        GridFSUploadOptions opts = new GridFSUploadOptions().metadata(meta);
-                        ObjectId id = bucket.uploadFromStream(filename, in, opts);
-
-                        urls.add("/api/images/" + id.toHexString());
+            List<String> urls = new ArrayList<>();
+            List<String> errors = new ArrayList<>();
+            List<FileResult> stored = new ArrayList<>();
+            int index = 0;
+            try (MultipartStream parts = new MultipartStream(ctx.req().getInputStream(), boundary)) {
+                for (MultipartStream.Part part = parts.next(); part != null; part = parts.next()) {
+                    if (!"files".equals(part.getName()) || part.getFilename() == null) continue;
+                    if (index == UploadConfig.getMaxImagesPerBatch()) {
+                        throw new BadRequestResponse("Máximo " + UploadConfig.getMaxImagesPerBatch() +
+                            " imágenes por lote");
                     }
-                } catch (IOException e) {
-                    errors.add("Archivo " + (i + 1) + " (" + filename + "): error al procesar - " + e.getMessage());
+                    FileResult result = storeStreaming(index++, part);
+                    if (result.id != null) stored.add(result);
+                    if (result.url != null) urls.add(result.url);
+                    else errors.add(result.error);
                 }
+            } catch (IOException | RuntimeException e) {
+                // Sin el lote completo no se guarda nada (también si falla GridFS)
+                discard(stored);
+                if (e instanceof RuntimeException re) throw re;
+                throw new BadRequestResponse("Error al leer el cuerpo multipart: " + e.getMessage());
+            }
+            if (index == 0) {
+                throw new BadRequestResponse("No se recibieron archivos (campo 'files').");
+            }
+            // Las derivadas, solo cuando el lote ya no se puede deshacer
+            for (FileResult r : stored) derivatives.schedule(r.id, r.contentType);
+            respond(ctx, urls, errors);
+        });
+
+        // ===== Subida reanudable -> staging local -> GridFS =====
+        // 1. POST /api/uploads/sessions {filename, contentType, size} -> { id, offset: 0, size }
+        // 2. PUT /api/uploads/sessions/{id}?offset=N con los bytes del trozo en el cuerpo
+        //    (application/octet-stream) -> { offset }; si N no es el offset actual, 409 con él
+        // 3. GET /api/uploads/sessions/{id} -> { offset, size } para continuar tras un corte
+        // 4. POST /api/uploads/sessions/{id}/complete -> { url } (valida y pasa a GridFS)
+        // DELETE /api/uploads/sessions/{id} cancela. Un archivo por sesión.
+        app.post("/api/uploads/sessions", ctx -> {
+            Map<?, ?> body;
+            try {
+                body = ctx.bodyAsClass(Map.class);
+            } catch (Exception e) {
+                throw new BadRequestResponse("JSON inválido");
+            }
+            String filename = body.get("filename") != null ? String.valueOf(body.get("filename")).trim() : "";
+            String contentType = body.get("contentType") != null ? String.valueOf(body.get("contentType")).trim() : "";
+            if (filename.isEmpty()) throw new BadRequestResponse("El campo 'filename' es requerido");
+            String rejected = rejectedType(filename, contentType);
+            if (rejected != null) throw new BadRequestResponse(filename + ": " + rejected);
+            long size = body.get("size") instanceof Number n ? n.longValue() : -1;
+            if (size <= 0) throw new BadRequestResponse("El campo 'size' debe ser el tamaño del archivo en bytes");
+            if (size > UploadConfig.getMaxImageSizeBytes()) {
+                throw new BadRequestResponse(filename + ": excede el tamaño máximo de " + UploadConfig.getMaxImageSizeMB() + "MB");
             }
 
-            // If no files were uploaded successfully but there were errors, return error
-            if (urls.isEmpty() && !errors.isEmpty()) {
-                ctx.status(400).json(Map.of(
-                    "message", "No se pudieron subir imágenes",
-                    "errors", errors
-                ));
+            UploadSessions.Session session = sessions.create(filename, contentType, size);
+            ctx.status(201).json(sessionJson(session));
+        });
+
+        app.get("/api/uploads/sessions/{id}", ctx -> {
+            UploadSessions.Session session = sessions.get(ctx.pathParam("id"));
+            if (session == null) throw new NotFoundResponse("Sesión de subida no encontrada");
+            ctx.header("Upload-Offset", String.valueOf(session.getOffset()));
+            ctx.json(sessionJson(session));
+        });
+
+        app.put("/api/uploads/sessions/{id}", ctx -> {
+            String id = ctx.pathParam("id");
+            String rawOffset = ctx.queryParam("offset") != null ? ctx.queryParam("offset") : ctx.header("Upload-Offset");
+            long offset;
+            try {
+                offset = Long.parseLong(rawOffset == null ? "" : rawOffset.trim());
+            } catch (NumberFormatException e) {
+                throw new BadRequestResponse("offset requerido (parámetro offset o cabecera Upload-Offset)");
+            }
+            long maxChunk = UploadConfig.getUploadChunkMaxBytes();
+            if (ctx.req().getContentLengthLong() > maxChunk) {
+                throw new HttpResponseException(413, "Máximo " + maxChunk + " bytes por trozo");
+            }
+
+            long current;
+            try {
+                current = sessions.append(id, offset, ctx.req().getInputStream(), maxChunk);
+            } catch (NoSuchElementException e) {
+                throw new NotFoundResponse(e.getMessage());
+            } catch (UploadSessions.OffsetMismatchException e) {
+                ctx.header("Upload-Offset", String.valueOf(e.getOffset()));
+                ctx.status(409).json(Map.of("message", e.getMessage(), "offset", e.getOffset()));
+                return;
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestResponse(e.getMessage());
+            }
+            ctx.header("Upload-Offset", String.valueOf(current));
+            ctx.json(Map.of("id", id, "offset", current));
+        });
+
+        app.post("/api/uploads/sessions/{id}/complete", ctx -> {
+            String id = ctx.pathParam("id");
+            UploadSessions.Session session = sessions.get(id);
+            if (session == null) throw new NotFoundResponse("Sesión de subida no encontrada");
+            if (!session.isComplete()) {
+                ctx.header("Upload-Offset", String.valueOf(session.getOffset()));
+                ctx.status(409).json(Map.of("message", "Faltan bytes por subir", "offset", session.getOffset()));
                 return;
             }
+            Path file = sessions.claim(id);
+            if (file == null) throw new NotFoundResponse("Sesión de subida no encontrada");
+
+            ObjectId stored;
+            try (var in = new BufferedInputStream(Files.newInputStream(file))) {
+                in.mark(MAGIC_BYTES_PEEK);
+                if (!ImageValidator.validateMagicBytes(in, session.getContentType())) {
+                    sessions.delete(id);
+                    throw new BadRequestResponse(session.getFilename() +
+                        ": el contenido no coincide con el tipo declarado (posible archivo malicioso)");
+                }
+                in.reset();
 
-            // Return URLs and any errors that occurred
-            Map<String, Object> response = new java.util.HashMap<>();
-            response.put("urls", urls);
-            if (!errors.isEmpty()) {
-                response.put("warnings", errors);
+                Document meta = new Document("contentType", session.getContentType())
+                        .append("originalName", session.getFilename())
+                        .append("size", session.getSize());
+                stored = bucket.uploadFromStream(session.getFilename(), in, new GridFSUploadOptions().metadata(meta));
+            } catch (IOException | RuntimeException e) {
+                // Si no llegó a GridFS, la sesión sigue disponible para reintentar
+                if (Files.exists(file)) sessions.restore(id);
+                throw e;
             }
-            
-            ctx.status(201).json(response);
+            sessions.delete(id);
+            derivatives.schedule(stored, session.getContentType());
+            ctx.status(201).json(Map.of("url", "/api/images/" + stored.toHexString()));
+        });
+
+        app.delete("/api/uploads/sessions/{id}", ctx -> {
+            if (sessions.get(ctx.pathParam("id")) == null) throw new NotFoundResponse("Sesión de subida no encontrada");
+            sessions.delete(ctx.pathParam("id"));
+            ctx.json(Map.of("message", "deleted"));
         });
 
         // ===== Servir imágenes desde GridFS =====
+        // ?w=N sirve la derivada de ancho más cercano por encima de N (320/640/1280/1920);
+        // si aún no existe o el original es más estrecho, el original.
+        // Con h, fit o q (?w=&h=&fit=cover|contain&q=) es una transformación a medida:
+        // si es un preset se genera en la primera petición y se guarda en GridFS (ver
+        // ImageTransform); si no, se sirve la derivada de ancho fijo
         app.get("/api/images/{id}", ctx -> {
             ObjectId oid;
             try {
@@ -139,25 +278,291 @@ public class UploadController {
                 throw new BadRequestResponse("ID de imagen inválido");
             }
 
+            if (isPresent(ctx.queryParam("h")) || isPresent(ctx.queryParam("fit")) || isPresent(ctx.queryParam("q"))) {
+                serveTransformed(ctx, oid);
+                return;
+            }
+
+            Integer width = null;
+            String rawWidth = ctx.queryParam("w");
+            if (rawWidth != null && !rawWidth.isBlank()) {
+                try {
+                    width = Integer.parseInt(rawWidth.trim());
+                } catch (NumberFormatException e) {
+                    width = -1;
+                }
+                if (width < 1 || width > MAX_REQUESTED_WIDTH) {
+                    throw new BadRequestResponse("w debe ser un ancho entre 1 y " + MAX_REQUESTED_WIDTH);
+                }
+            }
+
+            if (width != null) {
+                GridFSFile derivative = derivatives.find(oid, width);
+                if (derivative != null) {
+                    serve(ctx, derivative, true);
+                    return;
+                }
+            }
+
             GridFSFile gfile = bucket.find(Filters.eq("_id", oid)).first();
             if (gfile == null) throw new NotFoundResponse("Imagen no encontrada");
+            // Con ?w= el original es provisional: la derivada puede aparecer en segundos
+            serve(ctx, gfile, width == null);
+        });
+    }
 
-            String contentType = "application/octet-stream";
-            Document meta = gfile.getMetadata();
-            if (meta != null) {
-                String ct = meta.getString("contentType");
-                if (ct != null && !ct.isBlank()) contentType = ct;
+    /**
+     * Transformación a medida: la variante guardada o, la primera vez, la que se
+     * genera en el pool de transformaciones (el hilo de Jetty queda libre). Las que
+     * no son presets, o no se pudieron generar, se sirven con {@link #serveFallback}
+     */
+    private void serveTransformed(Context ctx, ObjectId oid) {
+        ImageTransform transform;
+        try {
+            transform = ImageTransform.parse(ctx.queryParam("w"), ctx.queryParam("h"), ctx.queryParam("fit"), ctx.queryParam("q"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestResponse(e.getMessage());
+        }
+
+        GridFSFile cached = derivatives.findTransformed(oid, transform);
+        if (cached != null) {
+            serve(ctx, cached, true);
+            return;
+        }
+        GridFSFile gfile = bucket.find(Filters.eq("_id", oid)).first();
+        if (gfile == null) throw new NotFoundResponse("Imagen no encontrada");
+        if (!ImageResizer.isResizable(contentTypeOf(gfile))) {
+            // GIF, SVG, WebP: siempre el original
+            serve(ctx, gfile, true);
+            return;
+        }
+        if (!transform.isPreset()) {
+            serveFallback(ctx, oid, gfile, transform);
+            return;
+        }
+
+        CompletableFuture<GridFSFile> pending;
+        try {
+            pending = derivatives.transform(oid, transform);
+        } catch (RejectedExecutionException e) {
+            ctx.header("Retry-After", "5");
+            throw new HttpResponseException(503, "Demasiadas transformaciones de imágenes en curso, reintente en unos segundos");
+        }
+        ctx.future(() -> pending.handle((file, error) -> {
+            if (file != null) {
+                serve(ctx, file, true);
+                return null;
+            }
+            // Imagen ilegible, o la generación falló (GridFS, ImageIO): no es un 500
+            if (error != null) {
+                System.err.println("[IMAGES] Falló la transformación " + transform.key() + " de " + oid.toHexString() + ": " + error.getMessage());
             }
+            serveFallback(ctx, oid, gfile, transform);
+            return null;
+        }));
+    }
+
+    /**
+     * En lugar de una transformación: la derivada de ancho fijo que cubre su ancho, o
+     * el original. Con caché corta, la URL puede servir la variante más adelante.
+     */
+    private void serveFallback(Context ctx, ObjectId oid, GridFSFile original, ImageTransform transform) {
+        GridFSFile fallback = transform.getWidth() > 0 ? derivatives.find(oid, transform.getWidth()) : null;
+        serve(ctx, fallback != null ? fallback : original, false);
+    }
+
+    /**
+     * Envía un archivo de GridFS como respuesta. Los archivos no cambian nunca;
+     * {@code immutable} es false cuando la misma URL servirá otro archivo más adelante.
+     */
+    private void serve(Context ctx, GridFSFile gfile, boolean immutable) {
+        ctx.res().setContentType(contentTypeOf(gfile));
+        ctx.res().setHeader("Cache-Control", immutable ? "public, max-age=31536000, immutable" : "public, max-age=300");
+        ctx.res().setHeader("Content-Length", String.valueOf(gfile.getLength()));
+        String safeName = gfile.getFilename() == null ? "image" : gfile.getFilename().replace("\"", "");
+        ctx.res().setHeader("Content-Disposition", "inline; filename=\"" + safeName + "\"");
+
+        // Javalin copia el stream a la respuesta y lo cierra
+        ctx.result(bucket.openDownloadStream(gfile.getObjectId()));
+    }
+
+    private static String contentTypeOf(GridFSFile gfile) {
+        Document meta = gfile.getMetadata();
+        String ct = meta != null ? meta.getString("contentType") : null;
+        return ct != null && !ct.isBlank() ? ct : "application/octet-stream";
+    }
+
+    private static boolean isPresent(String param) {
+        return param != null && !param.isBlank();
+    }
+
+    /** Resultado de un archivo del lote: url si se guardó, error si no */
+    private static final class FileResult {
+        final ObjectId id;
+        final String contentType;
+        final String url;
+        final String error;
+
+        private FileResult(ObjectId id, String contentType, String error) {
+            this.id = id;
+            this.contentType = contentType;
+            this.url = id != null ? "/api/images/" + id.toHexString() : null;
+            this.error = error;
+        }
+
+        static FileResult stored(ObjectId id, String contentType) {
+            return new FileResult(id, contentType, null);
+        }
+
+        static FileResult failed(int index, String filename, String reason) {
+            return new FileResult(null, null, "Archivo " + (index + 1) + " (" + filename + "): " + reason);
+        }
+    }
+
+    private static Map<String, Object> sessionJson(UploadSessions.Session session) {
+        return Map.of("id", session.getId(), "offset", session.getOffset(), "size", session.getSize());
+    }
+
+    /**
+     * Respuesta de un lote: 201 con las urls (y los errores como warnings), o 400
+     * si no se guardó ninguna
+     */
+    private static void respond(Context ctx, List<String> urls, List<String> errors) {
+        // If no files were uploaded successfully but there were errors, return error
+        if (urls.isEmpty() && !errors.isEmpty()) {
+            ctx.status(400).json(Map.of(
+                "message", "No se pudieron subir imágenes",
+                "errors", errors
+            ));
+            return;
+        }
 
-            ctx.res().setContentType(contentType);
-            ctx.res().setHeader("Cache-Control", "public, max-age=31536000, immutable");
-            ctx.res().setHeader("Content-Length", String.valueOf(gfile.getLength()));
-            String safeName = gfile.getFilename() == null ? "image" : gfile.getFilename().replace("\"", "");
-            ctx.res().setHeader("Content-Disposition", "inline; filename=\"" + safeName + "\"");
+        // Return URLs and any errors that occurred
+        Map<String, Object> response = new java.util.HashMap<>();
+        response.put("urls", urls);
+        if (!errors.isEmpty()) {
+            response.put("warnings", errors);
+        }
 
-            try (OutputStream out = ctx.res().getOutputStream()) {
-                bucket.downloadToStream(oid, out);
+        ctx.status(201).json(response);
+    }
+
+    /** Motivo por el que se rechaza un archivo por su nombre y tipo, o null si se acepta */
+    private static String rejectedType(String filename, String contentType) {
+        // Validate extension
+        if (!ImageValidator.isExtensionAllowed(filename)) {
+            return "extensión no permitida. Permitidas: " + UploadConfig.getAllowedExtensions();
+        }
+
+        // Validate MIME type
+        if (!ImageValidator.isMimeTypeAllowed(contentType)) {
+            return "tipo MIME no permitido. Recibido: " + contentType;
+        }
+        return null;
+    }
+
+    /**
+     * Valida un archivo del lote y lo escribe en GridFS (se ejecuta en el pool de subidas)
+     */
+    private FileResult store(int index, UploadedFile uf) {
+        String filename = uf.filename() != null ? uf.filename() : "image";
+        String contentType = uf.contentType() != null ? uf.contentType() : "application/octet-stream";
+        long fileSize = uf.size();
+
+        String rejected = rejectedType(filename, contentType);
+        if (rejected != null) return FileResult.failed(index, filename, rejected);
+
+        // Validate file size
+        if (fileSize > UploadConfig.getMaxImageSizeBytes()) {
+            return FileResult.failed(index, filename, "excede el tamaño máximo de " +
+                UploadConfig.getMaxImageSizeMB() + "MB");
+        }
+
+        if (fileSize <= 0) {
+            return FileResult.failed(index, filename, "archivo vacío");
+        }
+
+        // Validate magic bytes (wrap in BufferedInputStream for mark/reset support)
+        try (var in = new BufferedInputStream(uf.content())) {
+            // Mark the stream before validation so we can reset it
+            in.mark(12);
+
+            if (!ImageValidator.validateMagicBytes(in, contentType)) {
+                return FileResult.failed(index, filename,
+                    "el contenido no coincide con el tipo declarado (posible archivo malicioso)");
             }
-        });
+
+            // Reset stream to beginning for upload to GridFS
+            in.reset();
+
+            Document meta = new Document("contentType", contentType)
+                    .append("originalName", filename)
+                    .append("size", fileSize);
+
+            GridFSUploadOptions opts = new GridFSUploadOptions().metadata(meta);
+            ObjectId id = bucket.uploadFromStream(filename, in, opts);
+            derivatives.schedule(id, contentType);
+            return FileResult.stored(id, contentType);
+        } catch (IOException | RuntimeException e) {
+            // Un fallo de GridFS (MongoException) es el error de este archivo: si
+            // fallara el future, el lote entero daría 500 y los demás quedarían huérfanos
+            return FileResult.failed(index, filename, "error al procesar - " + e.getMessage());
+        }
+    }
+
+    /** Borra de GridFS los archivos ya guardados de un lote que no se completó */
+    private void discard(List<FileResult> stored) {
+        for (FileResult r : stored) {
+            try {
+                bucket.delete(r.id);
+            } catch (RuntimeException e) {
+                System.err.println("[UPLOADS] No se pudo borrar " + r.id.toHexString() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Valida una parte del cuerpo multipart y la escribe en GridFS por trozos
+     * mientras se lee. El tamaño solo se conoce al final: si excede el máximo, la
+     * subida se aborta (GridFS borra los trozos ya escritos).
+     */
+    private FileResult storeStreaming(int index, MultipartStream.Part part) throws IOException {
+        String filename = part.getFilename().isBlank() ? "image" : part.getFilename();
+        String contentType = part.getContentType() != null ? part.getContentType() : "application/octet-stream";
+        String rejected = rejectedType(filename, contentType);
+        if (rejected != null) return FileResult.failed(index, filename, rejected);
+
+        InputStream in = part.getBody();
+        // Validate magic bytes on the first bytes of the part
+        byte[] header = in.readNBytes(MAGIC_BYTES_PEEK);
+        if (header.length == 0) return FileResult.failed(index, filename, "archivo vacío");
+        if (!ImageValidator.validateMagicBytes(new ByteArrayInputStream(header), contentType)) {
+            return FileResult.failed(index, filename,
+                "el contenido no coincide con el tipo declarado (posible archivo malicioso)");
+        }
+
+        // Sin tamaño en los metadatos: aún no se conoce (GridFS guarda la longitud)
+        Document meta = new Document("contentType", contentType)
+                .append("originalName", filename);
+        GridFSUploadStream out = bucket.openUploadStream(filename, new GridFSUploadOptions().metadata(meta));
+        try {
+            long size = header.length;
+            out.write(header);
+            byte[] chunk = new byte[STREAM_CHUNK_BYTES];
+            for (int n = in.read(chunk); n >= 0; n = in.read(chunk)) {
+                size += n;
+                if (size > UploadConfig.getMaxImageSizeBytes()) {
+                    out.abort();
+                    return FileResult.failed(index, filename, "excede el tamaño máximo de " +
+                        UploadConfig.getMaxImageSizeMB() + "MB");
+                }
+                out.write(chunk, 0, n);
+            }
+            out.close();
+            return FileResult.stored(out.getObjectId(), contentType);
+        } catch (IOException | RuntimeException e) {
+            out.abort();
+            throw e;
+        }
     }
 }
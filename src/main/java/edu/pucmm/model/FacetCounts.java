@@ -0,0 +1,74 @@
+package edu.pucmm.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conteos del panel de filtros (GET /api/properties/facets).
+ *
+ * Cada faceta se cuenta con todos los filtros activos excepto el suyo, para que
+ * el usuario vea cuántas propiedades obtendría al cambiar esa opción; amenities
+ * se combinan entre sí (AND), así que se cuentan con todos los filtros.
+ */
+public class FacetCounts {
+
+    /**
+     * Tramo de precio [min, max); max null = sin límite superior
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class PriceBucket {
+        private double min;
+        private Double max;
+        private int count;
+
+        public PriceBucket() {}
+
+        public PriceBucket(double min, Double max, int count) {
+            this.min = min;
+            this.max = max;
+            this.count = count;
+        }
+
+        public double getMin() { return min; }
+        public void setMin(double min) { this.min = min; }
+
+        public Double getMax() { return max; }
+        public void setMax(Double max) { this.max = max; }
+
+        public int getCount() { return count; }
+        public void setCount(int count) { this.count = count; }
+    }
+
+    private long total;
+    private Map<String, Integer> type = new LinkedHashMap<>();
+    private Map<String, Integer> saleType = new LinkedHashMap<>();
+    private Map<String, Integer> bedrooms = new LinkedHashMap<>();
+    private Map<String, Integer> amenities = new LinkedHashMap<>();
+    private List<PriceBucket> price = new ArrayList<>();
+
+    public FacetCounts() {}
+
+    // ----- Getters & Setters -----
+
+    public long getTotal() { return total; }
+    public void setTotal(long total) { this.total = total; }
+
+    public Map<String, Integer> getType() { return type; }
+    public void setType(Map<String, Integer> type) { this.type = type; }
+
+    public Map<String, Integer> getSaleType() { return saleType; }
+    public void setSaleType(Map<String, Integer> saleType) { this.saleType = saleType; }
+
+    public Map<String, Integer> getBedrooms() { return bedrooms; }
+    public void setBedrooms(Map<String, Integer> bedrooms) { this.bedrooms = bedrooms; }
+
+    public Map<String, Integer> getAmenities() { return amenities; }
+    public void setAmenities(Map<String, Integer> amenities) { this.amenities = amenities; }
+
+    public List<PriceBucket> getPrice() { return price; }
+    public void setPrice(List<PriceBucket> price) { this.price = price; }
+}
@@ -0,0 +1,48 @@
+package edu.pucmm.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Grupo de propiedades cercanas en el mapa (GET /api/properties/clusters).
+ * lat/lng es el centroide de sus puntos; minPrice/maxPrice el rango de precios
+ * (null si ninguna tiene precio). Si el grupo es de una sola propiedad, id la identifica.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MapCluster {
+
+    private double lat;
+    private double lng;
+    private int count;
+    private Double minPrice;
+    private Double maxPrice;
+    private String id;
+
+    public MapCluster() {}
+
+    public MapCluster(double lat, double lng, int count, Double minPrice, Double maxPrice, String id) {
+        this.lat = lat;
+        this.lng = lng;
+        this.count = count;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.id = id;
+    }
+
+    public double getLat() { return lat; }
+    public void setLat(double lat) { this.lat = lat; }
+
+    public double getLng() { return lng; }
+    public void setLng(double lng) { this.lng = lng; }
+
+    public int getCount() { return count; }
+    public void setCount(int count) { this.count = count; }
+
+    public Double getMinPrice() { return minPrice; }
+    public void setMinPrice(Double minPrice) { this.minPrice = minPrice; }
+
+    public Double getMaxPrice() { return maxPrice; }
+    public void setMaxPrice(Double maxPrice) { this.maxPrice = maxPrice; }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+}
@@ -200,6 +200,7 @@ public class Property {
 
     public static class Related {
         private String title;
+        private Double price;
         private String priceFormatted;
         private String thumb;
         private String url;
@@ -209,6 +210,9 @@ public class Property {
         public String getTitle() { return title; }
         public void setTitle(String title) { this.title = title; }
 
+        public Double getPrice() { return price; }
+        public void setPrice(Double price) { this.price = price; }
+
         public String getPriceFormatted() { return priceFormatted; }
         public void setPriceFormatted(String priceFormatted) { this.priceFormatted = priceFormatted; }
 
@@ -0,0 +1,213 @@
+package edu.pucmm.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.mongodb.client.model.Projections;
+import edu.pucmm.util.UnitStats;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Vista resumida de {@link Property} para las tarjetas del listado (view=card).
+ * Solo lleva lo que pinta la tarjeta: textos cortos, precio, conteos e imagen principal.
+ * La descripción, features, amenities, unidades y la galería completa se quedan en el detalle.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PropertyCard {
+
+    /**
+     * Proyección MongoDB de la tarjeta. La imagen principal y los conteos se calculan
+     * en el servidor de base de datos para no transferir los arrays completos.
+     */
+    public static final Bson PROJECTION = Projections.fields(
+            Projections.include("title", "type", "saleType", "address",
+                    "price", "priceFormatted", "pricePerSqm", "area",
+                    "bedrooms", "bathrooms", "parking", "latitude", "longitude", "isHeroDefault", "createdAt",
+                    // Para el cursor del listado (no forman parte de la tarjeta)
+                    UnitStats.sortKey("price"), UnitStats.sortKey("area")),
+            Projections.computed("mainImage", new Document("$arrayElemAt", List.of("$images", 0))),
+            Projections.computed("imageCount", sizeOf("$images")),
+            Projections.computed("unitCount", sizeOf("$units"))
+    );
+
+    private String id;
+    private String title;
+    private String type;
+    private String saleType;
+    private String address;
+    private Number price;
+    private String priceFormatted;
+    private Number pricePerSqm;
+    private Number area;
+    private Integer bedrooms;
+    private Integer bathrooms;
+    private Integer parking;
+    // Para situar la tarjeta en el mapa
+    private Number latitude;
+    private Number longitude;
+    private Boolean isHeroDefault;
+    private Object createdAt;
+    private String mainImage;
+    private Integer imageCount;
+    private Integer unitCount;
+
+    public PropertyCard() {}
+
+    /**
+     * Crea la tarjeta desde un documento leído con {@link #PROJECTION}.
+     */
+    public static PropertyCard fromDocument(Document doc) {
+        PropertyCard card = new PropertyCard();
+        card.setId(doc.getObjectId("_id").toHexString());
+        card.setTitle(doc.getString("title"));
+        card.setType(doc.getString("type"));
+        card.setSaleType(doc.getString("saleType"));
+        card.setAddress(doc.getString("address"));
+        card.setPrice(number(doc.get("price")));
+        card.setPriceFormatted(doc.getString("priceFormatted"));
+        card.setPricePerSqm(number(doc.get("pricePerSqm")));
+        card.setArea(number(doc.get("area")));
+        card.setBedrooms(integer(doc.get("bedrooms")));
+        card.setBathrooms(integer(doc.get("bathrooms")));
+        card.setParking(integer(doc.get("parking")));
+        card.setLatitude(number(doc.get("latitude")));
+        card.setLongitude(number(doc.get("longitude")));
+        card.setIsHeroDefault(doc.getBoolean("isHeroDefault"));
+        card.setCreatedAt(doc.get("createdAt"));
+        Object mainImage = doc.get("mainImage");
+        card.setMainImage(mainImage instanceof String s ? s : null);
+        card.setImageCount(integer(doc.get("imageCount")));
+        card.setUnitCount(integer(doc.get("unitCount")));
+        return card;
+    }
+
+    /**
+     * Crea la tarjeta desde el documento completo (catálogo en memoria), con los
+     * mismos tipos de valor que {@link #fromDocument(Document)}.
+     */
+    public static PropertyCard fromBson(BsonDocument doc) {
+        PropertyCard card = new PropertyCard();
+        card.setId(doc.getObjectId("_id").getValue().toHexString());
+        card.setTitle(string(doc.get("title")));
+        card.setType(string(doc.get("type")));
+        card.setSaleType(string(doc.get("saleType")));
+        card.setAddress(string(doc.get("address")));
+        card.setPrice(number(doc.get("price")));
+        card.setPriceFormatted(string(doc.get("priceFormatted")));
+        card.setPricePerSqm(number(doc.get("pricePerSqm")));
+        card.setArea(number(doc.get("area")));
+        card.setBedrooms(integer(number(doc.get("bedrooms"))));
+        card.setBathrooms(integer(number(doc.get("bathrooms"))));
+        card.setParking(integer(number(doc.get("parking"))));
+        card.setLatitude(number(doc.get("latitude")));
+        card.setLongitude(number(doc.get("longitude")));
+        BsonValue hero = doc.get("isHeroDefault");
+        card.setIsHeroDefault(hero != null && hero.isBoolean() ? hero.asBoolean().getValue() : null);
+        BsonValue createdAt = doc.get("createdAt");
+        card.setCreatedAt(createdAt != null && createdAt.isDateTime() ? new Date(createdAt.asDateTime().getValue()) : null);
+        BsonValue images = doc.get("images");
+        if (images != null && images.isArray()) {
+            card.setImageCount(images.asArray().size());
+            if (!images.asArray().isEmpty()) card.setMainImage(string(images.asArray().get(0)));
+        } else {
+            card.setImageCount(0);
+        }
+        BsonValue units = doc.get("units");
+        card.setUnitCount(units != null && units.isArray() ? units.asArray().size() : 0);
+        return card;
+    }
+
+    /** true si el parámetro view pide tarjetas; null/"full" es el documento completo */
+    public static boolean isCardView(String view) {
+        if (view == null || view.isBlank() || "full".equalsIgnoreCase(view)) return false;
+        if ("card".equalsIgnoreCase(view)) return true;
+        throw new IllegalArgumentException("Parámetro 'view' inválido: " + view + " (use card o full)");
+    }
+
+    private static Document sizeOf(String arrayField) {
+        return new Document("$size", new Document("$ifNull", List.of(arrayField, List.of())));
+    }
+
+    private static String string(BsonValue v) {
+        return (v != null && v.isString()) ? v.asString().getValue() : null;
+    }
+
+    private static Number number(BsonValue v) {
+        if (v == null) return null;
+        if (v.isInt32()) return v.asInt32().getValue();
+        if (v.isInt64()) return v.asInt64().getValue();
+        if (v.isDouble()) return v.asDouble().getValue();
+        return null;
+    }
+
+    private static Number number(Object o) {
+        return (o instanceof Number n) ? n : null;
+    }
+
+    private static Integer integer(Object o) {
+        return (o instanceof Number n) ? n.intValue() : null;
+    }
+
+    // ----- Getters & Setters -----
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public String getSaleType() { return saleType; }
+    public void setSaleType(String saleType) { this.saleType = saleType; }
+
+    public String getAddress() { return address; }
+    public void setAddress(String address) { this.address = address; }
+
+    public Number getPrice() { return price; }
+    public void setPrice(Number price) { this.price = price; }
+
+    public String getPriceFormatted() { return priceFormatted; }
+    public void setPriceFormatted(String priceFormatted) { this.priceFormatted = priceFormatted; }
+
+    public Number getPricePerSqm() { return pricePerSqm; }
+    public void setPricePerSqm(Number pricePerSqm) { this.pricePerSqm = pricePerSqm; }
+
+    public Number getArea() { return area; }
+    public void setArea(Number area) { this.area = area; }
+
+    public Integer getBedrooms() { return bedrooms; }
+    public void setBedrooms(Integer bedrooms) { this.bedrooms = bedrooms; }
+
+    public Integer getBathrooms() { return bathrooms; }
+    public void setBathrooms(Integer bathrooms) { this.bathrooms = bathrooms; }
+
+    public Integer getParking() { return parking; }
+    public void setParking(Integer parking) { this.parking = parking; }
+
+    public Number getLatitude() { return latitude; }
+    public void setLatitude(Number latitude) { this.latitude = latitude; }
+
+    public Number getLongitude() { return longitude; }
+    public void setLongitude(Number longitude) { this.longitude = longitude; }
+
+    public Boolean getIsHeroDefault() { return isHeroDefault; }
+    public void setIsHeroDefault(Boolean isHeroDefault) { this.isHeroDefault = isHeroDefault; }
+
+    public Object getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Object createdAt) { this.createdAt = createdAt; }
+
+    public String getMainImage() { return mainImage; }
+    public void setMainImage(String mainImage) { this.mainImage = mainImage; }
+
+    public Integer getImageCount() { return imageCount; }
+    public void setImageCount(Integer imageCount) { this.imageCount = imageCount; }
+
+    public Integer getUnitCount() { return unitCount; }
+    public void setUnitCount(Integer unitCount) { this.unitCount = unitCount; }
+}
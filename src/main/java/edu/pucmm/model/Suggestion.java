@@ -0,0 +1,42 @@
+package edu.pucmm.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Sugerencia del buscador (GET /api/properties/suggest).
+ * - type "location": sector, ciudad o zona (partes de address y units[].zone)
+ * - type "title": título de una propiedad; id solo si el título es de una única propiedad
+ * count es el número de propiedades que lo mencionan.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Suggestion {
+
+    public static final String LOCATION = "location";
+    public static final String TITLE = "title";
+
+    private String text;
+    private String type;
+    private int count;
+    private String id;
+
+    public Suggestion() {}
+
+    public Suggestion(String text, String type, int count, String id) {
+        this.text = text;
+        this.type = type;
+        this.count = count;
+        this.id = id;
+    }
+
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public int getCount() { return count; }
+    public void setCount(int count) { this.count = count; }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+}
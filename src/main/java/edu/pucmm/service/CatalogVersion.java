@@ -0,0 +1,49 @@
+package edu.pucmm.service;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versión del catálogo de propiedades, usada para validar cachés (ETag).
+ *
+ * Se incrementa en cada alta, modificación o baja. Lleva además un identificador
+ * de arranque para que un ETag emitido antes de reiniciar el proceso nunca
+ * coincida con uno nuevo aunque el contador vuelva a empezar.
+ *
+ * Nota: el contador es por proceso; las escrituras hechas desde otra instancia
+ * de la aplicación llegan por el change stream de {@link PropertyCatalog}, que
+ * también la incrementa.
+ */
+public class CatalogVersion {
+
+    private final String bootId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Versión actual
+     */
+    public long current() {
+        return version.get();
+    }
+
+    /**
+     * Marca el catálogo como modificado y devuelve la nueva versión
+     */
+    public long bump() {
+        return version.incrementAndGet();
+    }
+
+    /**
+     * Etiqueta opaca de la versión actual, p. ej. "1a2b3c4d.17"
+     */
+    public String tag() {
+        return tag(version.get());
+    }
+
+    /**
+     * Etiqueta opaca de una versión concreta (leída antes de consultar los datos)
+     */
+    public String tag(long version) {
+        return bootId + "." + version;
+    }
+}
@@ -0,0 +1,372 @@
+package edu.pucmm.service;
+
+import edu.pucmm.model.MapCluster;
+import edu.pucmm.util.Geo;
+import edu.pucmm.util.UnitStats;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Agrupación de los marcadores del mapa por nivel de zoom.
+ *
+ * Cada zoom divide el mapa (proyección Web Mercator, la de los mapas web) en
+ * celdas de {@link #CELL_PX} píxeles de pantalla; cada celda ocupada guarda el
+ * número de propiedades, la suma de sus coordenadas (centroide) y el rango de
+ * precios. El nivel más fino se calcula desde los puntos y cada nivel superior
+ * fusiona las cuatro celdas hijas del anterior, así que construir todos los
+ * niveles cuesta lo mismo que recorrer los documentos más las celdas ocupadas.
+ *
+ * Una consulta devuelve las celdas del área visible en su zoom: el resultado
+ * está acotado por los píxeles del área ({@link #MAX_VIEWPORT_PX}), no por el
+ * tamaño del catálogo.
+ *
+ * Inmutable, una instancia por instantánea. Tras un cambio solo se recalculan
+ * las celdas del nivel más fino donde entra o sale algún punto y sus antecesoras
+ * en cada zoom; esas celdas se guardan aparte de las de la última construcción
+ * completa, que se repite cuando las cambiadas son muchas.
+ */
+public final class ClusterIndex {
+
+    public static final int MAX_ZOOM = 22;
+    // Lado de una celda en píxeles: a este tamaño dos marcadores ya no se solapan
+    public static final int CELL_PX = 64;
+    // Ancho o alto máximo del área pedida, en píxeles de su zoom (una pantalla 4K con margen)
+    public static final int MAX_VIEWPORT_PX = 8192;
+    private static final int TILE_PX = 256;
+    // Celdas por lado de la tesela: 2^CELL_SHIFT
+    private static final int CELL_SHIFT = Integer.numberOfTrailingZeros(TILE_PX / CELL_PX);
+    private static final double MAX_MERCATOR_LAT = 85.05112878;
+    // Celdas cambiadas toleradas en el nivel más fino (además de una cuarta parte) antes de reconstruir
+    private static final int CHANGED_SLACK = 256;
+
+    /** Lo que se necesita de un documento (null si no tiene punto) */
+    private static final class Point {
+        final String id;
+        final double lat;
+        final double lng;
+        // "Desde" y "hasta": en los desarrollos, los de sus unidades
+        final Double minPrice;
+        final Double maxPrice;
+
+        Point(String id, double lat, double lng, Double minPrice, Double maxPrice) {
+            this.id = id;
+            this.lat = lat;
+            this.lng = lng;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+        }
+    }
+
+    /** Acumulado de una celda */
+    private static final class Cell {
+        int count;
+        double sumLat;
+        double sumLng;
+        double minPrice = Double.POSITIVE_INFINITY;
+        double maxPrice = Double.NEGATIVE_INFINITY;
+        String id;
+
+        void add(Point p) {
+            count++;
+            sumLat += p.lat;
+            sumLng += p.lng;
+            if (p.minPrice != null) minPrice = Math.min(minPrice, p.minPrice);
+            if (p.maxPrice != null) maxPrice = Math.max(maxPrice, p.maxPrice);
+            id = count == 1 ? p.id : null;
+        }
+
+        void merge(Cell other) {
+            count += other.count;
+            sumLat += other.sumLat;
+            sumLng += other.sumLng;
+            minPrice = Math.min(minPrice, other.minPrice);
+            maxPrice = Math.max(maxPrice, other.maxPrice);
+            id = count == other.count ? other.id : null;
+        }
+
+        MapCluster toCluster() {
+            boolean priced = minPrice <= maxPrice;
+            return new MapCluster(sumLat / count, sumLng / count, count,
+                    priced ? minPrice : null, priced ? maxPrice : null, id);
+        }
+    }
+
+    /**
+     * Celdas ocupadas de un zoom, por clave x << 32 | y: las de la última
+     * construcción completa y, encima, las que cambiaron desde entonces
+     */
+    private static final class Level {
+        final Map<Long, Cell> base;
+        // null = la celda ya no tiene propiedades
+        final Map<Long, Cell> changed;
+        final int size;
+
+        Level(Map<Long, Cell> base, Map<Long, Cell> changed, int size) {
+            this.base = base;
+            this.changed = changed;
+            this.size = size;
+        }
+
+        Cell get(long key) {
+            return changed.containsKey(key) ? changed.get(key) : base.get(key);
+        }
+
+        void forEach(BiConsumer<Long, Cell> action) {
+            base.forEach((key, cell) -> {
+                if (!changed.containsKey(key)) action.accept(key, cell);
+            });
+            changed.forEach((key, cell) -> {
+                if (cell != null) action.accept(key, cell);
+            });
+        }
+    }
+
+    private final List<RawBsonDocument> documents;
+    private final Point[] points;
+    // Celda del zoom máximo de cada punto (sin uso si el documento no tiene punto)
+    private final long[] finestKeys;
+    // Índice = zoom
+    private final List<Level> levels;
+
+    private ClusterIndex(List<RawBsonDocument> documents, Point[] points, long[] finestKeys, List<Level> levels) {
+        this.documents = documents;
+        this.points = points;
+        this.finestKeys = finestKeys;
+        this.levels = levels;
+    }
+
+    /**
+     * Construye todos los niveles. Con el índice anterior solo se recalculan las
+     * celdas de los documentos que cambiaron; en una construcción completa, los
+     * que siguen siendo la misma instancia no se vuelven a leer.
+     */
+    public static ClusterIndex build(List<RawBsonDocument> documents, ClusterIndex previous) {
+        if (previous != null) {
+            Level finest = previous.levels.get(MAX_ZOOM);
+            if (finest.changed.size() <= finest.base.size() / 4 + CHANGED_SLACK) return previous.patch(documents);
+        }
+        return full(documents, previous);
+    }
+
+    private static ClusterIndex full(List<RawBsonDocument> documents, ClusterIndex previous) {
+        Map<RawBsonDocument, Point> reusable = new IdentityHashMap<>();
+        if (previous != null) {
+            for (int pos = 0; pos < previous.documents.size(); pos++) {
+                reusable.put(previous.documents.get(pos), previous.points[pos]);
+            }
+        }
+
+        Point[] points = new Point[documents.size()];
+        long[] finestKeys = new long[documents.size()];
+        Map<Long, Cell> finest = new HashMap<>();
+        for (int pos = 0; pos < documents.size(); pos++) {
+            RawBsonDocument doc = documents.get(pos);
+            Point p = reusable.containsKey(doc) ? reusable.get(doc) : extract(doc);
+            points[pos] = p;
+            if (p == null) continue;
+            finestKeys[pos] = finestKey(p);
+            finest.computeIfAbsent(finestKeys[pos], k -> new Cell()).add(p);
+        }
+
+        Level[] byZoom = new Level[MAX_ZOOM + 1];
+        byZoom[MAX_ZOOM] = new Level(finest, Map.of(), finest.size());
+        for (int zoom = MAX_ZOOM - 1; zoom >= 0; zoom--) {
+            Map<Long, Cell> parents = new HashMap<>();
+            byZoom[zoom + 1].base.forEach((key, child) ->
+                    parents.computeIfAbsent(parent(key), k -> new Cell()).merge(child));
+            byZoom[zoom] = new Level(parents, Map.of(), parents.size());
+        }
+        return new ClusterIndex(documents, points, finestKeys, List.of(byZoom));
+    }
+
+    /**
+     * Índice de {@code documents} a partir de este (ambas listas en orden de _id):
+     * rehace desde sus puntos las celdas del zoom máximo donde entra o sale alguno
+     * y, en cada zoom superior, las madres de las que cambiaron desde sus hijas
+     */
+    private ClusterIndex patch(List<RawBsonDocument> documents) {
+        int n = documents.size();
+        Point[] points = new Point[n];
+        long[] finestKeys = new long[n];
+        Set<Long> dirty = new HashSet<>();
+        int i = 0, j = 0;
+        while (i < this.documents.size() || j < n) {
+            RawBsonDocument old = i < this.documents.size() ? this.documents.get(i) : null;
+            RawBsonDocument doc = j < n ? documents.get(j) : null;
+            if (old != null && old == doc) {
+                points[j] = this.points[i];
+                finestKeys[j++] = this.finestKeys[i++];
+                continue;
+            }
+            int cmp = old == null ? 1 : doc == null ? -1 : idOf(old).compareTo(idOf(doc));
+            if (cmp <= 0) {
+                if (this.points[i] != null) dirty.add(this.finestKeys[i]);
+                i++;
+            }
+            if (cmp >= 0) {
+                points[j] = extract(doc);
+                if (points[j] != null) {
+                    finestKeys[j] = finestKey(points[j]);
+                    dirty.add(finestKeys[j]);
+                }
+                j++;
+            }
+        }
+        if (dirty.isEmpty()) return new ClusterIndex(documents, points, finestKeys, levels);
+
+        // Las celdas afectadas del zoom máximo, con sus puntos en orden de posición
+        Map<Long, Cell> finest = new HashMap<>();
+        for (int pos = 0; pos < n; pos++) {
+            if (points[pos] != null && dirty.contains(finestKeys[pos])) {
+                finest.computeIfAbsent(finestKeys[pos], k -> new Cell()).add(points[pos]);
+            }
+        }
+
+        Level[] byZoom = levels.toArray(new Level[0]);
+        Set<Long> keys = dirty;
+        for (int zoom = MAX_ZOOM; zoom >= 0; zoom--) {
+            Level level = byZoom[zoom];
+            Map<Long, Cell> changed = new HashMap<>(level.changed);
+            int size = level.size;
+            Set<Long> parents = new HashSet<>();
+            for (long key : keys) {
+                Cell cell = zoom == MAX_ZOOM ? finest.get(key) : merged(byZoom[zoom + 1], key);
+                boolean occupied = level.get(key) != null;
+                if (occupied && cell == null) size--;
+                else if (!occupied && cell != null) size++;
+                changed.put(key, cell);
+                parents.add(parent(key));
+            }
+            byZoom[zoom] = new Level(level.base, changed, size);
+            keys = parents;
+        }
+        return new ClusterIndex(documents, points, finestKeys, List.of(byZoom));
+    }
+
+    /**
+     * Comprueba que el área no supera {@link #MAX_VIEWPORT_PX} píxeles de lado en ese zoom
+     *
+     * @throws IllegalArgumentException con un mensaje para el cliente
+     */
+    public static void checkViewport(Geo.Bounds bbox, int zoom) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom debe estar entre 0 y " + MAX_ZOOM);
+        }
+        double scale = (double) TILE_PX * (1L << zoom);
+        double width = (mercatorX(bbox.getMaxLng()) - mercatorX(bbox.getMinLng())) * scale;
+        double height = (mercatorY(bbox.getMinLat()) - mercatorY(bbox.getMaxLat())) * scale;
+        if (width > MAX_VIEWPORT_PX || height > MAX_VIEWPORT_PX) {
+            throw new IllegalArgumentException("bbox demasiado grande para el zoom " + zoom
+                    + " (máx. " + MAX_VIEWPORT_PX + " px de lado)");
+        }
+    }
+
+    /**
+     * Grupos de las celdas del zoom que tocan el área, los más numerosos primero
+     */
+    public List<MapCluster> clusters(Geo.Bounds bbox, int zoom) {
+        checkViewport(bbox, zoom);
+        Level cells = levels.get(zoom);
+        int x0 = cellX(bbox.getMinLng(), zoom), x1 = cellX(bbox.getMaxLng(), zoom);
+        // y crece hacia el sur
+        int y0 = cellY(bbox.getMaxLat(), zoom), y1 = cellY(bbox.getMinLat(), zoom);
+
+        List<Cell> found = new ArrayList<>();
+        long touched = (long) (x1 - x0 + 1) * (y1 - y0 + 1);
+        if (touched <= cells.size) {
+            for (int x = x0; x <= x1; x++) {
+                for (int y = y0; y <= y1; y++) {
+                    Cell cell = cells.get(key(x, y));
+                    if (cell != null) found.add(cell);
+                }
+            }
+        } else {
+            cells.forEach((key, cell) -> {
+                int x = (int) (key >>> 32), y = (int) (long) key;
+                if (x >= x0 && x <= x1 && y >= y0 && y <= y1) found.add(cell);
+            });
+        }
+        found.sort(Comparator.comparingInt((Cell c) -> -c.count)
+                .thenComparingDouble(c -> c.sumLat / c.count)
+                .thenComparingDouble(c -> c.sumLng / c.count));
+
+        List<MapCluster> result = new ArrayList<>(found.size());
+        for (Cell cell : found) result.add(cell.toCluster());
+        return result;
+    }
+
+    // ================= Helpers =================
+
+    /** Una celda a partir de sus cuatro hijas del zoom siguiente, o null si están vacías */
+    private static Cell merged(Level children, long key) {
+        int x = (int) (key >>> 32), y = (int) key;
+        Cell cell = null;
+        for (int dx = 0; dx <= 1; dx++) {
+            for (int dy = 0; dy <= 1; dy++) {
+                Cell child = children.get(key(2 * x + dx, 2 * y + dy));
+                if (child == null) continue;
+                if (cell == null) cell = new Cell();
+                cell.merge(child);
+            }
+        }
+        return cell;
+    }
+
+    private static long parent(long key) {
+        return key((int) (key >>> 32) >> 1, (int) key >> 1);
+    }
+
+    private static long finestKey(Point p) {
+        return key(cellX(p.lng, MAX_ZOOM), cellY(p.lat, MAX_ZOOM));
+    }
+
+    private static ObjectId idOf(RawBsonDocument doc) {
+        return doc.getObjectId("_id").getValue();
+    }
+
+    private static Point extract(RawBsonDocument doc) {
+        double[] point = Geo.pointOf(doc);
+        if (point == null || !Geo.isValid(point[0], point[1])) return null;
+        return new Point(doc.getObjectId("_id").getValue().toHexString(), point[0], point[1],
+                UnitStats.lowOf(doc, "price"), UnitStats.highOf(doc, "price"));
+    }
+
+    /** Longitud en [0, 1) de oeste a este */
+    private static double mercatorX(double lng) {
+        return (lng + 180) / 360;
+    }
+
+    /** Latitud en [0, 1) de norte a sur */
+    private static double mercatorY(double lat) {
+        double clamped = Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, lat));
+        double sin = Math.sin(Math.toRadians(clamped));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private static int cellX(double lng, int zoom) {
+        return toCell(mercatorX(lng), zoom);
+    }
+
+    private static int cellY(double lat, int zoom) {
+        return toCell(mercatorY(lat), zoom);
+    }
+
+    private static int toCell(double unit, int zoom) {
+        int cells = 1 << (zoom + CELL_SHIFT);
+        return Math.max(0, Math.min(cells - 1, (int) Math.floor(unit * cells)));
+    }
+
+    private static long key(int x, int y) {
+        return (long) x << 32 | (y & 0xffffffffL);
+    }
+}
@@ -0,0 +1,159 @@
+package edu.pucmm.service;
+
+import edu.pucmm.util.Geo;
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Rejilla geográfica de una instantánea del catálogo: el mundo se divide en
+ * celdas de {@link #CELL_DEGREES} grados y cada celda guarda las posiciones de
+ * los documentos cuyo punto "location" cae en ella.
+ *
+ * Una consulta por rectángulo solo revisa las celdas que lo tocan (o, si el
+ * rectángulo abarca más celdas de las que están ocupadas, solo las ocupadas) y
+ * comprueba el punto exacto de esos candidatos.
+ */
+final class GeoGrid {
+
+    // ~5,5 km de latitud: un área visible de ciudad toca pocas celdas
+    static final double CELL_DEGREES = 0.05;
+    private static final int ROWS = (int) Math.ceil(180 / CELL_DEGREES) + 1;
+
+    private final double[] lat;
+    private final double[] lng;
+    private final Map<Long, int[]> cells;
+
+    private GeoGrid(double[] lat, double[] lng, Map<Long, int[]> cells) {
+        this.lat = lat;
+        this.lng = lng;
+        this.cells = cells;
+    }
+
+    static GeoGrid build(List<RawBsonDocument> documents) {
+        int n = documents.size();
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        Map<Long, List<Integer>> byCell = new HashMap<>();
+        for (int pos = 0; pos < n; pos++) {
+            double[] point = Geo.pointOf(documents.get(pos));
+            if (point == null || !Geo.isValid(point[0], point[1])) {
+                lat[pos] = lng[pos] = Double.NaN;
+                continue;
+            }
+            lat[pos] = point[0];
+            lng[pos] = point[1];
+            byCell.computeIfAbsent(key(column(point[1]), row(point[0])), k -> new ArrayList<>()).add(pos);
+        }
+        Map<Long, int[]> cells = new HashMap<>(byCell.size() * 2);
+        byCell.forEach((key, positions) -> cells.put(key, positions.stream().mapToInt(Integer::intValue).toArray()));
+        return new GeoGrid(lat, lng, cells);
+    }
+
+    /**
+     * La rejilla con los documentos del cambio: las posiciones de los que siguen
+     * se trasladan y solo se lee el punto de los nuevos o modificados
+     */
+    GeoGrid patched(PropertyIndex.Diff diff, List<RawBsonDocument> documents) {
+        int n = documents.size();
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        for (int old = 0; old < diff.moved.length; old++) {
+            if (diff.moved[old] < 0) continue;
+            lat[diff.moved[old]] = this.lat[old];
+            lng[diff.moved[old]] = this.lng[old];
+        }
+        Map<Long, List<Integer>> added = new HashMap<>();
+        for (int pos : diff.added) {
+            double[] point = Geo.pointOf(documents.get(pos));
+            if (point == null || !Geo.isValid(point[0], point[1])) {
+                lat[pos] = lng[pos] = Double.NaN;
+                continue;
+            }
+            lat[pos] = point[0];
+            lng[pos] = point[1];
+            added.computeIfAbsent(key(column(point[1]), row(point[0])), k -> new ArrayList<>()).add(pos);
+        }
+
+        Map<Long, int[]> cells = new HashMap<>(this.cells.size() * 2);
+        this.cells.forEach((key, positions) -> {
+            List<Integer> extra = added.remove(key);
+            int[] kept = Arrays.stream(positions).map(p -> diff.moved[p]).filter(p -> p >= 0).toArray();
+            if (extra != null) {
+                kept = Arrays.copyOf(kept, kept.length + extra.size());
+                for (int i = 0; i < extra.size(); i++) kept[kept.length - extra.size() + i] = extra.get(i);
+                Arrays.sort(kept);
+            }
+            if (kept.length > 0) cells.put(key, kept);
+        });
+        added.forEach((key, positions) -> cells.put(key, positions.stream().mapToInt(Integer::intValue).toArray()));
+        return new GeoGrid(lat, lng, cells);
+    }
+
+    /** Posiciones con punto dentro del rectángulo */
+    BitSet within(Geo.Bounds bounds) {
+        BitSet result = new BitSet();
+        forEachCandidate(bounds, pos -> {
+            if (bounds.contains(lat[pos], lng[pos])) result.set(pos);
+        });
+        return result;
+    }
+
+    /** Posiciones a {@code radius} metros o menos del punto */
+    BitSet near(double centerLat, double centerLng, double radius) {
+        BitSet result = new BitSet();
+        forEachCandidate(Geo.Bounds.around(centerLat, centerLng, radius), pos -> {
+            if (Geo.distanceMeters(centerLat, centerLng, lat[pos], lng[pos]) <= radius) result.set(pos);
+        });
+        return result;
+    }
+
+    /** Latitud de la posición (NaN si no tiene punto) */
+    double lat(int pos) {
+        return lat[pos];
+    }
+
+    /** Longitud de la posición (NaN si no tiene punto) */
+    double lng(int pos) {
+        return lng[pos];
+    }
+
+    // ================= Helpers =================
+
+    private void forEachCandidate(Geo.Bounds bounds, IntConsumer action) {
+        int c0 = column(bounds.getMinLng()), c1 = column(bounds.getMaxLng());
+        int r0 = row(bounds.getMinLat()), r1 = row(bounds.getMaxLat());
+        long touched = (long) (c1 - c0 + 1) * (r1 - r0 + 1);
+        if (touched <= cells.size()) {
+            for (int c = c0; c <= c1; c++) {
+                for (int r = r0; r <= r1; r++) {
+                    int[] positions = cells.get(key(c, r));
+                    if (positions != null) Arrays.stream(positions).forEach(action);
+                }
+            }
+        } else {
+            cells.forEach((key, positions) -> {
+                int c = (int) (key / ROWS), r = (int) (key % ROWS);
+                if (c >= c0 && c <= c1 && r >= r0 && r <= r1) Arrays.stream(positions).forEach(action);
+            });
+        }
+    }
+
+    private static int column(double lng) {
+        return (int) Math.floor((lng + 180) / CELL_DEGREES);
+    }
+
+    private static int row(double lat) {
+        return (int) Math.floor((lat + 90) / CELL_DEGREES);
+    }
+
+    private static long key(int column, int row) {
+        return (long) column * ROWS + row;
+    }
+}
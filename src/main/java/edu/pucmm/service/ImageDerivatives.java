@@ -0,0 +1,176 @@
+package edu.pucmm.service;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+import edu.pucmm.util.ImageResizer;
+import edu.pucmm.util.ImageTransform;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Derivadas de ancho fijo ({@link ImageResizer#WIDTHS}) de las imágenes subidas,
+ * guardadas en el mismo bucket de GridFS que el original.
+ *
+ * Cada derivada es un archivo "{idOriginal}@w{ancho}" con metadata
+ * {contentType, derivativeOf, width, height}; se busca por nombre, que GridFS
+ * ya tiene indexado. Se generan en segundo plano tras la subida, en un pool
+ * acotado, así que durante unos segundos la imagen solo tiene el original.
+ *
+ * Las transformaciones a medida ({@link ImageTransform}) se generan en la primera
+ * petición y se guardan igual, como "{idOriginal}@t{clave}":
+ * - solo los presets ({@link ImageTransform#isPreset()}), así las variantes por
+ *   imagen están acotadas y ningún cliente puede agotarlas con tamaños arbitrarios
+ * - un pool propio con cola acotada: si está lleno, la petición se rechaza
+ * - una sola generación en curso por variante; las peticiones simultáneas de la
+ *   misma variante esperan ese mismo resultado
+ */
+public final class ImageDerivatives {
+
+    private final GridFSBucket bucket;
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor transforms;
+    // Variantes que se están generando, por nombre de archivo
+    private final ConcurrentHashMap<String, CompletableFuture<GridFSFile>> inFlight = new ConcurrentHashMap<>();
+
+    public ImageDerivatives(GridFSBucket bucket, int threads, int transformThreads, int transformQueue) {
+        this.bucket = bucket;
+        this.executor = Executors.newFixedThreadPool(threads, daemonThreads("image-derivatives-"));
+        this.transforms = new ThreadPoolExecutor(transformThreads, transformThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(transformQueue), daemonThreads("image-transform-"));
+    }
+
+    /**
+     * Encola la generación de las derivadas de una imagen recién guardada (nada si
+     * su tipo no se redimensiona)
+     */
+    public void schedule(ObjectId original, String contentType) {
+        if (!ImageResizer.isResizable(contentType)) return;
+        executor.execute(() -> {
+            try {
+                generate(original);
+            } catch (Exception e) {
+                // Sin derivadas se sigue sirviendo el original
+                System.err.println("[IMAGES] No se generaron las derivadas de " + original.toHexString() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Derivada que corresponde al ancho pedido, o null si no existe (aún no se ha
+     * generado o el original es más estrecho): entonces se sirve el original
+     */
+    public GridFSFile find(ObjectId original, int requestedWidth) {
+        return bucket.find(Filters.eq("filename", filenameOf(original, ImageResizer.widthFor(requestedWidth)))).first();
+    }
+
+    /** Variante ya generada de una transformación, o null */
+    public GridFSFile findTransformed(ObjectId original, ImageTransform transform) {
+        return bucket.find(Filters.eq("filename", transformedName(original, transform))).first();
+    }
+
+    /**
+     * Genera y guarda una transformación del original (o se une a la generación en
+     * curso de la misma variante). Completa con el archivo guardado, o con null si
+     * ImageIO no puede leer la imagen.
+     *
+     * @throws IllegalArgumentException si la transformación no es un preset
+     * @throws RejectedExecutionException si el pool de transformaciones está lleno
+     */
+    public CompletableFuture<GridFSFile> transform(ObjectId original, ImageTransform transform) {
+        if (!transform.isPreset()) throw new IllegalArgumentException("No es un preset: " + transform.key());
+        String name = transformedName(original, transform);
+        CompletableFuture<GridFSFile> created = new CompletableFuture<>();
+        CompletableFuture<GridFSFile> running = inFlight.putIfAbsent(name, created);
+        if (running != null) return running;
+        try {
+            transforms.execute(() -> {
+                try {
+                    GridFSFile file = generateTransformed(original, transform, name);
+                    inFlight.remove(name, created);
+                    created.complete(file);
+                } catch (Throwable e) {
+                    inFlight.remove(name, created);
+                    created.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(name, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        return created;
+    }
+
+    static String filenameOf(ObjectId original, int width) {
+        return original.toHexString() + "@w" + width;
+    }
+
+    static String transformedName(ObjectId original, ImageTransform transform) {
+        return original.toHexString() + "@t" + transform.key();
+    }
+
+    private void generate(ObjectId original) throws IOException {
+        List<ImageResizer.Derivative> derivatives;
+        try (InputStream in = bucket.openDownloadStream(original)) {
+            derivatives = ImageResizer.derivatives(in);
+        }
+        // De menor a mayor: si existe una derivada, existen todas las menores
+        for (ImageResizer.Derivative d : derivatives) {
+            Document meta = new Document("contentType", d.getContentType())
+                    .append("derivativeOf", original)
+                    .append("width", d.getWidth())
+                    .append("height", d.getHeight());
+            bucket.uploadFromStream(filenameOf(original, d.getWidth()), new ByteArrayInputStream(d.getBytes()),
+                    new GridFSUploadOptions().metadata(meta));
+        }
+    }
+
+    private GridFSFile generateTransformed(ObjectId original, ImageTransform transform, String name) {
+        // Otra instancia del servidor pudo guardarla mientras tanto
+        GridFSFile existing = bucket.find(Filters.eq("filename", name)).first();
+        if (existing != null) return existing;
+
+        ImageResizer.Derivative d;
+        try (InputStream in = bucket.openDownloadStream(original)) {
+            d = transform.apply(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (d == null) return null;
+        Document meta = new Document("contentType", d.getContentType())
+                .append("derivativeOf", original)
+                .append("transform", transform.key())
+                .append("width", d.getWidth())
+                .append("height", d.getHeight());
+        ObjectId id = bucket.uploadFromStream(name, new ByteArrayInputStream(d.getBytes()),
+                new GridFSUploadOptions().metadata(meta));
+        return bucket.find(Filters.eq("_id", id)).first();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread t = new Thread(task, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
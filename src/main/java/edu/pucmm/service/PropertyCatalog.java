@@ -0,0 +1,432 @@
+package edu.pucmm.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import edu.pucmm.config.CatalogConfig;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * Copia en memoria de la colección de propiedades.
+ *
+ * Se carga completa al arrancar y se mantiene al día con un change stream de
+ * MongoDB (inserciones, modificaciones y bajas, incluidas las hechas desde otras
+ * instancias de la aplicación). Si el servidor no admite change streams
+ * (mongod standalone) se recarga la colección cada catalog.poll.interval.seconds.
+ *
+ * Los lectores trabajan sobre una {@link Snapshot} inmutable; cada cambio
+ * publica una nueva, así que no hace falta sincronizar las lecturas.
+ * Hasta que termina la primera carga {@link #snapshot()} devuelve null y los
+ * lectores deben consultar MongoDB.
+ */
+public class PropertyCatalog {
+
+    /**
+     * Recibe los cambios del catálogo (en el orden en que se aplican).
+     */
+    public interface Listener {
+        /** Se cargó (o recargó) la colección completa */
+        default void onReload(Snapshot snapshot) {}
+
+        /** Alta (previous == null) o modificación de un documento */
+        default void onUpsert(RawBsonDocument previous, RawBsonDocument current) {}
+
+        /** Baja de un documento */
+        default void onDelete(RawBsonDocument previous) {}
+    }
+
+    /**
+     * Estado inmutable del catálogo: documentos en orden de _id ascendente
+     * (el orden natural de la colección), acceso por _id y los índices de
+     * búsqueda, de autocompletado, del mapa y de propiedades similares.
+     *
+     * Cada índice tiene su propio cerrojo y se construye a partir del de la
+     * instantánea anterior. El catálogo los prepara en segundo plano tras cada
+     * cambio. Los de autocompletado y de propiedades similares siguen sirviendo
+     * los anteriores mientras tanto; los de búsqueda y del mapa, cuyas respuestas
+     * se guardan en caché con la versión del catálogo, esperan al suyo si aún no
+     * está.
+     */
+    public static final class Snapshot {
+        private final List<RawBsonDocument> documents;
+        private final Map<ObjectId, RawBsonDocument> byId;
+        private final Derived<PropertyIndex> index;
+        private final Derived<SuggestIndex> suggestions;
+        private final Derived<ClusterIndex> clusters;
+        private final Derived<RelatedIndex> related;
+
+        private Snapshot(List<RawBsonDocument> documents, Snapshot previous) {
+            this.documents = Collections.unmodifiableList(documents);
+            this.index = new Derived<>(previous == null ? null : previous.index);
+            this.suggestions = new Derived<>(previous == null ? null : previous.suggestions);
+            this.clusters = new Derived<>(previous == null ? null : previous.clusters);
+            this.related = new Derived<>(previous == null ? null : previous.related);
+            Map<ObjectId, RawBsonDocument> byId = new HashMap<>(documents.size() * 2);
+            for (RawBsonDocument doc : documents) byId.put(idOf(doc), doc);
+            this.byId = byId;
+        }
+
+        public List<RawBsonDocument> documents() {
+            return documents;
+        }
+
+        public RawBsonDocument get(ObjectId id) {
+            return byId.get(id);
+        }
+
+        public int size() {
+            return documents.size();
+        }
+
+        /**
+         * Índice de búsqueda de esta instantánea
+         */
+        public PropertyIndex index() {
+            return index.get(documents, PropertyIndex::build);
+        }
+
+        /**
+         * Índice de autocompletado: el de esta instantánea si ya está listo; si no,
+         * el de la anterior mientras se prepara (solo se construye aquí si no hay
+         * ninguno, en la primera carga)
+         */
+        public SuggestIndex suggestions() {
+            SuggestIndex result = suggestions.latest();
+            return result != null ? result : suggestions.get(documents, SuggestIndex::build);
+        }
+
+        /**
+         * Grupos de marcadores del mapa de esta instantánea
+         */
+        public ClusterIndex clusters() {
+            return clusters.get(documents, ClusterIndex::build);
+        }
+
+        /**
+         * Propiedades similares de cada propiedad: las de esta instantánea si ya
+         * están calculadas; si no, las de la anterior mientras se preparan
+         */
+        public RelatedIndex related() {
+            RelatedIndex result = related.latest();
+            return result != null ? result : related.get(documents, RelatedIndex::build);
+        }
+
+        /** Construye los índices que se sirven desde la instantánea anterior */
+        private void prepare() {
+            index.get(documents, PropertyIndex::build);
+            suggestions.get(documents, SuggestIndex::build);
+            related.get(documents, RelatedIndex::build);
+            clusters.get(documents, ClusterIndex::build);
+        }
+    }
+
+    /**
+     * Un índice de una instantánea: se construye una sola vez, con su propio
+     * cerrojo, a partir del último que se construyó en las anteriores
+     */
+    private static final class Derived<T> {
+        private final Object lock = new Object();
+        private volatile T value;
+        // El de una instantánea anterior; se suelta al construir el propio
+        private volatile T previous;
+
+        Derived(Derived<T> before) {
+            if (before != null) {
+                // previous antes que value: se construye asignando value y luego soltando previous
+                T stale = before.previous;
+                T built = before.value;
+                this.previous = built != null ? built : stale;
+            }
+        }
+
+        T get(List<RawBsonDocument> documents, BiFunction<List<RawBsonDocument>, T, T> build) {
+            T result = value;
+            if (result == null) {
+                synchronized (lock) {
+                    result = value;
+                    if (result == null) {
+                        value = result = build.apply(documents, previous);
+                        previous = null;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** El propio si ya está construido; si no, el anterior (o null) */
+        T latest() {
+            T result = value;
+            if (result != null) return result;
+            T stale = previous;
+            return stale != null ? stale : value;
+        }
+    }
+
+    // "The $changeStream stage is only supported on replica sets"
+    private static final int CHANGE_STREAM_UNSUPPORTED = 40573;
+    private static final long RETRY_DELAY_MS = 5000;
+    private static final Comparator<RawBsonDocument> BY_ID = Comparator.comparing(PropertyCatalog::idOf);
+
+    private final MongoCollection<RawBsonDocument> collection;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstLoad = new CountDownLatch(1);
+    // Prepara los índices de cada nueva instantánea fuera de las peticiones
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(task -> {
+        Thread t = new Thread(task, "property-catalog-indexes");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean prepareScheduled = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+    private volatile boolean running;
+
+    public PropertyCatalog(MongoCollection<RawBsonDocument> collection) {
+        this.collection = collection;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Arranca la sincronización en un hilo de fondo y espera (como máximo
+     * catalog.startup.timeout.seconds) a que termine la primera carga.
+     */
+    public void start() {
+        running = true;
+        Thread watcher = new Thread(this::run, "property-catalog");
+        watcher.setDaemon(true);
+        watcher.start();
+        try {
+            if (!firstLoad.await(CatalogConfig.getCatalogStartupTimeoutSeconds(), TimeUnit.SECONDS)) {
+                System.err.println("[CATALOG] La carga inicial no terminó a tiempo; se consultará MongoDB mientras tanto");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Estado actual, o null si aún no se ha cargado
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    // ================= Cambios =================
+
+    /**
+     * Aplica un alta o modificación. Lo usan el change stream y las escrituras
+     * locales (para que se vean al instante); aplicar dos veces el mismo documento
+     * no notifica de nuevo.
+     */
+    public synchronized void upsert(RawBsonDocument doc) {
+        Snapshot current = snapshot;
+        if (current == null) return;
+        ObjectId id = idOf(doc);
+        RawBsonDocument previous = current.get(id);
+        if (previous != null && sameBytes(previous, doc)) return;
+
+        List<RawBsonDocument> documents = new ArrayList<>(current.documents());
+        int pos = Collections.binarySearch(documents, doc, BY_ID);
+        if (pos >= 0) documents.set(pos, doc);
+        else documents.add(-pos - 1, doc);
+        snapshot = new Snapshot(documents, current);
+        prepareInBackground();
+        for (Listener l : listeners) l.onUpsert(previous, doc);
+    }
+
+    /**
+     * Aplica una baja (sin efecto si el documento no está)
+     */
+    public synchronized void remove(ObjectId id) {
+        Snapshot current = snapshot;
+        if (current == null) return;
+        RawBsonDocument previous = current.get(id);
+        if (previous == null) return;
+
+        List<RawBsonDocument> documents = new ArrayList<>(current.documents());
+        documents.remove(Collections.binarySearch(documents, previous, BY_ID));
+        snapshot = new Snapshot(documents, current);
+        prepareInBackground();
+        for (Listener l : listeners) l.onDelete(previous);
+    }
+
+    /**
+     * Lee la colección completa y la publica si cambió respecto al estado actual.
+     * La nueva instantánea parte de la actual, así que sus índices se preparan en
+     * segundo plano como tras cualquier otro cambio.
+     */
+    private synchronized void reload() {
+        List<RawBsonDocument> documents = collection.find().sort(Sorts.ascending("_id"))
+                .into(new ArrayList<>());
+        Snapshot current = snapshot;
+        if (current != null && !reuseUnchanged(current, documents)) return;
+        snapshot = new Snapshot(documents, current);
+        prepareInBackground();
+        System.out.println("[CATALOG] Catálogo cargado: " + documents.size() + " propiedades");
+        for (Listener l : listeners) l.onReload(snapshot);
+    }
+
+    /**
+     * Encola la preparación de los índices de la instantánea actual. Varios
+     * cambios seguidos se juntan en una sola: la tarea toma la última publicada.
+     */
+    private void prepareInBackground() {
+        if (!prepareScheduled.compareAndSet(false, true)) return;
+        indexer.execute(() -> {
+            prepareScheduled.set(false);
+            Snapshot current = snapshot;
+            try {
+                current.prepare();
+            } catch (RuntimeException e) {
+                // Mientras tanto se sigue sirviendo el índice anterior
+                System.err.println("[CATALOG] Error preparando los índices: " + e.getMessage());
+            }
+        });
+    }
+
+    // ================= Sincronización =================
+
+    private void run() {
+        BsonDocument resumeToken = null;
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> cursor = openChangeStream(resumeToken)) {
+                // Sin token de reanudación se pudieron perder cambios: recarga completa.
+                // El stream se abre antes de leer para no perder lo que ocurra durante la carga.
+                if (resumeToken == null) loaded();
+                while (running) {
+                    ChangeStreamDocument<RawBsonDocument> change = cursor.tryNext();
+                    if (change == null) continue;
+                    resumeToken = change.getResumeToken();
+                    if (!apply(change)) {
+                        resumeToken = null;  // el stream se invalidó
+                        break;
+                    }
+                }
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAM_UNSUPPORTED) {
+                    System.out.println("[CATALOG] Change streams no disponibles; recargando cada "
+                            + CatalogConfig.getCatalogPollIntervalSeconds() + "s");
+                    poll();
+                    return;
+                }
+                // El token ya no es válido (historial perdido, etc.): empezar de cero
+                System.err.println("[CATALOG] Change stream falló: " + e.getMessage());
+                resumeToken = null;
+                pause(RETRY_DELAY_MS);
+            } catch (Exception e) {
+                System.err.println("[CATALOG] Change stream interrumpido, reintentando: " + e.getMessage());
+                pause(RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> openChangeStream(BsonDocument resumeToken) {
+        var stream = collection.watch().fullDocument(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) stream = stream.resumeAfter(resumeToken);
+        return stream.cursor();
+    }
+
+    /**
+     * Aplica un evento del change stream.
+     *
+     * @return false si el stream quedó invalidado y hay que reabrirlo
+     */
+    private boolean apply(ChangeStreamDocument<RawBsonDocument> change) {
+        switch (change.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                RawBsonDocument doc = change.getFullDocument();
+                // null si el documento se borró antes de leerlo; llegará su DELETE
+                if (doc != null) upsert(doc);
+            }
+            case DELETE -> {
+                BsonValue id = change.getDocumentKey() == null ? null : change.getDocumentKey().get("_id");
+                if (id != null && id.isObjectId()) remove(id.asObjectId().getValue());
+            }
+            case DROP, RENAME, INVALIDATE -> {
+                return false;
+            }
+            default -> { }
+        }
+        return true;
+    }
+
+    /**
+     * Modo sin change streams: recarga periódica
+     */
+    private void poll() {
+        long intervalMs = TimeUnit.SECONDS.toMillis(CatalogConfig.getCatalogPollIntervalSeconds());
+        while (running) {
+            try {
+                loaded();
+            } catch (Exception e) {
+                System.err.println("[CATALOG] Error recargando el catálogo: " + e.getMessage());
+            }
+            pause(intervalMs);
+        }
+    }
+
+    private void loaded() {
+        reload();
+        firstLoad.countDown();
+    }
+
+    private static void pause(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ================= Helpers =================
+
+    private static ObjectId idOf(RawBsonDocument doc) {
+        return doc.getObjectId("_id").getValue();
+    }
+
+    private static boolean sameBytes(RawBsonDocument a, RawBsonDocument b) {
+        return a.getByteBuffer().asNIO().equals(b.getByteBuffer().asNIO());
+    }
+
+    /**
+     * Sustituye en {@code documents} los que no cambiaron por la instancia de la
+     * instantánea: los índices reutilizan por identidad lo calculado para ellos
+     *
+     * @return si algún documento se añadió, cambió o se borró
+     */
+    private static boolean reuseUnchanged(Snapshot current, List<RawBsonDocument> documents) {
+        boolean changed = documents.size() != current.size();
+        for (int i = 0; i < documents.size(); i++) {
+            RawBsonDocument previous = current.get(idOf(documents.get(i)));
+            if (previous != null && sameBytes(previous, documents.get(i))) documents.set(i, previous);
+            else changed = true;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,135 @@
+package edu.pucmm.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BucketOptions;
+import com.mongodb.client.model.Facet;
+import edu.pucmm.model.FacetCounts;
+import edu.pucmm.util.PropertyQuery;
+import edu.pucmm.util.UnitStats;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cálculo de {@link FacetCounts} para unos parámetros de búsqueda, desde el
+ * índice en memoria o, si el catálogo no está cargado, con una sola agregación
+ * $facet en MongoDB. Ambos caminos dan el mismo resultado.
+ */
+public class PropertyFacets {
+
+    private final double[] priceBoundaries;
+
+    public PropertyFacets(double[] priceBoundaries) {
+        this.priceBoundaries = priceBoundaries.clone();
+    }
+
+    /**
+     * Conteos desde el índice del catálogo
+     */
+    public FacetCounts fromIndex(PropertyIndex index, Map<String, List<String>> params) {
+        FacetCounts counts = new FacetCounts();
+        BitSet all = index.filter(query(params));
+        counts.setTotal(all.cardinality());
+        counts.setType(index.countBy("type", index.filter(query(params, "type"))));
+        counts.setSaleType(index.countBy("saleType", index.filter(query(params, "saleType"))));
+        counts.setBedrooms(index.countBy("bedrooms", index.filter(query(params, "bedrooms"))));
+        counts.setAmenities(index.countBy("amenities", all));
+
+        BitSet anyPrice = index.filter(query(params, "minPrice", "maxPrice"));
+        List<FacetCounts.PriceBucket> buckets = new ArrayList<>();
+        for (int i = 0; i <= priceBoundaries.length; i++) {
+            double min = i == 0 ? 0 : priceBoundaries[i - 1];
+            Double max = i < priceBoundaries.length ? priceBoundaries[i] : null;
+            buckets.add(new FacetCounts.PriceBucket(min, max, index.countInRange("price", anyPrice, min, max)));
+        }
+        counts.setPrice(buckets);
+        return counts;
+    }
+
+    /**
+     * Conteos con una agregación $facet (una sub-pipeline por faceta)
+     */
+    public FacetCounts fromMongo(MongoCollection<Document> collection, Map<String, List<String>> params) {
+        Bson all = query(params).toFilter();
+        List<Double> boundaries = new ArrayList<>();
+        boundaries.add(0.0);
+        for (double b : priceBoundaries) boundaries.add(b);
+        boundaries.add(Double.MAX_VALUE);
+
+        Document result = collection.aggregate(List.of(Aggregates.facet(
+                new Facet("total", Aggregates.match(all), Aggregates.count("n")),
+                new Facet("type", Aggregates.match(query(params, "type").toFilter()), countBy("$type")),
+                new Facet("saleType", Aggregates.match(query(params, "saleType").toFilter()), countBy("$saleType")),
+                new Facet("bedrooms", Aggregates.match(query(params, "bedrooms").toFilter()), countBy("$bedrooms")),
+                new Facet("amenities", Aggregates.match(all), Aggregates.unwind("$amenities"), countBy("$amenities")),
+                new Facet("price", Aggregates.match(query(params, "minPrice", "maxPrice").toFilter()),
+                        // El "desde" de cada propiedad, como la columna de precio en memoria
+                        Aggregates.bucket("$" + UnitStats.sortKey("price"), boundaries,
+                                new BucketOptions().defaultBucket("other").output(Accumulators.sum("count", 1))))
+        ))).first();
+
+        FacetCounts counts = new FacetCounts();
+        if (result == null) return counts;
+        List<Document> total = result.getList("total", Document.class);
+        counts.setTotal(total.isEmpty() ? 0 : total.get(0).getInteger("n"));
+        counts.setType(stringCounts(result.getList("type", Document.class)));
+        counts.setSaleType(stringCounts(result.getList("saleType", Document.class)));
+        counts.setBedrooms(numberCounts(result.getList("bedrooms", Document.class)));
+        counts.setAmenities(stringCounts(result.getList("amenities", Document.class)));
+
+        Map<Double, Integer> byLowerBound = new HashMap<>();
+        for (Document bucket : result.getList("price", Document.class)) {
+            if (bucket.get("_id") instanceof Number n) byLowerBound.put(n.doubleValue(), bucket.getInteger("count"));
+        }
+        List<FacetCounts.PriceBucket> buckets = new ArrayList<>();
+        for (int i = 0; i <= priceBoundaries.length; i++) {
+            double min = i == 0 ? 0 : priceBoundaries[i - 1];
+            Double max = i < priceBoundaries.length ? priceBoundaries[i] : null;
+            buckets.add(new FacetCounts.PriceBucket(min, max, byLowerBound.getOrDefault(min, 0)));
+        }
+        counts.setPrice(buckets);
+        return counts;
+    }
+
+    // ================= Helpers =================
+
+    /**
+     * Consulta con los parámetros dados menos los excluidos (el filtro de la propia faceta)
+     */
+    private static PropertyQuery query(Map<String, List<String>> params, String... excluded) {
+        Map<String, List<String>> rest = new HashMap<>(params);
+        for (String key : excluded) rest.remove(key);
+        return PropertyQuery.fromParams(rest);
+    }
+
+    private static Bson countBy(String field) {
+        return Aggregates.group(field, Accumulators.sum("count", 1));
+    }
+
+    private static Map<String, Integer> stringCounts(List<Document> groups) {
+        Map<String, Integer> result = new TreeMap<>();
+        for (Document g : groups) {
+            if (g.get("_id") instanceof String value) result.put(value, g.getInteger("count"));
+        }
+        return new LinkedHashMap<>(result);
+    }
+
+    private static Map<String, Integer> numberCounts(List<Document> groups) {
+        Map<Double, Integer> sorted = new TreeMap<>();
+        for (Document g : groups) {
+            if (g.get("_id") instanceof Number n) sorted.merge(n.doubleValue(), g.getInteger("count"), Integer::sum);
+        }
+        Map<String, Integer> result = new LinkedHashMap<>();
+        sorted.forEach((value, count) -> result.put(PropertyIndex.numberKey(value), count));
+        return result;
+    }
+}
@@ -0,0 +1,660 @@
+package edu.pucmm.service;
+
+import edu.pucmm.util.PropertyQuery;
+import edu.pucmm.util.UnitStats;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * Índice en memoria de una {@link PropertyCatalog.Snapshot} para resolver las
+ * búsquedas sin recorrer ni decodificar los documentos.
+ *
+ * Cada documento se identifica por su posición en la instantánea (orden de _id),
+ * así que los conjuntos de resultados son {@link BitSet}:
+ * - atributos de baja cardinalidad (type, saleType, amenities): un BitSet por valor
+ * - bedrooms, bathrooms, parking: un BitSet por valor, ordenados para resolver "mínimo"
+ * - price, area, pricePerSqm: posiciones ordenadas por valor (arrays primitivos)
+ *   para rangos por búsqueda binaria y para recorrer en orden sin ordenar.
+ *   En desarrollos sin valor en la raíz cuenta el de sus unidades ({@link UnitStats}):
+ *   el mínimo en esta columna y el máximo en otra, de modo que el solape de rangos
+ *   son dos búsquedas binarias
+ *
+ * - unidades de desarrollos (units[]): tabla plana con una fila por unidad, como un
+ *   índice multikey, ordenada por precio ({@link UnitTable})
+ * - texto libre: índice invertido con puntuación BM25 ({@link TextIndex})
+ * - near/within: rejilla geográfica sobre el punto "location" ({@link GeoGrid})
+ *
+ * Una consulta es el AND de los criterios (los tipos alternativos y los mínimos
+ * son OR de valores). El índice es inmutable, uno por instantánea. A partir del
+ * anterior solo se leen los documentos nuevos o modificados: los conjuntos y las
+ * columnas del resto se trasladan a sus nuevas posiciones sin volver a ordenar.
+ */
+public final class PropertyIndex {
+
+    private static final List<String> TERM_FIELDS = List.of("type", "saleType", "amenities");
+    private static final List<String> COUNT_FIELDS = List.of("bedrooms", "bathrooms", "parking");
+    private static final List<String> RANGE_FIELDS = List.of("price", "area", "pricePerSqm");
+
+    /**
+     * Columna numérica ordenada: posiciones con valor numérico ordenadas por
+     * (valor, posición) y las posiciones sin valor aparte.
+     */
+    static final class SortedColumn {
+        final int[] positions;
+        final double[] values;
+        final BitSet missing;
+
+        SortedColumn(int[] positions, double[] values, BitSet missing) {
+            this.positions = positions;
+            this.values = values;
+            this.missing = missing;
+        }
+
+        /** La columna con los documentos del cambio: sin los que salen y con los nuevos intercalados */
+        SortedColumn patched(Diff diff, List<RawBsonDocument> documents, Function<RawBsonDocument, Double> valueOf) {
+            BitSet missing = diff.remap(this.missing);
+            List<double[]> added = new ArrayList<>();
+            for (int pos : diff.added) {
+                Double value = valueOf.apply(documents.get(pos));
+                if (value == null) missing.set(pos);
+                else added.add(new double[]{value, pos});
+            }
+            added.sort((a, b) -> {
+                int cmp = Double.compare(a[0], b[0]);
+                return cmp != 0 ? cmp : Double.compare(a[1], b[1]);
+            });
+
+            int[] p = new int[positions.length + added.size()];
+            double[] v = new double[p.length];
+            int size = 0, a = 0;
+            for (int i = 0; i <= positions.length; i++) {
+                int moved = i < positions.length ? diff.moved[positions[i]] : -1;
+                if (i < positions.length && moved < 0) continue;
+                // Los nuevos que van antes de este (mismo orden que buildColumn: valor y posición)
+                while (a < added.size() && (i == positions.length
+                        || Double.compare(added.get(a)[0], values[i]) < 0
+                        || (Double.compare(added.get(a)[0], values[i]) == 0 && added.get(a)[1] < moved))) {
+                    p[size] = (int) added.get(a)[1];
+                    v[size++] = added.get(a++)[0];
+                }
+                if (i < positions.length) {
+                    p[size] = moved;
+                    v[size++] = values[i];
+                }
+            }
+            return new SortedColumn(Arrays.copyOf(p, size), Arrays.copyOf(v, size), missing);
+        }
+
+        /** Posiciones con valor en [min, max] (null = sin límite) */
+        BitSet range(Double min, Double max) {
+            int from = min == null ? 0 : lowerBound(min);
+            int to = max == null ? values.length : upperBound(max);
+            BitSet result = new BitSet();
+            for (int i = from; i < to; i++) result.set(positions[i]);
+            return result;
+        }
+
+        /** primer índice con valor >= v */
+        private int lowerBound(double v) {
+            int lo = 0, hi = values.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[mid] < v) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        /** primer índice con valor > v */
+        private int upperBound(double v) {
+            int lo = 0, hi = values.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[mid] <= v) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Una fila por unidad de units[] (arrays primitivos paralelos): posición del
+     * documento, precio, habitaciones y área (NaN si no son numéricos). Las filas
+     * con precio van primero, ordenadas por precio, para acotar por búsqueda binaria.
+     */
+    static final class UnitTable {
+        final int[] owners;
+        final double[] prices;
+        final double[] bedrooms;
+        final double[] areas;
+        final int priced;
+
+        UnitTable(int[] owners, double[] prices, double[] bedrooms, double[] areas, int priced) {
+            this.owners = owners;
+            this.prices = prices;
+            this.bedrooms = bedrooms;
+            this.areas = areas;
+            this.priced = priced;
+        }
+
+        /** La tabla con los documentos del cambio: sin las filas de los que salen y con las de los nuevos */
+        UnitTable patched(Diff diff, List<RawBsonDocument> documents) {
+            List<double[]> added = new ArrayList<>();
+            for (int pos : diff.added) addRows(added, pos, documents.get(pos));
+            added.sort(ROW_ORDER);
+            List<double[]> rows = new ArrayList<>(owners.length + added.size());
+            int a = 0;
+            for (int i = 0; i <= owners.length; i++) {
+                int moved = i < owners.length ? diff.moved[owners[i]] : -1;
+                if (i < owners.length && moved < 0) continue;
+                double[] row = i < owners.length ? new double[]{moved, prices[i], bedrooms[i], areas[i]} : null;
+                while (a < added.size() && (row == null || ROW_ORDER.compare(added.get(a), row) < 0)) rows.add(added.get(a++));
+                if (row != null) rows.add(row);
+            }
+            return of(rows);
+        }
+
+        static UnitTable of(List<double[]> rows) {
+            int n = rows.size();
+            int[] owners = new int[n];
+            double[] prices = new double[n], bedrooms = new double[n], areas = new double[n];
+            int priced = 0;
+            for (int i = 0; i < n; i++) {
+                double[] row = rows.get(i);
+                owners[i] = (int) row[0];
+                prices[i] = row[1];
+                bedrooms[i] = row[2];
+                areas[i] = row[3];
+                if (!Double.isNaN(row[1])) priced++;
+            }
+            return new UnitTable(owners, prices, bedrooms, areas, priced);
+        }
+
+        /** Documentos con alguna unidad que cumple los criterios de unidad de la consulta */
+        BitSet matching(PropertyQuery query) {
+            int from = 0, to = owners.length;
+            if (query.getUnitMinPrice() != null || query.getUnitMaxPrice() != null) {
+                // Las unidades sin precio no cumplen un rango de precio
+                from = query.getUnitMinPrice() == null ? 0 : bound(query.getUnitMinPrice(), false);
+                to = query.getUnitMaxPrice() == null ? priced : bound(query.getUnitMaxPrice(), true);
+            }
+            BitSet result = new BitSet();
+            for (int i = from; i < to; i++) {
+                if (!result.get(owners[i]) && query.matchesUnit(bedrooms[i], prices[i], areas[i])) result.set(owners[i]);
+            }
+            return result;
+        }
+
+        /** primer índice con precio >= v (o > v si inclusive) entre las filas con precio */
+        private int bound(double v, boolean inclusive) {
+            int lo = 0, hi = priced;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (prices[mid] < v || (inclusive && prices[mid] == v)) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private final List<RawBsonDocument> documents;
+    private final BitSet all;
+    private final Map<String, Map<String, BitSet>> terms = new HashMap<>();
+    private final Map<String, NavigableMap<Double, BitSet>> counts = new HashMap<>();
+    private final Map<String, SortedColumn> columns = new HashMap<>();
+    // Máximos de los campos de UnitStats (en desarrollos, el de sus unidades)
+    private final Map<String, SortedColumn> highColumns = new HashMap<>();
+    private final UnitTable units;
+    private final TextIndex text;
+    private final GeoGrid geo;
+
+    private PropertyIndex(List<RawBsonDocument> documents) {
+        this.documents = documents;
+        this.all = new BitSet(documents.size());
+        all.set(0, documents.size());
+        for (String field : TERM_FIELDS) terms.put(field, new HashMap<>());
+        for (String field : COUNT_FIELDS) counts.put(field, new TreeMap<>());
+
+        for (int pos = 0; pos < documents.size(); pos++) addValues(pos, documents.get(pos));
+        for (String field : RANGE_FIELDS) columns.put(field, buildColumn(documents, doc -> UnitStats.sortValueOf(doc, field)));
+        for (String field : UnitStats.FIELDS) highColumns.put(field, buildColumn(documents, doc -> UnitStats.highOf(doc, field)));
+        this.units = buildUnits(documents);
+        this.text = TextIndex.build(documents, null);
+        this.geo = GeoGrid.build(documents);
+    }
+
+    /** El índice anterior con los cambios de {@code diff} */
+    private PropertyIndex(List<RawBsonDocument> documents, PropertyIndex previous, Diff diff) {
+        this.documents = documents;
+        this.all = new BitSet(documents.size());
+        all.set(0, documents.size());
+        for (String field : TERM_FIELDS) {
+            Map<String, BitSet> values = new HashMap<>();
+            previous.terms.get(field).forEach((value, bits) -> values.put(value, diff.remap(bits)));
+            terms.put(field, values);
+        }
+        for (String field : COUNT_FIELDS) {
+            NavigableMap<Double, BitSet> values = new TreeMap<>();
+            previous.counts.get(field).forEach((value, bits) -> values.put(value, diff.remap(bits)));
+            counts.put(field, values);
+        }
+
+        for (int pos : diff.added) addValues(pos, documents.get(pos));
+        // Valores que se quedaron sin documentos
+        for (Map<String, BitSet> values : terms.values()) values.values().removeIf(BitSet::isEmpty);
+        for (NavigableMap<Double, BitSet> values : counts.values()) values.values().removeIf(BitSet::isEmpty);
+
+        for (String field : RANGE_FIELDS) {
+            columns.put(field, previous.columns.get(field).patched(diff, documents, doc -> UnitStats.sortValueOf(doc, field)));
+        }
+        for (String field : UnitStats.FIELDS) {
+            highColumns.put(field, previous.highColumns.get(field).patched(diff, documents, doc -> UnitStats.highOf(doc, field)));
+        }
+        this.units = previous.units.patched(diff, documents);
+        this.text = TextIndex.build(documents, previous.text);
+        this.geo = previous.geo.patched(diff, documents);
+    }
+
+    /**
+     * Construye el índice de una lista de documentos (ordenada por _id)
+     */
+    public static PropertyIndex build(List<RawBsonDocument> documents) {
+        return build(documents, null);
+    }
+
+    /**
+     * Construye el índice a partir del anterior: solo se leen los documentos
+     * nuevos o modificados (los que no son la misma instancia)
+     */
+    public static PropertyIndex build(List<RawBsonDocument> documents, PropertyIndex previous) {
+        if (previous == null) return new PropertyIndex(documents);
+        return new PropertyIndex(documents, previous, Diff.of(previous.documents, documents));
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    public RawBsonDocument document(int position) {
+        return documents.get(position);
+    }
+
+    // ================= Consultas =================
+
+    /**
+     * Posiciones de los documentos que cumplen la consulta (equivale a
+     * {@link PropertyQuery#matches} sobre cada documento).
+     */
+    public BitSet filter(PropertyQuery query) {
+        BitSet result = (BitSet) all.clone();
+        if (!query.getTypes().isEmpty()) {
+            BitSet anyType = new BitSet();
+            for (String type : query.getTypes()) anyType.or(term("type", type));
+            result.and(anyType);
+        }
+        if (query.getSaleType() != null) result.and(term("saleType", query.getSaleType()));
+        for (String amenity : query.getAmenities()) result.and(term("amenities", amenity));
+
+        // Un desarrollo cumple el mínimo si alguna de sus unidades lo cumple
+        if (query.getBedrooms() != null) result.and(highColumns.get("bedrooms").range(query.getBedrooms().doubleValue(), null));
+        andAtLeast(result, "bathrooms", query.getBathrooms());
+        andAtLeast(result, "parking", query.getParking());
+
+        andRange(result, "price", query.getMinPrice(), query.getMaxPrice());
+        andRange(result, "area", query.getMinArea(), query.getMaxArea());
+        andRange(result, "pricePerSqm", query.getMinPricePerSqm(), query.getMaxPricePerSqm());
+        if (query.hasUnitCriteria()) result.and(units.matching(query));
+
+        if (query.getNearLat() != null) {
+            result.and(geo.near(query.getNearLat(), query.getNearLng(), query.getRadius()));
+        }
+        if (query.getWithin() != null) result.and(geo.within(query.getWithin()));
+
+        if (!query.getTextTerms().isEmpty()) result.and(text.matching(query.getTextTerms()));
+        return result;
+    }
+
+    /**
+     * Como {@link #page(BitSet, PropertyQuery.SortOrder, int, int)}, y con
+     * sort=relevance y texto libre ordena por puntuación BM25 (empate: más reciente primero).
+     */
+    public List<RawBsonDocument> page(BitSet matches, PropertyQuery query, int skip, int limit) {
+        if (query.getSort() != PropertyQuery.SortOrder.RELEVANCE || query.getTextTerms().isEmpty()) {
+            return page(matches, query.getSort(), skip, limit);
+        }
+        if (limit <= 0) return List.of();
+        Map<Integer, Double> scores = text.scores(query.getTextTerms(), matches);
+        List<Integer> ranked = new ArrayList<>(matches.cardinality());
+        for (int p = matches.nextSetBit(0); p >= 0; p = matches.nextSetBit(p + 1)) ranked.add(p);
+        ranked.sort((a, b) -> {
+            int cmp = Double.compare(scores.getOrDefault(b, 0.0), scores.getOrDefault(a, 0.0));
+            return cmp != 0 ? cmp : Integer.compare(b, a);
+        });
+        List<RawBsonDocument> page = new ArrayList<>();
+        for (int i = skip; i < ranked.size() && page.size() < limit; i++) page.add(documents.get(ranked.get(i)));
+        return page;
+    }
+
+    /**
+     * Documentos de {@code matches} en el orden de la consulta, saltando
+     * {@code skip} y devolviendo como máximo {@code limit}.
+     */
+    public List<RawBsonDocument> page(BitSet matches, PropertyQuery.SortOrder sort, int skip, int limit) {
+        if (limit <= 0) return List.of();
+        List<RawBsonDocument> page = new ArrayList<>(Math.min(limit, matches.cardinality()));
+        int[] skipped = {0};
+        forEachInOrder(matches, sort, pos -> {
+            if (skipped[0] < skip) {
+                skipped[0]++;
+                return true;
+            }
+            page.add(documents.get(pos));
+            return page.size() < limit;
+        });
+        return page;
+    }
+
+    /**
+     * Hasta {@code limit} documentos de {@code matches} posteriores al cursor de la consulta
+     */
+    public List<RawBsonDocument> pageAfterCursor(BitSet matches, PropertyQuery query, int limit) {
+        if (limit <= 0) return List.of();
+        List<RawBsonDocument> page = new ArrayList<>(Math.min(limit, matches.cardinality()));
+        boolean[] reached = {query.getCursor() == null};
+        forEachInOrder(matches, query.getSort(), pos -> {
+            RawBsonDocument doc = documents.get(pos);
+            // En orden, todo lo que sigue al primer documento posterior también lo es
+            if (!reached[0] && !query.isAfterCursor(doc)) return true;
+            reached[0] = true;
+            page.add(doc);
+            return page.size() < limit;
+        });
+        return page;
+    }
+
+    /**
+     * Conteo de documentos de {@code matches} por cada valor del campo
+     * (type, saleType, amenities, bedrooms, bathrooms o parking), en orden
+     * alfabético o numérico. Los valores sin documentos no aparecen.
+     */
+    public Map<String, Integer> countBy(String field, BitSet matches) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        if (terms.containsKey(field)) {
+            new TreeMap<>(terms.get(field)).forEach((value, bits) -> putCount(result, value, bits, matches));
+        } else if (counts.containsKey(field)) {
+            counts.get(field).forEach((value, bits) -> putCount(result, numberKey(value), bits, matches));
+        } else {
+            throw new IllegalArgumentException("Campo sin índice: " + field);
+        }
+        return result;
+    }
+
+    /**
+     * Número de documentos de {@code matches} con el campo numérico en [min, max)
+     * (null = sin límite). Para price, area y pricePerSqm.
+     */
+    public int countInRange(String field, BitSet matches, Double min, Double max) {
+        SortedColumn column = columns.get(field);
+        if (column == null) throw new IllegalArgumentException("Campo sin índice: " + field);
+        int from = min == null ? 0 : column.lowerBound(min);
+        int to = max == null ? column.values.length : column.lowerBound(max);
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (matches.get(column.positions[i])) n++;
+        }
+        return n;
+    }
+
+    // ================= Helpers =================
+
+    /**
+     * Diferencias entre los documentos de un índice y los de la nueva instantánea
+     * (ambos en orden de _id). Los modificados cuentan como borrados y nuevos.
+     */
+    static final class Diff {
+        // Posición nueva de cada posición anterior (-1 si se borró o modificó)
+        final int[] moved;
+        // Posiciones anteriores de los borrados o modificados
+        final int[] removed;
+        // Posiciones nuevas de los nuevos o modificados
+        final int[] added;
+        // Si algún documento sin cambios cambió de posición
+        final boolean shifted;
+
+        private Diff(int[] moved, int[] removed, int[] added, boolean shifted) {
+            this.moved = moved;
+            this.removed = removed;
+            this.added = added;
+            this.shifted = shifted;
+        }
+
+        static Diff of(List<RawBsonDocument> before, List<RawBsonDocument> after) {
+            int[] moved = new int[before.size()];
+            List<Integer> removed = new ArrayList<>();
+            List<Integer> added = new ArrayList<>();
+            boolean shifted = false;
+            int i = 0, j = 0;
+            while (i < before.size() || j < after.size()) {
+                RawBsonDocument old = i < before.size() ? before.get(i) : null;
+                RawBsonDocument doc = j < after.size() ? after.get(j) : null;
+                if (old != null && old == doc) {
+                    shifted |= i != j;
+                    moved[i++] = j++;
+                    continue;
+                }
+                int cmp = old == null ? 1 : doc == null ? -1 : idOf(old).compareTo(idOf(doc));
+                if (cmp <= 0) {
+                    moved[i] = -1;
+                    removed.add(i++);
+                }
+                if (cmp >= 0) added.add(j++);
+            }
+            return new Diff(moved, removed.stream().mapToInt(Integer::intValue).toArray(),
+                    added.stream().mapToInt(Integer::intValue).toArray(), shifted);
+        }
+
+        /** Las posiciones nuevas de los documentos sin cambios del conjunto */
+        BitSet remap(BitSet bits) {
+            if (!shifted) {
+                BitSet result = (BitSet) bits.clone();
+                for (int p : removed) result.clear(p);
+                return result;
+            }
+            BitSet result = new BitSet();
+            for (int p = bits.nextSetBit(0); p >= 0; p = bits.nextSetBit(p + 1)) {
+                if (moved[p] >= 0) result.set(moved[p]);
+            }
+            return result;
+        }
+    }
+
+    private void addValues(int pos, RawBsonDocument doc) {
+        for (String field : TERM_FIELDS) {
+            for (String value : stringsOf(doc.get(field))) {
+                terms.get(field).computeIfAbsent(value, k -> new BitSet()).set(pos);
+            }
+        }
+        for (String field : COUNT_FIELDS) {
+            Double value = numberOf(doc, field);
+            if (value != null) counts.get(field).computeIfAbsent(value, k -> new BitSet()).set(pos);
+        }
+    }
+
+    /**
+     * Recorre las posiciones en el orden de la consulta hasta que el visitante
+     * devuelva false. El orden coincide con {@link PropertyQuery#comparator()}:
+     * por _id es el de las posiciones; por campo, la columna ordenada con los
+     * documentos sin valor al principio (ascendente) o al final (descendente).
+     */
+    private void forEachInOrder(BitSet matches, PropertyQuery.SortOrder sort, IntPredicate visitor) {
+        if ("_id".equals(sort.field())) {
+            if (sort.ascending()) {
+                for (int p = matches.nextSetBit(0); p >= 0; p = matches.nextSetBit(p + 1)) {
+                    if (!visitor.test(p)) return;
+                }
+            } else {
+                for (int p = matches.previousSetBit(documents.size() - 1); p >= 0; p = matches.previousSetBit(p - 1)) {
+                    if (!visitor.test(p)) return;
+                }
+            }
+            return;
+        }
+
+        SortedColumn column = columns.get(sort.field());
+        BitSet missing = (BitSet) column.missing.clone();
+        missing.and(matches);
+        if (sort.ascending()) {
+            for (int p = missing.nextSetBit(0); p >= 0; p = missing.nextSetBit(p + 1)) {
+                if (!visitor.test(p)) return;
+            }
+            for (int i = 0; i < column.positions.length; i++) {
+                int p = column.positions[i];
+                if (matches.get(p) && !visitor.test(p)) return;
+            }
+        } else {
+            for (int i = column.positions.length - 1; i >= 0; i--) {
+                int p = column.positions[i];
+                if (matches.get(p) && !visitor.test(p)) return;
+            }
+            for (int p = missing.previousSetBit(documents.size() - 1); p >= 0; p = missing.previousSetBit(p - 1)) {
+                if (!visitor.test(p)) return;
+            }
+        }
+    }
+
+    private BitSet term(String field, String value) {
+        BitSet bits = terms.get(field).get(value);
+        return bits != null ? bits : new BitSet();
+    }
+
+    private void andAtLeast(BitSet result, String field, Integer min) {
+        if (min == null) return;
+        BitSet any = new BitSet();
+        for (BitSet bits : counts.get(field).tailMap(min.doubleValue(), true).values()) any.or(bits);
+        result.and(any);
+    }
+
+    /**
+     * Rango sobre el valor del documento; en los campos de UnitStats, solape de
+     * [mínimo, máximo] con [min, max]
+     */
+    private void andRange(BitSet result, String field, Double min, Double max) {
+        if (min == null && max == null) return;
+        SortedColumn high = highColumns.get(field);
+        if (high == null) {
+            result.and(columns.get(field).range(min, max));
+            return;
+        }
+        if (max != null) result.and(columns.get(field).range(null, max));
+        if (min != null) result.and(high.range(min, null));
+    }
+
+    private static void putCount(Map<String, Integer> result, String key, BitSet bits, BitSet matches) {
+        BitSet both = (BitSet) bits.clone();
+        both.and(matches);
+        int n = both.cardinality();
+        if (n > 0) result.put(key, n);
+    }
+
+    /** 3.0 -> "3"; 2.5 -> "2.5" */
+    public static String numberKey(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private static SortedColumn buildColumn(List<RawBsonDocument> documents, Function<RawBsonDocument, Double> valueOf) {
+        int n = documents.size();
+        Integer[] order = new Integer[n];
+        double[] raw = new double[n];
+        BitSet missing = new BitSet();
+        int withValue = 0;
+        for (int pos = 0; pos < n; pos++) {
+            Double value = valueOf.apply(documents.get(pos));
+            if (value == null) {
+                missing.set(pos);
+            } else {
+                raw[pos] = value;
+                order[withValue++] = pos;
+            }
+        }
+        Integer[] sorted = Arrays.copyOf(order, withValue);
+        // Empate por posición (= _id ascendente), igual que el desempate de la consulta
+        Arrays.sort(sorted, (a, b) -> {
+            int cmp = Double.compare(raw[a], raw[b]);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        int[] positions = new int[withValue];
+        double[] values = new double[withValue];
+        for (int i = 0; i < withValue; i++) {
+            positions[i] = sorted[i];
+            values[i] = raw[sorted[i]];
+        }
+        return new SortedColumn(positions, values, missing);
+    }
+
+    // Con precio primero y por precio; sin precio al final. A igual precio, por
+    // documento (la ordenación es estable: las unidades de uno quedan en su orden)
+    private static final Comparator<double[]> ROW_ORDER = (a, b) -> {
+        boolean na = Double.isNaN(a[1]), nb = Double.isNaN(b[1]);
+        if (na != nb) return na ? 1 : -1;
+        int cmp = Double.compare(a[1], b[1]);
+        return cmp != 0 ? cmp : Double.compare(a[0], b[0]);
+    };
+
+    private static UnitTable buildUnits(List<RawBsonDocument> documents) {
+        List<double[]> rows = new ArrayList<>();
+        for (int pos = 0; pos < documents.size(); pos++) addRows(rows, pos, documents.get(pos));
+        rows.sort(ROW_ORDER);
+        return UnitTable.of(rows);
+    }
+
+    /** Filas {posición, precio, habitaciones, área} de las unidades del documento */
+    private static void addRows(List<double[]> rows, int pos, RawBsonDocument doc) {
+        BsonValue list = doc.get("units");
+        if (list == null || !list.isArray()) return;
+        for (BsonValue unit : list.asArray()) {
+            if (!unit.isDocument()) continue;
+            BsonDocument u = unit.asDocument();
+            rows.add(new double[]{pos, numberOrNaN(u, "price"), numberOrNaN(u, "bedrooms"), numberOrNaN(u, "area")});
+        }
+    }
+
+    private static ObjectId idOf(RawBsonDocument doc) {
+        return doc.getObjectId("_id").getValue();
+    }
+
+    private static double numberOrNaN(BsonDocument doc, String field) {
+        Double value = numberOf(doc, field);
+        return value != null ? value : Double.NaN;
+    }
+
+    private static Double numberOf(BsonDocument doc, String field) {
+        BsonValue v = doc.get(field);
+        return (v != null && v.isNumber()) ? v.asNumber().doubleValue() : null;
+    }
+
+    private static List<String> stringsOf(BsonValue value) {
+        if (value == null) return Collections.emptyList();
+        if (value.isString()) return List.of(value.asString().getValue());
+        if (value.isArray()) {
+            List<String> values = new ArrayList<>();
+            for (BsonValue item : value.asArray()) {
+                if (item.isString()) values.add(item.asString().getValue());
+            }
+            return values;
+        }
+        return Collections.emptyList();
+    }
+}
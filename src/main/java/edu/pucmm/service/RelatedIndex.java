@@ -0,0 +1,468 @@
+package edu.pucmm.service;
+
+import edu.pucmm.model.Property;
+import edu.pucmm.util.Geo;
+import edu.pucmm.util.PropertyQuery;
+import edu.pucmm.util.TextAnalyzer;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Propiedades similares ("related" del detalle) de una instantánea del catálogo.
+ *
+ * Cada propiedad es un vector de características:
+ * - tipo (Solar y Solares cuentan como uno) y amenidades: one-hot
+ * - log del precio, log del área y habitaciones: estandarizados con la media y
+ *   la desviación del catálogo
+ * - ubicación: punto en la esfera unidad escalado para que {@link #LOCATION_SCALE_M}
+ *   metros valgan una unidad
+ * Los valores que faltan toman la media del catálogo, así que no acercan ni alejan.
+ *
+ * Los vecinos más cercanos (distancia euclídea) se calculan para todas las
+ * propiedades al construir el índice. Solo se comparan propiedades de la misma
+ * transacción (no se recomienda un alquiler junto a una venta), lo que parte el
+ * catálogo en grupos; dentro de cada grupo la búsqueda es exhaustiva sobre
+ * vectores contiguos en memoria, porque con tantas dimensiones un árbol k-d no
+ * descarta casi nada.
+ *
+ * Inmutable, una instancia por instantánea. Al reconstruirse tras un cambio
+ * solo se calculan los vecinos de los documentos nuevos o modificados y se
+ * rehacen las listas que contenían alguno modificado o borrado; el resto de
+ * listas solo comprueba si los nuevos vectores entran. Esos vectores se
+ * estandarizan con las medias de la última construcción completa, que se repite
+ * cuando los cambios acumulados son muchos o aparece un tipo o amenidad nuevo.
+ */
+public final class RelatedIndex {
+
+    public static final int MAX_RELATED = 4;
+    static final double LOCATION_SCALE_M = 5000;
+    private static final double TYPE_WEIGHT = 1.5;
+    private static final double PRICE_WEIGHT = 2.0;
+    private static final double AREA_WEIGHT = 1.0;
+    private static final double BEDROOMS_WEIGHT = 1.0;
+    private static final double AMENITY_WEIGHT = 0.5;
+    private static final double LOCATION_WEIGHT = 1.5;
+    private static final int NUMERIC = 3;
+    private static final int LOCATION = 3;
+    // Documentos cambiados sin volver a estandarizar (además de una cuarta parte del catálogo)
+    private static final int DRIFT_SLACK = 16;
+
+    /** Lo que se necesita de un documento: características en bruto y la tarjeta a mostrar */
+    private static final class Extracted {
+        final String saleType;
+        final String type;
+        final double logPrice;
+        final double logArea;
+        final double bedrooms;
+        final double[] unitPoint;
+        final Set<String> amenities;
+        final Property.Related related;
+
+        Extracted(String saleType, String type, double logPrice, double logArea, double bedrooms,
+                  double[] unitPoint, Set<String> amenities, Property.Related related) {
+            this.saleType = saleType;
+            this.type = type;
+            this.logPrice = logPrice;
+            this.logArea = logArea;
+            this.bedrooms = bedrooms;
+            this.unitPoint = unitPoint;
+            this.amenities = amenities;
+            this.related = related;
+        }
+    }
+
+    /** Dimensiones y escalas con las que se construyen los vectores */
+    private static final class Space {
+        final Map<String, Integer> dimensions = new HashMap<>();
+        final int base;
+        final int width;
+        final double[][] stats;
+        final double[] centroid;
+
+        Space(Extracted[] extracted) {
+            // Dimensiones: tipos, amenidades, numéricas y ubicación
+            for (Extracted e : extracted) {
+                if (e.type != null) dimensions.putIfAbsent("t:" + e.type, dimensions.size());
+                for (String amenity : e.amenities) dimensions.putIfAbsent("a:" + amenity, dimensions.size());
+            }
+            base = dimensions.size();
+            width = base + NUMERIC + LOCATION;
+            stats = new double[][]{stats(extracted, e -> e.logPrice), stats(extracted, e -> e.logArea),
+                    stats(extracted, e -> e.bedrooms)};
+            centroid = centroid(extracted);
+        }
+
+        /** Si el documento no necesita dimensiones nuevas */
+        boolean covers(Extracted e) {
+            if (e.type != null && !dimensions.containsKey("t:" + e.type)) return false;
+            for (String amenity : e.amenities) {
+                if (!dimensions.containsKey("a:" + amenity)) return false;
+            }
+            return true;
+        }
+
+        void fill(Extracted e, double[] vectors, int offset) {
+            if (e.type != null) vectors[offset + dimensions.get("t:" + e.type)] = TYPE_WEIGHT;
+            for (String amenity : e.amenities) vectors[offset + dimensions.get("a:" + amenity)] = AMENITY_WEIGHT;
+            double[] numeric = {e.logPrice, e.logArea, e.bedrooms};
+            double[] weights = {PRICE_WEIGHT, AREA_WEIGHT, BEDROOMS_WEIGHT};
+            for (int i = 0; i < NUMERIC; i++) {
+                // Sin valor: la media (0 tras estandarizar)
+                if (!Double.isNaN(numeric[i])) {
+                    vectors[offset + base + i] = weights[i] * (numeric[i] - stats[i][0]) / stats[i][1];
+                }
+            }
+            double[] point = e.unitPoint != null ? e.unitPoint : centroid;
+            double scale = LOCATION_WEIGHT * Geo.EARTH_RADIUS_M / LOCATION_SCALE_M;
+            for (int i = 0; i < LOCATION; i++) vectors[offset + base + NUMERIC + i] = scale * point[i];
+        }
+    }
+
+    /** Vecinos de una propiedad (posiciones en el índice), del más cercano al más lejano */
+    private static final class Neighbours {
+        final int[] positions;
+        final double[] distances;
+
+        Neighbours(int[] positions, double[] distances) {
+            this.positions = positions;
+            this.distances = distances;
+        }
+
+        /**
+         * Con el candidato si queda entre los MAX_RELATED más cercanos (a igual
+         * distancia, por posición, como en {@link #nearest}); si no, this
+         */
+        Neighbours offer(int candidate, double distance) {
+            int at = positions.length;
+            while (at > 0 && (distances[at - 1] > distance
+                    || (distances[at - 1] == distance && positions[at - 1] > candidate))) {
+                at--;
+            }
+            if (at >= MAX_RELATED) return this;
+            int length = Math.min(MAX_RELATED, positions.length + 1);
+            int[] p = new int[length];
+            double[] d = new double[length];
+            System.arraycopy(positions, 0, p, 0, at);
+            System.arraycopy(distances, 0, d, 0, at);
+            p[at] = candidate;
+            d[at] = distance;
+            System.arraycopy(positions, at, p, at + 1, length - at - 1);
+            System.arraycopy(distances, at, d, at + 1, length - at - 1);
+            return new Neighbours(p, d);
+        }
+    }
+
+    private final List<RawBsonDocument> documents;
+    private final Extracted[] extracted;
+    private final Space space;
+    private final double[] vectors;
+    private final Neighbours[] neighbours;
+    // Documentos cambiados desde la última construcción completa
+    private final int drift;
+    private final Map<ObjectId, List<Property.Related>> related;
+
+    private RelatedIndex(List<RawBsonDocument> documents, Extracted[] extracted, Space space, double[] vectors,
+                         Neighbours[] neighbours, int drift, Map<ObjectId, List<Property.Related>> related) {
+        this.documents = documents;
+        this.extracted = extracted;
+        this.space = space;
+        this.vectors = vectors;
+        this.neighbours = neighbours;
+        this.drift = drift;
+        this.related = related;
+    }
+
+    /**
+     * Construye los vectores y calcula los vecinos de las propiedades. Con el
+     * índice anterior solo se recalcula lo afectado por los documentos que
+     * cambiaron; en una construcción completa, los que siguen siendo la misma
+     * instancia no se vuelven a leer.
+     */
+    public static RelatedIndex build(List<RawBsonDocument> documents, RelatedIndex previous) {
+        if (previous != null) {
+            RelatedIndex patched = previous.patch(documents);
+            if (patched != null) return patched;
+        }
+        return full(documents, previous);
+    }
+
+    private static RelatedIndex full(List<RawBsonDocument> documents, RelatedIndex previous) {
+        Map<RawBsonDocument, Extracted> reusable = new IdentityHashMap<>();
+        if (previous != null) {
+            for (int pos = 0; pos < previous.documents.size(); pos++) {
+                reusable.put(previous.documents.get(pos), previous.extracted[pos]);
+            }
+        }
+        int n = documents.size();
+        Extracted[] extracted = new Extracted[n];
+        for (int pos = 0; pos < n; pos++) {
+            RawBsonDocument doc = documents.get(pos);
+            Extracted e = reusable.get(doc);
+            extracted[pos] = e != null ? e : extract(doc);
+        }
+
+        Space space = new Space(extracted);
+        int width = space.width;
+        double[] vectors = new double[n * width];
+        for (int pos = 0; pos < n; pos++) space.fill(extracted[pos], vectors, pos * width);
+
+        Neighbours[] neighbours = new Neighbours[n];
+        Map<ObjectId, List<Property.Related>> related = new HashMap<>(n * 2);
+        for (int[] members : groups(extracted).values()) {
+            for (int pos : members) {
+                neighbours[pos] = nearest(vectors, width, pos, members);
+                related.put(idOf(documents.get(pos)), cards(extracted, neighbours[pos]));
+            }
+        }
+        return new RelatedIndex(documents, extracted, space, vectors, neighbours, 0, related);
+    }
+
+    /**
+     * Índice de {@code documents} a partir de este (ambas listas en orden de _id),
+     * o null si conviene una construcción completa
+     */
+    private RelatedIndex patch(List<RawBsonDocument> documents) {
+        int n = documents.size();
+        Extracted[] extracted = new Extracted[n];
+        // Posición en este índice de cada documento sin cambios (-1 si es nuevo o cambió) y al revés
+        int[] oldPos = new int[n];
+        int[] newPos = new int[this.documents.size()];
+        Arrays.fill(newPos, -1);
+        int changed = 0, removed = 0;
+        int i = 0, j = 0;
+        while (i < this.documents.size() || j < n) {
+            RawBsonDocument old = i < this.documents.size() ? this.documents.get(i) : null;
+            RawBsonDocument doc = j < n ? documents.get(j) : null;
+            if (old != null && old == doc) {
+                extracted[j] = this.extracted[i];
+                oldPos[j] = i;
+                newPos[i++] = j++;
+                continue;
+            }
+            int cmp = old == null ? 1 : doc == null ? -1 : idOf(old).compareTo(idOf(doc));
+            if (cmp <= 0) {
+                i++;
+                removed++;
+            }
+            if (cmp >= 0) {
+                extracted[j] = extract(doc);
+                if (!space.covers(extracted[j])) return null;
+                oldPos[j++] = -1;
+                changed++;
+            }
+        }
+        if (changed == 0 && removed == 0) {
+            return new RelatedIndex(documents, extracted, space, vectors, neighbours, drift, related);
+        }
+        int drift = this.drift + changed + removed;
+        if (drift > n / 4 + DRIFT_SLACK) return null;
+
+        int width = space.width;
+        double[] vectors = new double[n * width];
+        for (int pos = 0; pos < n; pos++) {
+            if (oldPos[pos] >= 0) System.arraycopy(this.vectors, oldPos[pos] * width, vectors, pos * width, width);
+            else space.fill(extracted[pos], vectors, pos * width);
+        }
+
+        Map<ObjectId, List<Property.Related>> related = new HashMap<>(this.related);
+        for (int old = 0; old < newPos.length; old++) {
+            if (newPos[old] < 0) related.remove(idOf(this.documents.get(old)));
+        }
+        Neighbours[] neighbours = new Neighbours[n];
+        for (int[] members : groups(extracted).values()) {
+            int[] fresh = Arrays.stream(members).filter(pos -> oldPos[pos] < 0).toArray();
+            for (int pos : members) {
+                Neighbours current = oldPos[pos] < 0 ? null : moved(this.neighbours[oldPos[pos]], newPos);
+                if (current == null) {
+                    // Nuevo, modificado o alguno de sus vecinos ya no es el que era
+                    current = nearest(vectors, width, pos, members);
+                } else {
+                    Neighbours before = current;
+                    for (int candidate : fresh) current = current.offer(candidate, distance(vectors, width, pos, candidate));
+                    if (current == before) {
+                        neighbours[pos] = current;
+                        continue;
+                    }
+                }
+                neighbours[pos] = current;
+                related.put(idOf(documents.get(pos)), cards(extracted, current));
+            }
+        }
+        return new RelatedIndex(documents, extracted, space, vectors, neighbours, drift, related);
+    }
+
+    /**
+     * Hasta {@link #MAX_RELATED} propiedades similares, la más parecida primero
+     * (vacío si el id no está en el catálogo)
+     */
+    public List<Property.Related> of(ObjectId id) {
+        return related.getOrDefault(id, List.of());
+    }
+
+    // ================= Helpers =================
+
+    /** Posiciones de cada transacción (de menor a mayor) */
+    private static Map<String, int[]> groups(Extracted[] extracted) {
+        Map<String, List<Integer>> groups = new HashMap<>();
+        for (int pos = 0; pos < extracted.length; pos++) {
+            groups.computeIfAbsent(String.valueOf(extracted[pos].saleType), k -> new ArrayList<>()).add(pos);
+        }
+        Map<String, int[]> result = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            result.put(group.getKey(), group.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return result;
+    }
+
+    /** Los vecinos con las posiciones del nuevo índice, o null si alguno cambió o ya no está */
+    private static Neighbours moved(Neighbours neighbours, int[] newPos) {
+        int[] positions = new int[neighbours.positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = newPos[neighbours.positions[i]];
+            if (positions[i] < 0) return null;
+        }
+        return new Neighbours(positions, neighbours.distances);
+    }
+
+    private static List<Property.Related> cards(Extracted[] extracted, Neighbours neighbours) {
+        List<Property.Related> cards = new ArrayList<>(neighbours.positions.length);
+        for (int other : neighbours.positions) cards.add(extracted[other].related);
+        return List.copyOf(cards);
+    }
+
+    /** Los MAX_RELATED miembros más cercanos a pos (sin contarlo), de menor a mayor distancia */
+    private static Neighbours nearest(double[] vectors, int width, int pos, int[] members) {
+        int k = Math.min(MAX_RELATED, members.length - 1);
+        if (k <= 0) return new Neighbours(new int[0], new double[0]);
+        int[] best = new int[k];
+        double[] bestDistance = new double[k];
+        Arrays.fill(bestDistance, Double.POSITIVE_INFINITY);
+        int from = pos * width;
+        for (int other : members) {
+            if (other == pos) continue;
+            double d = 0;
+            int to = other * width;
+            for (int i = 0; i < width && d < bestDistance[k - 1]; i++) {
+                double diff = vectors[from + i] - vectors[to + i];
+                d += diff * diff;
+            }
+            if (d >= bestDistance[k - 1]) continue;
+            // Inserción ordenada; a igual distancia queda antes el de menor posición (_id más antiguo)
+            int i = k - 1;
+            while (i > 0 && bestDistance[i - 1] > d) {
+                bestDistance[i] = bestDistance[i - 1];
+                best[i] = best[i - 1];
+                i--;
+            }
+            bestDistance[i] = d;
+            best[i] = other;
+        }
+        int found = 0;
+        while (found < k && bestDistance[found] < Double.POSITIVE_INFINITY) found++;
+        return new Neighbours(Arrays.copyOf(best, found), Arrays.copyOf(bestDistance, found));
+    }
+
+    /** Distancia al cuadrado, sumada en el mismo orden que en {@link #nearest} */
+    private static double distance(double[] vectors, int width, int a, int b) {
+        double d = 0;
+        for (int i = 0; i < width; i++) {
+            double diff = vectors[a * width + i] - vectors[b * width + i];
+            d += diff * diff;
+        }
+        return d;
+    }
+
+    private static ObjectId idOf(RawBsonDocument doc) {
+        return doc.getObjectId("_id").getValue();
+    }
+
+    private interface Feature {
+        double of(Extracted e);
+    }
+
+    /** {media, desviación} de los valores presentes (desviación 1 si no hay variación) */
+    private static double[] stats(Extracted[] extracted, Feature feature) {
+        double sum = 0, sumSq = 0;
+        int count = 0;
+        for (Extracted e : extracted) {
+            double v = feature.of(e);
+            if (Double.isNaN(v)) continue;
+            sum += v;
+            sumSq += v * v;
+            count++;
+        }
+        if (count == 0) return new double[]{0, 1};
+        double mean = sum / count;
+        double deviation = Math.sqrt(Math.max(0, sumSq / count - mean * mean));
+        return new double[]{mean, deviation > 1e-9 ? deviation : 1};
+    }
+
+    /** Punto medio (en la esfera unidad) de las propiedades con ubicación */
+    private static double[] centroid(Extracted[] extracted) {
+        double[] sum = new double[LOCATION];
+        int count = 0;
+        for (Extracted e : extracted) {
+            if (e.unitPoint == null) continue;
+            for (int i = 0; i < LOCATION; i++) sum[i] += e.unitPoint[i];
+            count++;
+        }
+        if (count > 0) for (int i = 0; i < LOCATION; i++) sum[i] /= count;
+        return sum;
+    }
+
+    private static Extracted extract(RawBsonDocument doc) {
+        String id = doc.getObjectId("_id").getValue().toHexString();
+        String saleType = string(doc.get("saleType"));
+        String type = string(doc.get("type"));
+        if (type != null) {
+            type = TextAnalyzer.fold(type);
+            if (type.equals("solares")) type = "solar";
+        }
+        double price = number(doc.get("price"));
+        double area = number(doc.get("area"));
+        double[] point = Geo.pointOf(doc);
+        double[] unitPoint = null;
+        if (point != null && Geo.isValid(point[0], point[1])) {
+            double lat = Math.toRadians(point[0]), lng = Math.toRadians(point[1]);
+            unitPoint = new double[]{Math.cos(lat) * Math.cos(lng), Math.cos(lat) * Math.sin(lng), Math.sin(lat)};
+        }
+        Set<String> amenities = new LinkedHashSet<>();
+        for (String amenity : PropertyQuery.textsOf(doc.get("amenities"))) {
+            if (!amenity.isBlank()) amenities.add(TextAnalyzer.fold(amenity.trim()));
+        }
+
+        Property.Related card = new Property.Related();
+        card.setTitle(string(doc.get("title")));
+        if (price > 0) card.setPrice(price);
+        card.setPriceFormatted(string(doc.get("priceFormatted")));
+        BsonValue images = doc.get("images");
+        if (images != null && images.isArray() && !images.asArray().isEmpty()) {
+            card.setThumb(string(images.asArray().get(0)));
+        }
+        card.setUrl("/property/?id=" + id);
+
+        return new Extracted(saleType != null ? TextAnalyzer.fold(saleType) : null, type,
+                price > 0 ? Math.log(price) : Double.NaN,
+                area > 0 ? Math.log(area) : Double.NaN,
+                number(doc.get("bedrooms")),
+                unitPoint, amenities, card);
+    }
+
+    private static String string(BsonValue v) {
+        return v != null && v.isString() && !v.asString().getValue().isBlank() ? v.asString().getValue().trim() : null;
+    }
+
+    private static double number(BsonValue v) {
+        return v != null && v.isNumber() ? v.asNumber().doubleValue() : Double.NaN;
+    }
+}
@@ -0,0 +1,103 @@
+package edu.pucmm.service;
+
+import edu.pucmm.util.Compression;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché de respuestas JSON ya serializadas, con sus variantes gzip y brotli
+ * calculadas una sola vez.
+ *
+ * Cada entrada recuerda la versión del catálogo con que se generó; si el
+ * catálogo cambió, la entrada se descarta al leerla. Así una respuesta que
+ * se estaba generando durante una escritura nunca se sirve después de ella.
+ * El tamaño está acotado (LRU por número de entradas).
+ */
+public class ResponseCache {
+
+    /**
+     * Respuesta lista para enviar: cuerpo sin comprimir, variantes comprimidas
+     * (null si no compensan o no hay soporte) y su ETag.
+     */
+    public static class CachedResponse {
+        private final byte[] identity;
+        private final byte[] gzip;
+        private final byte[] brotli;
+        private final String etag;
+        private final long version;
+
+        CachedResponse(byte[] identity, byte[] gzip, byte[] brotli, String etag, long version) {
+            this.identity = identity;
+            this.gzip = gzip;
+            this.brotli = brotli;
+            this.etag = etag;
+            this.version = version;
+        }
+
+        public byte[] getIdentity() { return identity; }
+        public byte[] getGzip() { return gzip; }
+        public byte[] getBrotli() { return brotli; }
+        public String getEtag() { return etag; }
+    }
+
+    private final CatalogVersion catalogVersion;
+    private final int brotliQuality;
+    private final int minCompressBytes;
+    private final Map<String, CachedResponse> entries;
+
+    public ResponseCache(CatalogVersion catalogVersion, int maxEntries, int brotliQuality, int minCompressBytes) {
+        this.catalogVersion = catalogVersion;
+        this.brotliQuality = brotliQuality;
+        this.minCompressBytes = minCompressBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Respuesta vigente para la clave, o null si no existe o es de una versión anterior.
+     */
+    public synchronized CachedResponse get(String key) {
+        CachedResponse cached = entries.get(key);
+        if (cached == null) return null;
+        if (cached.version != catalogVersion.current()) {
+            entries.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * Comprime y guarda una respuesta generada con los datos de {@code version}
+     * (la versión leída ANTES de consultar los datos). La compresión se hace
+     * fuera del bloqueo.
+     */
+    public CachedResponse put(String key, long version, byte[] json, String etag) {
+        byte[] gzip = null;
+        byte[] brotli = null;
+        if (json.length >= minCompressBytes) {
+            gzip = Compression.gzip(json);
+            brotli = Compression.brotli(json, brotliQuality);
+        }
+        CachedResponse cached = new CachedResponse(json, gzip, brotli, etag, version);
+        synchronized (this) {
+            if (version == catalogVersion.current()) entries.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Vacía la caché (tras una escritura)
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
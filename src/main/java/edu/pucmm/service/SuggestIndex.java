@@ -0,0 +1,406 @@
+package edu.pucmm.service;
+
+import edu.pucmm.model.Suggestion;
+import edu.pucmm.util.PropertyQuery;
+import edu.pucmm.util.TextAnalyzer;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Autocompletado del buscador: ubicaciones (cada parte de address separada por
+ * comas y units[].zone) y títulos de una {@link PropertyCatalog.Snapshot}.
+ *
+ * Cada texto se normaliza (minúsculas, sin acentos) y se indexa desde el inicio
+ * de cada palabra ("Ensanche Naco" responde a "ens" y a "nac"). Las claves se
+ * guardan ordenadas en un array, así que un prefijo es un rango que se encuentra
+ * por búsqueda binaria; para los prefijos de una y dos letras, cuyos rangos son
+ * los más largos, el resultado se calcula al construir el índice.
+ *
+ * Inmutable, una instancia por instantánea. Al reconstruirse tras un cambio
+ * solo se aplican las diferencias: se descuentan los textos de los documentos
+ * borrados o modificados, se suman los de los nuevos o modificados, se insertan
+ * o quitan de las claves las entradas que aparecen o desaparecen y se vuelven a
+ * calcular los prefijos cortos de las entradas cuyo número cambió.
+ */
+public final class SuggestIndex {
+
+    public static final int MAX_LIMIT = 10;
+    private static final int PRECOMPUTED_PREFIX = 2;
+    // Entradas sin propiedades toleradas (además de la mitad de las vivas) antes de reconstruir
+    private static final int DEAD_SLACK = 64;
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+
+    /** Textos de un documento: título y ubicaciones */
+    private static final class Extracted {
+        final String id;
+        final String title;
+        final List<String> locations;
+
+        Extracted(String id, String title, List<String> locations) {
+            this.id = id;
+            this.title = title;
+            this.locations = locations;
+        }
+    }
+
+    /**
+     * Sugerencia con el número de propiedades que la mencionan. Solo se modifica
+     * mientras se construye el índice (una copia si viene del anterior).
+     */
+    private static final class Entry {
+        final String text;
+        final String type;
+        int count;
+        String id;
+
+        Entry(String text, String type) {
+            this.text = text;
+            this.type = type;
+        }
+
+        Entry copy() {
+            Entry e = new Entry(text, type);
+            e.count = count;
+            e.id = id;
+            return e;
+        }
+    }
+
+    // Más propiedades primero; a igualdad, ubicaciones antes que títulos y los textos más cortos
+    private static final Comparator<Entry> RANK = Comparator.<Entry>comparingInt(e -> -e.count)
+            .thenComparing(e -> Suggestion.TITLE.equals(e.type))
+            .thenComparingInt(e -> e.text.length())
+            .thenComparing(e -> e.text);
+
+    private final List<RawBsonDocument> documents;
+    private final Extracted[] extracted;
+    // Las entradas no cambian de índice; las que se quedan sin propiedades (count 0)
+    // siguen aquí pero sin claves, hasta la siguiente reconstrucción completa
+    private final Entry[] entries;
+    private final Map<String, Integer> byKey;
+    private final int dead;
+    private final String[] keys;
+    private final int[] keyEntry;
+    private final Map<String, int[]> precomputed;
+
+    private SuggestIndex(List<RawBsonDocument> documents, Extracted[] extracted, Entry[] entries,
+                         Map<String, Integer> byKey, int dead, String[] keys, int[] keyEntry,
+                         Map<String, int[]> precomputed) {
+        this.documents = documents;
+        this.extracted = extracted;
+        this.entries = entries;
+        this.byKey = byKey;
+        this.dead = dead;
+        this.keys = keys;
+        this.keyEntry = keyEntry;
+        this.precomputed = precomputed;
+    }
+
+    /**
+     * Construye el índice de los documentos (en orden de _id). Con el índice
+     * anterior solo se aplican las diferencias con sus documentos; si acumula
+     * demasiadas entradas vacías se reconstruye, sin volver a leer los documentos
+     * que siguen siendo la misma instancia.
+     */
+    public static SuggestIndex build(List<RawBsonDocument> documents, SuggestIndex previous) {
+        if (previous != null && previous.dead <= (previous.entries.length - previous.dead) / 2 + DEAD_SLACK) {
+            return previous.patch(documents);
+        }
+        return full(documents, previous);
+    }
+
+    private static SuggestIndex full(List<RawBsonDocument> documents, SuggestIndex previous) {
+        Map<RawBsonDocument, Extracted> reusable = new IdentityHashMap<>();
+        if (previous != null) {
+            for (int pos = 0; pos < previous.documents.size(); pos++) {
+                reusable.put(previous.documents.get(pos), previous.extracted[pos]);
+            }
+        }
+
+        Extracted[] extracted = new Extracted[documents.size()];
+        List<Entry> entries = new ArrayList<>();
+        Map<String, Integer> byKey = new HashMap<>();
+        for (int pos = 0; pos < documents.size(); pos++) {
+            RawBsonDocument doc = documents.get(pos);
+            Extracted e = reusable.get(doc);
+            if (e == null) e = extract(doc);
+            extracted[pos] = e;
+            count(e, 1, entries, byKey, null);
+        }
+
+        List<String> keyList = new ArrayList<>();
+        List<Integer> entryList = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            for (String key : wordStarts(normalize(entries.get(i).text))) {
+                keyList.add(key);
+                entryList.add(i);
+            }
+        }
+        Integer[] order = new Integer[keyList.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing(keyList::get));
+        String[] keys = new String[order.length];
+        int[] keyEntry = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = keyList.get(order[i]);
+            keyEntry[i] = entryList.get(order[i]);
+        }
+
+        SuggestIndex index = new SuggestIndex(documents, extracted, entries.toArray(new Entry[0]), byKey, 0,
+                keys, keyEntry, new HashMap<>());
+        for (String key : keys) index.precompute(key);
+        return index;
+    }
+
+    /**
+     * Índice de {@code documents} a partir de este: recorre las dos listas (ambas
+     * en orden de _id) y aplica solo lo que cambió
+     */
+    private SuggestIndex patch(List<RawBsonDocument> documents) {
+        int n = documents.size();
+        Extracted[] extracted = new Extracted[n];
+        List<Extracted> removed = new ArrayList<>();
+        List<Extracted> added = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < this.documents.size() || j < n) {
+            RawBsonDocument old = i < this.documents.size() ? this.documents.get(i) : null;
+            RawBsonDocument doc = j < n ? documents.get(j) : null;
+            if (old != null && old == doc) {
+                extracted[j++] = this.extracted[i++];
+                continue;
+            }
+            int cmp = old == null ? 1 : doc == null ? -1 : idOf(old).compareTo(idOf(doc));
+            if (cmp <= 0) removed.add(this.extracted[i++]);
+            if (cmp >= 0) {
+                extracted[j] = extract(doc);
+                added.add(extracted[j++]);
+            }
+        }
+        if (removed.isEmpty() && added.isEmpty()) {
+            return new SuggestIndex(documents, extracted, entries, byKey, dead, keys, keyEntry, precomputed);
+        }
+
+        // Copias de las entradas que cambian; las demás se comparten con este índice
+        List<Entry> entries = new ArrayList<>(Arrays.asList(this.entries));
+        Map<String, Integer> byKey = new HashMap<>(this.byKey);
+        Map<Integer, Entry> touched = new HashMap<>();
+        for (Extracted e : removed) count(e, -1, entries, byKey, touched);
+        for (Extracted e : added) count(e, 1, entries, byKey, touched);
+        assignTitleIds(extracted, entries, byKey, touched);
+
+        // Entradas que aparecen (sus claves, ordenadas) y que desaparecen
+        List<String> bornKeys = new ArrayList<>();
+        List<Integer> bornEntries = new ArrayList<>();
+        List<Integer> changed = new ArrayList<>();
+        int dead = this.dead;
+        for (Map.Entry<Integer, Entry> t : touched.entrySet()) {
+            int idx = t.getKey();
+            int before = idx < this.entries.length ? this.entries[idx].count : 0;
+            int after = t.getValue().count;
+            if (before == after) continue;
+            changed.add(idx);
+            if (before == 0) {
+                if (idx < this.entries.length) dead--;
+                for (String key : wordStarts(normalize(t.getValue().text))) {
+                    bornKeys.add(key);
+                    bornEntries.add(idx);
+                }
+            } else if (after == 0) {
+                dead++;
+            }
+        }
+        Integer[] order = new Integer[bornKeys.size()];
+        for (int k = 0; k < order.length; k++) order[k] = k;
+        Arrays.sort(order, Comparator.comparing(bornKeys::get));
+
+        Entry[] all = entries.toArray(new Entry[0]);
+        String[] keys = new String[this.keys.length + order.length];
+        int[] keyEntry = new int[keys.length];
+        int size = 0, b = 0;
+        for (int k = 0; k <= this.keys.length; k++) {
+            // Las nuevas que van antes de esta clave
+            while (b < order.length && (k == this.keys.length || bornKeys.get(order[b]).compareTo(this.keys[k]) < 0)) {
+                keys[size] = bornKeys.get(order[b]);
+                keyEntry[size++] = bornEntries.get(order[b++]);
+            }
+            if (k < this.keys.length && all[this.keyEntry[k]].count > 0) {
+                keys[size] = this.keys[k];
+                keyEntry[size++] = this.keyEntry[k];
+            }
+        }
+
+        SuggestIndex index = new SuggestIndex(documents, extracted, all, byKey, dead,
+                Arrays.copyOf(keys, size), Arrays.copyOf(keyEntry, size), new HashMap<>(precomputed));
+        for (int idx : changed) {
+            for (String key : wordStarts(normalize(all[idx].text))) index.precompute(key);
+        }
+        return index;
+    }
+
+    /**
+     * Hasta {@code limit} sugerencias (máx. {@link #MAX_LIMIT}) para lo escrito,
+     * ordenadas por número de propiedades
+     */
+    public List<Suggestion> suggest(String text, int limit) {
+        String prefix = text == null ? "" : normalize(text);
+        if (prefix.isEmpty() || limit <= 0) return List.of();
+        int[] ranked = prefix.length() <= PRECOMPUTED_PREFIX
+                ? precomputed.getOrDefault(prefix, new int[0])
+                : rank(prefix);
+        List<Suggestion> result = new ArrayList<>(Math.min(limit, ranked.length));
+        for (int i = 0; i < ranked.length && i < limit; i++) {
+            Entry e = entries[ranked[i]];
+            result.add(new Suggestion(e.text, e.type, e.count, e.id));
+        }
+        return result;
+    }
+
+    // ================= Helpers =================
+
+    /** Entradas con alguna clave que empieza por el prefijo, las mejores primero */
+    private int[] rank(String prefix) {
+        BitSet seen = new BitSet();
+        for (int i = lowerBound(prefix); i < keys.length && keys[i].startsWith(prefix); i++) {
+            seen.set(keyEntry[i]);
+        }
+        return seen.stream().boxed()
+                .sorted(Comparator.comparing((Integer i) -> entries[i], RANK))
+                .limit(MAX_LIMIT)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /** (Re)calcula el resultado de los prefijos cortos de una clave */
+    private void precompute(String key) {
+        for (int len = 1; len <= PRECOMPUTED_PREFIX && len <= key.length(); len++) {
+            String prefix = key.substring(0, len);
+            if (prefix.isBlank()) continue;
+            int[] ranked = rank(prefix);
+            if (ranked.length > 0) precomputed.put(prefix, ranked);
+            else precomputed.remove(prefix);
+        }
+    }
+
+    /** primer índice con clave >= prefix */
+    private int lowerBound(String prefix) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Suma (delta 1) o resta (delta -1) los textos de un documento. Con
+     * {@code touched}, las entradas del índice anterior se copian antes de cambiarlas.
+     */
+    private static void count(Extracted e, int delta, List<Entry> entries, Map<String, Integer> byKey,
+                              Map<Integer, Entry> touched) {
+        for (String location : e.locations) count(location, Suggestion.LOCATION, null, delta, entries, byKey, touched);
+        if (e.title != null) count(e.title, Suggestion.TITLE, e.id, delta, entries, byKey, touched);
+    }
+
+    private static void count(String text, String type, String id, int delta, List<Entry> entries,
+                              Map<String, Integer> byKey, Map<Integer, Entry> touched) {
+        String key = keyOf(text, type);
+        if (key == null) return;
+        Integer idx = byKey.get(key);
+        if (idx == null) {
+            idx = entries.size();
+            entries.add(new Entry(text, type));
+            byKey.put(key, idx);
+            if (touched != null) touched.put(idx, entries.get(idx));
+        }
+        Entry entry = entries.get(idx);
+        if (touched != null && touched.get(idx) != entry) {
+            entry = entry.copy();
+            entries.set(idx, entry);
+            touched.put(idx, entry);
+        }
+        entry.count += delta;
+        // Un título repetido no identifica a una sola propiedad; al bajar a una,
+        // assignTitleIds busca cuál queda
+        entry.id = delta > 0 && entry.count == 1 ? id : null;
+    }
+
+    /** id de los títulos cambiados que vuelven a estar en una sola propiedad */
+    private static void assignTitleIds(Extracted[] extracted, List<Entry> entries, Map<String, Integer> byKey,
+                                       Map<Integer, Entry> touched) {
+        boolean missing = false;
+        for (Entry entry : touched.values()) {
+            if (Suggestion.TITLE.equals(entry.type) && entry.count == 1 && entry.id == null) missing = true;
+        }
+        if (!missing) return;
+        for (Extracted e : extracted) {
+            if (e.title == null) continue;
+            Entry entry = touched.get(byKey.get(keyOf(e.title, Suggestion.TITLE)));
+            if (entry != null && entry.count == 1) entry.id = e.id;
+        }
+    }
+
+    /** Clave de una entrada ("tipo:texto normalizado"), o null si el texto queda vacío */
+    private static String keyOf(String text, String type) {
+        String normalized = normalize(text);
+        return normalized.isEmpty() ? null : type + ":" + normalized;
+    }
+
+    private static ObjectId idOf(RawBsonDocument doc) {
+        return doc.getObjectId("_id").getValue();
+    }
+
+    private static Extracted extract(RawBsonDocument doc) {
+        String id = doc.getObjectId("_id").getValue().toHexString();
+        BsonValue title = doc.get("title");
+        List<String> locations = new ArrayList<>();
+        BsonValue address = doc.get("address");
+        if (address != null && address.isString()) {
+            for (String part : address.asString().getValue().split(",")) {
+                if (!part.isBlank()) locations.add(part.trim());
+            }
+        }
+        BsonValue units = doc.get("units");
+        if (units != null && units.isArray()) {
+            for (BsonValue unit : units.asArray()) {
+                if (!unit.isDocument()) continue;
+                for (String zone : PropertyQuery.textsOf(unit.asDocument().get("zone"))) {
+                    if (!zone.isBlank()) locations.add(zone.trim());
+                }
+            }
+        }
+        // Cada ubicación cuenta una vez por propiedad
+        Map<String, String> distinct = new LinkedHashMap<>();
+        for (String location : locations) distinct.putIfAbsent(normalize(location), location);
+        String titleText = title != null && title.isString() && !title.asString().getValue().isBlank()
+                ? title.asString().getValue().trim() : null;
+        return new Extracted(id, titleText, new ArrayList<>(distinct.values()));
+    }
+
+    /** Minúsculas, sin acentos y con las palabras separadas por un espacio */
+    static String normalize(String text) {
+        return SEPARATORS.matcher(TextAnalyzer.fold(text)).replaceAll(" ").trim();
+    }
+
+    /** "ensanche naco" -> ["ensanche naco", "naco"] */
+    private static List<String> wordStarts(String normalized) {
+        List<String> starts = new ArrayList<>();
+        if (normalized.isEmpty()) return starts;
+        starts.add(normalized);
+        for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+            starts.add(normalized.substring(i + 1));
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,276 @@
+package edu.pucmm.service;
+
+import edu.pucmm.util.PropertyQuery;
+import edu.pucmm.util.TextAnalyzer;
+import org.bson.RawBsonDocument;
+
+import org.bson.types.ObjectId;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Índice invertido del texto libre de una instantánea del catálogo: para cada
+ * término ({@link TextAnalyzer}), las posiciones de los documentos que lo
+ * contienen y cuántas veces.
+ *
+ * Un término de la consulta abarca todos los términos del índice que empiezan
+ * por él (un rango del mapa ordenado), así que el coste depende de los
+ * documentos que coinciden y no del tamaño del catálogo.
+ *
+ * La puntuación es BM25; los campos pesan distinto repitiendo sus términos
+ * (el título cuenta triple y la dirección doble).
+ *
+ * Las listas de cada término son un int[] plano {ranura, frecuencia, ...}. La
+ * ranura de un documento no cambia mientras esté en el catálogo (las posiciones
+ * sí, al insertar o borrar), así que tras un cambio solo se rehacen las listas
+ * de los términos de los documentos nuevos, modificados o borrados; el resto se
+ * comparte con el índice anterior, que sigue siendo válido para quien lo use.
+ */
+final class TextIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Un término que solo coincide por prefijo ("pisc" -> "piscin") puntúa menos que uno exacto
+    private static final double PREFIX_WEIGHT = 0.5;
+    private static final Map<String, Integer> FIELD_WEIGHTS = Map.of("title", 3, "address", 2);
+    // Ranuras libres toleradas (además de una por documento) antes de renumerar
+    private static final int SLOT_SLACK = 64;
+
+    /** Términos de un documento con su frecuencia (ya ponderada por campo) */
+    static final class Analyzed {
+        final Map<String, Integer> frequencies;
+        final int length;
+
+        Analyzed(Map<String, Integer> frequencies, int length) {
+            this.frequencies = frequencies;
+            this.length = length;
+        }
+    }
+
+    /** Lista {ranura, frecuencia, ...} de un término en construcción */
+    private static final class PostingsBuilder {
+        int[] entries = new int[4];
+        int size;
+
+        void add(int slot, int frequency) {
+            if (size + 2 > entries.length) entries = Arrays.copyOf(entries, entries.length * 2);
+            entries[size++] = slot;
+            entries[size++] = frequency;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(entries, size);
+        }
+    }
+
+    private final List<RawBsonDocument> documents;
+    // Ranura de cada posición, posición de cada ranura (-1 si está libre) y su análisis
+    private final int[] slotOf;
+    private final int[] positionOf;
+    private final Analyzed[] analyzed;
+    // Término -> {ranura, frecuencia, ranura, frecuencia, ...}
+    private final NavigableMap<String, int[]> postings;
+    private final long totalLength;
+
+    private TextIndex(List<RawBsonDocument> documents, int[] slotOf, int[] positionOf, Analyzed[] analyzed,
+                      NavigableMap<String, int[]> postings, long totalLength) {
+        this.documents = documents;
+        this.slotOf = slotOf;
+        this.positionOf = positionOf;
+        this.analyzed = analyzed;
+        this.postings = postings;
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Índice de los documentos (en orden de _id). Con el índice anterior solo se
+     * analizan y se rehacen las listas de los documentos que no son la misma
+     * instancia (la instantánea se copia al escribir); si quedan demasiadas
+     * ranuras libres se renumera, reutilizando igualmente el análisis.
+     */
+    static TextIndex build(List<RawBsonDocument> documents, TextIndex previous) {
+        if (previous != null && previous.analyzed.length <= 2 * documents.size() + SLOT_SLACK) {
+            return previous.patch(documents);
+        }
+        return full(documents, previous);
+    }
+
+    private static TextIndex full(List<RawBsonDocument> documents, TextIndex previous) {
+        Map<RawBsonDocument, Analyzed> reusable = new IdentityHashMap<>();
+        if (previous != null) {
+            for (int pos = 0; pos < previous.documents.size(); pos++) {
+                reusable.put(previous.documents.get(pos), previous.analyzed[previous.slotOf[pos]]);
+            }
+        }
+
+        int n = documents.size();
+        int[] slots = new int[n];
+        Analyzed[] analyzed = new Analyzed[n];
+        Map<String, PostingsBuilder> entries = new HashMap<>();
+        long totalLength = 0;
+        for (int pos = 0; pos < n; pos++) {
+            RawBsonDocument doc = documents.get(pos);
+            Analyzed a = reusable.get(doc);
+            if (a == null) a = analyze(doc);
+            slots[pos] = pos;
+            analyzed[pos] = a;
+            totalLength += a.length;
+            for (Map.Entry<String, Integer> e : a.frequencies.entrySet()) {
+                entries.computeIfAbsent(e.getKey(), k -> new PostingsBuilder()).add(pos, e.getValue());
+            }
+        }
+
+        NavigableMap<String, int[]> postings = new TreeMap<>();
+        entries.forEach((term, builder) -> postings.put(term, builder.toArray()));
+        return new TextIndex(documents, slots, slots.clone(), analyzed, postings, totalLength);
+    }
+
+    /**
+     * Índice de {@code documents} a partir de este: recorre las dos listas (ambas
+     * en orden de _id) y rehace solo las listas de los términos afectados
+     */
+    private TextIndex patch(List<RawBsonDocument> documents) {
+        int n = documents.size();
+        int[] slots = new int[n];
+        Analyzed[] analyzed = this.analyzed.clone();
+        int nextSlot = analyzed.length;
+        // Ranuras cuyas entradas antiguas hay que quitar, y términos a rehacer
+        BitSet stale = new BitSet();
+        Set<String> touched = new HashSet<>();
+        Map<String, PostingsBuilder> added = new HashMap<>();
+        long totalLength = this.totalLength;
+
+        int i = 0, j = 0;
+        while (i < this.documents.size() || j < n) {
+            RawBsonDocument old = i < this.documents.size() ? this.documents.get(i) : null;
+            RawBsonDocument doc = j < n ? documents.get(j) : null;
+            if (old != null && old == doc) {
+                slots[j++] = slotOf[i++];
+                continue;
+            }
+            int cmp = old == null ? 1 : doc == null ? -1 : idOf(old).compareTo(idOf(doc));
+            int slot;
+            if (cmp <= 0) {
+                // Borrado o modificado: fuera sus entradas
+                slot = slotOf[i++];
+                stale.set(slot);
+                touched.addAll(analyzed[slot].frequencies.keySet());
+                totalLength -= analyzed[slot].length;
+                analyzed[slot] = null;
+                if (cmp < 0) continue;
+            } else {
+                if (nextSlot == analyzed.length) analyzed = Arrays.copyOf(analyzed, Math.max(4, analyzed.length * 2));
+                slot = nextSlot++;
+            }
+            // Nuevo o modificado: sus entradas, en la misma ranura si ya la tenía
+            Analyzed a = analyze(doc);
+            analyzed[slot] = a;
+            totalLength += a.length;
+            for (Map.Entry<String, Integer> e : a.frequencies.entrySet()) {
+                added.computeIfAbsent(e.getKey(), k -> new PostingsBuilder()).add(slot, e.getValue());
+            }
+            slots[j++] = slot;
+        }
+        if (stale.isEmpty() && added.isEmpty()) {
+            return new TextIndex(documents, slotOf, positionOf, this.analyzed, postings, totalLength);
+        }
+
+        // Copia del mapa (comparte las listas) y solo se rehacen las de los términos afectados
+        NavigableMap<String, int[]> patched = new TreeMap<>(postings);
+        touched.addAll(added.keySet());
+        for (String term : touched) {
+            int[] current = postings.getOrDefault(term, new int[0]);
+            PostingsBuilder result = new PostingsBuilder();
+            for (int k = 0; k < current.length; k += 2) {
+                if (!stale.get(current[k])) result.add(current[k], current[k + 1]);
+            }
+            PostingsBuilder extra = added.get(term);
+            if (extra != null) {
+                for (int k = 0; k < extra.size; k += 2) result.add(extra.entries[k], extra.entries[k + 1]);
+            }
+            if (result.size == 0) patched.remove(term);
+            else patched.put(term, result.toArray());
+        }
+
+        int[] positions = new int[nextSlot];
+        Arrays.fill(positions, -1);
+        for (int pos = 0; pos < n; pos++) positions[slots[pos]] = pos;
+        return new TextIndex(documents, slots, positions, Arrays.copyOf(analyzed, nextSlot), patched, totalLength);
+    }
+
+    /**
+     * Posiciones de los documentos que contienen todos los términos
+     * (cada uno como prefijo de algún término del documento)
+     */
+    BitSet matching(List<String> terms) {
+        BitSet result = null;
+        for (String term : terms) {
+            BitSet any = new BitSet();
+            for (int[] entries : expand(term).values()) {
+                for (int k = 0; k < entries.length; k += 2) any.set(positionOf[entries[k]]);
+            }
+            if (result == null) result = any;
+            else result.and(any);
+        }
+        return result != null ? result : new BitSet();
+    }
+
+    /**
+     * Puntuación BM25 de cada documento de {@code candidates} (los que no
+     * contienen ningún término no aparecen)
+     */
+    Map<Integer, Double> scores(List<String> terms, BitSet candidates) {
+        Map<Integer, Double> scores = new HashMap<>();
+        int n = documents.size();
+        double averageLength = n == 0 ? 0 : (double) totalLength / n;
+        for (String term : terms) {
+            for (Map.Entry<String, int[]> e : expand(term).entrySet()) {
+                int[] entries = e.getValue();
+                int df = entries.length / 2;
+                double weight = e.getKey().equals(term) ? 1.0 : PREFIX_WEIGHT;
+                double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                for (int k = 0; k < entries.length; k += 2) {
+                    int pos = positionOf[entries[k]];
+                    if (!candidates.get(pos)) continue;
+                    double tf = entries[k + 1];
+                    double norm = K1 * (1 - B + B * analyzed[entries[k]].length / averageLength);
+                    scores.merge(pos, weight * idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+                }
+            }
+        }
+        return scores;
+    }
+
+    /** Términos del índice que empiezan por {@code term} */
+    private NavigableMap<String, int[]> expand(String term) {
+        return postings.subMap(term, true, term + Character.MAX_VALUE, false);
+    }
+
+    private static ObjectId idOf(RawBsonDocument doc) {
+        return doc.getObjectId("_id").getValue();
+    }
+
+    private static Analyzed analyze(RawBsonDocument doc) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+        for (String field : PropertyQuery.TEXT_FIELDS) {
+            int weight = FIELD_WEIGHTS.getOrDefault(field, 1);
+            for (String text : PropertyQuery.textsOf(doc.get(field))) {
+                for (String term : TextAnalyzer.analyze(text)) {
+                    frequencies.merge(term, weight, Integer::sum);
+                    length += weight;
+                }
+            }
+        }
+        return new Analyzed(frequencies, length);
+    }
+}
@@ -0,0 +1,252 @@
+package edu.pucmm.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Sesiones de subida reanudable: el archivo llega por trozos a un archivo de
+ * staging local y, cuando está completo, se pasa a GridFS de una vez.
+ *
+ * Por sesión hay dos archivos en el directorio de staging:
+ * - {id}.part: los bytes recibidos; su longitud es el offset actual
+ * - {id}.properties: nombre, tipo, tamaño declarado y fecha de creación
+ * así que las sesiones sobreviven a un reinicio. Caducan a las {@code ttl}.
+ *
+ * Cada trozo debe empezar exactamente en el offset actual; lo recibido de un
+ * trozo cortado a medias queda guardado y el cliente continúa desde ahí.
+ */
+public final class UploadSessions {
+
+    private static final Pattern ID = Pattern.compile("[0-9a-f]{32}");
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    /** Datos de una sesión y bytes recibidos hasta ahora */
+    public static final class Session {
+        private final String id;
+        private final String filename;
+        private final String contentType;
+        private final long size;
+        private final long offset;
+        private final long createdAt;
+
+        Session(String id, String filename, String contentType, long size, long offset, long createdAt) {
+            this.id = id;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.size = size;
+            this.offset = offset;
+            this.createdAt = createdAt;
+        }
+
+        public String getId() { return id; }
+        public String getFilename() { return filename; }
+        public String getContentType() { return contentType; }
+        /** Tamaño total declarado al crear la sesión */
+        public long getSize() { return size; }
+        /** Bytes recibidos: el siguiente trozo empieza aquí */
+        public long getOffset() { return offset; }
+        public long getCreatedAt() { return createdAt; }
+
+        public boolean isComplete() { return offset == size; }
+    }
+
+    /** El trozo no empieza en el offset actual (trozo repetido o perdido) */
+    public static final class OffsetMismatchException extends RuntimeException {
+        private final long offset;
+
+        OffsetMismatchException(long offset, long requested) {
+            super("El trozo empieza en " + requested + " pero el offset actual es " + offset);
+            this.offset = offset;
+        }
+
+        /** Offset actual desde el que debe continuar el cliente */
+        public long getOffset() { return offset; }
+    }
+
+    private final Path dir;
+    private final Duration ttl;
+    private final SecureRandom random = new SecureRandom();
+    // Un trozo a la vez por sesión
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    public UploadSessions(Path dir, Duration ttl) {
+        this.dir = dir;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Crea una sesión vacía (y elimina de paso las caducadas)
+     */
+    public Session create(String filename, String contentType, long size) throws IOException {
+        Files.createDirectories(dir);
+        purgeExpired();
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String id = HexFormat.of().formatHex(bytes);
+        long now = System.currentTimeMillis();
+
+        Properties meta = new Properties();
+        meta.setProperty("filename", filename);
+        meta.setProperty("contentType", contentType);
+        meta.setProperty("size", String.valueOf(size));
+        meta.setProperty("createdAt", String.valueOf(now));
+        Files.createFile(part(id));
+        try (OutputStream out = Files.newOutputStream(meta(id))) {
+            meta.store(out, null);
+        }
+        return new Session(id, filename, contentType, size, 0, now);
+    }
+
+    /**
+     * Sesión con su offset actual, o null si no existe, caducó o ya se completó
+     */
+    public Session get(String id) throws IOException {
+        if (id == null || !ID.matcher(id).matches()) return null;
+        Properties meta = loadMeta(id);
+        if (meta == null) return null;
+        long createdAt = Long.parseLong(meta.getProperty("createdAt", "0"));
+        if (isExpired(createdAt)) {
+            delete(id);
+            return null;
+        }
+        long offset;
+        try {
+            offset = Files.size(part(id));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return new Session(id, meta.getProperty("filename"), meta.getProperty("contentType"),
+                Long.parseLong(meta.getProperty("size", "0")), offset, createdAt);
+    }
+
+    /**
+     * Añade al final del archivo los bytes de {@code data}, que deben empezar en
+     * {@code offset}. Se guarda todo lo que llegue aunque la conexión se corte.
+     *
+     * @param maxBytes máximo de bytes por trozo
+     * @return el nuevo offset
+     * @throws NoSuchElementException   si la sesión no existe
+     * @throws OffsetMismatchException  si offset no es el actual
+     * @throws IllegalArgumentException si el trozo pasa del tamaño declarado o de maxBytes
+     *                                  (lo anterior al límite sí se guarda)
+     */
+    public long append(String id, long offset, InputStream data, long maxBytes) throws IOException {
+        if (id == null || !ID.matcher(id).matches()) throw new NoSuchElementException("Sesión de subida no encontrada");
+        synchronized (locks.computeIfAbsent(id, k -> new Object())) {
+            Session session = get(id);
+            if (session == null) throw new NoSuchElementException("Sesión de subida no encontrada");
+            try (FileChannel channel = FileChannel.open(part(id), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long current = channel.size();
+                if (current != offset) throw new OffsetMismatchException(current, offset);
+                long allowed = Math.min(session.getSize() - current, maxBytes);
+                long written = 0;
+                byte[] buf = new byte[COPY_BUFFER_BYTES];
+                try {
+                    for (int n = data.read(buf); n >= 0; n = data.read(buf)) {
+                        int keep = (int) Math.min(n, allowed - written);
+                        ByteBuffer chunk = ByteBuffer.wrap(buf, 0, keep);
+                        while (chunk.hasRemaining()) channel.write(chunk);
+                        written += keep;
+                        if (keep < n) {
+                            throw new IllegalArgumentException(written + current == session.getSize()
+                                    ? "El trozo excede el tamaño declarado (" + session.getSize() + " bytes)"
+                                    : "Máximo " + maxBytes + " bytes por trozo");
+                        }
+                    }
+                } finally {
+                    // El offset que se informe debe estar en disco
+                    channel.force(false);
+                }
+                return current + written;
+            }
+        }
+    }
+
+    /**
+     * Toma la sesión completa para pasarla a GridFS: deja de estar disponible para
+     * otras peticiones. Devuelve el archivo, o null si no existe o no está completa.
+     * Tras subirlo, {@link #delete}; si falla, {@link #restore}.
+     */
+    public Path claim(String id) throws IOException {
+        if (id == null || !ID.matcher(id).matches()) return null;
+        synchronized (locks.computeIfAbsent(id, k -> new Object())) {
+            Session session = get(id);
+            if (session == null || !session.isComplete()) return null;
+            Path claimed = dir.resolve(id + ".complete");
+            Files.move(part(id), claimed, StandardCopyOption.ATOMIC_MOVE);
+            return claimed;
+        }
+    }
+
+    /** Devuelve a la sesión un archivo tomado con {@link #claim} */
+    public void restore(String id) throws IOException {
+        Files.move(dir.resolve(id + ".complete"), part(id), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Elimina la sesión y sus archivos */
+    public void delete(String id) throws IOException {
+        if (id == null || !ID.matcher(id).matches()) return;
+        Files.deleteIfExists(part(id));
+        Files.deleteIfExists(dir.resolve(id + ".complete"));
+        Files.deleteIfExists(meta(id));
+        locks.remove(id);
+    }
+
+    /** Elimina las sesiones caducadas (también las que quedaron tomadas); devuelve cuántas */
+    public int purgeExpired() throws IOException {
+        if (!Files.isDirectory(dir)) return 0;
+        int purged = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.properties")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - ".properties".length());
+                Properties meta = loadMeta(id);
+                if (meta != null && isExpired(Long.parseLong(meta.getProperty("createdAt", "0")))) {
+                    delete(id);
+                    purged++;
+                }
+            }
+        }
+        return purged;
+    }
+
+    private boolean isExpired(long createdAt) {
+        return System.currentTimeMillis() - createdAt > ttl.toMillis();
+    }
+
+    private Properties loadMeta(String id) throws IOException {
+        Properties meta = new Properties();
+        try (Reader in = Files.newBufferedReader(meta(id), StandardCharsets.ISO_8859_1)) {
+            meta.load(in);
+            return meta;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Path part(String id) {
+        return dir.resolve(id + ".part");
+    }
+
+    private Path meta(String id) {
+        return dir.resolve(id + ".properties");
+    }
+}
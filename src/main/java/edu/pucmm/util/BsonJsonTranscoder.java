@@ -0,0 +1,151 @@
+package edu.pucmm.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transcodifica documentos BSON crudos ({@link RawBsonDocument}) a JSON leyendo
+ * los bytes en orden y escribiéndolos en un {@link JsonGenerator}.
+ *
+ * No se construye ni un {@code org.bson.Document} ni el árbol de Map que luego
+ * recorre Jackson: cada valor pasa del buffer BSON a la salida una sola vez.
+ *
+ * Convenciones de salida (las mismas que tenía la API):
+ * - el _id de primer nivel se renombra (p. ej. a "id") y se escribe en hexadecimal
+ * - ObjectId -> string hexadecimal; fechas -> milisegundos epoch
+ * - Decimal128 -> número; binarios -> base64
+ */
+public class BsonJsonTranscoder {
+
+    private BsonJsonTranscoder() {}
+
+    /**
+     * Escribe el documento como objeto JSON.
+     *
+     * @param idField nombre con el que se escribe el _id de primer nivel
+     */
+    public static void write(JsonGenerator gen, RawBsonDocument doc, String idField) throws IOException {
+        write(gen, doc, idField, null);
+    }
+
+    /**
+     * Escribe solo los campos de primer nivel indicados (el _id siempre se incluye);
+     * los demás se saltan sin decodificarlos.
+     *
+     * @param fields campos a incluir, o null para todos
+     */
+    public static void write(JsonGenerator gen, RawBsonDocument doc, String idField, Set<String> fields) throws IOException {
+        write(gen, doc, idField, fields, Map.of());
+    }
+
+    /**
+     * Escribe el documento con los campos de primer nivel de {@code replaced} en
+     * lugar de los guardados (o al final si no existen). Los valores BSON se
+     * transcodifican como el resto; los demás se serializan con el codec del generador.
+     */
+    public static void writeReplacing(JsonGenerator gen, RawBsonDocument doc, String idField,
+                                      Map<String, ?> replaced) throws IOException {
+        write(gen, doc, idField, null, replaced);
+    }
+
+    private static void write(JsonGenerator gen, RawBsonDocument doc, String idField, Set<String> fields,
+                              Map<String, ?> replaced) throws IOException {
+        try (BsonBinaryReader reader = new BsonBinaryReader(doc.getByteBuffer().asNIO())) {
+            reader.readStartDocument();
+            gen.writeStartObject();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String name = reader.readName();
+                boolean id = "_id".equals(name);
+                if (!id && (fields != null && !fields.contains(name) || replaced.containsKey(name))) {
+                    reader.skipValue();
+                    continue;
+                }
+                gen.writeFieldName(id ? idField : name);
+                writeValue(reader, gen);
+            }
+            for (Map.Entry<String, ?> e : replaced.entrySet()) {
+                gen.writeFieldName(e.getKey());
+                if (e.getValue() instanceof BsonValue value) writeBsonValue(gen, value);
+                else gen.writeObject(e.getValue());
+            }
+            gen.writeEndObject();
+            reader.readEndDocument();
+        }
+    }
+
+    private static void writeBsonValue(JsonGenerator gen, BsonValue value) throws IOException {
+        try (BsonDocumentReader reader = new BsonDocumentReader(new BsonDocument("v", value))) {
+            reader.readStartDocument();
+            reader.readBsonType();
+            reader.readName();
+            writeValue(reader, gen);
+        }
+    }
+
+    private static void writeDocument(BsonReader reader, JsonGenerator gen) throws IOException {
+        reader.readStartDocument();
+        gen.writeStartObject();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            gen.writeFieldName(reader.readName());
+            writeValue(reader, gen);
+        }
+        gen.writeEndObject();
+        reader.readEndDocument();
+    }
+
+    private static void writeArray(BsonReader reader, JsonGenerator gen) throws IOException {
+        reader.readStartArray();
+        gen.writeStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            writeValue(reader, gen);
+        }
+        gen.writeEndArray();
+        reader.readEndArray();
+    }
+
+    /**
+     * Escribe el valor actual del lector (ya leído su tipo y, en documentos, su nombre).
+     */
+    private static void writeValue(BsonReader reader, JsonGenerator gen) throws IOException {
+        switch (reader.getCurrentBsonType()) {
+            case DOCUMENT -> writeDocument(reader, gen);
+            case ARRAY -> writeArray(reader, gen);
+            case STRING -> gen.writeString(reader.readString());
+            case INT32 -> gen.writeNumber(reader.readInt32());
+            case INT64 -> gen.writeNumber(reader.readInt64());
+            case DOUBLE -> gen.writeNumber(reader.readDouble());
+            case DECIMAL128 -> gen.writeNumber(reader.readDecimal128().bigDecimalValue());
+            case BOOLEAN -> gen.writeBoolean(reader.readBoolean());
+            case OBJECT_ID -> gen.writeString(reader.readObjectId().toHexString());
+            case DATE_TIME -> gen.writeNumber(reader.readDateTime());
+            case TIMESTAMP -> gen.writeNumber(reader.readTimestamp().getValue());
+            case BINARY -> gen.writeString(Base64.getEncoder().encodeToString(reader.readBinaryData().getData()));
+            case SYMBOL -> gen.writeString(reader.readSymbol());
+            case JAVASCRIPT -> gen.writeString(reader.readJavaScript());
+            case REGULAR_EXPRESSION -> gen.writeString(reader.readRegularExpression().getPattern());
+            case NULL -> {
+                reader.readNull();
+                gen.writeNull();
+            }
+            case UNDEFINED -> {
+                reader.readUndefined();
+                gen.writeNull();
+            }
+            default -> {
+                reader.skipValue();
+                gen.writeNull();
+            }
+        }
+    }
+}
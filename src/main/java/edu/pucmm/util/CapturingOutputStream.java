@@ -0,0 +1,50 @@
+package edu.pucmm.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream que escribe en el destino y además guarda una copia de lo
+ * escrito, hasta un máximo de bytes. Si se supera el máximo la copia se
+ * descarta (y {@link #captured()} devuelve null) sin afectar a la salida.
+ */
+public class CapturingOutputStream extends FilterOutputStream {
+
+    private final int maxBytes;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream(8192);
+
+    public CapturingOutputStream(OutputStream out, int maxBytes) {
+        super(out);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        capture(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        capture(b, off, len);
+    }
+
+    private void capture(byte[] b, int off, int len) {
+        if (copy == null) return;
+        if (copy.size() + len > maxBytes) {
+            copy = null;
+            return;
+        }
+        copy.write(b, off, len);
+    }
+
+    /**
+     * Copia de todo lo escrito, o null si excedió el máximo
+     */
+    public byte[] captured() {
+        return copy == null ? null : copy.toByteArray();
+    }
+}
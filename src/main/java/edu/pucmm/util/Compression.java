@@ -0,0 +1,64 @@
+package edu.pucmm.util;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresión de respuestas precalculadas (gzip y brotli).
+ *
+ * Brotli usa la librería nativa de brotli4j; si no está disponible para la
+ * plataforma, {@link #brotli(byte[], int)} devuelve null y se sirve gzip.
+ */
+public class Compression {
+
+    private static final boolean BROTLI_AVAILABLE = loadBrotli();
+
+    private Compression() {}
+
+    private static boolean loadBrotli() {
+        try {
+            return Brotli4jLoader.isAvailable();
+        } catch (Throwable t) {
+            System.err.println("Warning: Brotli no disponible, solo se usará gzip: " + t.getMessage());
+            return false;
+        }
+    }
+
+    public static boolean isBrotliAvailable() {
+        return BROTLI_AVAILABLE;
+    }
+
+    /**
+     * gzip con compresión máxima (se calcula una vez y se sirve muchas veces).
+     */
+    public static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            { def.setLevel(Deflater.BEST_COMPRESSION); }
+        }) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * brotli con la calidad indicada (0-11), o null si brotli no está disponible.
+     */
+    public static byte[] brotli(byte[] data, int quality) {
+        if (!BROTLI_AVAILABLE) return null;
+        try {
+            return Encoder.compress(data, new Encoder.Parameters().setQuality(quality));
+        } catch (IOException e) {
+            System.err.println("Warning: Error comprimiendo con brotli: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package edu.pucmm.util;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Diferencia campo a campo (primer nivel) entre el documento guardado y el que
+ * resulta de una edición, para escribir solo lo que cambió:
+ * - {@link #getSet()}: campos nuevos o con otro valor ($set)
+ * - {@link #getUnset()}: campos que estaban y ya no ($unset)
+ *
+ * Los valores se comparan en profundidad: Document y Map con las mismas claves
+ * son iguales, y los números por valor (3 == 3L == 3.0), porque lo leído de
+ * MongoDB y lo que llega en el JSON no usan las mismas clases.
+ */
+public final class DocumentDiff {
+
+    private final Document set;
+    private final List<String> unset;
+
+    private DocumentDiff(Document set, List<String> unset) {
+        this.set = set;
+        this.unset = unset;
+    }
+
+    /**
+     * @param current campos guardados
+     * @param desired campos tras la edición
+     * @param fields  campos que gestiona la edición; los demás (createdAt, version,
+     *                los que añaden otros procesos) no se tocan
+     */
+    public static DocumentDiff of(Map<String, ?> current, Map<String, ?> desired, Collection<String> fields) {
+        Document set = new Document();
+        List<String> unset = new ArrayList<>();
+        for (String field : fields) {
+            Object value = desired.get(field);
+            if (value != null) {
+                if (!current.containsKey(field) || !sameValue(current.get(field), value)) set.append(field, value);
+            } else if (current.containsKey(field)) {
+                unset.add(field);
+            }
+        }
+        return new DocumentDiff(set, unset);
+    }
+
+    public Document getSet() {
+        return set;
+    }
+
+    public List<String> getUnset() {
+        return unset;
+    }
+
+    /** true si no hay nada que escribir */
+    public boolean isEmpty() {
+        return set.isEmpty() && unset.isEmpty();
+    }
+
+    /** Campos que cambian, para registro y respuesta */
+    public List<String> changedFields() {
+        List<String> fields = new ArrayList<>(set.keySet());
+        fields.addAll(unset);
+        return fields;
+    }
+
+    /**
+     * Igualdad en profundidad entre valores BSON decodificados y valores del JSON
+     */
+    static boolean sameValue(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y) {
+            return Double.compare(x.doubleValue(), y.doubleValue()) == 0;
+        }
+        if (a instanceof Map<?, ?> x && b instanceof Map<?, ?> y) {
+            if (x.size() != y.size()) return false;
+            for (Map.Entry<?, ?> e : x.entrySet()) {
+                if (!y.containsKey(e.getKey()) || !sameValue(e.getValue(), y.get(e.getKey()))) return false;
+            }
+            return true;
+        }
+        if (a instanceof List<?> x && b instanceof List<?> y) {
+            if (x.size() != y.size()) return false;
+            Iterator<?> i = x.iterator(), j = y.iterator();
+            while (i.hasNext()) {
+                if (!sameValue(i.next(), j.next())) return false;
+            }
+            return true;
+        }
+        return Objects.equals(a, b);
+    }
+}
@@ -0,0 +1,162 @@
+package edu.pucmm.util;
+
+import com.mongodb.client.model.Filters;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+
+/**
+ * Utilidades geográficas de la búsqueda por mapa.
+ *
+ * Las coordenadas se guardan en el campo "location" como punto GeoJSON
+ * ({ type: "Point", coordinates: [longitud, latitud] }), indexado con 2dsphere.
+ * Las distancias son sobre la esfera (haversine), en metros.
+ */
+public final class Geo {
+
+    /** Radio terrestre medio que usa MongoDB para $centerSphere (metros) */
+    public static final double EARTH_RADIUS_M = 6378100;
+
+    /**
+     * Rectángulo en grados (oeste, sur, este, norte). No cruza el antimeridiano.
+     */
+    public static final class Bounds {
+        private final double minLng;
+        private final double minLat;
+        private final double maxLng;
+        private final double maxLat;
+
+        public Bounds(double minLng, double minLat, double maxLng, double maxLat) {
+            this.minLng = minLng;
+            this.minLat = minLat;
+            this.maxLng = maxLng;
+            this.maxLat = maxLat;
+        }
+
+        /**
+         * "minLng,minLat,maxLng,maxLat" (orden de bbox en GeoJSON)
+         *
+         * @throws IllegalArgumentException con un mensaje para el cliente
+         */
+        public static Bounds parse(String raw, String param) {
+            double[] v = parseNumbers(raw, 4, param, "minLng,minLat,maxLng,maxLat");
+            checkPoint(v[1], v[0], param);
+            checkPoint(v[3], v[2], param);
+            if (v[0] > v[2] || v[1] > v[3]) {
+                throw new IllegalArgumentException("Parámetro '" + param + "' inválido: el mínimo supera al máximo");
+            }
+            return new Bounds(v[0], v[1], v[2], v[3]);
+        }
+
+        /** Rectángulo que contiene el círculo de radio dado alrededor del punto */
+        public static Bounds around(double lat, double lng, double radiusMeters) {
+            double dLat = Math.toDegrees(radiusMeters / EARTH_RADIUS_M);
+            double cos = Math.cos(Math.toRadians(lat));
+            double dLng = cos < 1e-9 ? 180 : Math.min(180, dLat / cos);
+            return new Bounds(Math.max(-180, lng - dLng), Math.max(-90, lat - dLat),
+                    Math.min(180, lng + dLng), Math.min(90, lat + dLat));
+        }
+
+        public boolean contains(double lat, double lng) {
+            return lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng;
+        }
+
+        /**
+         * Filtro MongoDB equivalente a {@link #contains}: la misma caja plana sobre
+         * las coordenadas [lng, lat] del punto GeoJSON del campo. Un polígono con
+         * $geoWithin no sirve: en 2dsphere sus lados son geodésicos (no siguen los
+         * paralelos) y MongoDB rechaza o invierte las cajas de 180° o más de longitud.
+         */
+        public Bson toFilter(String field) {
+            return Filters.and(
+                    Filters.eq(field + ".type", "Point"),
+                    Filters.gte(field + ".coordinates.0", minLng),
+                    Filters.lte(field + ".coordinates.0", maxLng),
+                    Filters.gte(field + ".coordinates.1", minLat),
+                    Filters.lte(field + ".coordinates.1", maxLat));
+        }
+
+        public double getMinLng() { return minLng; }
+        public double getMinLat() { return minLat; }
+        public double getMaxLng() { return maxLng; }
+        public double getMaxLat() { return maxLat; }
+
+        @Override
+        public String toString() {
+            return minLng + "," + minLat + "," + maxLng + "," + maxLat;
+        }
+    }
+
+    private Geo() {}
+
+    /**
+     * Distancia en metros entre dos puntos (haversine)
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Coordenadas {latitud, longitud} del punto GeoJSON "location" del documento,
+     * o null si no tiene uno válido
+     */
+    public static double[] pointOf(BsonDocument doc) {
+        BsonValue location = doc.get("location");
+        if (location == null || !location.isDocument()) return null;
+        BsonValue type = location.asDocument().get("type");
+        BsonValue coordinates = location.asDocument().get("coordinates");
+        if (type == null || !type.isString() || !"Point".equals(type.asString().getValue())) return null;
+        if (coordinates == null || !coordinates.isArray()) return null;
+        BsonArray c = coordinates.asArray();
+        if (c.size() != 2 || !c.get(0).isNumber() || !c.get(1).isNumber()) return null;
+        return new double[]{c.get(1).asNumber().doubleValue(), c.get(0).asNumber().doubleValue()};
+    }
+
+    /**
+     * "lat,lng"
+     *
+     * @throws IllegalArgumentException con un mensaje para el cliente
+     */
+    public static double[] parsePoint(String raw, String param) {
+        double[] v = parseNumbers(raw, 2, param, "lat,lng");
+        checkPoint(v[0], v[1], param);
+        return v;
+    }
+
+    /** true si son coordenadas válidas */
+    public static boolean isValid(double lat, double lng) {
+        return lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180;
+    }
+
+    private static void checkPoint(double lat, double lng, String param) {
+        if (!isValid(lat, lng)) {
+            throw new IllegalArgumentException("Parámetro '" + param + "' fuera de rango (lat -90..90, lng -180..180)");
+        }
+    }
+
+    private static double[] parseNumbers(String raw, int count, String param, String format) {
+        String[] parts = raw.split(",");
+        if (parts.length != count) {
+            throw new IllegalArgumentException("Parámetro '" + param + "' inválido (formato " + format + ")");
+        }
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                values[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Parámetro '" + param + "' inválido (formato " + format + ")");
+            }
+            if (!Double.isFinite(values[i])) {
+                throw new IllegalArgumentException("Parámetro '" + param + "' inválido (formato " + format + ")");
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,103 @@
+package edu.pucmm.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Utilidades para validación condicional HTTP (ETag / If-None-Match)
+ * y negociación de Content-Encoding.
+ */
+public class HttpCaching {
+
+    private HttpCaching() {}
+
+    /**
+     * Evalúa If-None-Match contra un ETag con comparación débil (RFC 9110 §13.1.2):
+     * acepta "*", listas separadas por coma y prefijos W/.
+     *
+     * @return true si el cliente ya tiene esa representación (responder 304)
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null || ifNoneMatch.isBlank()) return false;
+        String target = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if ("*".equals(c)) return true;
+            if (opaque(c).equals(target)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * ETag fuerte (entre comillas) a partir de un valor arbitrario.
+     */
+    public static String strongEtag(String value) {
+        return "\"" + value + "\"";
+    }
+
+    /**
+     * Versión débil (W/) de un ETag: la misma representación en br, gzip o sin
+     * comprimir lleva la misma etiqueta, y byte a byte no son iguales.
+     */
+    public static String weakEtag(String etag) {
+        return etag.startsWith("W/") ? etag : "W/" + etag;
+    }
+
+    /**
+     * Huella corta (SHA-256, 16 hex) de unos bytes, para ETags basados en contenido.
+     */
+    public static String fingerprint(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Huella corta de un texto (UTF-8).
+     */
+    public static String fingerprint(String text) {
+        return fingerprint(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * true si Accept-Encoding admite la codificación indicada (p. ej. "br", "gzip"),
+     * por nombre o por "*", y sin q=0.
+     */
+    public static boolean acceptsEncoding(String acceptEncoding, String coding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) return false;
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] pieces = part.split(";");
+            String name = pieces[0].trim();
+            boolean allowed = qualityOf(pieces) > 0;
+            if (name.equalsIgnoreCase(coding)) return allowed;
+            if ("*".equals(name)) wildcard = allowed;
+        }
+        return wildcard;
+    }
+
+    private static double qualityOf(String[] pieces) {
+        for (int i = 1; i < pieces.length; i++) {
+            String param = pieces[i].trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static String opaque(String tag) {
+        String t = tag.trim();
+        if (t.startsWith("W/")) t = t.substring(2);
+        return t;
+    }
+}
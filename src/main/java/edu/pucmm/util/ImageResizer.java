@@ -0,0 +1,173 @@
+package edu.pucmm.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Versiones reducidas (derivadas) de una imagen subida, de anchos fijos, para no
+ * servir el original de hasta 25MB en tarjetas y galerías.
+ *
+ * - Solo se reduce, nunca se amplía: un ancho mayor o igual que el original no se genera
+ * - JPEG (calidad {@link #JPEG_QUALITY}) salvo que la imagen tenga transparencia (PNG)
+ * - GIF (pueden ser animados), SVG y WebP (ImageIO no los lee) no tienen derivadas
+ *
+ * Las imágenes muy grandes se decodifican con submuestreo (ImageReadParam) hasta
+ * el doble del ancho mayor, así la memoria no depende de los megapíxeles del original.
+ */
+public final class ImageResizer {
+
+    /** Anchos de las derivadas, de menor a mayor */
+    public static final int[] WIDTHS = {320, 640, 1280, 1920};
+    static final float JPEG_QUALITY = 0.82f;
+    // Tope de píxeles decodificados (tras el submuestreo)
+    private static final long MAX_DECODED_PIXELS = 40_000_000L;
+    private static final Set<String> RESIZABLE_TYPES = Set.of("image/jpeg", "image/png", "image/bmp", "image/tiff");
+
+    /** Una derivada codificada */
+    public static final class Derivative {
+        private final int width;
+        private final int height;
+        private final String contentType;
+        private final byte[] bytes;
+
+        Derivative(int width, int height, String contentType, byte[] bytes) {
+            this.width = width;
+            this.height = height;
+            this.contentType = contentType;
+            this.bytes = bytes;
+        }
+
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public String getContentType() { return contentType; }
+        public byte[] getBytes() { return bytes; }
+    }
+
+    private ImageResizer() {}
+
+    /** true si para este tipo MIME se generan derivadas */
+    public static boolean isResizable(String contentType) {
+        return contentType != null && RESIZABLE_TYPES.contains(contentType.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Derivadas de la imagen para los anchos de {@link #WIDTHS} menores que el suyo.
+     * Vacío si ImageIO no puede leerla.
+     */
+    public static List<Derivative> derivatives(InputStream original) throws IOException {
+        int targetWidth = 2 * WIDTHS[WIDTHS.length - 1];
+        BufferedImage source = read(original, (w, h) -> Math.max(1, w / targetWidth));
+        List<Derivative> result = new ArrayList<>();
+        if (source == null) return result;
+        boolean alpha = source.getColorModel().hasAlpha();
+        BufferedImage current = source;
+        // De mayor a menor: cada derivada parte de la anterior, que ya está reducida
+        for (int i = WIDTHS.length - 1; i >= 0; i--) {
+            int width = WIDTHS[i];
+            if (width >= source.getWidth()) continue;
+            current = scaleToWidth(current, width, alpha);
+            result.add(0, encode(current, alpha, JPEG_QUALITY));
+        }
+        return result;
+    }
+
+    /**
+     * Ancho de derivada que corresponde a un ancho pedido: el menor de {@link #WIDTHS}
+     * que lo cubre, o el mayor si ninguno llega. Si la imagen original es más estrecha
+     * que ese ancho, la derivada no existe y se sirve el original.
+     */
+    public static int widthFor(int requested) {
+        for (int width : WIDTHS) {
+            if (width >= requested) return width;
+        }
+        return WIDTHS[WIDTHS.length - 1];
+    }
+
+    // ================= Helpers =================
+
+    /**
+     * Decodifica la imagen tomando 1 de cada {@code stepFor(ancho, alto)} píxeles en
+     * cada eje (null si no hay lector para el formato o es demasiado grande)
+     */
+    static BufferedImage read(InputStream original, IntBinaryOperator stepFor) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(original)) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0), height = reader.getHeight(0);
+                int step = Math.max(1, stepFor.applyAsInt(width, height));
+                if ((long) (width / step) * (height / step) > MAX_DECODED_PIXELS) return null;
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reduce a un ancho manteniendo la proporción, a mitades sucesivas y un paso
+     * final bilineal (más nítido que un único paso grande)
+     */
+    static BufferedImage scaleToWidth(BufferedImage image, int width, boolean alpha) {
+        BufferedImage current = image;
+        while (true) {
+            int next = Math.max(width, current.getWidth() / 2);
+            int height = Math.max(1, (int) Math.round((double) current.getHeight() * next / current.getWidth()));
+            BufferedImage scaled = new BufferedImage(next, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = scaled.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, next, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = scaled;
+            if (next == width) return current;
+        }
+    }
+
+    /** JPEG con la calidad indicada, o PNG si hay transparencia */
+    static Derivative encode(BufferedImage image, boolean alpha, float quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (alpha) {
+            ImageIO.write(image, "png", out);
+            return new Derivative(image.getWidth(), image.getHeight(), "image/png", out.toByteArray());
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return new Derivative(image.getWidth(), image.getHeight(), "image/jpeg", out.toByteArray());
+    }
+}
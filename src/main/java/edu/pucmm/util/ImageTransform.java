@@ -0,0 +1,168 @@
+package edu.pucmm.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Transformación a medida de una imagen: caja de {@code width} x {@code height}
+ * (0 = libre), ajuste {@link Fit} y calidad JPEG.
+ *
+ * Cada transformación se guarda como un archivo más de GridFS, así que los
+ * valores se acotan y redondean para que el número de variantes posibles sea
+ * pequeño: lados múltiplos de {@link #SIZE_STEP} hasta {@link #MAX_SIZE},
+ * calidad múltiplo de 5 entre {@link #MIN_QUALITY} y {@link #MAX_QUALITY}.
+ * Aun así, solo se guardan los presets ({@link #isPreset()}): los tamaños que
+ * pide el frontend. Como en las derivadas de ancho fijo, nunca se amplía la imagen.
+ */
+public final class ImageTransform {
+
+    public static final int SIZE_STEP = 20;
+    public static final int MAX_SIZE = 2560;
+    public static final int MIN_QUALITY = 30;
+    public static final int MAX_QUALITY = 95;
+    public static final int DEFAULT_QUALITY = 80;
+
+    // Anchos del hero a pantalla completa (index.js, heroImageUrl): 16:9 o 9:16, q75
+    private static final int[] HERO_SIZES = {640, 1280, 1920, 2560};
+    // Claves de las transformaciones que se guardan
+    private static final Set<String> PRESETS = presets();
+
+    /** Cómo encaja la imagen en la caja cuando se dan ancho y alto */
+    public enum Fit {
+        /** Llena la caja y recorta lo que sobra, centrado */
+        COVER,
+        /** Cabe entera en la caja; el resultado puede ser más estrecho o más bajo */
+        CONTAIN
+    }
+
+    private final int width;
+    private final int height;
+    private final Fit fit;
+    private final int quality;
+
+    private ImageTransform(int width, int height, Fit fit, int quality) {
+        this.width = width;
+        this.height = height;
+        this.fit = fit;
+        this.quality = quality;
+    }
+
+    /**
+     * Transformación de los parámetros w, h, fit y q de la petición (null o vacío
+     * = no indicado). Hace falta w o h; fit por defecto contain.
+     *
+     * @throws IllegalArgumentException si algún valor no es válido
+     */
+    public static ImageTransform parse(String w, String h, String fit, String q) {
+        int width = size("w", w);
+        int height = size("h", h);
+        if (width == 0 && height == 0) throw new IllegalArgumentException("Se requiere w o h");
+
+        Fit f = Fit.CONTAIN;
+        if (fit != null && !fit.isBlank()) {
+            try {
+                f = Fit.valueOf(fit.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("fit debe ser cover o contain");
+            }
+        }
+        // Con un solo lado no hay nada que recortar
+        if (width == 0 || height == 0) f = Fit.CONTAIN;
+
+        int quality = DEFAULT_QUALITY;
+        if (q != null && !q.isBlank()) {
+            quality = parseInt("q", q);
+            if (quality < 1 || quality > 100) throw new IllegalArgumentException("q debe estar entre 1 y 100");
+            quality = Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, Math.round(quality / 5f) * 5));
+        }
+        return new ImageTransform(width, height, f, quality);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public Fit getFit() { return fit; }
+    public int getQuality() { return quality; }
+
+    /** true si es uno de los tamaños que pide el frontend, los únicos que se guardan */
+    public boolean isPreset() {
+        return PRESETS.contains(key());
+    }
+
+    /** Identifica la variante (parte del nombre del archivo en GridFS) */
+    public String key() {
+        return width + "x" + height + "-" + fit.name().toLowerCase(Locale.ROOT) + "-q" + quality;
+    }
+
+    /**
+     * Aplica la transformación. null si ImageIO no puede leer la imagen o es
+     * demasiado grande.
+     */
+    public ImageResizer.Derivative apply(InputStream original) throws IOException {
+        // Se decodifica con al menos el doble de resolución de la que se va a usar
+        BufferedImage source = ImageResizer.read(original, (w, h) -> Math.max(1, (int) (1 / (2 * scaleFor(w, h)))));
+        if (source == null) return null;
+        boolean alpha = source.getColorModel().hasAlpha();
+        double scale = scaleFor(source.getWidth(), source.getHeight());
+        int scaledWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        BufferedImage result = scaledWidth < source.getWidth()
+                ? ImageResizer.scaleToWidth(source, scaledWidth, alpha)
+                : source;
+
+        if (fit == Fit.COVER) {
+            // La caja pedida, reducida si la imagen no llega a llenarla
+            double shrink = Math.max(1, Math.max(width / (double) result.getWidth(), height / (double) result.getHeight()));
+            int boxWidth = Math.min(result.getWidth(), Math.max(1, (int) Math.round(width / shrink)));
+            int boxHeight = Math.min(result.getHeight(), Math.max(1, (int) Math.round(height / shrink)));
+            result = result.getSubimage((result.getWidth() - boxWidth) / 2, (result.getHeight() - boxHeight) / 2,
+                    boxWidth, boxHeight);
+        }
+        return ImageResizer.encode(result, alpha, quality / 100f);
+    }
+
+    // ================= Helpers =================
+
+    /** Escala (como mucho 1) a aplicar a una imagen de {@code w} x {@code h} */
+    private double scaleFor(int w, int h) {
+        double sx = width > 0 ? width / (double) w : Double.NaN;
+        double sy = height > 0 ? height / (double) h : Double.NaN;
+        double scale;
+        if (Double.isNaN(sx)) scale = sy;
+        else if (Double.isNaN(sy)) scale = sx;
+        else scale = fit == Fit.COVER ? Math.max(sx, sy) : Math.min(sx, sy);
+        return Math.min(1, scale);
+    }
+
+    private static Set<String> presets() {
+        Set<String> keys = new HashSet<>();
+        for (int side : HERO_SIZES) {
+            int shortSide = side * 9 / 16;
+            keys.add(side + "x" + shortSide + "-cover-q75");
+            keys.add(shortSide + "x" + side + "-cover-q75");
+        }
+        // Admin: vista previa del hero (admin-hero.js) y miniaturas (admin.js)
+        keys.add("1280x400-cover-q" + DEFAULT_QUALITY);
+        keys.add("640x360-cover-q" + DEFAULT_QUALITY);
+        keys.add("320x200-cover-q" + DEFAULT_QUALITY);
+        return Set.copyOf(keys);
+    }
+
+    /** Lado pedido redondeado hacia arriba a SIZE_STEP; 0 si no se indicó */
+    private static int size(String name, String value) {
+        if (value == null || value.isBlank()) return 0;
+        int n = parseInt(name, value);
+        if (n < 1 || n > MAX_SIZE) throw new IllegalArgumentException(name + " debe estar entre 1 y " + MAX_SIZE);
+        return Math.min(MAX_SIZE, (n + SIZE_STEP - 1) / SIZE_STEP * SIZE_STEP);
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " debe ser un número entero");
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package edu.pucmm.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lector de multipart/form-data (RFC 7578) sobre el cuerpo de la petición, a
+ * medida que llega: cada parte se entrega como un InputStream que termina en el
+ * siguiente delimitador, sin guardar el cuerpo en memoria ni en archivos temporales.
+ *
+ * La memoria usada es la de un buffer fijo. Las partes se leen en orden: al
+ * pedir la siguiente, lo que quede de la actual se descarta.
+ */
+public final class MultipartStream implements Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // Tope de una línea de cabecera de parte
+    private static final int MAX_HEADER_LINE = 8 * 1024;
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=(?:\"([^\"]+)\"|([^;\\s]+))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PARAM = Pattern.compile("(\\w+)=(?:\"((?:[^\"\\\\]|\\\\.)*)\"|([^;\\s]*))");
+
+    /** Cabeceras de una parte y su contenido */
+    public static final class Part {
+        private final String name;
+        private final String filename;
+        private final String contentType;
+        private final InputStream body;
+
+        Part(String name, String filename, String contentType, InputStream body) {
+            this.name = name;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        /** name del Content-Disposition (campo del formulario) */
+        public String getName() { return name; }
+
+        /** filename del Content-Disposition, o null si la parte no es un archivo */
+        public String getFilename() { return filename; }
+
+        /** Content-Type de la parte, o null si no lo trae */
+        public String getContentType() { return contentType; }
+
+        /** Contenido; cerrarlo no afecta a las demás partes */
+        public InputStream getBody() { return body; }
+    }
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buf;
+    private int head;
+    private int tail;
+    // Antes de esta posición ya se sabe que no empieza ningún delimitador
+    private int scanned;
+    private boolean partDone;
+    private boolean finished;
+
+    public MultipartStream(InputStream in, String boundary) {
+        this(in, boundary, DEFAULT_BUFFER_SIZE);
+    }
+
+    MultipartStream(InputStream in, String boundary, int bufferSize) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buf = new byte[Math.max(bufferSize, delimiter.length + MAX_HEADER_LINE)];
+        // El primer delimitador no va precedido de CRLF: se antepone para que el
+        // preámbulo se lea como una parte más y se descarte
+        buf[0] = '\r';
+        buf[1] = '\n';
+        tail = 2;
+    }
+
+    /**
+     * boundary de un Content-Type multipart/form-data, o null si no lo es
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) return null;
+        Matcher m = BOUNDARY.matcher(contentType);
+        if (!m.find()) return null;
+        String boundary = m.group(1) != null ? m.group(1) : m.group(2);
+        return boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+    }
+
+    /**
+     * Siguiente parte, o null al llegar al delimitador final.
+     *
+     * @throws IOException si el cuerpo termina antes de tiempo o está mal formado
+     */
+    public Part next() throws IOException {
+        // Descartar el resto de la parte actual (o el preámbulo)
+        byte[] skip = new byte[4096];
+        while (readBody(skip, 0, skip.length) >= 0) {
+            // descartado
+        }
+        if (finished) return null;
+
+        String name = null, filename = null, contentType = null;
+        for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+            int colon = line.indexOf(':');
+            if (colon < 0) continue;
+            String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (header.equals("content-disposition")) {
+                Matcher m = PARAM.matcher(value);
+                while (m.find()) {
+                    String v = m.group(2) != null ? m.group(2).replaceAll("\\\\(.)", "$1") : m.group(3);
+                    if (m.group(1).equalsIgnoreCase("name")) name = v;
+                    else if (m.group(1).equalsIgnoreCase("filename")) filename = v;
+                }
+            } else if (header.equals("content-type")) {
+                contentType = value;
+            }
+        }
+        partDone = false;
+        return new Part(name, filename, contentType, new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int n;
+                while ((n = readBody(one, 0, 1)) == 0) {
+                    // nada disponible todavía
+                }
+                return n < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                int n;
+                while ((n = readBody(b, off, len)) == 0) {
+                    // nada disponible todavía
+                }
+                return n;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // ================= Helpers =================
+
+    /**
+     * Lee de la parte actual hasta el delimitador. Devuelve -1 al llegar a él
+     * (y lo consume) y 0 si hace falta leer más de la entrada.
+     */
+    private int readBody(byte[] b, int off, int len) throws IOException {
+        if (partDone) return -1;
+        int at = indexOfDelimiter();
+        if (at == head) {
+            head += delimiter.length;
+            partDone = true;
+            afterDelimiter();
+            return -1;
+        }
+        // Sin delimitador a la vista se pueden entregar los bytes que no pueden
+        // ser el comienzo de uno
+        int available = at >= 0 ? at - head : tail - head - (delimiter.length - 1);
+        if (available <= 0) {
+            if (fill() < 0) throw new IOException("Cuerpo multipart incompleto");
+            return 0;
+        }
+        int n = Math.min(len, available);
+        System.arraycopy(buf, head, b, off, n);
+        head += n;
+        return n;
+    }
+
+    /** Tras un delimitador: "--" es el final; si no, el resto de la línea */
+    private void afterDelimiter() throws IOException {
+        while (tail - head < 2) {
+            if (fill() < 0) throw new IOException("Cuerpo multipart incompleto");
+        }
+        if (buf[head] == '-' && buf[head + 1] == '-') {
+            finished = true;
+            head += 2;
+            return;
+        }
+        readLine();
+    }
+
+    /** Línea de cabecera (sin CRLF) */
+    private String readLine() throws IOException {
+        while (true) {
+            for (int i = head; i + 1 < tail; i++) {
+                if (buf[i] == '\r' && buf[i + 1] == '\n') {
+                    String line = new String(buf, head, i - head, StandardCharsets.UTF_8);
+                    head = i + 2;
+                    return line;
+                }
+            }
+            if (tail - head >= MAX_HEADER_LINE) throw new IOException("Cabecera de parte demasiado larga");
+            if (fill() < 0) throw new IOException("Cuerpo multipart incompleto");
+        }
+    }
+
+    private int indexOfDelimiter() {
+        int i = Math.max(head, scanned);
+        outer:
+        for (; i + delimiter.length <= tail; i++) {
+            for (int j = 0; j < delimiter.length; j++) {
+                if (buf[i + j] != delimiter[j]) continue outer;
+            }
+            scanned = i;
+            return i;
+        }
+        scanned = i;
+        return -1;
+    }
+
+    /** Compacta el buffer y lee más de la entrada; -1 al final de la entrada */
+    private int fill() throws IOException {
+        if (head > 0) {
+            System.arraycopy(buf, head, buf, 0, tail - head);
+            tail -= head;
+            scanned = Math.max(0, scanned - head);
+            head = 0;
+        }
+        int n = in.read(buf, tail, buf.length - tail);
+        if (n > 0) tail += n;
+        return n;
+    }
+}
@@ -0,0 +1,53 @@
+package edu.pucmm.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor opaco para paginación por conjunto de claves (keyset).
+ *
+ * Guarda el orden con que se generó, el valor del campo de orden y el _id
+ * del último elemento entregado. La siguiente página se pide "después" de
+ * ese par, así que cuesta lo mismo sin importar la profundidad.
+ *
+ * Formato interno (base64url): {@code sortKey|valor|idHex}; el valor vacío representa null.
+ */
+public class PageCursor {
+
+    private final String sortKey;
+    private final Double value;
+    private final String id;
+
+    public PageCursor(String sortKey, Double value, String id) {
+        this.sortKey = sortKey;
+        this.value = value;
+        this.id = id;
+    }
+
+    public String getSortKey() { return sortKey; }
+    public Double getValue() { return value; }
+    public String getId() { return id; }
+
+    public String encode() {
+        String raw = sortKey + "|" + (value == null ? "" : Double.toString(value)) + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodifica un cursor recibido del cliente.
+     * @throws IllegalArgumentException si el cursor está mal formado
+     */
+    public static PageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 3 || !parts[2].matches("[0-9a-fA-F]{24}")) {
+                throw new IllegalArgumentException();
+            }
+            Double value = parts[1].isEmpty() ? null : Double.valueOf(parts[1]);
+            return new PageCursor(parts[0], value, parts[2].toLowerCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Parámetro 'cursor' inválido");
+        }
+    }
+}
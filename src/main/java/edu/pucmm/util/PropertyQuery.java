@@ -0,0 +1,683 @@
+package edu.pucmm.util;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Criterios de búsqueda del listado de propiedades (GET /api/properties).
+ *
+ * Parámetros soportados:
+ * - type, saleType: igualdad (sin distinguir mayúsculas; "Terreno" equivale a Solar/Solares)
+ * - minPrice, maxPrice, minArea, maxArea, minPricePerSqm, maxPricePerSqm: rangos numéricos
+ * - bedrooms, bathrooms, parking: mínimos
+ * - amenities: lista separada por comas; la propiedad debe tenerlas todas
+ * - unitBedrooms (mínimo), unitMinPrice, unitMaxPrice, unitMinArea, unitMaxArea: alguna
+ *   unidad de units[] debe cumplirlos todos a la vez ($elemMatch); la respuesta solo
+ *   incluye esas unidades ({@link #matchingUnits})
+ * - near=lat,lng y radius (metros, defecto {@link #DEFAULT_RADIUS_M}): a esa distancia del punto
+ * - within=minLng,minLat,maxLng,maxLat: dentro del rectángulo (p. ej. el área visible del mapa)
+ * - q: texto libre sobre título, dirección, descripción, características, amenidades,
+ *   tipo y transacción; sin distinguir acentos y con stemming ({@link TextAnalyzer}).
+ *   Todos los términos deben aparecer
+ * - sort: createdAt-desc (defecto) | createdAt-asc | price-asc | price-desc | area-asc | area-desc
+ *   | relevance (BM25 sobre q en el catálogo en memoria; en MongoDB o sin q equivale
+ *   a createdAt-desc; no admite cursor)
+ * - page (desde 1) y limit (máx. {@link #MAX_LIMIT})
+ * - cursor: activa la paginación por cursor; vacío para la primera página y luego
+ *   el valor de nextCursor de la respuesta anterior (sustituye a page)
+ *
+ * Los parámetros inválidos lanzan {@link IllegalArgumentException} con un mensaje para el cliente.
+ *
+ * Cada criterio tiene dos formas equivalentes: el filtro/orden de MongoDB
+ * ({@link #toFilter()}, {@link #toSort()}, {@link #toKeysetFilter()}) y su evaluación
+ * en memoria sobre el catálogo ({@link #matches}, {@link #comparator()}, {@link #isAfterCursor}).
+ *
+ * En desarrollos sin precio, área o habitaciones en la raíz se usan los agregados
+ * de sus unidades ({@link UnitStats}): los rangos piden que [mínimo, máximo] se
+ * solape con el rango pedido, bedrooms compara con el máximo y el orden usa el
+ * mínimo ("desde"), guardado como sortPrice / sortArea para MongoDB.
+ */
+public class PropertyQuery {
+
+    public static final int DEFAULT_LIMIT = 9;
+    public static final int MAX_LIMIT = 100;
+    public static final double DEFAULT_RADIUS_M = 5000;
+    public static final double MAX_RADIUS_M = 200000;
+
+    /** Parámetros que activan el modo de búsqueda paginada */
+    private static final Set<String> SEARCH_PARAMS = Set.of(
+            "type", "saleType", "minPrice", "maxPrice", "minArea", "maxArea",
+            "minPricePerSqm", "maxPricePerSqm", "bedrooms", "bathrooms", "parking", "amenities",
+            "unitBedrooms", "unitMinPrice", "unitMaxPrice", "unitMinArea", "unitMaxArea",
+            "near", "radius", "within", "q", "sort", "page", "limit", "cursor"
+    );
+
+    /** Campos donde se busca el texto libre */
+    public static final List<String> TEXT_FIELDS = List.of(
+            "title", "address", "descriptionParagraph", "features", "amenities", "type", "saleType"
+    );
+
+    /**
+     * Órdenes disponibles. "createdAt" se resuelve sobre _id: el ObjectId lleva
+     * la fecha de creación, está indexado por defecto y existe también en documentos antiguos.
+     */
+    public enum SortOrder {
+        CREATED_DESC("createdAt-desc", "_id", false),
+        CREATED_ASC("createdAt-asc", "_id", true),
+        PRICE_ASC("price-asc", "price", true),
+        PRICE_DESC("price-desc", "price", false),
+        AREA_ASC("area-asc", "area", true),
+        AREA_DESC("area-desc", "area", false),
+        // El orden por puntuación lo resuelve PropertyIndex; aquí solo el de respaldo
+        RELEVANCE("relevance", "_id", false);
+
+        private final String key;
+        private final String field;
+        private final boolean ascending;
+
+        SortOrder(String key, String field, boolean ascending) {
+            this.key = key;
+            this.field = field;
+            this.ascending = ascending;
+        }
+
+        public String key() { return key; }
+        public String field() { return field; }
+        public boolean ascending() { return ascending; }
+
+        public static SortOrder fromKey(String key) {
+            if (key == null || key.isBlank()) return CREATED_DESC;
+            for (SortOrder s : values()) {
+                if (s.key.equalsIgnoreCase(key.trim())) return s;
+            }
+            throw new IllegalArgumentException("Parámetro 'sort' inválido: " + key);
+        }
+    }
+
+    private List<String> types = List.of();
+    private String saleType;
+    private Double minPrice;
+    private Double maxPrice;
+    private Double minArea;
+    private Double maxArea;
+    private Double minPricePerSqm;
+    private Double maxPricePerSqm;
+    private Integer bedrooms;
+    private Integer bathrooms;
+    private Integer parking;
+    private List<String> amenities = List.of();
+    private Integer unitBedrooms;
+    private Double unitMinPrice;
+    private Double unitMaxPrice;
+    private Double unitMinArea;
+    private Double unitMaxArea;
+    private Double nearLat;
+    private Double nearLng;
+    private double radius = DEFAULT_RADIUS_M;
+    private Geo.Bounds within;
+    private String q;
+    private List<String> textTerms = List.of();
+    private SortOrder sort = SortOrder.CREATED_DESC;
+    private int page = 1;
+    private int limit = DEFAULT_LIMIT;
+    private boolean cursorMode;
+    private PageCursor cursor;
+
+    public PropertyQuery() {}
+
+    /**
+     * Indica si la petición trae algún parámetro de búsqueda. Sin ellos el listado
+     * conserva el formato antiguo (array completo) que usa el panel de administración.
+     */
+    public static boolean isSearchRequest(Map<String, List<String>> params) {
+        if (params == null) return false;
+        for (String key : params.keySet()) {
+            if (SEARCH_PARAMS.contains(key)) return true;
+        }
+        return false;
+    }
+
+    /** true si el parámetro es uno de los que interpreta la consulta */
+    public static boolean isSearchParam(String name) {
+        return SEARCH_PARAMS.contains(name);
+    }
+
+    /**
+     * Construye la consulta a partir de los query params de la petición.
+     */
+    public static PropertyQuery fromParams(Map<String, List<String>> params) {
+        PropertyQuery query = new PropertyQuery();
+        query.types = canonicalTypes(first(params, "type"));
+        query.saleType = canonicalSaleType(first(params, "saleType"));
+        query.minPrice = parseDouble(params, "minPrice");
+        query.maxPrice = parseDouble(params, "maxPrice");
+        query.minArea = parseDouble(params, "minArea");
+        query.maxArea = parseDouble(params, "maxArea");
+        query.minPricePerSqm = parseDouble(params, "minPricePerSqm");
+        query.maxPricePerSqm = parseDouble(params, "maxPricePerSqm");
+        query.bedrooms = parseInt(params, "bedrooms", 0, Integer.MAX_VALUE);
+        query.bathrooms = parseInt(params, "bathrooms", 0, Integer.MAX_VALUE);
+        query.parking = parseInt(params, "parking", 0, Integer.MAX_VALUE);
+        query.amenities = parseList(first(params, "amenities"));
+        query.unitBedrooms = parseInt(params, "unitBedrooms", 0, Integer.MAX_VALUE);
+        query.unitMinPrice = parseDouble(params, "unitMinPrice");
+        query.unitMaxPrice = parseDouble(params, "unitMaxPrice");
+        query.unitMinArea = parseDouble(params, "unitMinArea");
+        query.unitMaxArea = parseDouble(params, "unitMaxArea");
+        String near = first(params, "near");
+        if (near != null) {
+            double[] point = Geo.parsePoint(near, "near");
+            query.nearLat = point[0];
+            query.nearLng = point[1];
+        }
+        Double radius = parseDouble(params, "radius");
+        if (radius != null) {
+            if (near == null) throw new IllegalArgumentException("radius requiere near");
+            if (radius <= 0 || radius > MAX_RADIUS_M) {
+                throw new IllegalArgumentException("Parámetro 'radius' inválido: " + radius + " (hasta " + (long) MAX_RADIUS_M + " m)");
+            }
+            query.radius = radius;
+        }
+        String within = first(params, "within");
+        if (within != null) query.within = Geo.Bounds.parse(within, "within");
+        query.q = first(params, "q");
+        query.textTerms = TextAnalyzer.queryTerms(query.q);
+        query.sort = SortOrder.fromKey(first(params, "sort"));
+
+        Integer page = parseInt(params, "page", 1, Integer.MAX_VALUE);
+        Integer limit = parseInt(params, "limit", 1, MAX_LIMIT);
+        if (page != null) query.page = page;
+        if (limit != null) query.limit = limit;
+
+        query.cursorMode = params.containsKey("cursor");
+        if (query.cursorMode && query.sort == SortOrder.RELEVANCE) {
+            throw new IllegalArgumentException("sort=relevance no admite cursor; use page");
+        }
+        String token = first(params, "cursor");
+        if (token != null) {
+            query.cursor = PageCursor.decode(token);
+            if (!query.sort.key().equals(query.cursor.getSortKey())) {
+                throw new IllegalArgumentException("El cursor no corresponde al orden '" + query.sort.key() + "'");
+            }
+        }
+
+        if (query.minPrice != null && query.maxPrice != null && query.minPrice > query.maxPrice) {
+            throw new IllegalArgumentException("minPrice no puede ser mayor que maxPrice");
+        }
+        if (query.minArea != null && query.maxArea != null && query.minArea > query.maxArea) {
+            throw new IllegalArgumentException("minArea no puede ser mayor que maxArea");
+        }
+        if (query.minPricePerSqm != null && query.maxPricePerSqm != null && query.minPricePerSqm > query.maxPricePerSqm) {
+            throw new IllegalArgumentException("minPricePerSqm no puede ser mayor que maxPricePerSqm");
+        }
+        return query;
+    }
+
+    /**
+     * Filtro MongoDB equivalente a los criterios.
+     */
+    public Bson toFilter() {
+        List<Bson> filters = new ArrayList<>();
+        if (types.size() == 1) filters.add(Filters.eq("type", types.get(0)));
+        else if (!types.isEmpty()) filters.add(Filters.in("type", types));
+        if (saleType != null) filters.add(Filters.eq("saleType", saleType));
+
+        addUnitRange(filters, "price", minPrice, maxPrice);
+        addUnitRange(filters, "area", minArea, maxArea);
+        addRange(filters, "pricePerSqm", minPricePerSqm, maxPricePerSqm);
+        if (bedrooms != null) {
+            filters.add(Filters.or(Filters.gte("bedrooms", bedrooms), Filters.and(
+                    Filters.not(Filters.type("bedrooms", "number")), Filters.exists(UnitStats.FIELD),
+                    Filters.gte(UnitStats.FIELD + "." + UnitStats.maxKey("bedrooms"), bedrooms))));
+        }
+        if (bathrooms != null) filters.add(Filters.gte("bathrooms", bathrooms));
+        if (parking != null) filters.add(Filters.gte("parking", parking));
+        if (!amenities.isEmpty()) filters.add(Filters.all("amenities", amenities));
+        // Una misma unidad cumple todo (índices multikey units.*)
+        if (hasUnitCriteria()) {
+            List<Bson> unit = new ArrayList<>();
+            if (unitBedrooms != null) unit.add(Filters.gte("bedrooms", unitBedrooms));
+            addRange(unit, "price", unitMinPrice, unitMaxPrice);
+            addRange(unit, "area", unitMinArea, unitMaxArea);
+            filters.add(Filters.elemMatch("units", Filters.and(unit)));
+        }
+        // Sobre el índice 2dsphere de location; $geoWithin (no $near) para poder contar y ordenar
+        if (nearLat != null) {
+            filters.add(Filters.geoWithinCenterSphere("location", nearLng, nearLat, radius / Geo.EARTH_RADIUS_M));
+        }
+        // Caja plana lat/lng, como Bounds.contains en memoria
+        if (within != null) filters.add(within.toFilter("location"));
+
+        // Cada término en alguno de los campos (sin acentos; el stem al comienzo de una palabra)
+        for (String term : textTerms) {
+            Pattern pattern = TextAnalyzer.accentInsensitive(term);
+            List<Bson> textFilters = new ArrayList<>();
+            for (String field : TEXT_FIELDS) textFilters.add(Filters.regex(field, pattern));
+            filters.add(Filters.or(textFilters));
+        }
+
+        return filters.isEmpty() ? Filters.empty() : Filters.and(filters);
+    }
+
+    /**
+     * Orden MongoDB. Se desempata siempre por _id para que la paginación sea estable.
+     * Precio y área se ordenan por su valor guardado ({@link UnitStats#sortKey}), que
+     * en los desarrollos es el mínimo de sus unidades, como en memoria.
+     */
+    public Bson toSort() {
+        if ("_id".equals(sort.field())) {
+            return sort.ascending() ? Sorts.ascending("_id") : Sorts.descending("_id");
+        }
+        String field = UnitStats.sortKey(sort.field());
+        return sort.ascending()
+                ? Sorts.ascending(field, "_id")
+                : Sorts.descending(field, "_id");
+    }
+
+    /**
+     * Filtro de la página siguiente al cursor: documentos estrictamente posteriores
+     * al par (valor, _id) en el orden activo. Sin cursor equivale a {@link #toFilter()}.
+     *
+     * En MongoDB los valores ausentes/null ordenan antes que los números, de modo que
+     * en orden ascendente van al principio y en descendente al final.
+     */
+    public Bson toKeysetFilter() {
+        if (cursor == null) return toFilter();
+        ObjectId lastId = new ObjectId(cursor.getId());
+        boolean asc = sort.ascending();
+        Bson afterId = asc ? Filters.gt("_id", lastId) : Filters.lt("_id", lastId);
+
+        Bson keyset;
+        if ("_id".equals(sort.field())) {
+            keyset = afterId;
+        } else {
+            String field = UnitStats.sortKey(sort.field());
+            Double value = cursor.getValue();
+            if (value == null) {
+                keyset = asc
+                        ? Filters.or(Filters.and(Filters.eq(field, null), afterId), Filters.ne(field, null))
+                        : Filters.and(Filters.eq(field, null), afterId);
+            } else {
+                Bson beyond = asc ? Filters.gt(field, value) : Filters.lt(field, value);
+                Bson tie = Filters.and(Filters.eq(field, value), afterId);
+                keyset = asc
+                        ? Filters.or(beyond, tie)
+                        : Filters.or(beyond, tie, Filters.eq(field, null));
+            }
+        }
+        return Filters.and(toFilter(), keyset);
+    }
+
+    // ================= Evaluación en memoria =================
+
+    /**
+     * true si el documento cumple los criterios (equivalente a {@link #toFilter()}).
+     * Como en MongoDB, los rangos solo aceptan valores numéricos y el texto
+     * también se busca en los elementos de arrays.
+     */
+    public boolean matches(BsonDocument doc) {
+        if (!types.isEmpty() && !types.contains(stringOf(doc, "type"))) return false;
+        if (saleType != null && !saleType.equals(stringOf(doc, "saleType"))) return false;
+        if (!overlaps(doc, "price", minPrice, maxPrice)) return false;
+        if (!overlaps(doc, "area", minArea, maxArea)) return false;
+        if (!inRange(numberOf(doc, "pricePerSqm"), minPricePerSqm, maxPricePerSqm)) return false;
+        if (bedrooms != null && !inRange(UnitStats.highOf(doc, "bedrooms"), bedrooms.doubleValue(), null)) return false;
+        if (!atLeast(doc, "bathrooms", bathrooms)) return false;
+        if (!atLeast(doc, "parking", parking)) return false;
+        for (String amenity : amenities) {
+            if (!containsValue(doc.get("amenities"), amenity)) return false;
+        }
+        if (hasUnitCriteria() && matchingUnits(doc).isEmpty()) return false;
+        if (!matchesGeo(doc)) return false;
+        return matchesText(doc);
+    }
+
+    /** true si hay criterios sobre las unidades (units[]) */
+    public boolean hasUnitCriteria() {
+        return unitBedrooms != null || unitMinPrice != null || unitMaxPrice != null
+                || unitMinArea != null || unitMaxArea != null;
+    }
+
+    /**
+     * Unidades del documento que cumplen los criterios de unidad, en su orden
+     * (todas si no hay criterios)
+     */
+    public BsonArray matchingUnits(BsonDocument doc) {
+        BsonValue units = doc.get("units");
+        BsonArray result = new BsonArray();
+        if (units == null || !units.isArray()) return result;
+        for (BsonValue unit : units.asArray()) {
+            if (unit.isDocument() && matchesUnit(unit.asDocument())) result.add(unit);
+        }
+        return result;
+    }
+
+    /** Criterios de unidad sobre los valores ya leídos (NaN = sin valor numérico) */
+    public boolean matchesUnit(double bedrooms, double price, double area) {
+        if (unitBedrooms != null && !(bedrooms >= unitBedrooms)) return false;
+        if (!inRangeOrNaN(price, unitMinPrice, unitMaxPrice)) return false;
+        return inRangeOrNaN(area, unitMinArea, unitMaxArea);
+    }
+
+    private boolean matchesUnit(BsonDocument unit) {
+        return matchesUnit(numberOrNaN(unit, "bedrooms"), numberOrNaN(unit, "price"), numberOrNaN(unit, "area"));
+    }
+
+    /**
+     * true si no hay criterios geográficos o el punto "location" los cumple
+     */
+    public boolean matchesGeo(BsonDocument doc) {
+        if (nearLat == null && within == null) return true;
+        double[] point = Geo.pointOf(doc);
+        if (point == null) return false;
+        if (nearLat != null && Geo.distanceMeters(nearLat, nearLng, point[0], point[1]) > radius) return false;
+        return within == null || within.contains(point[0], point[1]);
+    }
+
+    /**
+     * true si no hay texto libre o cada término de la consulta es prefijo de
+     * algún término de los campos de texto del documento
+     */
+    public boolean matchesText(BsonDocument doc) {
+        if (textTerms.isEmpty()) return true;
+        TreeSet<String> docTerms = new TreeSet<>();
+        for (String field : TEXT_FIELDS) {
+            for (String text : textsOf(doc.get(field))) docTerms.addAll(TextAnalyzer.analyze(text));
+        }
+        for (String term : textTerms) {
+            String candidate = docTerms.ceiling(term);
+            if (candidate == null || !candidate.startsWith(term)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Orden en memoria equivalente a {@link #toSort()}. Los valores ausentes o
+     * no numéricos cuentan como null y van primero en ascendente (como en MongoDB).
+     */
+    public Comparator<BsonDocument> comparator() {
+        Comparator<BsonDocument> byId = Comparator.comparing(PropertyQuery::idOf);
+        Comparator<BsonDocument> order = "_id".equals(sort.field())
+                ? byId
+                : Comparator.comparing((BsonDocument d) -> UnitStats.sortValueOf(d, sort.field()),
+                        Comparator.nullsFirst(Comparator.<Double>naturalOrder())).thenComparing(byId);
+        return sort.ascending() ? order : order.reversed();
+    }
+
+    /**
+     * true si el documento va después del cursor en el orden activo
+     * (equivalente a la parte keyset de {@link #toKeysetFilter()}). Sin cursor, siempre.
+     */
+    public boolean isAfterCursor(BsonDocument doc) {
+        if (cursor == null) return true;
+        int cmp = 0;
+        if (!"_id".equals(sort.field())) {
+            cmp = Comparator.nullsFirst(Comparator.<Double>naturalOrder())
+                    .compare(UnitStats.sortValueOf(doc, sort.field()), cursor.getValue());
+        }
+        if (cmp == 0) cmp = idOf(doc).compareTo(new ObjectId(cursor.getId()));
+        return sort.ascending() ? cmp > 0 : cmp < 0;
+    }
+
+    /**
+     * Cursor que apunta después del documento dado (el último de la página actual).
+     */
+    public PageCursor cursorAfter(Object sortValue, String id) {
+        Double value = (sortValue instanceof Number n) ? n.doubleValue() : null;
+        return new PageCursor(sort.key(), value, id);
+    }
+
+    /**
+     * Clave normalizada de los criterios de filtrado (sin orden ni paginación):
+     * dos peticiones con la misma clave seleccionan los mismos documentos aunque
+     * escriban los parámetros distinto ("Terreno" / "Solares", mayúsculas, orden).
+     */
+    public String filterKey() {
+        StringBuilder key = new StringBuilder();
+        if (!types.isEmpty()) key.append("type=").append(String.join("|", new TreeSet<>(types))).append(';');
+        if (saleType != null) key.append("saleType=").append(saleType).append(';');
+        appendRange(key, "price", minPrice, maxPrice);
+        appendRange(key, "area", minArea, maxArea);
+        appendRange(key, "pricePerSqm", minPricePerSqm, maxPricePerSqm);
+        if (bedrooms != null) key.append("bedrooms>=").append(bedrooms).append(';');
+        if (bathrooms != null) key.append("bathrooms>=").append(bathrooms).append(';');
+        if (parking != null) key.append("parking>=").append(parking).append(';');
+        if (!amenities.isEmpty()) key.append("amenities=").append(String.join("|", new TreeSet<>(amenities))).append(';');
+        if (unitBedrooms != null) key.append("unitBedrooms>=").append(unitBedrooms).append(';');
+        appendRange(key, "unitPrice", unitMinPrice, unitMaxPrice);
+        appendRange(key, "unitArea", unitMinArea, unitMaxArea);
+        if (nearLat != null) key.append("near=").append(nearLat).append(',').append(nearLng).append('~').append(radius).append(';');
+        if (within != null) key.append("within=").append(within).append(';');
+        if (!textTerms.isEmpty()) key.append("q=").append(String.join(" ", textTerms)).append(';');
+        return key.toString();
+    }
+
+    /** Número de documentos a saltar para la página solicitada */
+    public int skip() {
+        return (page - 1) * limit;
+    }
+
+    // ================= Getters =================
+
+    public List<String> getTypes() { return types; }
+    public String getSaleType() { return saleType; }
+    public Double getMinPrice() { return minPrice; }
+    public Double getMaxPrice() { return maxPrice; }
+    public Double getMinArea() { return minArea; }
+    public Double getMaxArea() { return maxArea; }
+    public Double getMinPricePerSqm() { return minPricePerSqm; }
+    public Double getMaxPricePerSqm() { return maxPricePerSqm; }
+    public Integer getBedrooms() { return bedrooms; }
+    public Integer getBathrooms() { return bathrooms; }
+    public Integer getParking() { return parking; }
+    public List<String> getAmenities() { return amenities; }
+    public Integer getUnitBedrooms() { return unitBedrooms; }
+    public Double getUnitMinPrice() { return unitMinPrice; }
+    public Double getUnitMaxPrice() { return unitMaxPrice; }
+    public Double getUnitMinArea() { return unitMinArea; }
+    public Double getUnitMaxArea() { return unitMaxArea; }
+    public Double getNearLat() { return nearLat; }
+    public Double getNearLng() { return nearLng; }
+    public double getRadius() { return radius; }
+    public Geo.Bounds getWithin() { return within; }
+    public String getQ() { return q; }
+    /** Términos analizados de q (vacío si no hay texto o solo palabras vacías) */
+    public List<String> getTextTerms() { return textTerms; }
+    public SortOrder getSort() { return sort; }
+    public int getPage() { return page; }
+    public int getLimit() { return limit; }
+    public boolean isCursorMode() { return cursorMode; }
+    public PageCursor getCursor() { return cursor; }
+
+    public void setPage(int page) { this.page = Math.max(1, page); }
+
+    // ================= Helpers =================
+
+    private static void appendRange(StringBuilder key, String field, Double min, Double max) {
+        if (min == null && max == null) return;
+        key.append(field).append('=').append(min == null ? "" : min).append("..").append(max == null ? "" : max).append(';');
+    }
+
+    /** NaN no está en ningún rango acotado */
+    private static boolean inRangeOrNaN(double value, Double min, Double max) {
+        return inRange(Double.isNaN(value) ? null : (Double) value, min, max);
+    }
+
+    private static double numberOrNaN(BsonDocument doc, String field) {
+        Double value = numberOf(doc, field);
+        return value != null ? value : Double.NaN;
+    }
+
+    private static boolean inRange(Double value, Double min, Double max) {
+        if (min == null && max == null) return true;
+        if (value == null) return false;
+        return (min == null || value >= min) && (max == null || value <= max);
+    }
+
+    /** El rango [mínimo, máximo] del documento se solapa con [min, max] */
+    private static boolean overlaps(BsonDocument doc, String field, Double min, Double max) {
+        if (min == null && max == null) return true;
+        Double low = UnitStats.lowOf(doc, field);
+        Double high = UnitStats.highOf(doc, field);
+        if (low == null || high == null) return false;
+        return (max == null || low <= max) && (min == null || high >= min);
+    }
+
+    private static boolean atLeast(BsonDocument doc, String field, Integer min) {
+        return min == null || inRange(numberOf(doc, field), min.doubleValue(), null);
+    }
+
+    /** Igualdad exacta con el valor o con algún elemento del array (como $all en MongoDB) */
+    private static boolean containsValue(BsonValue value, String expected) {
+        if (value == null) return false;
+        if (value.isString()) return value.asString().getValue().equals(expected);
+        if (value.isArray()) {
+            for (BsonValue item : value.asArray()) {
+                if (item.isString() && item.asString().getValue().equals(expected)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** El texto del valor, o de cada elemento si es un array */
+    public static List<String> textsOf(BsonValue value) {
+        if (value == null) return List.of();
+        if (value.isString()) return List.of(value.asString().getValue());
+        List<String> texts = new ArrayList<>();
+        if (value.isArray()) {
+            for (BsonValue item : value.asArray()) texts.addAll(textsOf(item));
+        }
+        return texts;
+    }
+
+    private static String stringOf(BsonDocument doc, String field) {
+        BsonValue v = doc.get(field);
+        return (v != null && v.isString()) ? v.asString().getValue() : null;
+    }
+
+    /** Valor numérico del campo, o null si falta o no es número */
+    static Double numberOf(BsonDocument doc, String field) {
+        BsonValue v = doc.get(field);
+        return (v != null && v.isNumber()) ? v.asNumber().doubleValue() : null;
+    }
+
+    private static ObjectId idOf(BsonDocument doc) {
+        return doc.getObjectId("_id").getValue();
+    }
+
+    private static void addRange(List<Bson> filters, String field, Double min, Double max) {
+        if (min != null && max != null) filters.add(Filters.and(Filters.gte(field, min), Filters.lte(field, max)));
+        else if (min != null) filters.add(Filters.gte(field, min));
+        else if (max != null) filters.add(Filters.lte(field, max));
+    }
+
+    /**
+     * Rango sobre el campo raíz o, si no es numérico, solape con los agregados de
+     * las unidades (índices unitStats.min* / unitStats.max*)
+     */
+    private static void addUnitRange(List<Bson> filters, String field, Double min, Double max) {
+        if (min == null && max == null) return;
+        List<Bson> root = new ArrayList<>();
+        addRange(root, field, min, max);
+        List<Bson> units = new ArrayList<>();
+        units.add(Filters.not(Filters.type(field, "number")));
+        // Explícito para que MongoDB pueda usar los índices parciales de unitStats
+        units.add(Filters.exists(UnitStats.FIELD));
+        if (max != null) units.add(Filters.lte(UnitStats.FIELD + "." + UnitStats.minKey(field), max));
+        if (min != null) units.add(Filters.gte(UnitStats.FIELD + "." + UnitStats.maxKey(field), min));
+        filters.add(Filters.or(root.get(0), Filters.and(units)));
+    }
+
+    /**
+     * Normaliza el tipo a los valores guardados. Acepta los alias del formulario
+     * público ("Terreno", "Local") y agrupa Solar/Solares.
+     */
+    static List<String> canonicalTypes(String raw) {
+        if (raw == null || raw.equalsIgnoreCase("todos")) return List.of();
+        String t = raw.trim().toLowerCase(Locale.ROOT);
+        switch (t) {
+            case "solar":
+            case "solares":
+            case "terreno":
+            case "terrenos":
+                return List.of(PropertyValidator.TYPE_SOLAR, PropertyValidator.TYPE_SOLARES);
+            case "local":
+            case "local comercial":
+                return List.of(PropertyValidator.TYPE_LOCAL_COMERCIAL);
+            case "casa":
+                return List.of(PropertyValidator.TYPE_CASA);
+            case "apartamento":
+                return List.of(PropertyValidator.TYPE_APARTAMENTO);
+            case "penthouse":
+                return List.of(PropertyValidator.TYPE_PENTHOUSE);
+            case "villa":
+                return List.of(PropertyValidator.TYPE_VILLA);
+            default:
+                throw new IllegalArgumentException("Parámetro 'type' inválido: " + raw);
+        }
+    }
+
+    /** "venta" -> "Venta"; "Venta / Alquiler" se interpreta como sin filtro */
+    static String canonicalSaleType(String raw) {
+        if (raw == null || raw.contains("/")) return null;
+        String s = raw.trim().toLowerCase(Locale.ROOT);
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static String first(Map<String, List<String>> params, String key) {
+        List<String> values = params.get(key);
+        if (values == null || values.isEmpty() || values.get(0) == null) return null;
+        String v = values.get(0).trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    /** "Piscina, Gimnasio" -> [Piscina, Gimnasio] (sin vacíos ni duplicados) */
+    private static List<String> parseList(String raw) {
+        if (raw == null) return List.of();
+        List<String> values = new ArrayList<>();
+        for (String part : raw.split(",")) {
+            String v = part.trim();
+            if (!v.isEmpty() && !values.contains(v)) values.add(v);
+        }
+        return List.copyOf(values);
+    }
+
+    private static Double parseDouble(Map<String, List<String>> params, String key) {
+        String v = first(params, key);
+        if (v == null) return null;
+        try {
+            double d = Double.parseDouble(v);
+            if (Double.isNaN(d) || Double.isInfinite(d) || d < 0) throw new NumberFormatException();
+            return d;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parámetro '" + key + "' inválido: " + v);
+        }
+    }
+
+    private static Integer parseInt(Map<String, List<String>> params, String key, int min, int max) {
+        String v = first(params, key);
+        if (v == null) return null;
+        try {
+            int n = Integer.parseInt(v);
+            if (n < min || n > max) throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parámetro '" + key + "' inválido: " + v
+                    + (max == Integer.MAX_VALUE ? " (mínimo " + min + ")" : " (entre " + min + " y " + max + ")"));
+        }
+    }
+}
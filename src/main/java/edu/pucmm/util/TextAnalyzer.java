@@ -0,0 +1,107 @@
+package edu.pucmm.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Análisis de texto en español para la búsqueda libre.
+ *
+ * Un texto se convierte en términos así:
+ * 1. minúsculas y sin acentos ("Balcón" -> "balcon", "Niño" -> "nino")
+ * 2. se separa por todo lo que no sea letra o dígito
+ * 3. se descartan las palabras vacías ("de", "la", "con"...) y las de una letra
+ * 4. stemming ligero: se quita el plural y la vocal final, de modo que
+ *    "casa", "casas" y "caso" comparten término ("cas"), igual que
+ *    "balcón"/"balcones" ("balcon") o "local"/"locales" ("local")
+ *
+ * Los documentos y las consultas pasan por el mismo análisis; un término de la
+ * consulta coincide con los términos del documento que empiezan por él, así que
+ * también sirve mientras el usuario escribe ("pisc" encuentra "piscina").
+ */
+public final class TextAnalyzer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+
+    // Ya sin acentos
+    private static final Set<String> STOPWORDS = Set.of(
+            "al", "con", "de", "del", "el", "en", "es", "esa", "ese", "esta", "este", "estas", "estos",
+            "la", "las", "le", "les", "lo", "los", "mas", "muy", "para", "por", "que", "se", "sin",
+            "sobre", "su", "sus", "un", "una", "unas", "unos", "y"
+    );
+
+    private TextAnalyzer() {}
+
+    /**
+     * Términos del texto en orden de aparición (con repeticiones)
+     */
+    public static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isBlank()) return terms;
+        for (String token : SEPARATORS.split(fold(text))) {
+            if (token.isEmpty() || STOPWORDS.contains(token)) continue;
+            if (token.length() == 1 && !Character.isDigit(token.charAt(0))) continue;
+            terms.add(stem(token));
+        }
+        return terms;
+    }
+
+    /**
+     * Términos distintos de una consulta, en orden
+     */
+    public static List<String> queryTerms(String text) {
+        return new ArrayList<>(new LinkedHashSet<>(analyze(text)));
+    }
+
+    /**
+     * Minúsculas y sin marcas diacríticas
+     */
+    public static String fold(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        return MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    /**
+     * Stemming ligero: plural ("s") y vocal final (a, e, o). Solo palabras;
+     * los números se dejan tal cual.
+     */
+    static String stem(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isLetter(token.charAt(i))) return token;
+        }
+        String word = token;
+        if (word.length() > 3 && word.endsWith("s")) word = word.substring(0, word.length() - 1);
+        if (word.length() > 3) {
+            char last = word.charAt(word.length() - 1);
+            if (last == 'a' || last == 'e' || last == 'o') word = word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    /**
+     * Expresión regular equivalente a un término, sin distinguir acentos, para
+     * buscarlo en MongoDB cuando no está el catálogo en memoria. Como en el índice,
+     * el término es el comienzo de una palabra: no puede ir precedido de una letra
+     * o un dígito ("cas" encuentra "Casa" pero no "Vicasa").
+     */
+    public static Pattern accentInsensitive(String term) {
+        StringBuilder regex = new StringBuilder("(?<![\\p{L}\\p{N}])");
+        for (char c : term.toCharArray()) {
+            switch (c) {
+                case 'a' -> regex.append("[aáàä]");
+                case 'e' -> regex.append("[eéèë]");
+                case 'i' -> regex.append("[iíìï]");
+                case 'o' -> regex.append("[oóòö]");
+                case 'u' -> regex.append("[uúùü]");
+                case 'n' -> regex.append("[nñ]");
+                default -> regex.append(c);  // los términos solo tienen [a-z0-9]
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
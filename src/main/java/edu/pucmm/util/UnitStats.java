@@ -0,0 +1,138 @@
+package edu.pucmm.util;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agregados de las unidades (units[]) de un desarrollo, guardados en la propiedad
+ * como "unitStats": { count, minPrice, maxPrice, minArea, maxArea, minBedrooms, maxBedrooms }.
+ *
+ * Apartamentos y penthouses con unidades no tienen por qué llevar precio, área ni
+ * habitaciones en la raíz ({@link PropertyValidator}); con estos campos los filtros
+ * y el orden los tratan como el rango [mínimo, máximo] de sus unidades sin
+ * recorrer el array, y MongoDB puede usar un índice.
+ *
+ * Un min/max falta si ninguna unidad tiene ese valor.
+ *
+ * El valor por el que se ordena ({@link #lowOf}) se guarda además en la raíz como
+ * "sortPrice" / "sortArea" ({@link #appendSortKeys}): MongoDB ordena, pagina por
+ * cursor y agrupa por tramos sobre ese campo, el mismo valor que usa el índice en
+ * memoria.
+ */
+public final class UnitStats {
+
+    public static final String FIELD = "unitStats";
+    /** Campos de las unidades que se agregan */
+    public static final List<String> FIELDS = List.of("price", "area", "bedrooms");
+    /** Campos de orden con su valor guardado ({@link #sortKey}) */
+    public static final List<String> SORT_FIELDS = List.of("price", "area");
+
+    private UnitStats() {}
+
+    /**
+     * Agregados de una lista de unidades (Map del cuerpo JSON o Document de MongoDB).
+     * Los valores no numéricos se ignoran.
+     */
+    public static Document summarize(List<?> units) {
+        Document stats = new Document("count", units.size());
+        for (String field : FIELDS) {
+            Double min = null, max = null;
+            for (Object unit : units) {
+                if (!(unit instanceof Map<?, ?> map)) continue;
+                Double value = toDouble(map.get(field));
+                if (value == null) continue;
+                if (min == null || value < min) min = value;
+                if (max == null || value > max) max = value;
+            }
+            if (min != null) {
+                stats.append(minKey(field), min);
+                stats.append(maxKey(field), max);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Guarda en el documento (a escribir en MongoDB) el valor de orden de cada
+     * {@link #SORT_FIELDS}: el de la raíz o, si no es numérico, el mínimo de
+     * {@link #FIELD}. Se quita si no hay ninguno. Llamar después de fijar unitStats.
+     */
+    public static Document appendSortKeys(Document doc) {
+        Object stats = doc.get(FIELD);
+        for (String field : SORT_FIELDS) {
+            Object low = doc.get(field);
+            if (!(low instanceof Number) && stats instanceof Map<?, ?> map) low = map.get(minKey(field));
+            if (low instanceof Number n) doc.append(sortKey(field), n.doubleValue());
+            else doc.remove(sortKey(field));
+        }
+        return doc;
+    }
+
+    /** "price" -> "sortPrice" */
+    public static String sortKey(String field) {
+        return "sort" + Character.toUpperCase(field.charAt(0)) + field.substring(1);
+    }
+
+    /**
+     * Valor de orden del documento: el guardado por {@link #appendSortKeys} o, si
+     * aún no lo tiene, {@link #lowOf} (son el mismo valor).
+     */
+    public static Double sortValueOf(BsonDocument doc, String field) {
+        if (SORT_FIELDS.contains(field)) {
+            BsonValue stored = doc.get(sortKey(field));
+            if (stored != null && stored.isNumber()) return stored.asNumber().doubleValue();
+        }
+        return lowOf(doc, field);
+    }
+
+    /** "price" -> "minPrice" */
+    public static String minKey(String field) {
+        return "min" + Character.toUpperCase(field.charAt(0)) + field.substring(1);
+    }
+
+    /** "price" -> "maxPrice" */
+    public static String maxKey(String field) {
+        return "max" + Character.toUpperCase(field.charAt(0)) + field.substring(1);
+    }
+
+    /**
+     * Menor valor del campo: el de primer nivel o, si no es numérico, el mínimo de
+     * las unidades. Es el que se usa para ordenar ("desde").
+     */
+    public static Double lowOf(BsonDocument doc, String field) {
+        return valueOf(doc, field, true);
+    }
+
+    /**
+     * Mayor valor del campo: el de primer nivel o, si no es numérico, el máximo de
+     * las unidades.
+     */
+    public static Double highOf(BsonDocument doc, String field) {
+        return valueOf(doc, field, false);
+    }
+
+    private static Double valueOf(BsonDocument doc, String field, boolean low) {
+        BsonValue root = doc.get(field);
+        if (root != null && root.isNumber()) return root.asNumber().doubleValue();
+        if (!FIELDS.contains(field)) return null;
+        BsonValue stats = doc.get(FIELD);
+        if (stats == null || !stats.isDocument()) return null;
+        BsonValue v = stats.asDocument().get(low ? minKey(field) : maxKey(field));
+        return (v != null && v.isNumber()) ? v.asNumber().doubleValue() : null;
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number n) return n.doubleValue();
+        if (value == null) return null;
+        try {
+            double d = Double.parseDouble(String.valueOf(value).trim());
+            return Double.isFinite(d) ? d : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -42,7 +42,11 @@
     // Aplicar configuración a la UI
     function applyConfig(config) {
         if (config.imageUrl) {
-            previewContainer.style.backgroundImage = `url('${config.imageUrl}')`;
+            // Recortada por el servidor al tamaño de la vista previa
+            const url = /\/api\/images\/[a-f0-9]{24}$/i.test(config.imageUrl)
+                ? `${config.imageUrl}?w=1280&h=400&fit=cover`
+                : config.imageUrl;
+            previewContainer.style.backgroundImage = `url('${url}')`;
         }
         titleInput.value = config.title || '';
         descriptionInput.value = config.description || '';
@@ -151,6 +151,7 @@ function initializeAdminPanel() {
 
     // ===== Estado =====
     let editingId = null;
+    let editingVersion = null;  // versión leída al abrir la edición (409 si otro la cambió)
     let featuresList = [];
     let amenitiesList = [];
     let existingImageUrls = [];  // urls existentes (edición)
@@ -193,6 +194,11 @@ function initializeAdminPanel() {
         // Fallback: por compatibilidad con datos viejos (ej. "/uploads/xxx.png")
         return `${API_BASE}${str}`;
     }
+    // Vista previa recortada por el servidor (?w=&h=&fit=cover) para no bajar el original
+    function croppedImageUrl(url, w, h) {
+        if (!/\/api\/images\/[a-f0-9]{24}$/i.test(String(url || ''))) return url;
+        return `${url}?w=${w}&h=${h}&fit=cover`;
+    }
     function minUnitPrice(){
         const vals = unitsList.map(u => Number(u.price)).filter(Number.isFinite);
         return vals.length ? Math.min(...vals) : null;
@@ -530,6 +536,7 @@ function initializeAdminPanel() {
         }
         
         editingId = null;
+        editingVersion = null;
         featuresList = [];
         amenitiesList = [];
         existingImageUrls = [];
@@ -807,7 +814,7 @@ function initializeAdminPanel() {
             card.className = 'card h-100';
             card.innerHTML = `
         <div class="ratio ratio-16x9">
-          <img src="${mainImg}" alt="${title}" loading="lazy">
+          <img src="${croppedImageUrl(mainImg, 640, 360)}" alt="${title}" loading="lazy">
         </div>
         <div class="card-body">
           <div class="d-flex flex-wrap gap-2 mb-2">
@@ -972,7 +979,7 @@ function initializeAdminPanel() {
             item.className = 'image-item';
             const src = toImageUrl(imageUrl, API_BASE);
             item.innerHTML = `
-    <img src="${src}" alt="img">
+    <img src="${croppedImageUrl(src, 320, 200)}" alt="img">
     <button type="button" class="remove" title="Quitar"><i class="bi bi-x-lg"></i></button>
   `;
             // Use the URL itself to find and remove the correct item
@@ -1264,6 +1271,7 @@ function initializeAdminPanel() {
     }
     function openEditModal(p, id){
         editingId = id;
+        editingVersion = Number.isFinite(p?.version) ? p.version : null;
         modalEl.querySelector('.modal-title').textContent = 'Modificar propiedad';
         form?.classList.remove('was-validated');
         
@@ -1502,6 +1510,7 @@ function initializeAdminPanel() {
                     ? `${API_BASE}/api/properties/${editingId}`
                     : `${API_BASE}/api/properties`;
                 const method = editingId ? 'PUT' : 'POST';
+                if (editingId && editingVersion != null) data.version = editingVersion;
 
                 const res = await fetch(url, {
                     method,
@@ -1519,6 +1528,7 @@ function initializeAdminPanel() {
                     }
                     
                     editingId = null;
+                    editingVersion = null;
                     form.reset();
                     form.classList.remove('was-validated');
                     modalEl.querySelector('.modal-title').textContent = 'Crear propiedad';
@@ -1540,6 +1550,13 @@ function initializeAdminPanel() {
                     
                     if (marker){ marker.remove(); marker = null; }
                     await loadCards();
+                }else if (res.status === 409){
+                    const msg = 'Otra persona modificó esta propiedad mientras la editabas. Cierra y vuelve a abrirla para ver los cambios.';
+                    if (typeof FormValidator !== 'undefined') {
+                        FormValidator.showGlobalError(form, msg);
+                    } else {
+                        alert(msg);
+                    }
                 }else{
                     let msg = editingId ? 'Error al actualizar la propiedad' : 'Error al guardar la propiedad';
                     let errorsList = [];
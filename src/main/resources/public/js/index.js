@@ -28,7 +28,30 @@ function escapeHtml(str) {
         .replace(/>/g, '&gt;');
 }
 
+// srcset/sizes con las derivadas de /api/images (320/640/1280/1920px de ancho);
+// nada para otras URLs
+function srcsetAttrs(url, sizes) {
+    if (!/\/api\/images\/[a-f0-9]{24}$/i.test(String(url || ''))) return '';
+    const srcset = [320, 640, 1280, 1920].map(w => `${url}?w=${w} ${w}w`).join(', ');
+    return `srcset="${srcset}" sizes="${sizes}"`;
+}
+
+// Imagen del hero recortada al tamaño de la pantalla (?w=&h=&fit=cover) en vez
+// del original; anchos y proporciones fijos para que el servidor guarde pocas variantes
+function heroImageUrl(url) {
+    if (!/\/api\/images\/[a-f0-9]{24}$/i.test(String(url || ''))) return url;
+    const dpr = window.devicePixelRatio || 1;
+    const portrait = window.innerHeight > window.innerWidth;
+    const longSide = (portrait ? window.innerHeight : window.innerWidth) * dpr;
+    const long = [640, 1280, 1920, 2560].find(x => x >= longSide) || 2560;
+    const short = long * 9 / 16;
+    return portrait
+        ? `${url}?w=${short}&h=${long}&fit=cover&q=75`
+        : `${url}?w=${long}&h=${short}&fit=cover&q=75`;
+}
+
 function getMainImage(p) {
+    if (p?.mainImage) return p.mainImage; // vista card
     if (Array.isArray(p?.images) && p.images[0]) return p.images[0];
     return 'https://via.placeholder.com/800x450?text=Propiedad';
 }
@@ -133,42 +156,14 @@ async function cargarHeroRecientes() {
     try {
         console.log('[HERO] Iniciando carga del hero...');
 
-        // 1. Cargar configuración del Hero de Propiedades PRIMERO
-        let heroConfig = null;
-        try {
-            console.log('[HERO] Solicitando configuración del hero...');
-            const heroResponse = await fetch('/api/hero/propiedades', {
-                credentials: 'include'
-            });
-            
-            console.log('[HERO] Respuesta del servidor:', heroResponse.status);
-            
-            if (heroResponse.ok) {
-                heroConfig = await heroResponse.json();
-                console.log('[HERO] ✅ Configuración del hero cargada:', heroConfig);
-            } else {
-                console.log('[HERO] ⚠️ No hay configuración del hero (status:', heroResponse.status, ')');
-            }
-        } catch (heroError) {
-            console.warn('[HERO] ⚠️ Error al cargar configuración del hero:', heroError);
-        }
-
-        // 2. Cargar propiedades recientes
-        console.log('[HERO] Cargando propiedades recientes...');
-        const { ok, status, data } = await fetchJSON('/api/properties');
+        // 1. Configuración del hero + propiedades recientes con imagen, en una sola petición
+        //    (el servidor ya filtra, ordena y recorta; no se descarga el catálogo)
+        console.log('[HERO] Solicitando feed del hero...');
+        const { ok, status, data } = await fetchJSON('/api/hero/feed?limit=5');
         if (!ok) throw new Error(`HTTP ${status}`);
 
-        const properties = coerceToArray(data);
-        
-        // Filtrar y ordenar propiedades con imágenes
-        const recientes = properties
-            .filter(p => Array.isArray(p.images) && p.images.length > 0)
-            .sort((a, b) => {
-                const dateA = a.createdAt ? new Date(a.createdAt) : new Date(0);
-                const dateB = b.createdAt ? new Date(b.createdAt) : new Date(0);
-                return dateB - dateA;
-            })
-            .slice(0, 5);
+        const heroConfig = data?.hero || null;
+        const recientes = Array.isArray(data?.properties) ? data.properties : [];
 
         console.log('[HERO] Propiedades recientes encontradas:', recientes.length);
 
@@ -234,7 +229,7 @@ async function cargarHeroRecientes() {
             
             // CRÍTICO: Asegurar que la imagen se cargue correctamente
             // Escape the URL to prevent CSS injection
-            const escapedUrl = slide.imageUrl.replace(/'/g, "\\'").replace(/"/g, '\\"');
+            const escapedUrl = heroImageUrl(slide.imageUrl).replace(/'/g, "\\'").replace(/"/g, '\\"');
             slideDiv.style.backgroundImage = `url('${escapedUrl}')`;
             slideDiv.style.backgroundSize = 'cover';
             slideDiv.style.backgroundPosition = 'center';
@@ -334,9 +329,7 @@ async function cargarHeroRecientes() {
    Filtros + orden + paginación (extensión)
    ========================= */
 
-// Cache de datos y estado UI
-let ALL_PROPERTIES = [];
-
+// Estado UI
 const $ = (id) => document.getElementById(id);
 const qInput        = $('q');
 const fType         = $('fType');
@@ -368,18 +361,6 @@ function parseMoney(v){
     return Number.isFinite(n) ? n : null;
 }
 
-function extractPrice(p){
-    const n = Number(p?.price);
-    if (Number.isFinite(n)) return n;
-    // units[0].price
-    const unitP = Array.isArray(p?.units) ? p.units.find(u => Number.isFinite(Number(u?.price))) : null;
-    if (unitP) return Number(unitP.price);
-    // priceFormatted "RD$ 750,000" / "US$ 5,000,000"
-    const pf = parseMoney(p?.priceFormatted);
-    if (pf != null) return pf;
-    return NaN;
-}
-
 // Lee valores aunque cambien IDs/names en el HTML
 function readFiltersFromDOM(){
     const pick = (sel)=> document.querySelector(sel);
@@ -403,72 +384,26 @@ function readFiltersFromDOM(){
         max: parseMoney(maxEl?.value ?? '')
     };
 }
-function numOrNull(v){ const n = Number(v); return Number.isFinite(n) ? n : null; }
-
-function haystackFor(p){
-    return [
-        p.title,
-        p.descriptionParagraph,
-        p.type,
-        p.saleType,
-        (p.location ? (typeof p.location === 'string'
-            ? p.location
-            : [p.location.sector,p.location.city,p.location.province,p.location.country].filter(Boolean).join(' ')) : '')
-    ].filter(Boolean).join(' ').toLowerCase();
-}
-
-function applyFilters(list){
-    const q = STATE.q.trim().toLowerCase();
-    return list.filter(p=>{
-        // texto libre
-        if (q){
-            const haystack = [
-                p.title,
-                p.descriptionParagraph,
-                p.type,
-                p.saleType,
-                (p.location ? (typeof p.location === 'string'
-                    ? p.location
-                    : [p.location.sector, p.location.city, p.location.province, p.location.country].filter(Boolean).join(' ')) : '')
-            ].filter(Boolean).join(' ').toLowerCase();
-            if (!haystack.includes(q)) return false;
-        }
-
-        // tipo y transacción (case-insensitive)
-        if (STATE.type && String(p.type||'').toLowerCase() !== STATE.type.toLowerCase()) return false;
-        if (STATE.saleType && String(p.saleType||'').toLowerCase() !== STATE.saleType.toLowerCase()) return false;
-
-        // precio (acepta number, formatted, o units[].price)
-        const price = extractPrice(p);
-        if (STATE.min != null && !(Number.isFinite(price) && price >= STATE.min)) return false;
-        if (STATE.max != null && !(Number.isFinite(price) && price <= STATE.max)) return false;
-
-        return true;
-    });
-}
-
-
-function sortList(list){
-    const [field, dir] = (STATE.sort || 'createdAt-desc').split('-');
-    const mult = dir === 'asc' ? 1 : -1;
-    return [...list].sort((a,b)=>{
-        let va, vb;
-        if (field === 'price'){ va = Number(a.price); vb = Number(b.price); }
-        else if (field === 'area'){ va = Number(a.area); vb = Number(b.area); }
-        else { va = new Date(a.createdAt||0).getTime(); vb = new Date(b.createdAt||0).getTime(); }
-        if (!Number.isFinite(va)) va = -Infinity;
-        if (!Number.isFinite(vb)) vb = -Infinity;
-        return (va - vb) * mult;
-    });
+// Filtros activos como query params (comunes al listado y a las facetas)
+function buildFilterParams(){
+    const params = new URLSearchParams();
+    const q = STATE.q.trim();
+    if (q) params.set('q', q);
+    if (STATE.type) params.set('type', STATE.type);
+    if (STATE.saleType) params.set('saleType', STATE.saleType);
+    if (STATE.min != null) params.set('minPrice', String(STATE.min));
+    if (STATE.max != null) params.set('maxPrice', String(STATE.max));
+    return params;
 }
 
-function paginate(list){
-    const total = list.length;
-    const pages = Math.max(1, Math.ceil(total / STATE.pageSize));
-    const page  = Math.min(Math.max(1, STATE.page), pages);
-    const start = (page - 1) * STATE.pageSize;
-    const end   = start + STATE.pageSize;
-    return { total, pages, page, items: list.slice(start, end) };
+// Traduce el estado de la UI a los query params de /api/properties
+function buildListQuery(){
+    const params = buildFilterParams();
+    params.set('sort', STATE.sort || 'createdAt-desc');
+    params.set('page', String(STATE.page));
+    params.set('limit', String(STATE.pageSize));
+    params.set('view', 'card'); // solo los campos que pinta la tarjeta
+    return params.toString();
 }
 
 // Render de cards (reusa tu mismo layout)
@@ -507,7 +442,7 @@ function renderCards(items){
         card.className = 'card h-100 shadow-sm';
         card.innerHTML = `
       <div class="ratio ratio-16x9">
-        <img src="${mainImg}" alt="${title}" class="card-img-top" loading="lazy" style="object-fit: cover;">
+        <img src="${mainImg}" ${srcsetAttrs(mainImg, '(min-width: 768px) 33vw, 100vw')} alt="${title}" class="card-img-top" loading="lazy" style="object-fit: cover;">
       </div>
       <div class="card-body">
         <div class="d-flex flex-wrap gap-2 mb-2">
@@ -589,18 +524,133 @@ function updateResultsCount(total){
 
 }
 
-function applyAndRender(){
-    const filtered = sortList(applyFilters(ALL_PROPERTIES));
-    const { items, pages, page, total } = paginate(filtered);
-    STATE.page = page;
-    renderCards(items);
-    renderPagination(pages, page);
-    updateResultsCount(total);
+/* ---------------------- Conteos del panel de filtros ---------------------- */
+// Opciones del select que agrupan varios tipos guardados (mismos alias que el servidor)
+const TYPE_OPTION_KEYS = {
+    'Terreno': ['Solar', 'Solares'],
+    'Solares': ['Solar', 'Solares'],
+    'Local':   ['Local Comercial'],
+};
+
+function sumCounts(counts, keys){
+    return keys.reduce((acc, k) => acc + (Number(counts?.[k]) || 0), 0);
+}
+
+// Añade "(n)" a cada opción; la opción vacía ("Todos") muestra el total
+function labelOptions(select, counts, keysFor){
+    if (!select) return;
+    const total = sumCounts(counts, Object.keys(counts || {}));
+    for (const opt of select.options){
+        if (!opt.dataset.label) opt.dataset.label = opt.textContent;
+        const n = opt.value ? sumCounts(counts, keysFor(opt.dataset.label)) : total;
+        opt.textContent = `${opt.dataset.label} (${n})`;
+    }
+}
+
+function shortMoney(n){
+    if (n >= 1e6) return `${+(n / 1e6).toFixed(1)}M`;
+    if (n >= 1e3) return `${+(n / 1e3).toFixed(0)}K`;
+    return String(n);
+}
+
+// Tramos de precio como accesos rápidos que rellenan Mínimo/Máximo
+function renderPriceFacets(buckets){
+    const el = $('fPriceFacets');
+    if (!el) return;
+    el.innerHTML = '';
+    for (const b of (buckets || [])){
+        if (!b.count) continue;
+        const a = document.createElement('a');
+        a.href = '#';
+        a.className = 'me-2 text-nowrap';
+        a.textContent = b.max != null
+            ? `${shortMoney(b.min)}–${shortMoney(b.max)} (${b.count})`
+            : `${shortMoney(b.min)}+ (${b.count})`;
+        a.addEventListener('click', (e)=>{
+            e.preventDefault();
+            if (fMin) fMin.value = b.min ? String(b.min) : '';
+            if (fMax) fMax.value = b.max != null ? String(b.max) : '';
+            STATE.min = b.min || null;
+            STATE.max = b.max ?? null;
+            STATE.page = 1;
+            applyAndRender();
+        });
+        el.appendChild(a);
+    }
+}
+
+let FACETS_REQUEST_SEQ = 0;
+async function refreshFacets(){
+    const seq = ++FACETS_REQUEST_SEQ;
+    try {
+        const { ok, data } = await fetchJSON(`/api/properties/facets?${buildFilterParams().toString()}`);
+        if (!ok || seq !== FACETS_REQUEST_SEQ) return;
+        labelOptions(fType, data?.type, (label) => TYPE_OPTION_KEYS[label] || [label]);
+        labelOptions(fSaleType, data?.saleType, (label) => [label]);
+        renderPriceFacets(data?.price);
+    } catch (error) {
+        console.warn('No se pudieron cargar los conteos de filtros:', error);
+    }
+}
+
+// El servidor filtra, ordena y pagina; solo se descarga la página visible
+let LIST_REQUEST_SEQ = 0;
+async function applyAndRender(){
+    const seq = ++LIST_REQUEST_SEQ;
+    refreshFacets(); // en paralelo; los conteos no bloquean el listado
+    try {
+        const { ok, status, data } = await fetchJSON(`/api/properties?${buildListQuery()}`);
+        if (seq !== LIST_REQUEST_SEQ) return; // llegó una respuesta más reciente
+        if (!ok) throw new Error(`HTTP ${status}`);
+
+        const items = coerceToArray(data);
+        const total = Number.isFinite(Number(data?.total)) ? Number(data.total) : items.length;
+        const pages = Number(data?.pages) || 1;
+        const page  = Number(data?.page) || 1;
+
+        STATE.page = page;
+        renderCards(items);
+        renderPagination(pages, page);
+        updateResultsCount(total);
+    } catch (error) {
+        if (seq !== LIST_REQUEST_SEQ) return;
+        console.error('Error al cargar las propiedades:', error);
+        propertiesContainer.innerHTML = `
+      <div class="alert alert-danger" role="alert">
+        No se pudieron cargar las propiedades. Intenta de nuevo más tarde.
+      </div>`;
+    }
+}
+
+/* Autocompletado del buscador (ubicaciones y títulos) */
+let suggestSeq = 0;
+async function refreshSuggestions(text){
+    const list = $('qSuggestions');
+    if (!list) return;
+    const seq = ++suggestSeq;
+    const q = text.trim();
+    if (!q) { list.innerHTML = ''; return; }
+    try {
+        const res = await fetch(`/api/properties/suggest?q=${encodeURIComponent(q)}&limit=8`);
+        if (!res.ok || seq !== suggestSeq) return;
+        const items = await res.json();
+        if (seq !== suggestSeq) return; // llegó una respuesta más nueva
+        list.innerHTML = '';
+        items.forEach(s => {
+            const opt = document.createElement('option');
+            opt.value = s.text;
+            opt.label = s.type === 'location' ? `${s.text} · ${s.count}` : s.text;
+            list.appendChild(opt);
+        });
+    } catch (e) {
+        console.warn('[INDEX] Sugerencias no disponibles:', e);
+    }
 }
 
 /* Eventos (solo si existen los elementos) */
 let debounce;
 qInput?.addEventListener('input', (e)=>{
+    refreshSuggestions(e.target.value || '');
     clearTimeout(debounce);
     debounce = setTimeout(()=>{
         STATE.q = e.target.value || '';
@@ -648,36 +698,8 @@ async function cargarPropiedades() {
     propertiesContainer.innerHTML = '';
     propertiesContainer.className = 'row g-3';
 
-    try {
-        const { ok, status, data } = await fetchJSON('/api/properties');
-        if (!ok) throw new Error(`HTTP ${status}`);
-
-        const list = coerceToArray(data);
-        console.log('[INDEX] tamaño lista:', list.length, { keys: data && typeof data === 'object' ? Object.keys(data) : null });
-
-        // Cachear lista para filtros/paginación
-        ALL_PROPERTIES = Array.isArray(list) ? list : [];
-
-        if (!ALL_PROPERTIES.length) {
-            propertiesContainer.innerHTML = '<p class="text-muted">No hay propiedades disponibles.</p>';
-            updateResultsCount(0);
-            renderPagination(1, 1);
-            return;
-        }
-
-        // Diagnóstico opcional
-        try { console.table(ALL_PROPERTIES.map(p => ({ id: extractId(p), title: p?.title }))); } catch {}
-
-        // Primer render con estado actual (por defecto: recientes)
-        applyAndRender();
-
-    } catch (error) {
-        console.error('Error al cargar las propiedades:', error);
-        propertiesContainer.innerHTML = `
-      <div class="alert alert-danger" role="alert">
-        No se pudieron cargar las propiedades. Intenta de nuevo más tarde.
-      </div>`;
-    }
+    // Primer render con estado actual (por defecto: recientes)
+    await applyAndRender();
 }
 
 /* --------------------------- Event wiring + Scroll lock --------------------------- */
@@ -65,6 +65,12 @@ console.info(`[DETAIL] Script cargado @ ${new Date().toISOString()}`);
         container.innerHTML = `<div class="alert alert-danger my-4">${msg}</div>`;
     }
     const renderNotFound = () => renderError('Propiedad no encontrada.');
+    // srcset/sizes con las derivadas de /api/images (320/640/1280/1920px de ancho)
+    function srcsetAttrs(url, sizes) {
+        if (!/\/api\/images\/[a-f0-9]{24}$/i.test(String(url || ''))) return '';
+        const srcset = [320, 640, 1280, 1920].map(w => `${url}?w=${w} ${w}w`).join(', ');
+        return `srcset="${srcset}" sizes="${sizes}"`;
+    }
     function toImageUrl(s, API_BASE='') {
         if (!s) return '';
         const str = String(s);
@@ -140,15 +146,12 @@ console.info(`[DETAIL] Script cargado @ ${new Date().toISOString()}`);
         update();
     }
 
-    // -------- Fetch con fallback a /api/properties
-    async function fetchPropertyByIdWithFallback(id){
+    // -------- Fetch del detalle (sin respuesta = la propiedad no existe; no hace falta descargar el listado)
+    async function fetchPropertyById(id){
         const url = `${API_BASE}/api/properties/${encodeURIComponent(id)}`;
         const res = await fetch(url);
 
-        if (res.status === 404){
-            const list = await fetch(`${API_BASE}/api/properties`).then(r=>r.ok?r.json():[]);
-            return list.find(x => String(x?._id)===String(id) || String(x?.id)===String(id)) || null;
-        }
+        if (res.status === 404 || res.status === 400) return null;  // 400 = id mal formado
         if (!res.ok) throw new Error(`HTTP ${res.status} ${res.statusText}`);
         return res.json();
     }
@@ -216,12 +219,12 @@ console.info(`[DETAIL] Script cargado @ ${new Date().toISOString()}`);
   <!-- GALERÍA -->
   <section class="gallery my-3">
     <div class="g-main">
-      <img id="mainImage" src="${mainImg}" alt="${title}" loading="eager">
+      <img id="mainImage" src="${mainImg}" ${srcsetAttrs(mainImg, '(min-width: 992px) 60vw, 100vw')} alt="${title}" loading="eager">
       <button id="btnShowAllPhotos" class="more-btn"><i class="bi bi-grid-3x3-gap"></i> Ver todas</button>
     </div>
     ${[1,2,3,4].map(i=>{
             const src = images[i];
-            return `<div>${src?`<img data-index="${i}" src="${src}" alt="Foto ${i+1}" loading="lazy">`:`<div style="height:100%;border-radius:12px;background:#eef2f7"></div>`}</div>`;
+            return `<div>${src?`<img data-index="${i}" src="${src}" ${srcsetAttrs(src, '(min-width: 768px) 20vw, 50vw')} alt="Foto ${i+1}" loading="lazy">`:`<div style="height:100%;border-radius:12px;background:#eef2f7"></div>`}</div>`;
         }).join('')}
   </section>
 
@@ -346,6 +349,17 @@ ${p.descriptionParagraph ? `
         </div>
       </div>
 
+      <!-- Similares (las calcula el servidor y llegan en p.related) -->
+      ${related.length ? `
+      <div class="card section-card mb-4">
+        <div class="card-header"><h2 class="h5 m-0">Propiedades similares</h2></div>
+        <div class="card-body">
+          <div class="row g-3">
+            ${related.map(renderRelatedCard).join('')}
+          </div>
+        </div>
+      </div>`:''}
+
       <!-- Calculadora -->
       <div class="card section-card calc-card mb-5">
         <div class="card-header">
@@ -647,6 +661,34 @@ ${p.descriptionParagraph ? `
       </div>`;
     }
 
+    function escapeHtml(str){
+        return String(str ?? '')
+            .replaceAll('&','&amp;')
+            .replaceAll('<','&lt;')
+            .replaceAll('>','&gt;')
+            .replaceAll('"','&quot;')
+            .replaceAll("'","&#039;");
+    }
+    // Solo rutas del propio sitio: nada de "javascript:" ni "//otro-host"
+    function safeLocalUrl(url){
+        return typeof url === 'string' && url.startsWith('/') && !url.startsWith('//') ? url : '#';
+    }
+    function renderRelatedCard(r){
+        const thumb = toImageUrl(r.thumb, API_BASE) || '/assets/img/house.PNG';
+        const price = r.priceFormatted || fmtCurrency(r.price);
+        const title = escapeHtml(r.title);
+        return `
+      <div class="col-6 col-md-3">
+        <a href="${escapeHtml(safeLocalUrl(r.url))}" class="card h-100 text-decoration-none text-reset">
+          <img src="${escapeHtml(thumb)}" ${srcsetAttrs(thumb, '(min-width: 768px) 25vw, 50vw')} class="card-img-top" alt="" loading="lazy" style="aspect-ratio:4/3;object-fit:cover">
+          <div class="card-body p-2">
+            <div class="small fw-semibold text-truncate" title="${title}">${title || '—'}</div>
+            ${price ? `<div class="small text-muted">${escapeHtml(price)}</div>` : ''}
+          </div>
+        </a>
+      </div>`;
+    }
+
     function renderMapEmbed(p, fallbackText){
         // Soporta: location.lat/lng, location.latitude/longitude
         // y también p.lat/p.lng por si vienen a nivel raíz
@@ -707,7 +749,7 @@ ${p.descriptionParagraph ? `
         const id = getIdFromURL();
         if (!id){ renderError('Falta el parámetro "id" en la URL.'); return; }
         try{
-            const p = await fetchPropertyByIdWithFallback(id);
+            const p = await fetchPropertyById(id);
             if (!p){ renderNotFound(); return; }
             renderProperty(p);
         }catch(e){
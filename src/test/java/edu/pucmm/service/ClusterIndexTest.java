@@ -0,0 +1,168 @@
+package edu.pucmm.service;
+
+import edu.pucmm.model.MapCluster;
+import edu.pucmm.util.Geo;
+import edu.pucmm.util.UnitStats;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para ClusterIndex.
+ */
+public class ClusterIndexTest {
+
+    private static final Geo.Bounds SANTO_DOMINGO = new Geo.Bounds(-70.05, 18.40, -69.80, 18.55);
+
+    private List<RawBsonDocument> documents;
+    private ClusterIndex index;
+
+    private static RawBsonDocument property(int i, Double lat, Double lng, Double price) {
+        BsonDocument doc = new BsonDocument("_id", new BsonObjectId(new ObjectId(String.format("65a1b2c3d4e5f6a7b8c9%04x", i))));
+        if (lat != null) {
+            doc.append("location", new BsonDocument("type", new BsonString("Point"))
+                    .append("coordinates", new BsonArray(List.of(new BsonDouble(lng), new BsonDouble(lat)))));
+        }
+        if (price != null) doc.append("price", new BsonDouble(price));
+        return new RawBsonDocument(doc, new BsonDocumentCodec());
+    }
+
+    private static int total(List<MapCluster> clusters) {
+        int total = 0;
+        for (MapCluster c : clusters) total += c.getCount();
+        return total;
+    }
+
+    @Before
+    public void setUp() {
+        documents = new ArrayList<>();
+        // Dos grupos separados ~10 km dentro de Santo Domingo, uno sin precios
+        for (int i = 0; i < 10; i++) documents.add(property(i, 18.47 + i * 0.0005, -69.94 + i * 0.0005, 100000.0 * (i + 1)));
+        for (int i = 10; i < 15; i++) documents.add(property(i, 18.50 + i * 0.0005, -69.85, null));
+        documents.add(property(15, 19.45, -70.69, 50000.0));   // Santiago, fuera del área
+        documents.add(property(16, null, null, 75000.0));      // sin ubicación
+        index = ClusterIndex.build(documents, null);
+    }
+
+    @Test
+    public void testEveryLevelCountsTheSamePoints() {
+        Geo.Bounds world = new Geo.Bounds(-180, -85, 180, 85);
+        for (int zoom = 0; zoom <= 3; zoom++) assertEquals(16, total(index.clusters(world, zoom)));
+        // Desde el zoom 8 las celdas que tocan el área ya no llegan a Santiago
+        for (int zoom = 8; zoom <= 15; zoom++) {
+            assertEquals("zoom " + zoom, 15, total(index.clusters(SANTO_DOMINGO, zoom)));
+        }
+    }
+
+    @Test
+    public void testAggregatesPerCell() {
+        List<MapCluster> clusters = index.clusters(SANTO_DOMINGO, 11);
+        assertEquals(2, clusters.size());
+        MapCluster big = clusters.get(0);
+        assertEquals(10, big.getCount());
+        assertEquals(18.47225, big.getLat(), 1e-9);
+        assertEquals(100000.0, big.getMinPrice(), 0);
+        assertEquals(1000000.0, big.getMaxPrice(), 0);
+        assertNull(big.getId());
+        assertNull("sin precios no hay rango", clusters.get(1).getMinPrice());
+    }
+
+    @Test
+    public void testDevelopmentsUseTheirUnitPrices() {
+        // Desarrollo sin precio de primer nivel: unidades de 80k a 240k
+        BsonDocument stats = new BsonDocument(UnitStats.minKey("price"), new BsonDouble(80000))
+                .append(UnitStats.maxKey("price"), new BsonDouble(240000));
+        BsonDocument doc = new BsonDocument("_id", new BsonObjectId(new ObjectId()))
+                .append("location", new BsonDocument("type", new BsonString("Point"))
+                        .append("coordinates", new BsonArray(List.of(new BsonDouble(-69.90), new BsonDouble(18.50)))))
+                .append(UnitStats.FIELD, stats);
+        ClusterIndex single = ClusterIndex.build(List.of(new RawBsonDocument(doc, new BsonDocumentCodec())), null);
+
+        MapCluster cluster = single.clusters(SANTO_DOMINGO, 12).get(0);
+        assertEquals(80000.0, cluster.getMinPrice(), 0);
+        assertEquals(240000.0, cluster.getMaxPrice(), 0);
+    }
+
+    @Test
+    public void testSingletonsCarryId() {
+        List<MapCluster> clusters = index.clusters(new Geo.Bounds(-69.9405, 18.4695, -69.9350, 18.4755), 20);
+        assertEquals(10, clusters.size());
+        for (MapCluster c : clusters) {
+            assertEquals(1, c.getCount());
+            assertNotNull(c.getId());
+            assertEquals(c.getMinPrice(), c.getMaxPrice());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testViewportLargerThanScreen_ShouldFail() {
+        index.clusters(new Geo.Bounds(-180, -85, 180, 85), 10);
+    }
+
+    @Test
+    public void testRebuildFromPreviousIndex() {
+        List<RawBsonDocument> changed = new ArrayList<>(documents);
+        changed.set(0, property(0, 18.50, -69.85, 1.0));
+        changed.remove(16);
+        ClusterIndex rebuilt = ClusterIndex.build(changed, index);
+        ClusterIndex fresh = ClusterIndex.build(changed, null);
+        for (int zoom : new int[]{8, 11, 15}) {
+            List<MapCluster> a = rebuilt.clusters(SANTO_DOMINGO, zoom);
+            List<MapCluster> b = fresh.clusters(SANTO_DOMINGO, zoom);
+            assertEquals(b.size(), a.size());
+            for (int i = 0; i < a.size(); i++) {
+                assertEquals(b.get(i).getCount(), a.get(i).getCount());
+                assertEquals(b.get(i).getMinPrice(), a.get(i).getMinPrice());
+            }
+        }
+        assertEquals(1.0, rebuilt.clusters(SANTO_DOMINGO, 11).get(1).getMinPrice(), 0);
+    }
+
+    @Test
+    public void testPatchedLevelsMatchFullBuild() {
+        Geo.Bounds world = new Geo.Bounds(-180, -85, 180, 85);
+        Geo.Bounds street = new Geo.Bounds(-69.945, 18.465, -69.930, 18.480);
+        List<RawBsonDocument> current = new ArrayList<>(documents);
+        ClusterIndex patched = index;
+        for (int step = 0; step < 4; step++) {
+            switch (step) {
+                case 0 -> current.set(3, property(3, 18.51, -69.85, 2.0));        // se muda al otro grupo
+                case 1 -> current.set(15, property(15, null, null, 50000.0));      // pierde la ubicación
+                case 2 -> current.remove(9);                                       // deja su celda vacía
+                default -> current.add(property(20, 18.4705, -69.9395, 5.0));      // nueva
+            }
+            patched = ClusterIndex.build(new ArrayList<>(current), patched);
+            ClusterIndex fresh = ClusterIndex.build(new ArrayList<>(current), null);
+            for (int zoom = 0; zoom <= ClusterIndex.MAX_ZOOM; zoom++) {
+                Geo.Bounds area = zoom <= 3 ? world : zoom <= 11 ? SANTO_DOMINGO : street;
+                if (zoom > 3 && zoom < 8) continue;
+                if (zoom > 14) area = new Geo.Bounds(-69.9396, 18.4704, -69.9394, 18.4706);
+                List<MapCluster> a = patched.clusters(area, zoom);
+                List<MapCluster> b = fresh.clusters(area, zoom);
+                assertEquals("zoom " + zoom, b.size(), a.size());
+                for (int i = 0; i < a.size(); i++) {
+                    assertEquals(b.get(i).getCount(), a.get(i).getCount());
+                    assertEquals(b.get(i).getLat(), a.get(i).getLat(), 1e-9);
+                    assertEquals(b.get(i).getLng(), a.get(i).getLng(), 1e-9);
+                    assertEquals(b.get(i).getMinPrice(), a.get(i).getMinPrice());
+                    assertEquals(b.get(i).getMaxPrice(), a.get(i).getMaxPrice());
+                    assertEquals(b.get(i).getId(), a.get(i).getId());
+                }
+            }
+        }
+        Geo.Bounds everywhere = new Geo.Bounds(-180, -85, 180, 85);
+        assertEquals(15, total(patched.clusters(everywhere, 0)));
+    }
+}
@@ -0,0 +1,312 @@
+package edu.pucmm.service;
+
+import edu.pucmm.util.PropertyQuery;
+import edu.pucmm.util.UnitStats;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para PropertyIndex.
+ * Los resultados del índice deben coincidir con evaluar PropertyQuery documento a documento.
+ */
+public class PropertyIndexTest {
+
+    private static final String[] TYPES = {"Casa", "Apartamento", "Solar", "Solares", "Villa"};
+    private static final String[] SALE_TYPES = {"Venta", "Alquiler"};
+    private static final String[] AMENITIES = {"Piscina", "Gimnasio", "Terraza"};
+
+    private List<RawBsonDocument> documents;
+    private PropertyIndex index;
+
+    private static Map<String, List<String>> params(String... kv) {
+        Map<String, List<String>> map = new HashMap<>();
+        for (int i = 0; i < kv.length; i += 2) {
+            map.put(kv[i], List.of(kv[i + 1]));
+        }
+        return map;
+    }
+
+    @Before
+    public void setUp() {
+        documents = new ArrayList<>();
+        for (int i = 0; i < 60; i++) documents.add(property(i, i));
+        index = PropertyIndex.build(documents);
+    }
+
+    /** Documento con el _id {@code id} y los valores de la variante {@code i} */
+    private static RawBsonDocument property(int id, int i) {
+        BsonDocument doc = new BsonDocument("_id", new BsonObjectId(new ObjectId(String.format("65a1b2c3d4e5f6a7b8c9%04x", id))))
+                .append("title", new BsonString(i % 7 == 0 ? "Casa con vista al mar" : "Propiedad " + i))
+                .append("type", new BsonString(TYPES[i % TYPES.length]))
+                .append("saleType", new BsonString(SALE_TYPES[i % SALE_TYPES.length]));
+        // Algunos documentos sin precio/área para cubrir los valores ausentes
+        // y desarrollos que solo tienen los agregados de sus unidades
+        boolean development = i % 10 == 3;
+        if (i % 5 != 0 && !development) doc.append("price", new BsonDouble((i * 37 % 20) * 100000.0));
+        if (i % 4 != 0 && !development) doc.append("area", new BsonInt32(50 + (i * 13 % 9) * 25));
+        if (i % 3 != 0 && !development) doc.append("bedrooms", new BsonInt32(i % 5));
+        if (development) {
+            doc.append("unitStats", new BsonDocument("count", new BsonInt32(3))
+                    .append("minPrice", new BsonDouble(i * 20000.0)).append("maxPrice", new BsonDouble(i * 60000.0))
+                    .append("minArea", new BsonDouble(60)).append("maxArea", new BsonDouble(60 + i * 3))
+                    .append("minBedrooms", new BsonDouble(1)).append("maxBedrooms", new BsonDouble(i % 4 + 1)));
+            // Unidades: una sin precio y otra con el precio como texto
+            List<BsonDocument> units = new ArrayList<>();
+            for (int u = 0; u < 3; u++) {
+                BsonDocument unit = new BsonDocument("bedrooms", new BsonInt32(u + 1))
+                        .append("area", new BsonDouble(60 + u * i));
+                if (u == 1) unit.append("price", new BsonDouble(i * 20000.0 * (u + 1)));
+                else if (u == 2) unit.append("price", i % 20 == 3 ? new BsonString("a consultar") : new BsonDouble(i * 60000.0));
+                units.add(unit);
+            }
+            doc.append("units", new BsonArray(units));
+        }
+        List<BsonString> amenities = new ArrayList<>();
+        for (int a = 0; a < AMENITIES.length; a++) {
+            if ((i >> a & 1) == 1) amenities.add(new BsonString(AMENITIES[a]));
+        }
+        doc.append("amenities", new BsonArray(amenities));
+        // Puntos repartidos alrededor de Santo Domingo; algunos sin location
+        if (i % 6 != 0) {
+            doc.append("location", new BsonDocument("type", new BsonString("Point"))
+                    .append("coordinates", new BsonArray(List.of(
+                            new BsonDouble(-69.93 + (i % 10 - 5) * 0.02), new BsonDouble(18.48 + (i / 10 - 3) * 0.03)))));
+        }
+        return new RawBsonDocument(doc, new BsonDocumentCodec());
+    }
+
+    /** Resultado esperado: filtrar y ordenar documento a documento */
+    private List<RawBsonDocument> expected(PropertyQuery query) {
+        List<RawBsonDocument> result = new ArrayList<>();
+        for (RawBsonDocument doc : documents) {
+            if (query.matches(doc)) result.add(doc);
+        }
+        result.sort(query.comparator());
+        return result;
+    }
+
+    private void assertSameAsScan(String... kv) {
+        PropertyQuery query = PropertyQuery.fromParams(params(kv));
+        List<RawBsonDocument> expected = expected(query);
+        BitSet matches = index.filter(query);
+        assertEquals(expected.size(), matches.cardinality());
+        assertEquals(expected, index.page(matches, query.getSort(), 0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testFiltersMatchScan() {
+        assertSameAsScan("page", "1");
+        assertSameAsScan("type", "Terreno");
+        assertSameAsScan("type", "Casa", "saleType", "Venta");
+        assertSameAsScan("minPrice", "500000", "maxPrice", "1200000");
+        assertSameAsScan("maxArea", "100");
+        assertSameAsScan("bedrooms", "2");
+        assertSameAsScan("amenities", "Piscina,Terraza");
+        assertSameAsScan("q", "vista al mar", "type", "Casa");
+        assertSameAsScan("minPrice", "1000000");
+        assertSameAsScan("minPrice", "900000", "maxPrice", "1000000");
+        assertSameAsScan("minArea", "150", "bedrooms", "3");
+    }
+
+    @Test
+    public void testUnitFiltersMatchScan() {
+        assertSameAsScan("unitBedrooms", "2");
+        assertSameAsScan("unitMinPrice", "1000000");
+        assertSameAsScan("unitMaxPrice", "2000000");
+        assertSameAsScan("unitMinPrice", "1500000", "unitMaxPrice", "3000000", "unitBedrooms", "3");
+        assertSameAsScan("unitMinArea", "150", "saleType", "Alquiler");
+        // La misma unidad debe cumplir ambos: la de 3 habitaciones es la más cara
+        PropertyQuery sameUnit = PropertyQuery.fromParams(params("unitBedrooms", "3", "unitMaxPrice", "500000"));
+        assertEquals(expected(sameUnit).size(), index.filter(sameUnit).cardinality());
+        assertTrue(index.filter(sameUnit).isEmpty());
+    }
+
+    @Test
+    public void testOrdersMatchScan() {
+        for (PropertyQuery.SortOrder sort : PropertyQuery.SortOrder.values()) {
+            assertSameAsScan("sort", sort.key());
+            assertSameAsScan("sort", sort.key(), "saleType", "Alquiler", "minPrice", "100000");
+        }
+    }
+
+    @Test
+    public void testTextMatchesScan() {
+        assertSameAsScan("q", "VISTAS");
+        assertSameAsScan("q", "prop");
+        assertSameAsScan("q", "piscinas terraza");
+        assertSameAsScan("q", "casa", "sort", "price-asc");
+    }
+
+    @Test
+    public void testGeoMatchesScan() {
+        assertSameAsScan("near", "18.48,-69.93");
+        assertSameAsScan("near", "18.48,-69.93", "radius", "2500");
+        assertSameAsScan("near", "0,0", "radius", "1000");
+        assertSameAsScan("within", "-69.95,18.44,-69.89,18.52");
+        assertSameAsScan("within", "-180,-90,180,90", "type", "Casa");
+        assertSameAsScan("within", "-69.95,18.44,-69.89,18.52", "near", "18.48,-69.93", "radius", "3000");
+    }
+
+    @Test
+    public void testRelevanceRanksByBm25() {
+        List<RawBsonDocument> docs = new ArrayList<>();
+        docs.add(raw(0, "Apartamento céntrico", "Cerca de la playa"));
+        docs.add(raw(1, "Villa frente a la playa", "Playa privada"));
+        docs.add(raw(2, "Casa de campo", "Jardín amplio"));
+        docs.add(raw(3, "Casa", "A dos calles de la playa"));
+        PropertyIndex text = PropertyIndex.build(docs);
+
+        PropertyQuery query = PropertyQuery.fromParams(params("q", "playas", "sort", "relevance"));
+        List<RawBsonDocument> ranked = text.page(text.filter(query), query, 0, 10);
+        assertEquals(List.of(docs.get(1), docs.get(3), docs.get(0)), ranked);
+
+        // Reconstruir desde el índice anterior da el mismo resultado
+        List<RawBsonDocument> changed = new ArrayList<>(docs);
+        changed.set(2, raw(2, "Casa de playa", null));
+        PropertyIndex rebuilt = PropertyIndex.build(changed, text);
+        assertEquals(PropertyIndex.build(changed).page(PropertyIndex.build(changed).filter(query), query, 0, 10),
+                rebuilt.page(rebuilt.filter(query), query, 0, 10));
+    }
+
+    @Test
+    public void testPatchedIndexMatchesScan() {
+        // Modificar (un desarrollo pasa a ser una propiedad y al revés), borrar,
+        // insertar en medio y al final, en sucesivas instantáneas
+        List<List<RawBsonDocument>> versions = new ArrayList<>();
+        List<RawBsonDocument> changed = new ArrayList<>(documents);
+        changed.set(13, property(13, 14));
+        changed.set(14, property(14, 23));
+        versions.add(new ArrayList<>(changed));
+        changed.remove(20);
+        changed.remove(0);
+        versions.add(new ArrayList<>(changed));
+        changed.add(19, property(20, 33));
+        changed.add(property(200, 7));
+        changed.set(40, property(41, 5));
+        versions.add(new ArrayList<>(changed));
+
+        for (List<RawBsonDocument> version : versions) {
+            index = PropertyIndex.build(version, index);
+            documents = version;
+            testFiltersMatchScan();
+            testUnitFiltersMatchScan();
+            testOrdersMatchScan();
+            testTextMatchesScan();
+            testGeoMatchesScan();
+            PropertyIndex full = PropertyIndex.build(version);
+            BitSet all = full.filter(PropertyQuery.fromParams(params("page", "1")));
+            for (String field : List.of("type", "saleType", "amenities", "bedrooms", "bathrooms", "parking")) {
+                assertEquals(field, full.countBy(field, all), index.countBy(field, all));
+            }
+            assertEquals(full.countInRange("price", all, 300000.0, 1500000.0),
+                    index.countInRange("price", all, 300000.0, 1500000.0));
+        }
+    }
+
+    @Test
+    public void testPatchedTextIndexMatchesFullBuild() {
+        List<RawBsonDocument> docs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) docs.add(raw(i * 2, "Casa " + i, i % 2 == 0 ? "Piscina y terraza" : "Jardín"));
+        TextIndex text = TextIndex.build(docs, null);
+
+        // Modificar, borrar, insertar en medio y al final, en sucesivas instantáneas
+        List<List<RawBsonDocument>> versions = new ArrayList<>();
+        List<RawBsonDocument> changed = new ArrayList<>(docs);
+        changed.set(1, raw(2, "Villa con piscina", "Playa"));
+        versions.add(new ArrayList<>(changed));
+        changed.remove(4);
+        changed.add(2, raw(3, "Apartamento", "Terraza con vista"));
+        versions.add(new ArrayList<>(changed));
+        changed.add(raw(99, "Local comercial", null));
+        changed.remove(0);
+        versions.add(new ArrayList<>(changed));
+
+        List<List<String>> queries = List.of(List.of("piscin"), List.of("cas"), List.of("terraz", "vist"),
+                List.of("jardin"), List.of("local"), List.of("villa", "play"));
+        for (List<RawBsonDocument> version : versions) {
+            text = TextIndex.build(version, text);
+            TextIndex full = TextIndex.build(version, null);
+            for (List<String> terms : queries) {
+                BitSet matches = full.matching(terms);
+                assertEquals(terms.toString(), matches, text.matching(terms));
+                Map<Integer, Double> expected = full.scores(terms, matches);
+                Map<Integer, Double> actual = text.scores(terms, matches);
+                assertEquals(expected.keySet(), actual.keySet());
+                expected.forEach((pos, score) -> assertEquals(score, actual.get(pos), 1e-9));
+            }
+        }
+    }
+
+    private static RawBsonDocument raw(int i, String title, String description) {
+        BsonDocument doc = new BsonDocument("_id", new BsonObjectId(new ObjectId(String.format("65a1b2c3d4e5f6a7b8c9%04x", i))))
+                .append("title", new BsonString(title));
+        if (description != null) doc.append("descriptionParagraph", new BsonString(description));
+        return new RawBsonDocument(doc, new BsonDocumentCodec());
+    }
+
+    @Test
+    public void testPageSkipsAndLimits() {
+        PropertyQuery query = PropertyQuery.fromParams(params("sort", "price-desc"));
+        List<RawBsonDocument> all = expected(query);
+        assertEquals(all.subList(9, 18), index.page(index.filter(query), query.getSort(), 9, 9));
+        assertTrue(index.page(index.filter(query), query.getSort(), 1000, 9).isEmpty());
+    }
+
+    @Test
+    public void testPageAfterCursorWalksWholeResult() {
+        for (String sort : List.of("price-asc", "area-desc", "createdAt-desc")) {
+            List<RawBsonDocument> walked = new ArrayList<>();
+            String token = "";
+            while (token != null) {
+                PropertyQuery query = PropertyQuery.fromParams(params("cursor", token, "sort", sort));
+                List<RawBsonDocument> page = index.pageAfterCursor(index.filter(query), query, 7);
+                walked.addAll(page);
+                if (page.size() < 7) {
+                    token = null;
+                } else {
+                    RawBsonDocument last = page.get(page.size() - 1);
+                    String field = query.getSort().field();
+                    Object value = "_id".equals(field) ? null : UnitStats.lowOf(last, field);
+                    token = query.cursorAfter(value, last.getObjectId("_id").getValue().toHexString()).encode();
+                }
+            }
+            assertEquals(sort, expected(PropertyQuery.fromParams(params("sort", sort))), walked);
+        }
+    }
+
+    @Test
+    public void testCountBy() {
+        BitSet venta = index.filter(PropertyQuery.fromParams(params("saleType", "Venta")));
+        Map<String, Integer> bySaleType = index.countBy("saleType", venta);
+        assertEquals(Map.of("Venta", 30), bySaleType);
+
+        Map<String, Integer> byType = index.countBy("type", index.filter(PropertyQuery.fromParams(params("page", "1"))));
+        assertEquals(Integer.valueOf(12), byType.get("Casa"));
+        assertEquals(5, byType.size());
+    }
+
+    @Test
+    public void testCountInRange() {
+        BitSet all = index.filter(PropertyQuery.fromParams(params("page", "1")));
+        int below = index.countInRange("price", all, null, 1000000.0);
+        int above = index.countInRange("price", all, 1000000.0, null);
+        assertEquals("sin precio no cuenta en ningún tramo", 48, below + above);
+    }
+}
@@ -0,0 +1,134 @@
+package edu.pucmm.service;
+
+import edu.pucmm.model.Property;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para RelatedIndex.
+ */
+public class RelatedIndexTest {
+
+    private List<RawBsonDocument> documents;
+    private RelatedIndex index;
+
+    private static ObjectId id(int i) {
+        return new ObjectId(String.format("65a1b2c3d4e5f6a7b8c9%04x", i));
+    }
+
+    private static RawBsonDocument property(int i, String type, String saleType, double price, int bedrooms,
+                                           double lat, double lng, String... amenities) {
+        List<BsonString> list = new ArrayList<>();
+        for (String a : amenities) list.add(new BsonString(a));
+        BsonDocument doc = new BsonDocument("_id", new BsonObjectId(id(i)))
+                .append("title", new BsonString("Propiedad " + i))
+                .append("type", new BsonString(type))
+                .append("saleType", new BsonString(saleType))
+                .append("price", new BsonDouble(price))
+                .append("bedrooms", new BsonInt32(bedrooms))
+                .append("images", new BsonArray(List.of(new BsonString("/api/images/" + i))))
+                .append("amenities", new BsonArray(list))
+                .append("location", new BsonDocument("type", new BsonString("Point"))
+                        .append("coordinates", new BsonArray(List.of(new BsonDouble(lng), new BsonDouble(lat)))));
+        return new RawBsonDocument(doc, new BsonDocumentCodec());
+    }
+
+    private static List<String> urls(List<Property.Related> related) {
+        List<String> urls = new ArrayList<>();
+        for (Property.Related r : related) urls.add(r.getUrl());
+        return urls;
+    }
+
+    private static String url(int i) {
+        return "/property/?id=" + id(i).toHexString();
+    }
+
+    @Before
+    public void setUp() {
+        documents = new ArrayList<>(List.of(
+                property(0, "Apartamento", "Venta", 8_000_000, 3, 18.470, -69.930, "Piscina"),
+                property(1, "Apartamento", "Venta", 8_500_000, 3, 18.472, -69.932, "Piscina"),
+                property(2, "Apartamento", "Venta", 7_500_000, 2, 18.480, -69.920, "Gimnasio"),
+                property(3, "Casa", "Venta", 30_000_000, 5, 19.450, -70.690),
+                property(4, "Apartamento", "Alquiler", 80_000, 3, 18.470, -69.930, "Piscina"),
+                property(5, "Apartamento", "Venta", 9_000_000, 3, 18.600, -68.400, "Piscina"),
+                property(6, "Solares", "Venta", 2_000_000, 0, 18.470, -69.930)
+        ));
+        index = RelatedIndex.build(documents, null);
+    }
+
+    @Test
+    public void testNearestFirstAndSameSaleTypeOnly() {
+        List<Property.Related> related = index.of(id(0));
+        assertEquals(RelatedIndex.MAX_RELATED, related.size());
+        assertEquals("mismo tipo, precio y zona", url(1), related.get(0).getUrl());
+        assertEquals(url(2), related.get(1).getUrl());
+        assertFalse("un alquiler no se recomienda junto a una venta", urls(related).contains(url(4)));
+        assertFalse(urls(related).contains(url(0)));
+        assertEquals(8_500_000, related.get(0).getPrice(), 0);
+        assertEquals("/api/images/1", related.get(0).getThumb());
+    }
+
+    @Test
+    public void testSingleMemberGroupHasNoRelated() {
+        assertTrue(index.of(id(4)).isEmpty());
+        assertTrue(index.of(id(99)).isEmpty());
+    }
+
+    @Test
+    public void testRebuildFromPreviousIndex() {
+        List<RawBsonDocument> changed = new ArrayList<>(documents);
+        // La 2 pasa a ser casi igual que la 0
+        changed.set(2, property(2, "Apartamento", "Venta", 8_000_000, 3, 18.470, -69.930, "Piscina"));
+        RelatedIndex rebuilt = RelatedIndex.build(changed, index);
+        assertEquals(url(2), rebuilt.of(id(0)).get(0).getUrl());
+        for (int i = 0; i < changed.size(); i++) {
+            assertEquals(urls(RelatedIndex.build(changed, null).of(id(i))), urls(rebuilt.of(id(i))));
+        }
+    }
+
+    @Test
+    public void testPatchedIndexMatchesFullBuild() {
+        // Cambios que no mueven las medias: ubicación, amenidades y título
+        List<RawBsonDocument> changed = new ArrayList<>(documents);
+        changed.set(5, property(5, "Apartamento", "Venta", 9_000_000, 3, 18.471, -69.931, "Piscina"));
+        RelatedIndex patched = RelatedIndex.build(new ArrayList<>(changed), index);
+        changed.set(1, property(1, "Apartamento", "Venta", 8_500_000, 3, 19.450, -70.690, "Gimnasio"));
+        patched = RelatedIndex.build(new ArrayList<>(changed), patched);
+        RelatedIndex full = RelatedIndex.build(changed, null);
+        for (int i = 0; i < changed.size(); i++) {
+            assertEquals(urls(full.of(id(i))), urls(patched.of(id(i))));
+        }
+        assertEquals(url(5), patched.of(id(0)).get(0).getUrl());
+    }
+
+    @Test
+    public void testPatchedIndexDropsRemovedAndOffersNew() {
+        List<RawBsonDocument> changed = new ArrayList<>(documents);
+        changed.remove(1);
+        RelatedIndex patched = RelatedIndex.build(new ArrayList<>(changed), index);
+        assertTrue(patched.of(id(1)).isEmpty());
+        for (int i = 0; i < changed.size(); i++) {
+            assertFalse(urls(patched.of(changed.get(i).getObjectId("_id").getValue())).contains(url(1)));
+        }
+
+        changed.add(property(7, "Apartamento", "Alquiler", 85_000, 3, 18.471, -69.931, "Piscina"));
+        patched = RelatedIndex.build(new ArrayList<>(changed), patched);
+        assertEquals(List.of(url(7)), urls(patched.of(id(4))));
+        assertEquals(List.of(url(4)), urls(patched.of(id(7))));
+    }
+}
@@ -0,0 +1,85 @@
+package edu.pucmm.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para ResponseCache (respuestas serializadas y comprimidas en memoria).
+ */
+public class ResponseCacheTest {
+
+    private CatalogVersion version;
+    private ResponseCache cache;
+
+    @Before
+    public void setUp() {
+        version = new CatalogVersion();
+        cache = new ResponseCache(version, 2, 5, 16);
+    }
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        cache.put("a", version.current(), json("[1,2,3]"), "\"e1\"");
+        ResponseCache.CachedResponse cached = cache.get("a");
+        assertNotNull(cached);
+        assertEquals("[1,2,3]", new String(cached.getIdentity(), StandardCharsets.UTF_8));
+        assertEquals("\"e1\"", cached.getEtag());
+    }
+
+    @Test
+    public void testSmallBodiesAreNotCompressed() {
+        cache.put("a", version.current(), json("[]"), "\"e1\"");
+        assertNull(cache.get("a").getGzip());
+        assertNull(cache.get("a").getBrotli());
+    }
+
+    @Test
+    public void testGzipVariantRoundTrips() throws IOException {
+        String body = "[{\"title\":\"Casa en Santiago\"},{\"title\":\"Casa en Santiago\"}]";
+        cache.put("a", version.current(), json(body), "\"e1\"");
+        byte[] gzip = cache.get("a").getGzip();
+        assertNotNull(gzip);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testVersionBumpInvalidates() {
+        cache.put("a", version.current(), json("[1]"), "\"e1\"");
+        version.bump();
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStaleResponseIsNotStored() {
+        long before = version.current();
+        version.bump();  // escritura mientras se generaba la respuesta
+        ResponseCache.CachedResponse cached = cache.put("a", before, json("[1]"), "\"e1\"");
+        assertNotNull("la respuesta se sirve igualmente", cached);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        cache.put("a", version.current(), json("[1]"), "\"a\"");
+        cache.put("b", version.current(), json("[2]"), "\"b\"");
+        cache.get("a");
+        cache.put("c", version.current(), json("[3]"), "\"c\"");
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+}
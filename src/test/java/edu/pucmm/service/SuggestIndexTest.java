@@ -0,0 +1,132 @@
+package edu.pucmm.service;
+
+import edu.pucmm.model.Suggestion;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para SuggestIndex.
+ */
+public class SuggestIndexTest {
+
+    private List<RawBsonDocument> documents;
+    private SuggestIndex index;
+
+    private static RawBsonDocument property(int i, String title, String address, String... zones) {
+        BsonDocument doc = new BsonDocument("_id", new BsonObjectId(new ObjectId(String.format("65a1b2c3d4e5f6a7b8c9%04x", i))))
+                .append("title", new BsonString(title));
+        if (address != null) doc.append("address", new BsonString(address));
+        List<BsonDocument> units = new ArrayList<>();
+        for (String zone : zones) units.add(new BsonDocument("zone", new BsonString(zone)));
+        if (!units.isEmpty()) doc.append("units", new BsonArray(units));
+        return new RawBsonDocument(doc, new BsonDocumentCodec());
+    }
+
+    private static List<String> texts(List<Suggestion> suggestions) {
+        List<String> texts = new ArrayList<>();
+        for (Suggestion s : suggestions) texts.add(s.getText());
+        return texts;
+    }
+
+    @Before
+    public void setUp() {
+        documents = new ArrayList<>(List.of(
+                property(0, "Apartamento en Naco", "Calle 1, Ensanche Naco, Santo Domingo"),
+                property(1, "Penthouse con vista", "Av. Abraham Lincoln, Piantini, Santo Domingo"),
+                property(2, "Torre Naco", null, "Naco", "Ensanche Naco"),
+                property(3, "Villa en Punta Cana", "Bávaro, Punta Cana")
+        ));
+        index = SuggestIndex.build(documents, null);
+    }
+
+    @Test
+    public void testPrefixFromAnyWordIgnoringAccents() {
+        assertEquals(List.of("Ensanche Naco", "Naco", "Torre Naco", "Apartamento en Naco"),
+                texts(index.suggest("NAC", 10)));
+        assertEquals(List.of("Bávaro"), texts(index.suggest("bava", 10)));
+    }
+
+    @Test
+    public void testCountsPropertiesOncePerLocation() {
+        Suggestion santoDomingo = index.suggest("santo", 1).get(0);
+        assertEquals("Santo Domingo", santoDomingo.getText());
+        assertEquals(Suggestion.LOCATION, santoDomingo.getType());
+        assertEquals(2, santoDomingo.getCount());
+        assertNull(santoDomingo.getId());
+
+        Suggestion torre = index.suggest("torre", 1).get(0);
+        assertEquals(Suggestion.TITLE, torre.getType());
+        assertEquals(documents.get(2).getObjectId("_id").getValue().toHexString(), torre.getId());
+    }
+
+    @Test
+    public void testShortPrefixesAndLimit() {
+        assertEquals(index.suggest("p", 3).size(), 3);
+        assertEquals("Santo Domingo", index.suggest("s", 10).get(0).getText());
+        assertTrue(index.suggest("zz", 10).isEmpty());
+        assertTrue(index.suggest("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void testRebuildReflectsChanges() {
+        List<RawBsonDocument> changed = new ArrayList<>(documents);
+        changed.set(1, property(1, "Penthouse con vista", "Piantini, Santo Domingo"));
+        changed.remove(3);
+        SuggestIndex rebuilt = SuggestIndex.build(changed, index);
+        assertTrue(rebuilt.suggest("punta", 10).isEmpty());
+        assertEquals(List.of("Piantini"), texts(rebuilt.suggest("pian", 10)));
+        assertTrue(rebuilt.suggest("abraham", 10).isEmpty());
+    }
+
+    @Test
+    public void testPatchedIndexMatchesFullBuild() {
+        List<RawBsonDocument> current = new ArrayList<>(documents);
+        SuggestIndex patched = index;
+        List<List<RawBsonDocument>> steps = List.of(
+                // Título repetido: deja de identificar a una propiedad
+                List.of(property(4, "Torre Naco", "Piantini, Santo Domingo")),
+                // Vuelve a ser único: el id es el de la que queda
+                List.of(property(2, "Residencial Naco", null, "Naco")),
+                // Una ubicación desaparece y otra nueva aparece
+                List.of(property(3, "Villa en Punta Cana", "Cap Cana, La Altagracia"))
+        );
+        for (List<RawBsonDocument> step : steps) {
+            for (RawBsonDocument doc : step) {
+                ObjectId id = doc.getObjectId("_id").getValue();
+                int pos = 0;
+                while (pos < current.size() && current.get(pos).getObjectId("_id").getValue().compareTo(id) < 0) pos++;
+                if (pos < current.size() && current.get(pos).getObjectId("_id").getValue().equals(id)) {
+                    current.set(pos, doc);
+                } else {
+                    current.add(pos, doc);
+                }
+            }
+            patched = SuggestIndex.build(new ArrayList<>(current), patched);
+            SuggestIndex full = SuggestIndex.build(new ArrayList<>(current), null);
+            for (String q : List.of("n", "na", "naco", "t", "torre", "p", "pu", "s", "sa", "c", "ca", "cap", "b", "r", "la")) {
+                List<Suggestion> expected = full.suggest(q, 10);
+                List<Suggestion> actual = patched.suggest(q, 10);
+                assertEquals(q, texts(expected), texts(actual));
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(q, expected.get(i).getCount(), actual.get(i).getCount());
+                    assertEquals(q, expected.get(i).getId(), actual.get(i).getId());
+                }
+            }
+        }
+        // Tras los cambios "Torre Naco" vuelve a ser de una sola propiedad
+        assertEquals("65a1b2c3d4e5f6a7b8c90004", patched.suggest("torre", 1).get(0).getId());
+        assertTrue(patched.suggest("bav", 10).isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package edu.pucmm.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para UploadSessions.
+ */
+public class UploadSessionsTest {
+
+    private Path staging;
+    private UploadSessions sessions;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        staging = Files.createTempDirectory("upload-sessions-test").resolve("staging");
+        sessions = new UploadSessions(staging, Duration.ofHours(1));
+        content = new byte[300_000];
+        for (int i = 0; i < content.length; i++) content[i] = (byte) (i * 13);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(staging.getParent())) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private InputStream slice(int from, int to) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(content, from, to));
+    }
+
+    @Test
+    public void testChunksInOrderThenClaim() throws IOException {
+        UploadSessions.Session session = sessions.create("sala.png", "image/png", content.length);
+        String id = session.getId();
+        assertEquals(0, session.getOffset());
+
+        assertEquals(100_000, sessions.append(id, 0, slice(0, 100_000), Long.MAX_VALUE));
+        assertEquals(250_000, sessions.append(id, 100_000, slice(100_000, 250_000), Long.MAX_VALUE));
+        assertFalse(sessions.get(id).isComplete());
+        assertNull("incompleta: no se puede tomar", sessions.claim(id));
+        assertEquals(content.length, sessions.append(id, 250_000, slice(250_000, content.length), Long.MAX_VALUE));
+
+        // Una instancia nueva (tras un reinicio) ve la misma sesión
+        UploadSessions reopened = new UploadSessions(staging, Duration.ofHours(1));
+        assertTrue(reopened.get(id).isComplete());
+        assertEquals("sala.png", reopened.get(id).getFilename());
+
+        Path file = sessions.claim(id);
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertNull("tomada: otra petición ya no la ve", sessions.get(id));
+        sessions.restore(id);
+        assertTrue(sessions.get(id).isComplete());
+        sessions.delete(id);
+        assertNull(sessions.get(id));
+    }
+
+    @Test
+    public void testWrongOffsetReportsCurrentOne() throws IOException {
+        String id = sessions.create("sala.png", "image/png", content.length).getId();
+        sessions.append(id, 0, slice(0, 1000), Long.MAX_VALUE);
+        try {
+            sessions.append(id, 0, slice(0, 1000), Long.MAX_VALUE);
+            fail("trozo repetido");
+        } catch (UploadSessions.OffsetMismatchException e) {
+            assertEquals(1000, e.getOffset());
+        }
+        assertEquals(1000, sessions.get(id).getOffset());
+    }
+
+    @Test
+    public void testInterruptedChunkKeepsReceivedBytes() throws IOException {
+        String id = sessions.create("sala.png", "image/png", content.length).getId();
+        InputStream broken = new InputStream() {
+            private final InputStream in = slice(0, 70_000);
+
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b < 0) throw new IOException("conexión cerrada");
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n < 0) throw new IOException("conexión cerrada");
+                return n;
+            }
+        };
+        try {
+            sessions.append(id, 0, broken, Long.MAX_VALUE);
+            fail();
+        } catch (IOException expected) {
+            // el cliente reanuda desde lo recibido
+        }
+        assertEquals(70_000, sessions.get(id).getOffset());
+    }
+
+    @Test
+    public void testChunkLimits() throws IOException {
+        String id = sessions.create("sala.png", "image/png", 1000).getId();
+        try {
+            sessions.append(id, 0, slice(0, 600), 500);
+            fail("trozo mayor que el máximo");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(500, sessions.get(id).getOffset());
+        }
+        try {
+            sessions.append(id, 500, slice(0, 600), Long.MAX_VALUE);
+            fail("más que el tamaño declarado");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(sessions.get(id).isComplete());
+        }
+    }
+
+    @Test
+    public void testUnknownAndExpiredSessions() throws IOException {
+        assertNull(sessions.get("../../etc/passwd"));
+        assertNull(sessions.get("0123456789abcdef0123456789abcdef"));
+        try {
+            sessions.append("0123456789abcdef0123456789abcdef", 0, slice(0, 10), Long.MAX_VALUE);
+            fail();
+        } catch (NoSuchElementException expected) {
+            // 404
+        }
+
+        UploadSessions expiring = new UploadSessions(staging, Duration.ZERO);
+        String id = expiring.create("sala.png", "image/png", 10).getId();
+        sleep();
+        assertNull(expiring.get(id));
+        assertEquals(0, expiring.purgeExpired());
+        expiring.create("sala.png", "image/png", 10);
+        sleep();
+        assertEquals(1, expiring.purgeExpired());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
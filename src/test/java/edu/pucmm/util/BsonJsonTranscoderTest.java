@@ -0,0 +1,92 @@
+package edu.pucmm.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para BsonJsonTranscoder.
+ * Los documentos se crean desde Extended JSON para controlar los tipos BSON exactos.
+ */
+public class BsonJsonTranscoderTest {
+
+    private static String transcode(String extendedJson, String idField) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = new JsonFactory().createGenerator(out)) {
+            BsonJsonTranscoder.write(gen, RawBsonDocument.parse(extendedJson), idField);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testIdIsRenamedToHex() throws IOException {
+        String json = transcode("{\"_id\": {\"$oid\": \"65a1b2c3d4e5f6a7b8c9d0e1\"}, \"title\": \"Casa\"}", "id");
+        assertEquals("{\"id\":\"65a1b2c3d4e5f6a7b8c9d0e1\",\"title\":\"Casa\"}", json);
+    }
+
+    @Test
+    public void testCustomIdField() throws IOException {
+        String json = transcode("{\"_id\": {\"$oid\": \"65a1b2c3d4e5f6a7b8c9d0e1\"}, \"id\": \"propiedades_hero\"}", "objectId");
+        assertEquals("{\"objectId\":\"65a1b2c3d4e5f6a7b8c9d0e1\",\"id\":\"propiedades_hero\"}", json);
+    }
+
+    @Test
+    public void testNumericTypes() throws IOException {
+        String json = transcode("{\"bedrooms\": {\"$numberInt\": \"3\"}, "
+                + "\"price\": {\"$numberLong\": \"8700000\"}, "
+                + "\"area\": {\"$numberDouble\": \"150.5\"}, "
+                + "\"pricePerSqm\": {\"$numberDecimal\": \"5800.25\"}}", "id");
+        assertEquals("{\"bedrooms\":3,\"price\":8700000,\"area\":150.5,\"pricePerSqm\":5800.25}", json);
+    }
+
+    @Test
+    public void testDatesBooleansAndNulls() throws IOException {
+        String json = transcode("{\"createdAt\": {\"$date\": {\"$numberLong\": \"1700000000000\"}}, "
+                + "\"isHeroDefault\": true, \"address\": null}", "id");
+        assertEquals("{\"createdAt\":1700000000000,\"isHeroDefault\":true,\"address\":null}", json);
+    }
+
+    @Test
+    public void testNestedArraysAndDocuments() throws IOException {
+        String json = transcode("{\"images\": [\"/api/images/1\", \"/api/images/2\"], "
+                + "\"units\": [{\"name\": \"A-1\", \"bedrooms\": {\"$numberInt\": \"2\"}, "
+                + "\"ref\": {\"$oid\": \"65a1b2c3d4e5f6a7b8c9d0e1\"}}]}", "id");
+        assertEquals("{\"images\":[\"/api/images/1\",\"/api/images/2\"],"
+                + "\"units\":[{\"name\":\"A-1\",\"bedrooms\":2,\"ref\":\"65a1b2c3d4e5f6a7b8c9d0e1\"}]}", json);
+    }
+
+    @Test
+    public void testNestedIdIsNotRenamed() throws IOException {
+        String json = transcode("{\"units\": [{\"_id\": \"u1\"}]}", "id");
+        assertEquals("{\"units\":[{\"_id\":\"u1\"}]}", json);
+    }
+
+    @Test
+    public void testFieldSelectionKeepsId() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = new JsonFactory().createGenerator(out)) {
+            BsonJsonTranscoder.write(gen, RawBsonDocument.parse("{\"_id\": {\"$oid\": \"65a1b2c3d4e5f6a7b8c9d0e1\"}, "
+                    + "\"title\": \"Casa\", \"images\": [\"/api/images/1\"], \"units\": [{\"name\": \"A-1\"}], "
+                    + "\"price\": {\"$numberLong\": \"8700000\"}}"), "id", Set.of("title", "price"));
+        }
+        assertEquals("{\"id\":\"65a1b2c3d4e5f6a7b8c9d0e1\",\"title\":\"Casa\",\"price\":8700000}", out.toString());
+    }
+
+    @Test
+    public void testReplacedFieldsOverrideStoredOnes() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = new JsonFactory().createGenerator(out)) {
+            BsonJsonTranscoder.writeReplacing(gen, RawBsonDocument.parse("{\"_id\": {\"$oid\": \"65a1b2c3d4e5f6a7b8c9d0e1\"}, "
+                    + "\"related\": [{\"title\": \"viejo\"}], \"title\": \"Casa\"}"), "id", Map.of("related", "nuevo"));
+        }
+        assertEquals("{\"id\":\"65a1b2c3d4e5f6a7b8c9d0e1\",\"title\":\"Casa\",\"related\":\"nuevo\"}", out.toString());
+    }
+}
@@ -0,0 +1,63 @@
+package edu.pucmm.util;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para DocumentDiff.
+ */
+public class DocumentDiffTest {
+
+    private static final List<String> FIELDS = List.of("title", "price", "images", "units", "heroTitle");
+
+    private static Document stored() {
+        return new Document("title", "Casa")
+                .append("price", 2_500_000L)
+                .append("images", new ArrayList<>(List.of("/a.webp", "/b.webp")))
+                .append("units", List.of(new Document("name", "A").append("price", 100.0)))
+                .append("heroTitle", "Oferta")
+                .append("createdAt", "2024-01-01");
+    }
+
+    @Test
+    public void testUnchangedValuesAreNotWritten() {
+        Map<String, Object> unit = new LinkedHashMap<>();
+        unit.put("name", "A");
+        unit.put("price", 100);
+        Document desired = new Document("title", "Casa")
+                .append("price", 2_500_000.0)
+                .append("images", List.of("/a.webp", "/b.webp"))
+                .append("units", List.of(unit))
+                .append("heroTitle", "Oferta");
+        assertTrue("mismos valores con otras clases (Long/Double, Document/Map)",
+                DocumentDiff.of(stored(), desired, FIELDS).isEmpty());
+    }
+
+    @Test
+    public void testOnlyChangedAndRemovedFields() {
+        Document desired = new Document("title", "Casa")
+                .append("price", 2_400_000)
+                .append("images", List.of("/b.webp", "/a.webp"))
+                .append("units", List.of(new Document("name", "A").append("price", 100.0)));
+        DocumentDiff diff = DocumentDiff.of(stored(), desired, FIELDS);
+        assertEquals(List.of("price", "images"), new ArrayList<>(diff.getSet().keySet()));
+        assertEquals("el orden de las imágenes cuenta", List.of("/b.webp", "/a.webp"), diff.getSet().get("images"));
+        assertEquals(List.of("heroTitle"), diff.getUnset());
+        assertEquals(List.of("price", "images", "heroTitle"), diff.changedFields());
+    }
+
+    @Test
+    public void testFieldsOutsideTheEditAreIgnored() {
+        DocumentDiff diff = DocumentDiff.of(stored(), new Document("title", "Casa nueva"), List.of("title", "createdAt"));
+        assertEquals(List.of("createdAt"), diff.getUnset());
+        diff = DocumentDiff.of(stored(), new Document("title", "Casa nueva").append("version", 3), List.of("title"));
+        assertEquals(List.of("title"), diff.changedFields());
+    }
+}
@@ -0,0 +1,72 @@
+package edu.pucmm.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para HttpCaching (validación If-None-Match).
+ */
+public class HttpCachingTest {
+
+    @Test
+    public void testExactMatch() {
+        assertTrue(HttpCaching.matches("\"abc\"", "\"abc\""));
+        assertFalse(HttpCaching.matches("\"abc\"", "\"abd\""));
+    }
+
+    @Test
+    public void testWeakComparison() {
+        assertTrue("W/ se ignora en If-None-Match", HttpCaching.matches("W/\"abc\"", "\"abc\""));
+    }
+
+    @Test
+    public void testListAndWildcard() {
+        assertTrue(HttpCaching.matches("\"x\", \"abc\" , \"y\"", "\"abc\""));
+        assertTrue(HttpCaching.matches("*", "\"abc\""));
+    }
+
+    @Test
+    public void testMissingHeader() {
+        assertFalse(HttpCaching.matches(null, "\"abc\""));
+        assertFalse(HttpCaching.matches("  ", "\"abc\""));
+    }
+
+    @Test
+    public void testFingerprintIsStableAndShort() {
+        String a = HttpCaching.fingerprint("{\"id\":\"1\"}");
+        assertEquals(a, HttpCaching.fingerprint("{\"id\":\"1\"}"));
+        assertNotEquals(a, HttpCaching.fingerprint("{\"id\":\"2\"}"));
+        assertEquals(16, a.length());
+    }
+
+    @Test
+    public void testStrongEtagIsQuoted() {
+        assertEquals("\"d.123\"", HttpCaching.strongEtag("d.123"));
+    }
+
+    @Test
+    public void testWeakEtagStillMatches() {
+        String weak = HttpCaching.weakEtag(HttpCaching.strongEtag("l.1.abc"));
+        assertEquals("W/\"l.1.abc\"", weak);
+        assertEquals(weak, HttpCaching.weakEtag(weak));
+        assertTrue(HttpCaching.matches(weak, "\"l.1.abc\""));
+        assertTrue(HttpCaching.matches("\"l.1.abc\"", weak));
+    }
+
+    @Test
+    public void testAcceptsEncoding() {
+        assertTrue(HttpCaching.acceptsEncoding("gzip, deflate, br", "br"));
+        assertTrue(HttpCaching.acceptsEncoding("GZIP", "gzip"));
+        assertFalse(HttpCaching.acceptsEncoding("gzip, deflate", "br"));
+        assertFalse(HttpCaching.acceptsEncoding(null, "gzip"));
+    }
+
+    @Test
+    public void testAcceptsEncodingQualityAndWildcard() {
+        assertFalse("q=0 rechaza la codificación", HttpCaching.acceptsEncoding("br;q=0, gzip", "br"));
+        assertTrue(HttpCaching.acceptsEncoding("br;q=0.5", "br"));
+        assertTrue(HttpCaching.acceptsEncoding("*", "br"));
+        assertFalse("el nombre explícito gana al comodín", HttpCaching.acceptsEncoding("*, br;q=0", "br"));
+    }
+}
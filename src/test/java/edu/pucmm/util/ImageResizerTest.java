@@ -0,0 +1,87 @@
+package edu.pucmm.util;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para ImageResizer.
+ */
+public class ImageResizerTest {
+
+    private static byte[] image(int width, int height, boolean alpha, String format) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(200, 40, 40, alpha ? 128 : 255));
+        g.fillRect(0, 0, width / 2, height);
+        g.setColor(Color.BLUE);
+        g.fillRect(width / 2, 0, width - width / 2, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, format, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testOnlyNarrowerWidthsAreGenerated() throws IOException {
+        List<ImageResizer.Derivative> derivatives =
+                ImageResizer.derivatives(new ByteArrayInputStream(image(1000, 500, false, "jpeg")));
+        assertEquals(2, derivatives.size());
+        assertEquals(320, derivatives.get(0).getWidth());
+        assertEquals(160, derivatives.get(0).getHeight());
+        assertEquals(640, derivatives.get(1).getWidth());
+        assertEquals(320, derivatives.get(1).getHeight());
+
+        ImageResizer.Derivative d = derivatives.get(1);
+        assertEquals("image/jpeg", d.getContentType());
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(d.getBytes()));
+        assertEquals(640, decoded.getWidth());
+        // La mitad izquierda sigue siendo roja
+        Color left = new Color(decoded.getRGB(100, 160));
+        assertTrue(left.getRed() > 150 && left.getBlue() < 100);
+    }
+
+    @Test
+    public void testTransparentImagesStayPng() throws IOException {
+        List<ImageResizer.Derivative> derivatives =
+                ImageResizer.derivatives(new ByteArrayInputStream(image(700, 700, true, "png")));
+        assertEquals(2, derivatives.size());
+        for (ImageResizer.Derivative d : derivatives) {
+            assertEquals("image/png", d.getContentType());
+            assertTrue(ImageIO.read(new ByteArrayInputStream(d.getBytes())).getColorModel().hasAlpha());
+        }
+    }
+
+    @Test
+    public void testSmallOrUnreadableImagesHaveNoDerivatives() throws IOException {
+        assertTrue(ImageResizer.derivatives(new ByteArrayInputStream(image(320, 200, false, "png"))).isEmpty());
+        assertTrue(ImageResizer.derivatives(new ByteArrayInputStream("<svg/>".getBytes())).isEmpty());
+    }
+
+    @Test
+    public void testWidthFor() {
+        assertEquals(320, ImageResizer.widthFor(1));
+        assertEquals(320, ImageResizer.widthFor(320));
+        assertEquals(640, ImageResizer.widthFor(321));
+        assertEquals(1920, ImageResizer.widthFor(1500));
+        assertEquals(1920, ImageResizer.widthFor(4000));
+    }
+
+    @Test
+    public void testIsResizable() {
+        assertTrue(ImageResizer.isResizable("image/jpeg"));
+        assertTrue(ImageResizer.isResizable("IMAGE/PNG"));
+        assertFalse(ImageResizer.isResizable("image/gif"));
+        assertFalse(ImageResizer.isResizable("image/svg+xml"));
+        assertFalse(ImageResizer.isResizable(null));
+    }
+}
@@ -0,0 +1,125 @@
+package edu.pucmm.util;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para ImageTransform.
+ */
+public class ImageTransformTest {
+
+    /** 1200x600: mitad izquierda roja, mitad derecha azul */
+    private static ByteArrayInputStream image() throws IOException {
+        BufferedImage img = new BufferedImage(1200, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 600, 600);
+        g.setColor(Color.BLUE);
+        g.fillRect(600, 0, 600, 600);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpeg", out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    private static BufferedImage decode(ImageResizer.Derivative d) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(d.getBytes()));
+    }
+
+    @Test
+    public void testParametersAreSnapped() {
+        ImageTransform t = ImageTransform.parse("333", "100", "COVER", "77");
+        assertEquals(340, t.getWidth());
+        assertEquals(100, t.getHeight());
+        assertEquals(ImageTransform.Fit.COVER, t.getFit());
+        assertEquals(75, t.getQuality());
+        assertEquals("340x100-cover-q75", t.key());
+
+        // Con un solo lado no hay recorte: cover y contain son la misma variante
+        assertEquals(ImageTransform.parse("640", null, "cover", null).key(),
+                ImageTransform.parse("640", "", "contain", null).key());
+        assertEquals(ImageTransform.MIN_QUALITY, ImageTransform.parse("640", null, null, "1").getQuality());
+        assertEquals(ImageTransform.MAX_QUALITY, ImageTransform.parse("640", null, null, "100").getQuality());
+        assertEquals(ImageTransform.DEFAULT_QUALITY, ImageTransform.parse(null, "200", null, null).getQuality());
+    }
+
+    @Test
+    public void testInvalidParameters_ShouldFail() {
+        String[][] invalid = {
+                {null, null, "cover", null},
+                {"0", null, null, null},
+                {"2561", null, null, null},
+                {"abc", null, null, null},
+                {"640", "480", "fill", null},
+                {"640", null, null, "101"},
+        };
+        for (String[] p : invalid) {
+            try {
+                ImageTransform.parse(p[0], p[1], p[2], p[3]);
+                fail(String.join(",", String.valueOf(p[0]), String.valueOf(p[1]), String.valueOf(p[2]), String.valueOf(p[3])));
+            } catch (IllegalArgumentException expected) {
+                // 400
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyFrontendSizesArePresets() {
+        // Hero (q75) en horizontal y vertical, y las miniaturas del admin
+        assertTrue(ImageTransform.parse("1920", "1080", "cover", "75").isPreset());
+        assertTrue(ImageTransform.parse("360", "640", "cover", "75").isPreset());
+        assertTrue(ImageTransform.parse("1280", "400", "cover", null).isPreset());
+        assertTrue(ImageTransform.parse("320", "200", "cover", null).isPreset());
+
+        assertFalse(ImageTransform.parse("1920", "1080", "cover", null).isPreset());
+        assertFalse(ImageTransform.parse("1920", "1080", "contain", "75").isPreset());
+        assertFalse(ImageTransform.parse("660", "380", "cover", null).isPreset());
+        assertFalse(ImageTransform.parse("640", null, null, null).isPreset());
+    }
+
+    @Test
+    public void testCoverCropsTheCenter() throws IOException {
+        ImageResizer.Derivative d = ImageTransform.parse("300", "300", "cover", null).apply(image());
+        assertEquals(300, d.getWidth());
+        assertEquals(300, d.getHeight());
+        assertEquals("image/jpeg", d.getContentType());
+        BufferedImage img = decode(d);
+        // El centro de una imagen mitad roja, mitad azul
+        Color left = new Color(img.getRGB(20, 150));
+        Color right = new Color(img.getRGB(280, 150));
+        assertTrue(left.getRed() > 200 && left.getBlue() < 60);
+        assertTrue(right.getBlue() > 200 && right.getRed() < 60);
+    }
+
+    @Test
+    public void testContainKeepsProportions() throws IOException {
+        ImageResizer.Derivative d = ImageTransform.parse("400", "400", "contain", null).apply(image());
+        assertEquals(400, d.getWidth());
+        assertEquals(200, d.getHeight());
+
+        d = ImageTransform.parse(null, "120", null, null).apply(image());
+        assertEquals(240, d.getWidth());
+        assertEquals(120, d.getHeight());
+    }
+
+    @Test
+    public void testNeverUpscales() throws IOException {
+        // Caja mayor que la imagen: la misma proporción, a tamaño original
+        ImageResizer.Derivative d = ImageTransform.parse("2400", "2400", "cover", null).apply(image());
+        assertEquals(600, d.getWidth());
+        assertEquals(600, d.getHeight());
+
+        d = ImageTransform.parse("2000", null, null, null).apply(image());
+        assertEquals(1200, d.getWidth());
+        assertEquals(600, d.getHeight());
+    }
+}
@@ -0,0 +1,107 @@
+package edu.pucmm.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para MultipartStream.
+ */
+public class MultipartStreamTest {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    private static byte[] body(byte[] image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("preámbulo ignorado\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"folder\"\r\n\r\n"
+                + "propiedades\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"sala \\\"grande\\\".png\"\r\n"
+                + "Content-Type: image/png\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(image);
+        out.write(("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"vacía.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n"
+                + "\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    /** Contenido con fragmentos parecidos al delimitador, que no deben cortarlo */
+    private static byte[] image(int size) {
+        byte[] image = new byte[size];
+        for (int i = 0; i < size; i++) image[i] = (byte) (i * 31 + 7);
+        byte[] almost = ("\r\n--" + BOUNDARY.substring(0, 20)).getBytes(StandardCharsets.ISO_8859_1);
+        for (int at = 100; at + almost.length < size; at += 997) System.arraycopy(almost, 0, image, at, almost.length);
+        return image;
+    }
+
+    /** Entrada que entrega pocos bytes por lectura, como un socket */
+    private static InputStream trickle(byte[] bytes, int step) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, step));
+            }
+        };
+    }
+
+    @Test
+    public void testPartsInOrder() throws IOException {
+        byte[] image = image(50_000);
+        for (int step : new int[]{1, 7, 4096, Integer.MAX_VALUE}) {
+            try (MultipartStream parts = new MultipartStream(trickle(body(image), step), BOUNDARY, 1024)) {
+                MultipartStream.Part field = parts.next();
+                assertEquals("folder", field.getName());
+                assertNull(field.getFilename());
+                assertEquals("propiedades", new String(field.getBody().readAllBytes(), StandardCharsets.UTF_8));
+
+                MultipartStream.Part file = parts.next();
+                assertEquals("files", file.getName());
+                assertEquals("sala \"grande\".png", file.getFilename());
+                assertEquals("image/png", file.getContentType());
+                assertTrue("paso " + step, Arrays.equals(image, file.getBody().readAllBytes()));
+
+                MultipartStream.Part empty = parts.next();
+                assertEquals("vacía.jpg", empty.getFilename());
+                assertEquals(-1, empty.getBody().read());
+                assertNull(parts.next());
+                assertNull(parts.next());
+            }
+        }
+    }
+
+    @Test
+    public void testUnreadPartIsSkipped() throws IOException {
+        try (MultipartStream parts = new MultipartStream(new ByteArrayInputStream(body(image(10_000))), BOUNDARY, 1024)) {
+            parts.next();
+            MultipartStream.Part file = parts.next();
+            assertEquals(0x07, file.getBody().read());
+            assertEquals("vacía.jpg", parts.next().getFilename());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedBody_ShouldFail() throws IOException {
+        byte[] body = body(image(5_000));
+        try (MultipartStream parts = new MultipartStream(new ByteArrayInputStream(Arrays.copyOf(body, 3_000)), BOUNDARY)) {
+            parts.next();
+            parts.next().getBody().readAllBytes();
+        }
+    }
+
+    @Test
+    public void testBoundaryOf() {
+        assertEquals("abc", MultipartStream.boundaryOf("multipart/form-data; boundary=abc"));
+        assertEquals("a b", MultipartStream.boundaryOf("Multipart/Form-Data; charset=utf-8; boundary=\"a b\""));
+        assertNull(MultipartStream.boundaryOf("application/json"));
+        assertNull(MultipartStream.boundaryOf("multipart/form-data"));
+        assertNull(MultipartStream.boundaryOf(null));
+    }
+}
@@ -0,0 +1,322 @@
+package edu.pucmm.util;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para PropertyQuery.
+ * Verifica la lectura y validación de los parámetros de búsqueda del listado.
+ */
+public class PropertyQueryTest {
+
+    private static Map<String, List<String>> params(String... kv) {
+        Map<String, List<String>> map = new HashMap<>();
+        for (int i = 0; i < kv.length; i += 2) {
+            map.put(kv[i], List.of(kv[i + 1]));
+        }
+        return map;
+    }
+
+    private static BsonDocument property(String id, String type, String saleType, Double price, String title) {
+        BsonDocument doc = new BsonDocument("_id", new BsonObjectId(new ObjectId(id)))
+                .append("type", new BsonString(type))
+                .append("saleType", new BsonString(saleType))
+                .append("title", new BsonString(title));
+        if (price != null) doc.append("price", new BsonDouble(price));
+        return doc;
+    }
+
+    private static final String ID_1 = "65a1b2c3d4e5f6a7b8c9d0e1";
+    private static final String ID_2 = "65a1b2c3d4e5f6a7b8c9d0e2";
+    private static final String ID_3 = "65a1b2c3d4e5f6a7b8c9d0e3";
+
+    @Test
+    public void testIsSearchRequest() {
+        assertFalse("Sin parámetros es el listado completo", PropertyQuery.isSearchRequest(params()));
+        assertFalse("Parámetros desconocidos no activan la búsqueda", PropertyQuery.isSearchRequest(params("foo", "bar")));
+        assertTrue(PropertyQuery.isSearchRequest(params("page", "1")));
+        assertTrue(PropertyQuery.isSearchRequest(params("type", "Casa")));
+    }
+
+    @Test
+    public void testDefaults() {
+        PropertyQuery q = PropertyQuery.fromParams(params("page", "1"));
+        assertEquals(1, q.getPage());
+        assertEquals(PropertyQuery.DEFAULT_LIMIT, q.getLimit());
+        assertEquals(PropertyQuery.SortOrder.CREATED_DESC, q.getSort());
+        assertTrue(q.getTypes().isEmpty());
+        assertNull(q.getSaleType());
+        assertNull(q.getQ());
+    }
+
+    @Test
+    public void testPagination() {
+        PropertyQuery q = PropertyQuery.fromParams(params("page", "3", "limit", "12"));
+        assertEquals(3, q.getPage());
+        assertEquals(12, q.getLimit());
+        assertEquals(24, q.skip());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLimitAboveMaximum_ShouldFail() {
+        PropertyQuery.fromParams(params("limit", String.valueOf(PropertyQuery.MAX_LIMIT + 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPageZero_ShouldFail() {
+        PropertyQuery.fromParams(params("page", "0"));
+    }
+
+    @Test
+    public void testTypeAliases() {
+        assertEquals(List.of("Solar", "Solares"), PropertyQuery.fromParams(params("type", "Terreno")).getTypes());
+        assertEquals(List.of("Solar", "Solares"), PropertyQuery.fromParams(params("type", "solares")).getTypes());
+        assertEquals(List.of("Local Comercial"), PropertyQuery.fromParams(params("type", "Local")).getTypes());
+        assertEquals(List.of("Casa"), PropertyQuery.fromParams(params("type", "casa")).getTypes());
+        assertTrue(PropertyQuery.fromParams(params("type", "Todos")).getTypes().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownType_ShouldFail() {
+        PropertyQuery.fromParams(params("type", "Castillo"));
+    }
+
+    @Test
+    public void testSaleTypeNormalization() {
+        assertEquals("Venta", PropertyQuery.fromParams(params("saleType", "venta")).getSaleType());
+        assertEquals("Alquiler", PropertyQuery.fromParams(params("saleType", "ALQUILER")).getSaleType());
+        assertNull(PropertyQuery.fromParams(params("saleType", "Venta / Alquiler")).getSaleType());
+    }
+
+    @Test
+    public void testRanges() {
+        PropertyQuery q = PropertyQuery.fromParams(params(
+                "minPrice", "1000000", "maxPrice", "8700000.50", "minArea", "80", "bedrooms", "2"));
+        assertEquals(1000000.0, q.getMinPrice(), 0.001);
+        assertEquals(8700000.5, q.getMaxPrice(), 0.001);
+        assertEquals(80.0, q.getMinArea(), 0.001);
+        assertNull(q.getMaxArea());
+        assertEquals(Integer.valueOf(2), q.getBedrooms());
+    }
+
+    @Test
+    public void testAmenitiesAndMinimums() {
+        PropertyQuery q = PropertyQuery.fromParams(params(
+                "amenities", "Piscina, Gimnasio,,Piscina", "bathrooms", "2", "parking", "1", "minPricePerSqm", "5000"));
+        assertEquals(List.of("Piscina", "Gimnasio"), q.getAmenities());
+        assertEquals(Integer.valueOf(2), q.getBathrooms());
+        assertEquals(Integer.valueOf(1), q.getParking());
+        assertEquals(5000.0, q.getMinPricePerSqm(), 0.001);
+        assertTrue(PropertyQuery.isSearchRequest(params("amenities", "Piscina")));
+    }
+
+    @Test
+    public void testMatchesAllAmenities() {
+        BsonDocument doc = property(ID_1, "Casa", "Venta", 1.0, "Casa")
+                .append("amenities", new BsonArray(List.of(new BsonString("Piscina"), new BsonString("Gimnasio"))));
+        assertTrue(PropertyQuery.fromParams(params("amenities", "Piscina,Gimnasio")).matches(doc));
+        assertFalse(PropertyQuery.fromParams(params("amenities", "Piscina,Terraza")).matches(doc));
+    }
+
+    @Test
+    public void testFilterKeyIsNormalized() {
+        String a = PropertyQuery.fromParams(params("type", "Terreno", "saleType", "venta", "q", "Piscina")).filterKey();
+        String b = PropertyQuery.fromParams(params("q", "piscina", "saleType", "VENTA", "type", "solares", "page", "3")).filterKey();
+        assertEquals(a, b);
+        assertEquals("sin filtros", "", PropertyQuery.fromParams(params("sort", "price-asc")).filterKey());
+        assertNotEquals(PropertyQuery.fromParams(params("minPrice", "100")).filterKey(),
+                PropertyQuery.fromParams(params("maxPrice", "100")).filterKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvertedPriceRange_ShouldFail() {
+        PropertyQuery.fromParams(params("minPrice", "500", "maxPrice", "100"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonNumericPrice_ShouldFail() {
+        PropertyQuery.fromParams(params("minPrice", "RD$ 100"));
+    }
+
+    @Test
+    public void testSortKeys() {
+        assertEquals(PropertyQuery.SortOrder.PRICE_ASC, PropertyQuery.fromParams(params("sort", "price-asc")).getSort());
+        assertEquals(PropertyQuery.SortOrder.AREA_DESC, PropertyQuery.fromParams(params("sort", "area-desc")).getSort());
+        assertEquals("_id", PropertyQuery.SortOrder.CREATED_DESC.field());
+        assertFalse(PropertyQuery.SortOrder.CREATED_DESC.ascending());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSort_ShouldFail() {
+        PropertyQuery.fromParams(params("sort", "random"));
+    }
+
+    @Test
+    public void testBlankTextIsIgnored() {
+        assertNull(PropertyQuery.fromParams(params("q", "   ")).getQ());
+        assertEquals("piscina", PropertyQuery.fromParams(params("q", " piscina ")).getQ());
+    }
+
+    @Test
+    public void testCursorMode() {
+        PropertyQuery first = PropertyQuery.fromParams(params("cursor", "", "sort", "price-asc"));
+        assertTrue("cursor vacío activa el modo cursor", first.isCursorMode());
+        assertNull(first.getCursor());
+
+        String token = first.cursorAfter(2500000, "65a1b2c3d4e5f6a7b8c9d0e1").encode();
+        PropertyQuery next = PropertyQuery.fromParams(params("cursor", token, "sort", "price-asc"));
+        assertEquals("price-asc", next.getCursor().getSortKey());
+        assertEquals(2500000.0, next.getCursor().getValue(), 0.001);
+        assertEquals("65a1b2c3d4e5f6a7b8c9d0e1", next.getCursor().getId());
+    }
+
+    @Test
+    public void testCursorWithNullSortValue() {
+        PropertyQuery q = PropertyQuery.fromParams(params("cursor", "", "sort", "area-desc"));
+        String token = q.cursorAfter(null, "65a1b2c3d4e5f6a7b8c9d0e1").encode();
+        assertNull(PageCursor.decode(token).getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCursorForDifferentSort_ShouldFail() {
+        String token = new PageCursor("price-asc", 100.0, "65a1b2c3d4e5f6a7b8c9d0e1").encode();
+        PropertyQuery.fromParams(params("cursor", token, "sort", "price-desc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedCursor_ShouldFail() {
+        PropertyQuery.fromParams(params("cursor", "no-es-un-cursor"));
+    }
+
+    @Test
+    public void testMatchesInMemory() {
+        BsonDocument casa = property(ID_1, "Casa", "Venta", 2500000.0, "Casa con piscina");
+        BsonDocument solar = property(ID_2, "Solares", "Venta", 900000.0, "Solar en Punta Cana");
+
+        assertTrue(PropertyQuery.fromParams(params("type", "Terreno")).matches(solar));
+        assertFalse(PropertyQuery.fromParams(params("type", "Terreno")).matches(casa));
+        assertTrue(PropertyQuery.fromParams(params("minPrice", "1000000")).matches(casa));
+        assertFalse(PropertyQuery.fromParams(params("minPrice", "1000000")).matches(solar));
+        assertTrue("texto sin distinguir mayúsculas", PropertyQuery.fromParams(params("q", "PISCINA")).matches(casa));
+        assertFalse(PropertyQuery.fromParams(params("saleType", "alquiler")).matches(casa));
+    }
+
+    @Test
+    public void testMatchesInMemory_MissingOrNonNumericValues() {
+        BsonDocument sinPrecio = property(ID_1, "Casa", "Venta", null, "Casa");
+        assertFalse("sin precio no cumple un rango", PropertyQuery.fromParams(params("maxPrice", "100")).matches(sinPrecio));
+        assertTrue(PropertyQuery.fromParams(params("page", "1")).matches(sinPrecio));
+
+        BsonDocument conBedrooms = sinPrecio.append("bedrooms", new BsonInt32(3))
+                .append("descriptionParagraph", new BsonArray(List.of(new BsonString("Vista al mar"))));
+        assertTrue(PropertyQuery.fromParams(params("bedrooms", "3")).matches(conBedrooms));
+        assertTrue("busca dentro de arrays", PropertyQuery.fromParams(params("q", "al mar")).matches(conBedrooms));
+    }
+
+    @Test
+    public void testComparatorInMemory() {
+        BsonDocument a = property(ID_1, "Casa", "Venta", 300.0, "a");
+        BsonDocument b = property(ID_2, "Casa", "Venta", null, "b");
+        BsonDocument c = property(ID_3, "Casa", "Venta", 100.0, "c");
+        List<BsonDocument> docs = new ArrayList<>(List.of(a, b, c));
+
+        docs.sort(PropertyQuery.fromParams(params("sort", "price-asc")).comparator());
+        assertEquals("sin precio primero en ascendente", List.of(b, c, a), docs);
+
+        docs.sort(PropertyQuery.fromParams(params("sort", "price-desc")).comparator());
+        assertEquals(List.of(a, c, b), docs);
+
+        docs.sort(PropertyQuery.fromParams(params("page", "1")).comparator());
+        assertEquals("por defecto, más recientes primero", List.of(c, b, a), docs);
+    }
+
+    @Test
+    public void testIsAfterCursorInMemory() {
+        PropertyQuery first = PropertyQuery.fromParams(params("cursor", "", "sort", "price-asc"));
+        String token = first.cursorAfter(100.0, ID_2).encode();
+        PropertyQuery next = PropertyQuery.fromParams(params("cursor", token, "sort", "price-asc"));
+
+        assertFalse(next.isAfterCursor(property(ID_1, "Casa", "Venta", 100.0, "empate, _id menor")));
+        assertTrue(next.isAfterCursor(property(ID_3, "Casa", "Venta", 100.0, "empate, _id mayor")));
+        assertTrue(next.isAfterCursor(property(ID_1, "Casa", "Venta", 200.0, "precio mayor")));
+        assertFalse(next.isAfterCursor(property(ID_3, "Casa", "Venta", null, "sin precio")));
+        assertTrue("sin cursor todo va después", first.isAfterCursor(property(ID_1, "Casa", "Venta", 1.0, "x")));
+    }
+
+    private static BsonDocument located(String id, double lat, double lng) {
+        return property(id, "Casa", "Venta", 1.0, "x")
+                .append("location", new BsonDocument("type", new BsonString("Point"))
+                        .append("coordinates", new BsonArray(List.of(new BsonDouble(lng), new BsonDouble(lat)))));
+    }
+
+    @Test
+    public void testUnitCriteriaMatchTheSameUnit() {
+        BsonDocument development = property(ID_1, "Apartamento", "Venta", null, "Torre")
+                .append("units", new BsonArray(List.of(
+                        new BsonDocument("bedrooms", new BsonInt32(1)).append("price", new BsonDouble(3_000_000)),
+                        new BsonDocument("bedrooms", new BsonInt32(3)).append("price", new BsonDouble(7_000_000)),
+                        new BsonDocument("bedrooms", new BsonInt32(3)).append("price", new BsonString("a consultar")))));
+
+        PropertyQuery q = PropertyQuery.fromParams(params("unitBedrooms", "3", "unitMaxPrice", "8000000"));
+        assertTrue(q.hasUnitCriteria());
+        assertTrue(PropertyQuery.isSearchRequest(params("unitBedrooms", "3")));
+        assertTrue(q.matches(development));
+        BsonArray units = q.matchingUnits(development);
+        assertEquals("solo la unidad que cumple ambos criterios", 1, units.size());
+        assertEquals(7_000_000, units.get(0).asDocument().get("price").asNumber().doubleValue(), 0);
+
+        assertFalse("ninguna unidad tiene 3 habitaciones y cuesta menos de 5M",
+                PropertyQuery.fromParams(params("unitBedrooms", "3", "unitMaxPrice", "5000000")).matches(development));
+        assertFalse("sin units[] no hay unidad que cumpla",
+                q.matches(property(ID_2, "Casa", "Venta", 1_000_000.0, "Casa")));
+        assertEquals(3, PropertyQuery.fromParams(params("page", "1")).matchingUnits(development).size());
+        assertNotEquals(q.filterKey(), PropertyQuery.fromParams(params("unitBedrooms", "3")).filterKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeUnitBedrooms_ShouldFail() {
+        PropertyQuery.fromParams(params("unitBedrooms", "-1"));
+    }
+
+    @Test
+    public void testNearAndWithin() {
+        PropertyQuery near = PropertyQuery.fromParams(params("near", "18.4861,-69.9312", "radius", "1000"));
+        assertEquals(1000, near.getRadius(), 0);
+        assertTrue(near.matches(located(ID_1, 18.4900, -69.9312)));
+        assertFalse("a unos 1,6 km", near.matches(located(ID_1, 18.5000, -69.9312)));
+        assertFalse("sin location no está cerca", near.matches(property(ID_1, "Casa", "Venta", 1.0, "x")));
+        assertEquals(PropertyQuery.DEFAULT_RADIUS_M, PropertyQuery.fromParams(params("near", "18.4861,-69.9312")).getRadius(), 0);
+
+        PropertyQuery within = PropertyQuery.fromParams(params("within", "-70,18.4,-69.9,18.5"));
+        assertTrue(within.matches(located(ID_1, 18.45, -69.95)));
+        assertFalse(within.matches(located(ID_1, 18.45, -69.85)));
+        assertTrue(PropertyQuery.isSearchRequest(params("within", "-70,18.4,-69.9,18.5")));
+    }
+
+    @Test
+    public void testInvalidGeoParams() {
+        for (String[] kv : new String[][]{
+                {"near", "18.4"}, {"near", "91,0"}, {"near", "a,b"},
+                {"radius", "500"}, {"within", "-69,18,-70,19"}, {"within", "1,2,3"}}) {
+            try {
+                PropertyQuery.fromParams(params(kv));
+                fail(kv[0] + "=" + kv[1] + " debería fallar");
+            } catch (IllegalArgumentException expected) {
+                // ok
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package edu.pucmm.util;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para TextAnalyzer.
+ */
+public class TextAnalyzerTest {
+
+    @Test
+    public void testFoldsCaseAndAccents() {
+        assertEquals("balcon nino", TextAnalyzer.fold("Balcón NIÑO"));
+    }
+
+    @Test
+    public void testDropsStopwordsAndShortTokens() {
+        assertEquals(List.of("vist", "mar"), TextAnalyzer.analyze("Vista al mar"));
+        assertTrue(TextAnalyzer.analyze("de la con").isEmpty());
+        assertTrue(TextAnalyzer.analyze(null).isEmpty());
+    }
+
+    @Test
+    public void testSingularAndPluralShareTerm() {
+        assertEquals(TextAnalyzer.analyze("casa"), TextAnalyzer.analyze("Casas"));
+        assertEquals(TextAnalyzer.analyze("balcón"), TextAnalyzer.analyze("balcones"));
+        assertEquals(TextAnalyzer.analyze("local"), TextAnalyzer.analyze("Locales"));
+        assertEquals(List.of("mar"), TextAnalyzer.analyze("mar"));
+    }
+
+    @Test
+    public void testNumbersAreNotStemmed() {
+        assertEquals(List.of("3", "habitacion"), TextAnalyzer.analyze("3 habitaciones"));
+        assertEquals(List.of("2024"), TextAnalyzer.analyze("2024"));
+    }
+
+    @Test
+    public void testQueryTermsAreDistinct() {
+        assertEquals(List.of("cas", "play"), TextAnalyzer.queryTerms("casa casas en la playa"));
+    }
+
+    @Test
+    public void testAccentInsensitivePattern() {
+        assertTrue(TextAnalyzer.accentInsensitive("balcon").matcher("Amplio BALCÓN").find());
+        assertTrue(TextAnalyzer.accentInsensitive("nino").matcher("cuarto de niños").find());
+        assertFalse(TextAnalyzer.accentInsensitive("piscin").matcher("jardín").find());
+        // Prefijo de palabra, como el índice en memoria
+        assertTrue(TextAnalyzer.accentInsensitive("cas").matcher("Bonita casa").find());
+        assertTrue(TextAnalyzer.accentInsensitive("cas").matcher("(Casa)").find());
+        assertFalse(TextAnalyzer.accentInsensitive("cas").matcher("Vicasa").find());
+        assertFalse("la ñ también es letra", TextAnalyzer.accentInsensitive("nino").matcher("Añoniño").find());
+    }
+}
@@ -0,0 +1,93 @@
+package edu.pucmm.util;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests para UnitStats.
+ */
+public class UnitStatsTest {
+
+    private static Map<String, Object> unit(Object price, Object area, Object bedrooms) {
+        Map<String, Object> unit = new HashMap<>();
+        unit.put("price", price);
+        unit.put("area", area);
+        unit.put("bedrooms", bedrooms);
+        return unit;
+    }
+
+    @Test
+    public void testSummarizeUnits() {
+        Document stats = UnitStats.summarize(List.of(
+                unit(5_500_000, 95.5, 2),
+                unit("7200000", 120, 3),
+                unit(null, "n/a", 1),
+                "no es una unidad"));
+        assertEquals(4, stats.get("count"));
+        assertEquals(5_500_000.0, stats.get("minPrice"));
+        assertEquals(7_200_000.0, stats.get("maxPrice"));
+        assertEquals(95.5, stats.get("minArea"));
+        assertEquals(120.0, stats.get("maxArea"));
+        assertEquals(1.0, stats.get("minBedrooms"));
+        assertEquals(3.0, stats.get("maxBedrooms"));
+    }
+
+    @Test
+    public void testMissingValuesAreOmitted() {
+        Document stats = UnitStats.summarize(List.of(unit(null, 80, null)));
+        assertNull(stats.get("minPrice"));
+        assertNull(stats.get("maxBedrooms"));
+        assertEquals(80.0, stats.get("minArea"));
+        assertEquals(0, UnitStats.summarize(List.of()).get("count"));
+    }
+
+    @Test
+    public void testLowAndHighPreferRootValue() {
+        BsonDocument development = new BsonDocument("unitStats",
+                new BsonDocument("minPrice", new BsonDouble(100)).append("maxPrice", new BsonDouble(300)));
+        assertEquals(100.0, UnitStats.lowOf(development, "price"), 0);
+        assertEquals(300.0, UnitStats.highOf(development, "price"), 0);
+        assertNull(UnitStats.lowOf(development, "area"));
+
+        BsonDocument withRoot = new BsonDocument("price", new BsonInt32(250))
+                .append("unitStats", new BsonDocument("minPrice", new BsonDouble(100)).append("maxPrice", new BsonDouble(300)));
+        assertEquals(250.0, UnitStats.lowOf(withRoot, "price"), 0);
+        assertEquals(250.0, UnitStats.highOf(withRoot, "price"), 0);
+
+        BsonDocument textPrice = new BsonDocument("price", new BsonString("a consultar"))
+                .append("unitStats", new BsonDocument("minPrice", new BsonDouble(100)));
+        assertEquals("un precio no numérico cuenta como ausente", 100.0, UnitStats.lowOf(textPrice, "price"), 0);
+    }
+
+    @Test
+    public void testSortKeysFollowLowOf() {
+        Document development = new Document("price", "a consultar")
+                .append("units", List.of(unit(5_000_000, 80, 2), unit(3_000_000, 60, 1)));
+        development.append(UnitStats.FIELD, UnitStats.summarize(development.getList("units", Object.class)));
+        UnitStats.appendSortKeys(development);
+        assertEquals(3_000_000.0, development.getDouble("sortPrice"), 0);
+        assertEquals(60.0, development.getDouble("sortArea"), 0);
+
+        Document house = UnitStats.appendSortKeys(new Document("price", 250_000).append("sortArea", 10.0));
+        assertEquals(250_000.0, house.getDouble("sortPrice"), 0);
+        assertFalse("sin área ya no tiene valor de orden", house.containsKey("sortArea"));
+
+        // El valor guardado manda; sin él, el mismo de lowOf
+        BsonDocument stored = new BsonDocument("price", new BsonString("a consultar"))
+                .append("unitStats", new BsonDocument("minPrice", new BsonDouble(100)))
+                .append("sortPrice", new BsonDouble(100));
+        assertEquals(100.0, UnitStats.sortValueOf(stored, "price"), 0);
+        stored.remove("sortPrice");
+        assertEquals(UnitStats.lowOf(stored, "price"), UnitStats.sortValueOf(stored, "price"));
+    }
+}